@@ -0,0 +1,841 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class saves the instructions pane on a background thread as it is edited, so that
+ * work is not lost if the editor stops unexpectedly, and so that saving a large pattern
+ * never holds up typing.
+ *
+ * Each edit is added to a journal (JOURNAL_FILE, in the working directory) as it is made:
+ * a small record of the text inserted or the characters removed, appended through a
+ * FileChannel. Every COMPACT_INTERVAL seconds, if the text has been edited, the journal is
+ * compacted: a snapshot of the text (see PatternDocument.getSnapshot()), taken without
+ * copying it, is written to a temporary file next to the pattern file,
+ * which then replaces the pattern file in a single atomic rename, so the pattern file is
+ * always either the old version or the new one and never part of each. A new journal is
+ * then started from the new version. Patterns that have not been saved to a file yet are
+ * kept in UNTITLED_FILE. A pattern file that held bytes that are not UTF-8 when it was
+ * imported (see PatternReader) is never compacted over, since that would replace them
+ * without the user knowing; its edits are kept in the journal until the user saves it.
+ *
+ * When the editor starts, recover() rebuilds the text as it was when the editor last
+ * stopped, from the pattern file and the edits in the journal after it.
+ *
+ * Journal layout (all numbers big-endian):
+ *      int     magic number ("KJNL")
+ *      int     format version
+ *      short   length in bytes of the path of the pattern file, followed by the path
+ *              in UTF-8 (no path for UNTITLED_FILE)
+ *      byte    1 if the edits apply to the pattern file as read by PatternReader (as when
+ *              it is imported), 0 if they apply to exactly the text of the file
+ *      long    length in bytes of the pattern file the edits apply to
+ *      long    CRC32 checksum of that pattern file
+ *      int     CRC32 checksum of everything before it
+ *      records for each edit, its type (one byte), the offset and number of characters,
+ *              for an insert the characters themselves (two bytes each), and a CRC32
+ *              checksum of the record
+ *
+ * Recovery stops at the first record that is incomplete or damaged (as the last one may
+ * be if the editor stopped while writing it), and ignores a journal altogether if the
+ * pattern file has been changed since the journal was started.
+ *
+ */
+
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.text.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+class Autosave implements DocumentListener
+{
+    public static final String JOURNAL_FILE = "autosave.journal"; // Journal of edits, in the working directory
+    public static final String UNTITLED_FILE = "untitled-pattern.txt"; // Pattern file for instructions not yet saved, in the working directory
+    public static final int COMPACT_INTERVAL = 30; // Seconds between compactions of the journal
+
+    private static final String TEMP_EXTENSION = ".saving"; // Added to the name of a file while its new version is written
+    private static final int MAGIC = 0x4B4A4E4C; // "KJNL"
+    private static final int VERSION = 1;
+    private static final byte INSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_SIZE = 1 + 4 + 4 + 4; // Bytes of a record besides the characters inserted
+    private static final int BUFFER_SIZE = 64 * 1024; // Bytes written to a pattern file at a time
+    private static final int CLOSE_TIMEOUT = 30; // Seconds to wait for the last compaction when the editor closes
+
+    private final JTextArea pane; // Instructions pane
+    private final ScheduledExecutorService executor; // Background thread all the files are written on
+    private final List<Edit> pending = new ArrayList<Edit>(); // Edits not yet taken by the background thread (guarded by itself)
+    private PatternDocument document; // Document of the instructions pane being listened to (Swing event thread only)
+    private volatile long editCount; // Number of edits made so far, counted while the document is locked for writing
+
+    // Used on the background thread only
+    private File file; // Pattern file being saved to, or null for UNTITLED_FILE
+    private PatternDocument saving; // Document whose text is saved to the pattern file, or null before open() or save()
+    private FileChannel journal; // Journal being appended to, or null if none
+    private long journalStart; // Number of edits already included in the pattern file the journal starts from
+    private boolean failing; // True once an error has been reported, until the next successful compaction
+    private boolean journalOnly; // True while edits to the pattern file are only kept in the journal, until it is saved
+
+    /**
+     * Constructor. Nothing is saved until open() or save() is called.
+     *
+     * @param	pane	Instructions pane to save
+     */
+    public Autosave (JTextArea pane)
+    {
+        this.pane = pane;
+        executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory()
+            {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Autosave");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.scheduleWithFixedDelay(
+            new Runnable()
+            {
+                public void run() {
+                    try
+                    {
+                        compactIfEdited(editCount);
+                    }
+                    catch (IOException e)
+                    {
+                        failed(e);
+                    }
+                }
+            }, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The text of a pattern as it was saved
+     */
+    static class Snapshot
+    {
+        private final Rope text;
+        private final long length;
+        private final long checksum;
+
+        Snapshot (Rope text, long length, long checksum)
+        {
+            this.text = text;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return	Text that was saved
+         */
+        public Rope getText()
+        {
+            return text;
+        }
+
+        /**
+         * @return	Length in bytes of the file it was saved to
+         */
+        public long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * @return	CRC32 checksum of the file it was saved to
+         */
+        public long getChecksum()
+        {
+            return checksum;
+        }
+    }
+
+    /**
+     * Text recovered from the pattern file and journal of an earlier session
+     */
+    static class Recovery
+    {
+        private final File file;
+        private final String text;
+        private final boolean decodedCleanly;
+
+        Recovery (File file, String text, boolean decodedCleanly)
+        {
+            this.file = file;
+            this.text = text;
+            this.decodedCleanly = decodedCleanly;
+        }
+
+        /**
+         * @return	Pattern file the text was being saved to, or null if it had not been saved to a file
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        public String getText()
+        {
+            return text;
+        }
+
+        /**
+         * @return	False if the pattern file held bytes that are not UTF-8, which are
+         *			shown as replacement characters in the text
+         */
+        public boolean isDecodedCleanly()
+        {
+            return decodedCleanly;
+        }
+    }
+
+    /**
+     * One edit to the instructions
+     */
+    private static class Edit
+    {
+        final long number; // Position of the edit among all the edits made
+        final byte type; // INSERT or REMOVE
+        final int offset;
+        final int length;
+        final String text; // Text inserted, or null for a removal
+
+        Edit (long number, byte type, int offset, int length, String text)
+        {
+            this.number = number;
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Starts saving the instructions pane to a pattern file that has just been imported
+     * into it, once the text of any pattern shown before it has been saved
+     *
+     * @param	file			Pattern file shown in the instructions pane, or null for a new
+     *							pattern (which is saved to UNTITLED_FILE straight away)
+     * @param	decodedCleanly	False if the file held bytes that are not UTF-8, in which case
+     *							edits are only kept in the journal until save() is called
+     */
+    public void open(final File file, final boolean decodedCleanly)
+    {
+        if (file == null)
+        {
+            save(null);
+            return;
+        }
+        final boolean replaced = follow();
+        final long start = editCount;
+        final PatternDocument opened = document;
+        execute(
+            new Runnable()
+            {
+                public void run() {
+                    try
+                    {
+                        if (replaced)
+                        {
+                            compactIfEdited(start);
+                        }
+                        // The document holds the file as read by PatternReader, and no
+                        // edits have been made to it before start
+                        Autosave.this.file = file;
+                        saving = opened;
+                        startJournal(true, file.length(), CompiledChart.checksum(file), start);
+                        journalOnly = !decodedCleanly;
+                        failing = false;
+                    }
+                    catch (IOException e)
+                    {
+                        failed(e);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Saves the instructions pane to a pattern file on the background thread, once the
+     * text of any pattern shown before it has been saved, and keeps saving to that file
+     * from then on
+     *
+     * @param	file	Pattern file to save to, or null for UNTITLED_FILE
+     *
+     * @return	Result of the save, which throws an ExecutionException if it failed
+     */
+    public Future<Snapshot> save(final File file)
+    {
+        final boolean replaced = follow();
+        final long start = editCount;
+        final PatternDocument saved = document;
+        return executor.submit(
+            new Callable<Snapshot>()
+            {
+                public Snapshot call() throws IOException {
+                    if (replaced)
+                    {
+                        compactIfEdited(start);
+                    }
+                    return compact(file, saved);
+                }
+            });
+    }
+
+    /**
+     * Saves any edits not yet compacted into the pattern file, waiting for them to be
+     * saved, and stops saving. The journal is kept for a pattern not saved to a file
+     * yet, or with edits only kept in the journal, so that it is recovered the next
+     * time the editor starts.
+     */
+    public void close()
+    {
+        final long end = editCount;
+        execute(
+            new Runnable()
+            {
+                public void run() {
+                    try
+                    {
+                        compactIfEdited(end);
+                        closeJournal();
+                        if (file != null && !(journalOnly && end > journalStart))
+                        {
+                            new File(JOURNAL_FILE).delete();
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        // The journal is kept, so the edits are recovered next time
+                    }
+                }
+            });
+        executor.shutdown();
+        try
+        {
+            executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts listening to the document of the instructions pane, if it has been replaced
+     *
+     * @return	True if it was replaced after another document had been listened to
+     */
+    private boolean follow()
+    {
+        PatternDocument current = (PatternDocument) pane.getDocument();
+        if (current == document)
+        {
+            return false;
+        }
+        boolean replaced = (document != null);
+        if (replaced)
+        {
+            document.removeDocumentListener(this);
+        }
+        document = current;
+        document.addDocumentListener(this);
+        return replaced;
+    }
+
+    /**
+     * Records text inserted into the instructions (called while the document is locked)
+     */
+    public void insertUpdate(DocumentEvent e)
+    {
+        String text;
+        try
+        {
+            text = e.getDocument().getText(e.getOffset(), e.getLength());
+        }
+        catch (BadLocationException ex)
+        {
+            throw new IllegalStateException(ex); // Not reached: the text was just inserted
+        }
+        add(new Edit(++editCount, INSERT, e.getOffset(), e.getLength(), text));
+    }
+
+    /**
+     * Records text removed from the instructions (called while the document is locked)
+     */
+    public void removeUpdate(DocumentEvent e)
+    {
+        add(new Edit(++editCount, REMOVE, e.getOffset(), e.getLength(), null));
+    }
+
+    /**
+     * Ignored: attribute changes are not saved
+     */
+    public void changedUpdate(DocumentEvent e)
+    {
+    }
+
+    /**
+     * Passes an edit to the background thread to be added to the journal. Edits made
+     * before the background thread gets to them are written together.
+     */
+    private void add(Edit edit)
+    {
+        synchronized (pending)
+        {
+            pending.add(edit);
+            if (pending.size() > 1)
+            {
+                return; // Already waiting to be written
+            }
+        }
+        execute(
+            new Runnable()
+            {
+                public void run() {
+                    writeEdits();
+                }
+            });
+    }
+
+    /**
+     * Runs a task on the background thread, unless it has been stopped by close()
+     */
+    private void execute(Runnable task)
+    {
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Closed: any edits made since are not saved
+        }
+    }
+
+    /**
+     * Appends the edits waiting to be written to the journal (background thread). Edits
+     * already included in the pattern file the journal starts from are skipped.
+     */
+    private void writeEdits()
+    {
+        List<Edit> edits;
+        synchronized (pending)
+        {
+            edits = new ArrayList<Edit>(pending);
+            pending.clear();
+        }
+        if (journal == null)
+        {
+            return;
+        }
+
+        int size = 0;
+        for (Edit edit : edits)
+        {
+            if (edit.number > journalStart)
+            {
+                size += RECORD_SIZE + ((edit.text == null) ? 0 : 2 * edit.text.length());
+            }
+        }
+        if (size == 0)
+        {
+            return;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (Edit edit : edits)
+        {
+            if (edit.number > journalStart)
+            {
+                int start = out.position();
+                out.put(edit.type);
+                out.putInt(edit.offset);
+                out.putInt(edit.length);
+                if (edit.text != null)
+                {
+                    for (int i = 0; i < edit.text.length(); i++)
+                    {
+                        out.putChar(edit.text.charAt(i));
+                    }
+                }
+                crc.reset();
+                crc.update(out.array(), start, out.position() - start);
+                out.putInt((int) crc.getValue());
+            }
+        }
+        out.flip();
+        try
+        {
+            while (out.hasRemaining())
+            {
+                journal.write(out);
+            }
+            journal.force(false);
+        }
+        catch (IOException e)
+        {
+            failed(e);
+        }
+    }
+
+    /**
+     * Compacts the journal if any of the edits up to a given number have not been saved
+     * to the pattern file yet (background thread)
+     */
+    private void compactIfEdited(long edits) throws IOException
+    {
+        if (saving != null && !journalOnly && edits > journalStart)
+        {
+            compact(file, saving);
+        }
+    }
+
+    /**
+     * Writes the text of a document to a pattern file, replacing the file once it has all
+     * been written, and starts a new journal from it (background thread). The document is
+     * locked only while a snapshot of its text is taken, which does not copy the text, so
+     * typing is not held up however large the pattern is.
+     *
+     * @param	target		Pattern file to save to, or null for UNTITLED_FILE
+     * @param	document	Document holding the text
+     */
+    private Snapshot compact(File target, final PatternDocument document) throws IOException
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.AUTOSAVE);
+        final Rope[] text = new Rope[1];
+        final long[] edits = new long[1];
+        document.render(
+            new Runnable()
+            {
+                public void run() {
+                    text[0] = document.getSnapshot();
+                    edits[0] = editCount; // Edits made before the snapshot was taken
+                }
+            });
+        Snapshot snapshot = write((target == null) ? new File(UNTITLED_FILE) : target, text[0]);
+        if (file == null && target != null && saving != null)
+        {
+            new File(UNTITLED_FILE).delete(); // Now saved to a file of its own
+        }
+        file = target;
+        saving = document;
+        startJournal(false, snapshot.getLength(), snapshot.getChecksum(), edits[0]);
+        journalOnly = false;
+        failing = false;
+        Metrics.stop(m, 0, 0);
+        return snapshot;
+    }
+
+    /**
+     * Writes text to a file as UTF-8 through a temporary file, which then replaces the file
+     *
+     * @return	Text, length, and checksum of the file as written
+     */
+    private static Snapshot write(File file, Rope text) throws IOException
+    {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        long length = 0;
+
+        Path temp = new File(file.getPath() + TEMP_EXTENSION).toPath();
+        try
+        {
+            FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            try
+            {
+                // Encode the text a chunk of the rope at a time; a character split
+                // between chunks is left in the buffer until the rest of it is added
+                int copied = 0;
+                boolean end = false;
+                while (!end)
+                {
+                    while (copied < text.length() && chars.hasRemaining())
+                    {
+                        text.getSegment(copied, Math.min(text.length() - copied, chars.remaining()), segment);
+                        chars.put(segment.array, segment.offset, segment.count);
+                        copied += segment.count;
+                    }
+                    end = (copied == text.length());
+                    chars.flip();
+                    while (encoder.encode(chars, out, end).isOverflow())
+                    {
+                        length += flush(channel, out, crc);
+                    }
+                    chars.compact();
+                }
+                while (encoder.flush(out).isOverflow())
+                {
+                    length += flush(channel, out, crc);
+                }
+                length += flush(channel, out, crc);
+                channel.force(true); // On the disk before it replaces the old version
+            }
+            finally
+            {
+                channel.close();
+            }
+            replace(temp, file.toPath());
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+        return new Snapshot(text, length, crc.getValue());
+    }
+
+    /**
+     * Writes the contents of the output buffer to a file and adds them to a checksum
+     *
+     * @return	Number of bytes written
+     */
+    private static int flush(FileChannel channel, ByteBuffer out, CRC32 crc) throws IOException
+    {
+        out.flip();
+        crc.update(out.duplicate());
+        int count = out.remaining();
+        while (out.hasRemaining())
+        {
+            channel.write(out);
+        }
+        out.clear();
+        return count;
+    }
+
+    /**
+     * Replaces a file with a new version of it, in one step where the file system allows it
+     */
+    static void replace(Path temp, Path file) throws IOException
+    {
+        try
+        {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replaces the journal with a new one, holding no edits yet (background thread)
+     *
+     * @param	normalized	True if the edits apply to the pattern file as read by PatternReader
+     * @param	length		Length in bytes of the pattern file
+     * @param	checksum	CRC32 checksum of the pattern file
+     * @param	start		Number of edits already included in the pattern file
+     */
+    private void startJournal(boolean normalized, long length, long checksum, long start) throws IOException
+    {
+        closeJournal();
+        byte[] path = (file == null) ? new byte[0] : file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 + 4 + 2 + path.length + 1 + 8 + 8 + 4);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putShort((short) path.length);
+        header.put(path);
+        header.put((byte) (normalized ? 1 : 0));
+        header.putLong(length);
+        header.putLong(checksum);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, header.position());
+        header.putInt((int) crc.getValue());
+        header.flip();
+
+        Path temp = new File(JOURNAL_FILE + TEMP_EXTENSION).toPath();
+        FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try
+        {
+            while (header.hasRemaining())
+            {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+        finally
+        {
+            channel.close();
+        }
+        Path journalPath = new File(JOURNAL_FILE).toPath();
+        replace(temp, journalPath);
+        journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalStart = start;
+    }
+
+    private void closeJournal() throws IOException
+    {
+        if (journal != null)
+        {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Tells the user that the instructions could not be saved, unless that has been
+     * done already since the last successful compaction (background thread)
+     */
+    private void failed(final IOException e)
+    {
+        if (failing)
+        {
+            return;
+        }
+        failing = true;
+        SwingUtilities.invokeLater(
+            new Runnable()
+            {
+                public void run() {
+                    JOptionPane.showMessageDialog(pane, "Error: Unable to autosave the pattern.\n" + e.getMessage());
+                }
+            });
+    }
+
+    /**
+     * Rebuilds the text of the instructions as it was when the editor last stopped, from
+     * the journal and the pattern file it starts from
+     *
+     * @return	Text recovered, or null if there is nothing to recover: no journal, no edits
+     *			in it that are not already in its pattern file, or a pattern file that has
+     *			changed since the journal was started
+     *
+     * @throws	IOException		Thrown if the journal or pattern file can't be read
+     */
+    public static Recovery recover() throws IOException
+    {
+        File journalFile = new File(JOURNAL_FILE);
+        if (!journalFile.exists())
+        {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+        CRC32 crc = new CRC32();
+
+        File file;
+        boolean normalized;
+        long length;
+        long checksum;
+        try
+        {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION)
+            {
+                return null;
+            }
+            byte[] path = new byte[in.getShort() & 0xFFFF];
+            in.get(path);
+            file = (path.length == 0) ? null : new File(new String(path, StandardCharsets.UTF_8));
+            normalized = (in.get() != 0);
+            length = in.getLong();
+            checksum = in.getLong();
+            crc.update(in.array(), 0, in.position());
+            if (in.getInt() != (int) crc.getValue())
+            {
+                return null;
+            }
+        }
+        catch (BufferUnderflowException e)
+        {
+            return null;
+        }
+
+        // The text the edits apply to
+        File base = (file == null) ? new File(UNTITLED_FILE) : file;
+        final StringBuilder text = new StringBuilder();
+        boolean decodedCleanly = true;
+        if (!base.exists())
+        {
+            if (length != 0)
+            {
+                return null;
+            }
+        }
+        else if (base.length() != length || CompiledChart.checksum(base) != checksum)
+        {
+            return null;
+        }
+        else if (normalized)
+        {
+            PatternReader reader = new PatternReader(base);
+            reader.read(new LineHandler()
+            {
+                public boolean line(String line)
+                {
+                    text.append(line).append('\n');
+                    return true;
+                }
+            });
+            decodedCleanly = reader.isDecodedCleanly();
+        }
+        else
+        {
+            text.append(new String(Files.readAllBytes(base.toPath()), StandardCharsets.UTF_8));
+        }
+
+        // Apply each edit, up to the first that is incomplete or damaged
+        int edits = 0;
+        try
+        {
+            while (in.hasRemaining())
+            {
+                int start = in.position();
+                byte type = in.get();
+                int offset = in.getInt();
+                int count = in.getInt();
+                if (count < 0 || offset < 0 || (type == INSERT && count > in.remaining() / 2))
+                {
+                    break;
+                }
+                char[] inserted = null;
+                if (type == INSERT)
+                {
+                    inserted = new char[count];
+                    in.asCharBuffer().get(inserted);
+                    in.position(in.position() + 2 * count);
+                }
+                crc.reset();
+                crc.update(in.array(), start, in.position() - start);
+                if (in.getInt() != (int) crc.getValue())
+                {
+                    break;
+                }
+                if (type == INSERT && offset <= text.length())
+                {
+                    text.insert(offset, inserted);
+                }
+                else if (type == REMOVE && (long) offset + count <= text.length())
+                {
+                    text.delete(offset, offset + count);
+                }
+                else
+                {
+                    break;
+                }
+                edits++;
+            }
+        }
+        catch (BufferUnderflowException e)
+        {
+            // The last edit was not completely written
+        }
+
+        if (edits == 0 && (file != null || text.length() == 0))
+        {
+            return null;
+        }
+        return new Recovery(file, text.toString(), decodedCleanly);
+    }
+}
\ No newline at end of file
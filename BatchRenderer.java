@@ -0,0 +1,302 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This program renders a whole directory tree of knitting pattern text files into charts
+ * from the command line, without opening any windows:
+ *
+ *      java BatchRenderer [-format png|svg|txt] [-threads n] [-metrics file] inputDirectory outputDirectory
+ *
+ * Each pattern file (any file ending in ".txt") is read and parsed with the same code as the
+ * editor uses, and its chart is written to the same relative path under the output directory,
+ * with the extension replaced by the chosen format (".png", ".svg", or ".chart.txt"). Files are rendered in parallel by a fixed
+ * number of worker threads, and each chart is written to disk as soon as it is finished.
+ * A summary of the number of files rendered per second, and of any failures, is printed at the end.
+ * With -metrics, the time taken by each phase of parsing and rendering (see Metrics) is recorded
+ * and written to the given file at the end.
+ *
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+class BatchRenderer
+{
+    private final Path inputDirectory;
+    private final Path outputDirectory;
+    private final String format;
+    private final int threads;
+    private final AtomicInteger rendered = new AtomicInteger(); // Number of files rendered successfully
+    private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<String>(); // Description of each file that could not be rendered
+
+    /**
+     * Constructor
+     *
+     * @param	inputDirectory		Directory to search for pattern files
+     * @param	outputDirectory		Directory to write charts to
+     * @param	format				Chart format: one of ChartExporter.FORMATS
+     * @param	threads				Number of files to render at once
+     */
+    public BatchRenderer (Path inputDirectory, Path outputDirectory, String format, int threads)
+    {
+        this.inputDirectory = inputDirectory;
+        this.outputDirectory = outputDirectory;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    /**
+     * Renders every pattern file under the input directory, then prints a summary
+     *
+     * @return	True if every file was rendered successfully
+     *
+     * @throws	IOException		Thrown if the input directory can't be read
+     */
+    public boolean run() throws IOException
+    {
+        long startTime = System.nanoTime();
+
+        // A fixed number of workers take files from a short queue. When the queue is full,
+        // the thread walking the directory renders the next file itself, so the number of
+        // files waiting (and the memory they take) stays bounded however many there are.
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        // Charts written into an output directory inside the input directory are not
+        // patterns, so that directory is left out of the search. Links to directories
+        // are not followed, since one that points back up the tree would never end.
+        Path output = outputDirectory.toAbsolutePath().normalize();
+        ArrayDeque<Path> directories = new ArrayDeque<Path>();
+        directories.push(inputDirectory);
+        try
+        {
+            while (!directories.isEmpty())
+            {
+                DirectoryStream<Path> entries = Files.newDirectoryStream(directories.pop());
+                try
+                {
+                    for (final Path entry : entries)
+                    {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))
+                        {
+                            if (!entry.toAbsolutePath().normalize().equals(output))
+                            {
+                                directories.push(entry);
+                            }
+                        }
+                        else if (entry.getFileName().toString().toLowerCase().endsWith(".txt"))
+                        {
+                            pool.execute(new Runnable()
+                            {
+                                public void run()
+                                {
+                                    render(entry);
+                                }
+                            });
+                        }
+                    }
+                }
+                finally
+                {
+                    entries.close();
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+            try
+            {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Print summary
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        int total = rendered.get() + failures.size();
+        System.out.printf("Rendered %d of %d files in %.1f seconds (%.1f files per second)%n",
+                rendered.get(), total, seconds, total / Math.max(seconds, 1e-9));
+        if (!failures.isEmpty())
+        {
+            System.out.println(failures.size() + " files could not be rendered:");
+            for (String failure : failures)
+            {
+                System.out.println("    " + failure);
+            }
+        }
+        return failures.isEmpty();
+    }
+
+    /**
+     * Reads, parses and writes the chart for one pattern file (runs on a worker thread)
+     *
+     * @param	input	Pattern file to render
+     */
+    private void render(Path input)
+    {
+        Path relative = inputDirectory.relativize(input);
+        try
+        {
+            // Lines are parsed as they are read, so the time spent parsing them is
+            // recorded separately and left out of the time spent reading the file
+            Metrics.Measurement m = Metrics.start(Metrics.READ_FILE);
+            RowCollector collector = new RowCollector();
+            new PatternReader(input.toFile()).read(collector);
+            Metrics.stop(m, collector.getLinesRead(), 0, collector.getParseNanos());
+            if (collector.isEmpty())
+            {
+                failures.add(relative + ": File is empty");
+                return;
+            }
+            Instructions inst = collector.getInstructions();
+            Metrics.record(Metrics.PARSE, collector.getParseNanos(), inst.getNumberOfRows(), inst.getTotalStitches());
+
+            RenderResult result = RenderResult.check(inst);
+            if (!result.isSuccessful())
+            {
+                failures.add(relative + ": " + result.getErrorMessage().replace("\n", "; "));
+                return;
+            }
+
+            String name = relative.getFileName().toString();
+            // (Text charts are named ".chart.txt" so they can never replace the pattern file itself)
+            name = name.substring(0, name.length() - ".txt".length()) + (format.equals("txt") ? ".chart.txt" : "." + format);
+            Path output = outputDirectory.resolve(relative).resolveSibling(name);
+            Files.createDirectories(output.getParent());
+            ChartExporter.write(result.getGrid(), format, output.toFile());
+            rendered.incrementAndGet();
+        }
+        catch (IOException e)
+        {
+            failures.add(relative + ": " + e.getMessage());
+        }
+        // Also report anything unexpected (such as a chart too large to write out)
+        // as a failure of this file, so that the rest of the batch continues
+        catch (RuntimeException e)
+        {
+            failures.add(relative + ": " + e);
+        }
+        catch (OutOfMemoryError e)
+        {
+            failures.add(relative + ": Not enough memory to render chart");
+        }
+    }
+
+    /**
+     * Main method - reads the command line options and renders the directory
+     */
+    public static void main (String[] args)
+    {
+        // Never open windows or dialogs, even if a display is available
+        System.setProperty("java.awt.headless", "true");
+
+        String format = "png";
+        int threads = Runtime.getRuntime().availableProcessors();
+        File metricsFile = null;
+        ArrayList<String> directories = new ArrayList<String>();
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                if (args[i].equals("-format"))
+                {
+                    format = args[++i].toLowerCase();
+                    if (!Arrays.asList(ChartExporter.FORMATS).contains(format))
+                    {
+                        throw new IllegalArgumentException("Unrecognized format \"" + args[i] + "\"");
+                    }
+                }
+                else if (args[i].equals("-threads"))
+                {
+                    threads = Integer.parseInt(args[++i]);
+                    if (threads < 1)
+                    {
+                        throw new IllegalArgumentException("Number of threads must be at least 1");
+                    }
+                }
+                else if (args[i].equals("-metrics"))
+                {
+                    metricsFile = new File(args[++i]);
+                }
+                else
+                {
+                    directories.add(args[i]);
+                }
+            }
+            if (directories.size() != 2)
+            {
+                throw new IllegalArgumentException("Input and output directories are required");
+            }
+        }
+        catch (RuntimeException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java BatchRenderer [-format png|svg|txt] [-threads n] [-metrics file] inputDirectory outputDirectory");
+            System.exit(2);
+        }
+
+        loadStitchAbbreviations();
+        if (metricsFile != null)
+        {
+            Metrics.setEnabled(true);
+        }
+
+        Path input = Paths.get(directories.get(0));
+        Path output = Paths.get(directories.get(1));
+        try
+        {
+            boolean succeeded = new BatchRenderer(input, output, format, threads).run();
+            if (metricsFile != null)
+            {
+                try
+                {
+                    Metrics.dump(metricsFile);
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Error: Unable to write the metrics file \"" + metricsFile + "\": " + e.getMessage());
+                    succeeded = false;
+                }
+            }
+            System.exit(succeeded ? 0 : 1);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Unable to read the directory \"" + input + "\": " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Adds any user-defined stitch abbreviations in the StitchDictionary.CONFIG_FILE
+     * file in the working directory, as the editor does at startup
+     */
+    static void loadStitchAbbreviations()
+    {
+        File config = new File(StitchDictionary.CONFIG_FILE);
+        if (config.exists())
+        {
+            StitchDictionary dictionary = new StitchDictionary();
+            try
+            {
+                dictionary.load(config);
+                StitchDictionary.setDefault(dictionary);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error: Unable to read stitch abbreviations from \"" + config + "\".");
+            }
+            catch (IllegalArgumentException e)
+            {
+                System.err.println("Error: Unable to load stitch abbreviations from \"" + config + "\". " + e.getMessage());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,398 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This program measures how long the parser and renderer take, and how much memory
+ * they allocate, on synthetic patterns (see PatternGenerator), so the effect of a change
+ * on performance can be checked before and after making it:
+ *
+ *      java Benchmark [-time seconds] [benchmark ...]
+ *
+ * The benchmarks are "parse" (RowParser on single rows), "instructions" (the Instructions
+ * constructor on whole patterns), "grid" (writing out a ChartGrid), "render" (painting
+ * a chart headlessly), and "import" (reading a pattern file, and loading its compiled
+ * chart). All of them are run if none are named. Each is run over a sweep of row counts,
+ * row widths, repeat counts, and levels of nesting.
+ *
+ * Each measurement runs the operation repeatedly for a warm-up period (so the JIT compiler
+ * has finished with it) and then for the measurement period, and reports the average time
+ * per operation and per row, the bytes allocated per operation and per second (by all
+ * threads, so parallel parsing is included), and the garbage collections that happened.
+ *
+ */
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.List;
+
+class Benchmark
+{
+    private static final long SEED = 2014; // Seed for the generated patterns, so every run measures the same patterns
+    private static final int[] ROWS = { 100, 1000, 10000 };
+    private static final int[] WIDTHS = { 10, 100, 1000 };
+    private static final int[] REPEATS = { 0, 1, 10 };
+    private static final int[] NESTING = { 0, 1, 2 };
+    private static final int DEFAULT_ROWS = 1000; // Used while sweeping the other settings
+    private static final int DEFAULT_WIDTH = 100;
+    private static final int DEFAULT_REPEATS = 5;
+    private static final Rectangle VIEWPORT = new Rectangle(0, 0, 800, 600); // Area painted by the render benchmark, in pixels
+    private static final int CELL_SIZE = 20;
+
+    private static volatile int sink; // Results are stored here so the JIT compiler can't skip computing them
+
+    private final long warmupNanos;
+    private final long measureNanos;
+
+    /**
+     * An operation to be timed
+     */
+    private static abstract class Operation
+    {
+        /**
+         * Runs the operation once
+         *
+         * @return	Any value computed from the result, so the work can't be skipped
+         */
+        abstract int run() throws Exception;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param	seconds		Length of both the warm-up and the measurement period of each benchmark
+     */
+    public Benchmark (double seconds)
+    {
+        warmupNanos = (long) (seconds * 1e9);
+        measureNanos = (long) (seconds * 1e9);
+    }
+
+    /**
+     * Times RowParser.parse() on single rows of different widths, repeat counts, and nesting
+     */
+    public void parse() throws Exception
+    {
+        for (int width : WIDTHS)
+        {
+            for (int repeats : REPEATS)
+            {
+                for (int nesting : NESTING)
+                {
+                    if (!fits(width, repeats, nesting))
+                    {
+                        continue;
+                    }
+                    final String[] rows = new PatternGenerator(SEED).pattern(DEFAULT_ROWS, width, repeats, nesting);
+                    final RowParser parser = new RowParser();
+                    measure("parse", settings(DEFAULT_ROWS, width, repeats, nesting), rows.length, new Operation()
+                    {
+                        int run()
+                        {
+                            int result = 0;
+                            for (int i = 0; i < rows.length; i++)
+                            {
+                                result += parser.parse(rows[i]).getWidth();
+                            }
+                            return result;
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Times the Instructions constructor on whole patterns
+     */
+    public void instructions() throws Exception
+    {
+        for (int[] setting : sweep())
+        {
+            final String[] pattern = generate(setting);
+            measure("instructions", settings(setting), setting[0], new Operation()
+            {
+                int run()
+                {
+                    return new Instructions(pattern).getNumberOfRows();
+                }
+            });
+        }
+    }
+
+    /**
+     * Times writing out every stitch of a parsed pattern into a ChartGrid
+     */
+    public void grid() throws Exception
+    {
+        for (int[] setting : sweep())
+        {
+            final Instructions inst = new Instructions(generate(setting));
+            measure("grid", settings(setting), setting[0], new Operation()
+            {
+                int run()
+                {
+                    return new ChartGrid(inst).size();
+                }
+            });
+        }
+    }
+
+    /**
+     * Times painting one screenful of a chart into an image, without a display
+     */
+    public void render() throws Exception
+    {
+        for (int[] setting : sweep())
+        {
+            final ChartGrid grid = new Instructions(generate(setting)).getGrid();
+            final int chartWidth = setting[1];
+            final BufferedImage image = new BufferedImage(VIEWPORT.width, VIEWPORT.height, BufferedImage.TYPE_INT_RGB);
+            measure("render", settings(setting), Math.min(setting[0], VIEWPORT.height / CELL_SIZE + 1), new Operation()
+            {
+                int run()
+                {
+                    Graphics2D g = image.createGraphics();
+                    try
+                    {
+                        g.setColor(Color.WHITE);
+                        g.fill(VIEWPORT);
+                        ChartView.paintChart(g, grid, chartWidth, CELL_SIZE, VIEWPORT);
+                    }
+                    finally
+                    {
+                        g.dispose();
+                    }
+                    return image.getRGB(0, 0);
+                }
+            });
+        }
+    }
+
+    /**
+     * Times reading and parsing a pattern file, and loading the compiled chart saved with it
+     */
+    public void fileImport() throws Exception
+    {
+        for (int rows : ROWS)
+        {
+            final File f = File.createTempFile("benchmark", ".txt");
+            f.deleteOnExit();
+            CompiledChart.fileFor(f).deleteOnExit();
+            new PatternGenerator(SEED).write(f, rows, DEFAULT_WIDTH, DEFAULT_REPEATS, 0);
+
+            measure("import", settings(rows, DEFAULT_WIDTH, DEFAULT_REPEATS, 0), rows, new Operation()
+            {
+                int run() throws IOException
+                {
+                    RowCollector collector = new RowCollector();
+                    new PatternReader(f).read(collector);
+                    return collector.getInstructions().getNumberOfRows();
+                }
+            });
+
+            RowCollector collector = new RowCollector();
+            new PatternReader(f).read(collector);
+            CompiledChart.save(collector.getInstructions(), f, f.length(), CompiledChart.checksum(f));
+            measure("import-compiled", settings(rows, DEFAULT_WIDTH, DEFAULT_REPEATS, 0), rows, new Operation()
+            {
+                int run() throws IOException
+                {
+                    return CompiledChart.load(f).getNumberOfRows();
+                }
+            });
+        }
+    }
+
+    /**
+     * Lists the settings each whole-pattern benchmark is run with: each of the row counts,
+     * row widths, repeat counts, and levels of nesting in turn, with the other settings
+     * left at their defaults
+     *
+     * @return	List of { rows, width, repeats, nesting } settings
+     */
+    private static List<int[]> sweep()
+    {
+        ArrayList<int[]> settings = new ArrayList<int[]>();
+        for (int rows : ROWS)
+        {
+            settings.add(new int[] { rows, DEFAULT_WIDTH, DEFAULT_REPEATS, 0 });
+        }
+        for (int width : WIDTHS)
+        {
+            settings.add(new int[] { DEFAULT_ROWS, width, Math.min(DEFAULT_REPEATS, width), 0 });
+        }
+        for (int repeats : REPEATS)
+        {
+            settings.add(new int[] { DEFAULT_ROWS, DEFAULT_WIDTH, repeats, 0 });
+        }
+        for (int nesting : NESTING)
+        {
+            if (nesting > 0 && fits(DEFAULT_WIDTH, DEFAULT_REPEATS, nesting))
+            {
+                settings.add(new int[] { DEFAULT_ROWS, DEFAULT_WIDTH, DEFAULT_REPEATS, nesting });
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * @return	True if PatternGenerator can fit the repeats in a row of the given width
+     *			(each level of nesting doubles the stitches the repeats take up)
+     */
+    private static boolean fits(int width, int repeats, int nesting)
+    {
+        return ((long) repeats << nesting) <= width;
+    }
+
+    private static String[] generate(int[] setting)
+    {
+        return new PatternGenerator(SEED).pattern(setting[0], setting[1], setting[2], setting[3]);
+    }
+
+    private static String settings(int[] setting)
+    {
+        return settings(setting[0], setting[1], setting[2], setting[3]);
+    }
+
+    private static String settings(int rows, int width, int repeats, int nesting)
+    {
+        return "rows=" + rows + " width=" + width + " repeats=" + repeats + " nesting=" + nesting;
+    }
+
+    /**
+     * Runs an operation for the warm-up period, then for the measurement period, and prints the results
+     *
+     * @param	name		Name of the benchmark
+     * @param	settings	Description of the pattern settings
+     * @param	items		Number of rows processed by each run, to report the time per row
+     * @param	operation	Operation to time
+     */
+    private void measure(String name, String settings, int items, Operation operation) throws Exception
+    {
+        // Warm up
+        long start = System.nanoTime();
+        int result = 0;
+        for (int runs = 0; runs < 3 || System.nanoTime() - start < warmupNanos; runs++)
+        {
+            result += operation.run();
+        }
+        System.gc();
+
+        // Measure
+        long gcCount = getCollectionCount();
+        long gcTime = getCollectionTime();
+        long allocated = Metrics.getAllocatedBytes(); // Negative if allocation is not measured
+        start = System.nanoTime();
+        long elapsed;
+        int runs = 0;
+        do
+        {
+            result += operation.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        }
+        while (runs < 5 || elapsed < measureNanos);
+        if (allocated >= 0)
+        {
+            allocated = Metrics.getAllocatedBytes() - allocated;
+        }
+        gcCount = getCollectionCount() - gcCount;
+        gcTime = getCollectionTime() - gcTime;
+        sink += result;
+
+        double nanosPerRun = (double) elapsed / runs;
+        System.out.printf("%-16s %-44s %12.3f ms/op %10.1f ns/row", name, settings, nanosPerRun / 1e6, nanosPerRun / items);
+        if (allocated >= 0)
+        {
+            System.out.printf(" %12.1f KB/op %8.1f MB/s", allocated / 1024.0 / runs, allocated / 1e6 / (elapsed / 1e9));
+        }
+        System.out.printf(" %4d GCs %6d ms GC%n", gcCount, gcTime);
+    }
+
+    private static long getCollectionCount()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(gc.getCollectionCount(), 0);
+        }
+        return total;
+    }
+
+    private static long getCollectionTime()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    /**
+     * Main method - reads the command line options and runs the chosen benchmarks
+     */
+    public static void main (String[] args) throws Exception
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        double seconds = 1;
+        ArrayList<String> names = new ArrayList<String>();
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                if (args[i].equals("-time"))
+                {
+                    seconds = Double.parseDouble(args[++i]);
+                    if (!(seconds > 0))
+                    {
+                        throw new IllegalArgumentException("Time must be greater than 0");
+                    }
+                }
+                else if (Arrays.asList("parse", "instructions", "grid", "render", "import").contains(args[i]))
+                {
+                    names.add(args[i]);
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Unrecognized benchmark \"" + args[i] + "\"");
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java Benchmark [-time seconds] [parse] [instructions] [grid] [render] [import]");
+            System.exit(2);
+        }
+
+        Benchmark benchmark = new Benchmark(seconds);
+        System.out.println("Java " + System.getProperty("java.version") + ", "
+                + Runtime.getRuntime().availableProcessors() + " processors, "
+                + (Runtime.getRuntime().maxMemory() >> 20) + " MB heap");
+        if (names.isEmpty() || names.contains("parse"))
+        {
+            benchmark.parse();
+        }
+        if (names.isEmpty() || names.contains("instructions"))
+        {
+            benchmark.instructions();
+        }
+        if (names.isEmpty() || names.contains("grid"))
+        {
+            benchmark.grid();
+        }
+        if (names.isEmpty() || names.contains("render"))
+        {
+            benchmark.render();
+        }
+        if (names.isEmpty() || names.contains("import"))
+        {
+            benchmark.fileImport();
+        }
+    }
+}
\ No newline at end of file
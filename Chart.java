@@ -0,0 +1,35 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This interface represents a knitting chart as a grid of stitches that can be read
+ * one cell at a time, so that the chart can be checked and rendered without
+ * necessarily being stored as a fully written out 2D array.
+ *
+ * Rows and stitches are numbered from zero in the order they appear in the
+ * written instructions (the first row is the first line of instructions,
+ * and the first stitch is the first abbreviation in that line).
+ */
+
+interface Chart
+{
+    /**
+     * @return	Number of rows in the chart
+     */
+    int getNumberOfRows();
+
+    /**
+     * @param	row		Index of a row in the chart
+     *
+     * @return	Number of stitches in the row
+     */
+    int getRowWidth(int row);
+
+    /**
+     * @param	row		Index of a row in the chart
+     * @param	column	Index of a stitch within the row
+     *
+     * @return	Stitch at the given position, or null if its abbreviation was not recognized
+     */
+    Stitch getStitch(int row, int column);
+}
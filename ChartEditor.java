@@ -0,0 +1,433 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class lets the user edit the chart directly: clicking on a cell of the chart
+ * (without dragging) opens a palette of stitches, and choosing one changes the stitch in
+ * the cell, and its abbreviation in the instructions pane to match.
+ *
+ * Only the cell and the characters written for it are changed. A new version of the chart
+ * is made with the stitch changed (see PersistentChart), so only the line of cells it is on
+ * is painted again, and the version from before can be put back if the change is undone
+ * (see EditHistory). Its characters are found from the spans of text taken up by each abbreviation and
+ * repeated sequence in its row (see TextSpan), recorded by parsing the row's line the first
+ * time one of its cells is edited, and kept up to date as later edits change the line.
+ * A stitch inside a sequence that is worked more than once can't be changed just by changing
+ * its abbreviation, which would change it in every repeat, so the sequence is split around
+ * the repeat holding the stitch (see TextSpan.change()).
+ *
+ * With the live preview on, the chart follows the instructions, so the changed line is
+ * parsed again by the preview, just as if the change had been typed. With it off, the
+ * chart is only known to match the instructions as they were when it was rendered, so
+ * rows whose lines have been typed in since then can't be edited until it is rendered again.
+ *
+ */
+
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.text.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.beans.*;
+import java.util.*;
+
+class ChartEditor implements DocumentListener
+{
+    private final JTextArea pane; // Instructions pane to keep in step with the chart
+    private final ChartView view; // Chart pane to edit
+    private final LivePreview preview; // Live preview of the instructions, which may be on or off
+    private final JLabel status; // Label to explain why a stitch can't be edited
+    private final EditHistory history; // History of changes, for undo and redo
+    private final HashMap<Integer, TextSpan> spans = new HashMap<Integer, TextSpan>(); // Spans of the rows edited so far, by row
+    private final BitSet staleLines = new BitSet(); // Lines typed in since the chart was rendered (with the preview off)
+    private boolean allStale; // True if lines have been added or removed since the chart was rendered (with the preview off)
+    private boolean editing; // True while the instructions are being changed to match an edit to the chart
+    private Document document; // Document of the instructions pane being listened to
+
+    /**
+     * Constructor
+     *
+     * @param	pane		Instructions pane to change along with the chart
+     * @param	view		Chart pane to edit by clicking on it
+     * @param	preview		Live preview of the instructions pane in the chart pane
+     * @param	status		Label to explain why a stitch can't be edited in
+     * @param	history		History to record each change in, so it can be undone
+     */
+    public ChartEditor (JTextArea pane, ChartView view, LivePreview preview, JLabel status, EditHistory history)
+    {
+        this.pane = pane;
+        this.view = view;
+        this.preview = preview;
+        this.status = status;
+        this.history = history;
+        document = pane.getDocument();
+        document.addDocumentListener(this);
+
+        // Follow the document when a file is imported; its chart is not rendered yet
+        pane.addPropertyChangeListener("document",
+            new PropertyChangeListener()
+            {
+                public void propertyChange(PropertyChangeEvent e) {
+                    document.removeDocumentListener(ChartEditor.this);
+                    document = ChartEditor.this.pane.getDocument();
+                    document.addDocumentListener(ChartEditor.this);
+                    spans.clear();
+                    allStale = true;
+                }
+            });
+
+        // A click (but not a drag, which pans the chart) opens the palette
+        view.addMouseListener(
+            new MouseAdapter()
+            {
+                public void mouseClicked(MouseEvent e) {
+                    if (SwingUtilities.isLeftMouseButton(e) && e.getClickCount() == 1)
+                    {
+                        showPalette(e.getPoint());
+                    }
+                }
+            });
+    }
+
+    /**
+     * Notes that the chart has just been rendered from the instructions, so every row
+     * of it can be edited
+     */
+    public void chartRendered()
+    {
+        spans.clear();
+        staleLines.clear();
+        allStale = false;
+    }
+
+    /**
+     * Opens the palette of stitches for the cell at a point of the chart, with the stitch
+     * in the cell selected
+     *
+     * @param	p	Point in pixels from the top left corner of the chart
+     */
+    private void showPalette(Point p)
+    {
+        final int row = view.getRowAt(p);
+        final int stitchIndex = view.getStitchIndexAt(p);
+        if (row < 0 || stitchIndex < 0)
+        {
+            return;
+        }
+        Stitch current = view.getChart().getStitch(row, stitchIndex);
+
+        JPopupMenu palette = new JPopupMenu();
+        ButtonGroup group = new ButtonGroup();
+        for (final Stitch stitch : Stitch.values())
+        {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(stitch.getStitchName(), new StitchIcon(stitch), stitch == current);
+            item.addActionListener(
+                new ActionListener()
+                {
+                    public void actionPerformed(ActionEvent e) {
+                        setStitch(row, stitchIndex, stitch);
+                    }
+                });
+            group.add(item);
+            palette.add(item);
+        }
+        palette.show(view, p.x, p.y);
+    }
+
+    /**
+     * Changes a stitch in the chart, and its abbreviation in the instructions
+     *
+     * @param	row			Index of a row in the chart
+     * @param	stitchIndex	Index of a stitch within the row
+     * @param	stitch		New stitch
+     */
+    private void setStitch(int row, int stitchIndex, Stitch stitch)
+    {
+        Chart chart = view.getChart();
+        if (chart == null || row >= chart.getNumberOfRows() || stitchIndex >= chart.getRowWidth(row)
+                || chart.getStitch(row, stitchIndex) == stitch)
+        {
+            return;
+        }
+        TextSpan rowSpans = getSpans(chart, row);
+        if (rowSpans == null)
+        {
+            return;
+        }
+        String line = getLine(row);
+        TextSpan.Change change = rowSpans.change(line, stitchIndex, new PatternWriter().getAbbreviation(stitch));
+
+        // With the preview off, the stitch is changed in the chart here; with it on, the
+        // preview updates the chart from the changed line
+        PersistentChart before = null;
+        PersistentChart after = null;
+        if (!preview.isEnabled())
+        {
+            before = (chart instanceof PersistentChart) ? (PersistentChart) chart : new PersistentChart(chart);
+            after = before.withStitch(row, stitchIndex, stitch);
+            view.updateChart(after, row, row);
+        }
+
+        // Replace the characters in the instructions, recording the edits as part of the change
+        ChartChange recorded = new ChartChange(before, after, row);
+        history.addEdit(recorded);
+        int lineStart = document.getDefaultRootElement().getElement(row).getStartOffset();
+        editing = true;
+        preview.holdUpdates();
+        try
+        {
+            if (document instanceof AbstractDocument)
+            {
+                ((AbstractDocument) document).replace(lineStart + change.getStart(), change.getEnd() - change.getStart(), change.getText(), null);
+            }
+            else
+            {
+                document.remove(lineStart + change.getStart(), change.getEnd() - change.getStart());
+                document.insertString(lineStart + change.getStart(), change.getText(), null);
+            }
+        }
+        catch (BadLocationException e)
+        {
+            throw new IllegalStateException(e); // Not reached: the spans lie within the line
+        }
+        finally
+        {
+            recorded.end();
+            editing = false;
+            preview.releaseUpdates();
+        }
+
+        // Move the spans after the abbreviation, or if the sequences in the row
+        // were changed, record its spans again
+        if (change.isInPlace())
+        {
+            rowSpans.moveText(change.getEnd(), change.getText().length() - (change.getEnd() - change.getStart()));
+        }
+        else
+        {
+            spans.remove(row);
+            getSpans(view.getChart(), row);
+        }
+        if (!preview.isEnabled())
+        {
+            status.setText(" "); // (With the preview on, it reports the errors in the instructions here)
+        }
+    }
+
+    /**
+     * Gets the spans of the items in a row, recording them if they have not been
+     * recorded yet, and making sure they match the row shown in the chart
+     *
+     * @return	Spans of the row, or null (after telling the user why) if the row can't be edited
+     */
+    private TextSpan getSpans(Chart chart, int row)
+    {
+        if (!preview.isEnabled() && (allStale || staleLines.get(row)))
+        {
+            status.setText("Row " + (row+1) + " has been changed since the chart was rendered. Render the chart again to edit it.");
+            return null;
+        }
+        if (preview.isEnabled())
+        {
+            // The chart follows the instructions, whatever has been typed
+            staleLines.clear();
+            allStale = false;
+        }
+
+        TextSpan rowSpans = spans.get(row);
+        if (rowSpans == null && row < document.getDefaultRootElement().getElementCount())
+        {
+            rowSpans = new RowParser().parseSpans(getLine(row), row);
+            if (rowSpans != null && rowSpans.getWidth() == chart.getRowWidth(row))
+            {
+                spans.put(row, rowSpans);
+            }
+            else
+            {
+                rowSpans = null;
+            }
+        }
+        if (rowSpans == null)
+        {
+            status.setText("Row " + (row+1) + " can't be edited in the chart.");
+        }
+        return rowSpans;
+    }
+
+    /**
+     * Gets the text of a line of the document, without its line break
+     */
+    private String getLine(int line)
+    {
+        Element element = document.getDefaultRootElement().getElement(line);
+        int start = element.getStartOffset();
+        int end = Math.min(element.getEndOffset(), document.getLength() + 1) - 1;
+        try
+        {
+            String text = document.getText(start, end - start);
+            // Lines saved on other systems may end with a carriage return
+            if (text.endsWith("\r"))
+            {
+                text = text.substring(0, text.length() - 1);
+            }
+            return text;
+        }
+        catch (BadLocationException e)
+        {
+            throw new IllegalStateException(e); // Not reached: offsets come from the document's own elements
+        }
+    }
+
+    public void insertUpdate(DocumentEvent e)
+    {
+        linesChanged(e);
+    }
+
+    public void removeUpdate(DocumentEvent e)
+    {
+        linesChanged(e);
+    }
+
+    public void changedUpdate(DocumentEvent e)
+    {
+        // Attribute changes do not affect the instructions text
+    }
+
+    /**
+     * Forgets the spans of lines typed in by the user, and with the preview off,
+     * notes that their rows no longer match the chart
+     */
+    private void linesChanged(DocumentEvent e)
+    {
+        if (editing)
+        {
+            return;
+        }
+        Element root = document.getDefaultRootElement();
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (change != null && change.getChildrenAdded().length != change.getChildrenRemoved().length)
+        {
+            // Lines were added or removed, moving the rows after them
+            spans.clear();
+            allStale = !preview.isEnabled();
+            return;
+        }
+        int first = root.getElementIndex(e.getOffset());
+        int last = (change != null) ? first + change.getChildrenAdded().length - 1 : first;
+        for (int line = first; line <= last; line++)
+        {
+            spans.remove(line);
+            if (!preview.isEnabled())
+            {
+                staleLines.set(line);
+            }
+        }
+    }
+
+    /**
+     * A change made in the chart: the edits it made to the instructions, and the versions
+     * of the chart from before and after it (or null, if the preview was on, in which case
+     * the preview changes the chart to match the instructions as they are undone and redone)
+     */
+    private class ChartChange extends EditHistory.Change
+    {
+        private final PersistentChart before;
+        private final PersistentChart after;
+        private final int row;
+
+        ChartChange (PersistentChart before, PersistentChart after, int row)
+        {
+            this.before = before;
+            this.after = after;
+            this.row = row;
+        }
+
+        public void undo()
+        {
+            replay(after, before, true);
+        }
+
+        public void redo()
+        {
+            replay(before, after, false);
+        }
+
+        /**
+         * Undoes or redoes the edits to the instructions, and unless the chart has been
+         * rendered again since (so it no longer shows the version this change was made
+         * to), puts back the version of the chart to match
+         *
+         * @param	from	Version of the chart the change leaves behind
+         * @param	to		Version of the chart to put back
+         * @param	undo	True to undo the change, false to redo it
+         */
+        private void replay(PersistentChart from, PersistentChart to, boolean undo)
+        {
+            boolean restore = from != null && view.getChart() == from;
+            editing = restore; // Otherwise the row no longer matches the chart (unless the preview is on)
+            try
+            {
+                if (undo)
+                {
+                    super.undo();
+                }
+                else
+                {
+                    super.redo();
+                }
+            }
+            finally
+            {
+                editing = false;
+            }
+            spans.remove(row);
+            if (restore)
+            {
+                view.updateChart(to, row, row);
+            }
+        }
+
+        long getSize()
+        {
+            return super.getSize() + (after == null ? 0 : after.getEditBytes());
+        }
+    }
+
+    /**
+     * Icon showing a stitch as it appears in the chart, for the palette
+     */
+    private static class StitchIcon implements Icon
+    {
+        private static final int SIZE = 20;
+
+        private final Stitch stitch;
+
+        StitchIcon (Stitch stitch)
+        {
+            this.stitch = stitch;
+        }
+
+        public void paintIcon(Component c, Graphics g, int x, int y)
+        {
+            g.setColor(Color.WHITE);
+            g.fillRect(x, y, SIZE, SIZE);
+            g.setColor(Color.BLACK);
+            g.drawRect(x, y, SIZE - 1, SIZE - 1);
+            g.setFont(g.getFont().deriveFont(Font.PLAIN, SIZE * 0.6f));
+            FontMetrics metrics = g.getFontMetrics();
+            String symbol = stitch.getSymbol();
+            g.drawString(symbol, x + (SIZE - metrics.stringWidth(symbol)) / 2,
+                    y + (SIZE - metrics.getHeight()) / 2 + metrics.getAscent());
+        }
+
+        public int getIconWidth()
+        {
+            return SIZE;
+        }
+
+        public int getIconHeight()
+        {
+            return SIZE;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,220 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class writes knitting charts to image and text files without using any
+ * windows or dialogs, so it can be used when running without a display
+ * (see BatchRenderer). Charts are laid out as in the editor: the last row
+ * at the top, and even-numbered rows (counting from zero) right to left.
+ *
+ * Supported formats are PNG images, SVG drawings, and plain text, in which
+ * each row of the chart is one line with the stitch symbols separated by "|".
+ *
+ */
+
+import javax.imageio.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.charset.*;
+
+class ChartExporter
+{
+    public static final String[] FORMATS = { "png", "svg", "txt" };
+
+    private static final int CELL_SIZE = 20; // Width and height of each cell in pixels
+    private static final int MAX_IMAGE_SIZE = 16384; // Cells are made smaller if the image would be wider or taller than this
+
+    /**
+     * Writes a chart to a file
+     *
+     * @param	chart	Chart to write
+     * @param	format	One of the FORMATS: "png", "svg", or "txt"
+     * @param	f		File to write to
+     *
+     * @throws	IOException					Thrown if the file can't be written
+     *
+     * @throws	IllegalArgumentException	Thrown if the format is not recognized
+     */
+    public static void write(Chart chart, String format, File f) throws IOException
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.EXPORT);
+        if (format.equals("png"))
+        {
+            writePng(chart, f);
+        }
+        else if (format.equals("svg"))
+        {
+            writeSvg(chart, f);
+        }
+        else if (format.equals("txt"))
+        {
+            writeText(chart, f);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unrecognized chart format \"" + format + "\"");
+        }
+        if (m != null)
+        {
+            long stitches = 0;
+            for (int i = 0; i < chart.getNumberOfRows(); i++)
+            {
+                stitches += chart.getRowWidth(i);
+            }
+            Metrics.stop(m, chart.getNumberOfRows(), stitches);
+        }
+    }
+
+    /**
+     * Writes a chart as a PNG image, painted in the same way as in the editor (see ChartView)
+     */
+    public static void writePng(Chart chart, File f) throws IOException
+    {
+        int chartWidth = getChartWidth(chart);
+        int cellSize = getCellSize(chart, chartWidth);
+        int width = chartWidth*cellSize + 1;
+        int height = chart.getNumberOfRows()*cellSize + 1;
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = image.createGraphics();
+        try
+        {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            ChartView.paintChart(g, chart, chartWidth, cellSize, new Rectangle(0, 0, width, height));
+        }
+        finally
+        {
+            g.dispose();
+        }
+        if (!ImageIO.write(image, "png", f))
+        {
+            throw new IOException("No PNG image writer is available");
+        }
+    }
+
+    /**
+     * Writes a chart as an SVG drawing, one cell at a time as it is read from the chart
+     */
+    public static void writeSvg(Chart chart, File f) throws IOException
+    {
+        int chartWidth = getChartWidth(chart);
+        int numberOfRows = chart.getNumberOfRows();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8));
+        try
+        {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + (chartWidth*CELL_SIZE + 1)
+                    + "\" height=\"" + (numberOfRows*CELL_SIZE + 1) + "\" font-family=\"sans-serif\" font-size=\"12\">\n");
+            out.write("<g fill=\"none\" stroke=\"black\">\n");
+            for (int line = 0; line < numberOfRows; line++)
+            {
+                int row = ChartView.toRow(chart, line);
+                for (int column = 0; column < chartWidth; column++)
+                {
+                    if (ChartView.toStitchIndex(chart, chartWidth, row, column) >= 0)
+                    {
+                        out.write("<rect x=\"" + (column*CELL_SIZE) + "\" y=\"" + (line*CELL_SIZE)
+                                + "\" width=\"" + CELL_SIZE + "\" height=\"" + CELL_SIZE + "\"/>\n");
+                    }
+                }
+            }
+            out.write("</g>\n<g text-anchor=\"middle\">\n");
+            for (int line = 0; line < numberOfRows; line++)
+            {
+                int row = ChartView.toRow(chart, line);
+                for (int column = 0; column < chartWidth; column++)
+                {
+                    int stitchIndex = ChartView.toStitchIndex(chart, chartWidth, row, column);
+                    if (stitchIndex < 0)
+                    {
+                        continue;
+                    }
+                    Stitch stitch = chart.getStitch(row, stitchIndex);
+                    String symbol = (stitch == null) ? "?" : stitch.getSymbol();
+                    if (symbol.trim().length() > 0)
+                    {
+                        out.write("<text x=\"" + (column*CELL_SIZE + CELL_SIZE/2) + "\" y=\"" + (line*CELL_SIZE + CELL_SIZE*3/4)
+                                + "\"" + (stitch == null ? " fill=\"red\"" : "") + ">" + escapeXml(symbol) + "</text>\n");
+                    }
+                }
+            }
+            out.write("</g>\n</svg>\n");
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a chart as plain text, one line per row
+     */
+    public static void writeText(Chart chart, File f) throws IOException
+    {
+        int chartWidth = getChartWidth(chart);
+        int numberOfRows = chart.getNumberOfRows();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8));
+        try
+        {
+            for (int line = 0; line < numberOfRows; line++)
+            {
+                int row = ChartView.toRow(chart, line);
+                out.write('|');
+                for (int column = 0; column < chartWidth; column++)
+                {
+                    int stitchIndex = ChartView.toStitchIndex(chart, chartWidth, row, column);
+                    if (stitchIndex < 0)
+                    {
+                        out.write(' ');
+                    }
+                    else
+                    {
+                        Stitch stitch = chart.getStitch(row, stitchIndex);
+                        out.write(stitch == null ? "?" : stitch.getSymbol());
+                    }
+                    out.write('|');
+                }
+                out.write('\n');
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return	Number of stitches in the longest row of a chart
+     */
+    private static int getChartWidth(Chart chart)
+    {
+        int chartWidth = 0;
+        for (int i = 0; i < chart.getNumberOfRows(); i++)
+        {
+            chartWidth = Math.max(chartWidth, chart.getRowWidth(i));
+        }
+        return chartWidth;
+    }
+
+    /**
+     * @return	Cell size for a PNG image of a chart: CELL_SIZE, or smaller if needed
+     *			to keep the image within MAX_IMAGE_SIZE
+     */
+    private static int getCellSize(Chart chart, int chartWidth)
+    {
+        int largest = Math.max(Math.max(chartWidth, chart.getNumberOfRows()), 1);
+        int cellSize = Math.min(CELL_SIZE, MAX_IMAGE_SIZE / largest);
+        if (cellSize < 1)
+        {
+            throw new IllegalArgumentException("Chart is too large to write as an image");
+        }
+        return cellSize;
+    }
+
+    private static String escapeXml(String text)
+    {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class stores a fully written out knitting chart compactly: every stitch in the
+ * chart is stored as the ordinal of its Stitch enum type in a single byte array, row
+ * after row, with the index of the start of each row kept in a separate array.
+ * Rows may be of different lengths; no padding is stored.
+ *
+ * Compared to a Stitch[][] array, this uses one byte per stitch instead of one reference
+ * per stitch plus an array object per row.
+ *
+ */
+
+class ChartGrid implements Chart
+{
+    private static final Stitch[] STITCHES = Stitch.values(); // Cached once, since values() clones the array on every call
+    static final byte UNKNOWN = -1; // Stored in place of an ordinal for unrecognized abbreviations
+
+    private final byte[] cells; // Stitch ordinals, row after row
+    private final int[] rowOffsets; // rowOffsets[i] is the index in cells of the first stitch of row i; the last entry is the total number of stitches
+
+    /**
+     * Constructor - writes out every row of a chart
+     *
+     * @param	chart	Chart to copy
+     *
+     * @throws	IllegalArgumentException	Thrown if the chart has too many stitches to be written out
+     */
+    public ChartGrid (Instructions chart)
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.WRITE_GRID);
+        int numberOfRows = chart.getNumberOfRows();
+        rowOffsets = new int[numberOfRows + 1];
+        for (int i = 0; i < numberOfRows; i++)
+        {
+            rowOffsets[i+1] = rowOffsets[i] + chart.getRowWidth(i);
+            if (rowOffsets[i+1] < rowOffsets[i])
+            {
+                throw new IllegalArgumentException("Chart has too many stitches to be written out");
+            }
+        }
+
+        cells = new byte[rowOffsets[numberOfRows]];
+        for (int i = 0; i < numberOfRows; i++)
+        {
+            chart.getRow(i).copyTo(cells, rowOffsets[i]);
+        }
+        Metrics.stop(m, numberOfRows, cells.length);
+    }
+
+    /**
+     * Converts a stitch to the value stored for it in the cells array
+     */
+    static byte toOrdinal(Stitch stitch)
+    {
+        return stitch == null ? UNKNOWN : (byte) stitch.ordinal();
+    }
+
+    /**
+     * Converts a value stored in the cells array back to a stitch
+     */
+    static Stitch fromOrdinal(byte ordinal)
+    {
+        return ordinal == UNKNOWN ? null : STITCHES[ordinal];
+    }
+
+    public int getNumberOfRows()
+    {
+        return rowOffsets.length - 1;
+    }
+
+    public int getRowWidth(int row)
+    {
+        return rowOffsets[row+1] - rowOffsets[row];
+    }
+
+    public Stitch getStitch(int row, int column)
+    {
+        return fromOrdinal(getOrdinal(row, column));
+    }
+
+    /**
+     * @param	row		Index of a row in the chart
+     * @param	column	Index of a stitch within the row
+     *
+     * @return	Ordinal of the Stitch at the given position, or -1 if its abbreviation was not recognized
+     */
+    public byte getOrdinal(int row, int column)
+    {
+        if (column < 0 || column >= getRowWidth(row))
+        {
+            throw new IndexOutOfBoundsException("Stitch " + column + " is outside row " + row);
+        }
+        return cells[rowOffsets[row] + column];
+    }
+
+    /**
+     * Copies the ordinals of every stitch in a row into an array
+     *
+     * @param	row		Index of a row in the chart
+     * @param	dest	Array to copy to, at least as long as the row
+     */
+    public void getRow(int row, byte[] dest)
+    {
+        System.arraycopy(cells, rowOffsets[row], dest, 0, getRowWidth(row));
+    }
+
+    /**
+     * Copies the ordinals of every stitch in a row of any chart into an array, using
+     * the fastest way the chart provides
+     *
+     * @param	chart	Chart to copy from
+     * @param	row		Index of a row in the chart
+     * @param	dest	Array to copy to, at least as long as the row
+     */
+    static void copyRow(Chart chart, int row, byte[] dest)
+    {
+        if (chart instanceof ChartGrid)
+        {
+            ((ChartGrid) chart).getRow(row, dest);
+        }
+        else if (chart instanceof Instructions)
+        {
+            ((Instructions) chart).getRow(row).copyTo(dest, 0);
+        }
+        else if (chart instanceof PersistentChart)
+        {
+            ((PersistentChart) chart).getRow(row, dest);
+        }
+        else
+        {
+            for (int i = 0; i < chart.getRowWidth(row); i++)
+            {
+                dest[i] = toOrdinal(chart.getStitch(row, i));
+            }
+        }
+    }
+
+    /**
+     * @return	Total number of stitches in the chart
+     */
+    public int size()
+    {
+        return cells.length;
+    }
+}
\ No newline at end of file
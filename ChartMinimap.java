@@ -0,0 +1,192 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class shows the whole of the chart in a ChartView in miniature, with a rectangle
+ * around the part of it that is in view. Clicking or dragging on the minimap scrolls the
+ * chart view to that part of the chart.
+ *
+ * The miniature is drawn from the summary of the chart (see ChartSummary), one pixel per
+ * block, at the level of detail with the fewest blocks that still fill the minimap, so
+ * drawing it takes time in proportion to the size of the minimap rather than the chart.
+ *
+ */
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.beans.*;
+
+class ChartMinimap extends JComponent
+{
+    private static final int SIZE = 150; // Preferred width and height in pixels
+
+    private final ChartView view; // Chart view this is a minimap of
+    private BufferedImage image; // The chart in miniature, or null if it needs drawing again
+    private int imageLevel; // Level of detail of the miniature: each pixel is a block of 2^level x 2^level stitches
+    private Dimension imageSize; // Size of the minimap when the miniature was drawn
+    private Rectangle2D.Double chartArea; // Area of the minimap the chart is drawn in, or null if none
+
+    /**
+     * Constructor
+     *
+     * @param	view	Chart view to show a minimap of
+     */
+    public ChartMinimap (ChartView view)
+    {
+        this.view = view;
+        setPreferredSize(new Dimension(SIZE, SIZE));
+        setOpaque(true);
+        setBackground(Color.WHITE);
+
+        // Draw the miniature again when the chart or its summary changes
+        view.addPropertyChangeListener(
+            new PropertyChangeListener()
+            {
+                public void propertyChange(PropertyChangeEvent e) {
+                    if (e.getPropertyName().equals("chart") || e.getPropertyName().equals("summary"))
+                    {
+                        image = null;
+                        repaint();
+                    }
+                }
+            });
+
+        // Move the rectangle when the view is scrolled (which moves it within its viewport) or zoomed
+        view.addComponentListener(
+            new ComponentAdapter()
+            {
+                public void componentMoved(ComponentEvent e) {
+                    repaint();
+                }
+
+                public void componentResized(ComponentEvent e) {
+                    repaint();
+                }
+            });
+
+        // Clicking or dragging centers the view on the point under the mouse
+        MouseAdapter scroller = new MouseAdapter()
+        {
+            public void mousePressed(MouseEvent e) {
+                scrollTo(e.getPoint());
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                scrollTo(e.getPoint());
+            }
+        };
+        addMouseListener(scroller);
+        addMouseMotionListener(scroller);
+    }
+
+    protected void paintComponent(Graphics g)
+    {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        Chart chart = view.getChart();
+        if (chart == null || chart.getNumberOfRows() == 0 || view.getChartWidth() == 0)
+        {
+            chartArea = null;
+            return;
+        }
+        if (image == null || !getSize().equals(imageSize))
+        {
+            image = drawMiniature(chart);
+            imageSize = getSize();
+        }
+
+        // Scale the miniature to fit, keeping its proportions (each pixel is a square block)
+        Insets insets = getInsets();
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        double scale = Math.min((double) width / image.getWidth(), (double) height / image.getHeight());
+        double imageWidth = image.getWidth() * scale;
+        double imageHeight = image.getHeight() * scale;
+        chartArea = new Rectangle2D.Double(insets.left + (width - imageWidth) / 2, insets.top + (height - imageHeight) / 2,
+                imageWidth, imageHeight);
+        g.drawImage(image, (int) chartArea.x, (int) chartArea.y, (int) Math.round(imageWidth), (int) Math.round(imageHeight), null);
+
+        // Outline the part of the chart in view
+        double viewScale = getViewScale();
+        Rectangle visible = view.getVisibleRect();
+        g.setColor(Color.RED);
+        g.drawRect((int) (chartArea.x + visible.x / viewScale), (int) (chartArea.y + visible.y / viewScale),
+                (int) Math.max(visible.width / viewScale, 2), (int) Math.max(visible.height / viewScale, 2));
+    }
+
+    /**
+     * @return	Number of pixels of the chart view per pixel of the minimap
+     */
+    private double getViewScale()
+    {
+        return image.getWidth() * (1 << imageLevel) * view.getStitchSize() / chartArea.width;
+    }
+
+    /**
+     * Draws the chart one pixel per block, at the level of detail with the fewest blocks
+     * that still fill the minimap
+     */
+    private BufferedImage drawMiniature(Chart chart)
+    {
+        int chartWidth = view.getChartWidth();
+        int numberOfRows = chart.getNumberOfRows();
+        int level = 0;
+        while (ChartSummary.blocks(chartWidth, level) > Math.max(getWidth(), 1)
+                || ChartSummary.blocks(numberOfRows, level) > Math.max(getHeight(), 1))
+        {
+            level++;
+        }
+        imageLevel = level;
+
+        ChartSummary summary = view.getSummary();
+        int columns = ChartSummary.blocks(chartWidth, level);
+        int lines = ChartSummary.blocks(numberOfRows, level);
+        BufferedImage miniature = new BufferedImage(columns, lines, BufferedImage.TYPE_INT_RGB);
+        for (int line = 0; line < lines; line++)
+        {
+            for (int column = 0; column < columns; column++)
+            {
+                byte stitch;
+                if (summary != null && summary.getChart() == chart)
+                {
+                    stitch = summary.getBlock(level, line, column);
+                }
+                else
+                {
+                    stitch = ChartSummary.getCell(chart, chartWidth, line << level, column << level); // Until the summary is ready
+                }
+                Color color = Color.WHITE;
+                if (stitch == ChartGrid.UNKNOWN)
+                {
+                    color = Color.RED;
+                }
+                else if (stitch != ChartSummary.EMPTY)
+                {
+                    color = ChartGrid.fromOrdinal(stitch).getColor();
+                }
+                miniature.setRGB(column, line, color.getRGB());
+            }
+        }
+        return miniature;
+    }
+
+    /**
+     * Scrolls the chart view so that the point of the chart under a point of the minimap
+     * is in the middle of it
+     */
+    private void scrollTo(Point p)
+    {
+        if (chartArea == null || view.getChart() == null)
+        {
+            return;
+        }
+        double viewScale = getViewScale();
+        Rectangle visible = view.getVisibleRect();
+        view.setViewPosition(new Point((int) ((p.x - chartArea.x) * viewScale) - visible.width/2,
+                (int) ((p.y - chartArea.y) * viewScale) - visible.height/2));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,251 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class summarizes a knitting chart at lower levels of detail, for showing the
+ * chart zoomed out too far to draw individual stitches. Level 1 divides the chart into
+ * blocks of 2 x 2 cells, level 2 into blocks of 4 x 4 cells, and so on, until the whole
+ * chart is a single block. Each block records the main stitch in it: the stitch found
+ * in most of its cells at level 1, and the stitch found in most of its four sub-blocks
+ * at the levels above.
+ *
+ * Blocks are arranged as the chart is shown on screen (lines counting down from the top,
+ * see ChartView), and hold the same values as a ChartGrid: the ordinal of the Stitch,
+ * ChartGrid.UNKNOWN for an unrecognized abbreviation, or EMPTY if no row reaches the block.
+ *
+ * Building the summary reads every cell once, and each level is a quarter the size of the
+ * one below, so it takes time in proportion to the number of cells in the chart and
+ * about a third of a byte per cell. Once built, a summary is not changed; a summary
+ * for a new version of the chart with only a few rows changed is built by copying it
+ * and summarizing just those rows again.
+ *
+ */
+
+import java.util.*;
+
+class ChartSummary
+{
+    static final byte EMPTY = -2; // Stored for blocks that no row of the chart reaches
+
+    private final Chart chart;
+    private final int chartWidth; // Number of stitches in the longest row
+    private final byte[][] levels; // levels[k-1] holds the blocks of level k, line after line
+
+    /**
+     * Constructor - summarizes every row of a chart
+     *
+     * @param	chart		Chart to summarize
+     * @param	chartWidth	Number of stitches in the longest row of the chart
+     */
+    public ChartSummary (Chart chart, int chartWidth)
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.SUMMARIZE);
+        this.chart = chart;
+        this.chartWidth = chartWidth;
+
+        int numberOfLevels = levelsFor(chart.getNumberOfRows(), chartWidth);
+        levels = new byte[numberOfLevels][];
+        for (int level = 1; level <= numberOfLevels; level++)
+        {
+            levels[level-1] = new byte[blocks(chart.getNumberOfRows(), level) * blocks(chartWidth, level)];
+        }
+        summarize(0, chart.getNumberOfRows() - 1);
+        Metrics.stop(m, chart.getNumberOfRows(), (long) chart.getNumberOfRows() * chartWidth);
+    }
+
+    /**
+     * Constructor - summarizes a new version of a chart in which only some rows have changed
+     *
+     * @param	previous	Summary of the previous version of the chart, which must be the same size
+     * @param	chart		New version of the chart
+     * @param	firstLine	First line of cells that changed (counting down from the top)
+     * @param	lastLine	Last line of cells that changed
+     */
+    public ChartSummary (ChartSummary previous, Chart chart, int firstLine, int lastLine)
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.SUMMARIZE);
+        this.chart = chart;
+        this.chartWidth = previous.chartWidth;
+        levels = new byte[previous.levels.length][];
+        for (int i = 0; i < levels.length; i++)
+        {
+            levels[i] = previous.levels[i].clone();
+        }
+        summarize(Math.max(firstLine, 0), Math.min(lastLine, chart.getNumberOfRows() - 1));
+        Metrics.stop(m, lastLine - firstLine + 1, (long) (lastLine - firstLine + 1) * chartWidth);
+    }
+
+    /**
+     * @return	Number of levels needed above the cells of a chart for the highest to be a single block
+     */
+    static int levelsFor(int numberOfRows, int chartWidth)
+    {
+        int levels = 0;
+        while (blocks(numberOfRows, levels) > 1 || blocks(chartWidth, levels) > 1)
+        {
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * @return	Number of blocks needed to cover a number of cells at a level
+     */
+    static int blocks(int cells, int level)
+    {
+        return (int) (((long) cells + (1L << level) - 1) >> level);
+    }
+
+    /**
+     * Summarizes the blocks at every level that include some lines of cells
+     */
+    private void summarize(int firstLine, int lastLine)
+    {
+        if (levels.length == 0 || firstLine > lastLine)
+        {
+            return;
+        }
+
+        // Level 1, from the cells, two lines at a time
+        byte[] upper = new byte[chartWidth + 1];
+        byte[] lower = new byte[chartWidth + 1];
+        int columns = blocks(chartWidth, 1);
+        for (int blockLine = firstLine >> 1; blockLine <= lastLine >> 1; blockLine++)
+        {
+            readLine(2*blockLine, upper);
+            readLine(2*blockLine + 1, lower);
+            int offset = blockLine * columns;
+            for (int column = 0; column < columns; column++)
+            {
+                levels[0][offset + column] = mainStitch(upper[2*column], upper[2*column + 1],
+                        lower[2*column], lower[2*column + 1]);
+            }
+        }
+
+        // Each level above, from the one below
+        for (int level = 2; level <= levels.length; level++)
+        {
+            byte[] below = levels[level-2];
+            byte[] blocks = levels[level-1];
+            int belowLines = blocks(chart.getNumberOfRows(), level - 1);
+            int belowColumns = blocks(chartWidth, level - 1);
+            columns = blocks(chartWidth, level);
+            for (int blockLine = firstLine >> level; blockLine <= lastLine >> level; blockLine++)
+            {
+                int top = 2*blockLine * belowColumns;
+                int bottom = (2*blockLine + 1 < belowLines) ? top + belowColumns : -1;
+                for (int column = 0; column < columns; column++)
+                {
+                    int left = 2*column;
+                    boolean hasRight = left + 1 < belowColumns;
+                    blocks[blockLine*columns + column] = mainStitch(
+                            below[top + left],
+                            hasRight ? below[top + left + 1] : EMPTY,
+                            bottom >= 0 ? below[bottom + left] : EMPTY,
+                            bottom >= 0 && hasRight ? below[bottom + left + 1] : EMPTY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the stitches shown on one line of cells into an array, in the order they
+     * are shown from left to right, with EMPTY for cells the row does not reach
+     * (and for the whole line, if it is below the last line)
+     */
+    private void readLine(int line, byte[] dest)
+    {
+        Arrays.fill(dest, EMPTY);
+        if (line >= chart.getNumberOfRows())
+        {
+            return;
+        }
+        int row = ChartView.toRow(chart, line);
+        int width = chart.getRowWidth(row);
+        byte[] stitches = new byte[width];
+        ChartGrid.copyRow(chart, row, stitches);
+
+        // Even-numbered rows are shown right to left (see ChartView.toStitchIndex)
+        for (int i = 0; i < width; i++)
+        {
+            dest[(row%2 == 0) ? chartWidth - 1 - i : i] = stitches[i];
+        }
+    }
+
+    /**
+     * @return	Whichever of four values occurs most often, ignoring EMPTY ones
+     *			(the first of them, if there is a tie), or EMPTY if they all are
+     */
+    private static byte mainStitch(byte a, byte b, byte c, byte d)
+    {
+        byte main = EMPTY;
+        int mainCount = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            byte candidate = (i == 0) ? a : (i == 1) ? b : (i == 2) ? c : d;
+            if (candidate == EMPTY)
+            {
+                continue;
+            }
+            int count = (candidate == a ? 1 : 0) + (candidate == b ? 1 : 0) + (candidate == c ? 1 : 0) + (candidate == d ? 1 : 0);
+            if (count > mainCount)
+            {
+                main = candidate;
+                mainCount = count;
+            }
+        }
+        return main;
+    }
+
+    /**
+     * @return	Number of levels above the cells, the highest being a single block
+     */
+    public int getNumberOfLevels()
+    {
+        return levels.length;
+    }
+
+    /**
+     * @return	Chart that this is a summary of
+     */
+    public Chart getChart()
+    {
+        return chart;
+    }
+
+    /**
+     * @param	level		Level of detail (0 for single cells)
+     * @param	blockLine	Line of blocks (counting down from the top)
+     * @param	blockColumn	Column of blocks (counting from the left)
+     *
+     * @return	Stitch ordinal, ChartGrid.UNKNOWN, or EMPTY for the main stitch in the block
+     */
+    public byte getBlock(int level, int blockLine, int blockColumn)
+    {
+        if (level == 0)
+        {
+            return getCell(chart, chartWidth, blockLine, blockColumn);
+        }
+        return levels[level-1][blockLine * blocks(chartWidth, level) + blockColumn];
+    }
+
+    /**
+     * Looks up the stitch shown in one cell of a chart
+     *
+     * @return	Stitch ordinal, ChartGrid.UNKNOWN, or EMPTY if the row does not reach the cell
+     */
+    static byte getCell(Chart chart, int chartWidth, int line, int column)
+    {
+        if (line >= chart.getNumberOfRows() || column >= chartWidth)
+        {
+            return EMPTY;
+        }
+        int row = ChartView.toRow(chart, line);
+        int stitchIndex = ChartView.toStitchIndex(chart, chartWidth, row, column);
+        if (stitchIndex < 0)
+        {
+            return EMPTY;
+        }
+        return ChartGrid.toOrdinal(chart.getStitch(row, stitchIndex));
+    }
+}
\ No newline at end of file
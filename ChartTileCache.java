@@ -0,0 +1,450 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class keeps the chart shown by a ChartView painted into fixed-size offscreen
+ * images ("tiles"), so that scrolling only has to copy images to the screen instead of
+ * drawing the border and symbol of every visible cell again. Tiles are kept separately
+ * for each zoom level (cell size and level of detail), so switching back to a zoom level
+ * finds its tiles still there.
+ *
+ * Tiles are painted on a background thread. Until a tile is ready, its area is painted
+ * directly, as before, and it is repainted from the tile once the tile has been built.
+ * Requests for tiles that have been scrolled out of view are cancelled before they start.
+ *
+ * The tiles are kept in a least-recently-used cache limited to MAX_BYTES, and all of
+ * its methods are called on the event dispatch thread. When rows of the chart change,
+ * only the tiles showing those rows are thrown away.
+ *
+ */
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class ChartTileCache
+{
+    static final int TILE_SIZE = 256; // Width and height of each tile in pixels (before any scaling for the screen)
+    private static final long MAX_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 8, 128L << 20); // Memory the tiles may use, assuming 4 bytes per pixel
+
+    // One thread builds tiles for every view, at low priority so it doesn't hold up typing
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(
+        new ThreadFactory()
+        {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Chart tile builder");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+
+    private final JComponent view; // Component the tiles are painted on
+    private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<TileKey, BufferedImage>(64, 0.75f, true); // Built tiles, least recently used first
+    private final HashMap<TileKey, Future<?>> pending = new HashMap<TileKey, Future<?>>(); // Tiles waiting to be built, or being built
+    private long bytes; // Memory used by the tiles in the cache
+
+    private Chart chart; // Chart being displayed, or null if none
+    private int chartWidth; // Number of stitches in the longest row
+    private ChartSummary summary; // Summary of the chart, or null until it has been built
+
+    /**
+     * Identifies a tile by the cell size, level of detail, and screen scale it is painted at,
+     * and its position in the grid of tiles (counting from the top left corner of the chart)
+     */
+    private static class TileKey
+    {
+        final int cellSize;
+        final int level;
+        final double scale;
+        final int column;
+        final int line;
+
+        TileKey (int cellSize, int level, double scale, int column, int line)
+        {
+            this.cellSize = cellSize;
+            this.level = level;
+            this.scale = scale;
+            this.column = column;
+            this.line = line;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof TileKey))
+            {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return cellSize == other.cellSize && level == other.level && scale == other.scale
+                    && column == other.column && line == other.line;
+        }
+
+        public int hashCode()
+        {
+            return (((cellSize*31 + level)*31 + Double.valueOf(scale).hashCode())*31 + column)*31 + line;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param	view	Component the tiles are painted on, repainted when a tile is ready
+     */
+    public ChartTileCache (JComponent view)
+    {
+        this.view = view;
+    }
+
+    /**
+     * Throws away every tile, for a new chart
+     *
+     * @param	chart		Chart to display, or null if none
+     * @param	chartWidth	Number of stitches in the longest row of the chart
+     */
+    public void setChart(Chart chart, int chartWidth)
+    {
+        this.chart = chart;
+        this.chartWidth = chartWidth;
+        this.summary = null;
+        for (Future<?> request : pending.values())
+        {
+            request.cancel(false);
+        }
+        pending.clear();
+        tiles.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Throws away the tiles showing some lines of cells, for a new version of the chart
+     * that is the same size as before and differs only in the rows on those lines
+     *
+     * @param	chart		New version of the chart
+     * @param	summary		Summary of the new version of the chart, or null if it has not been built
+     * @param	firstLine	First line of cells that changed (counting down from the top)
+     * @param	lastLine	Last line of cells that changed (less than firstLine if none did)
+     */
+    public void updateChart(Chart chart, ChartSummary summary, int firstLine, int lastLine)
+    {
+        this.chart = chart;
+        this.summary = summary;
+
+        Iterator<Map.Entry<TileKey, BufferedImage>> i = tiles.entrySet().iterator();
+        while (i.hasNext())
+        {
+            Map.Entry<TileKey, BufferedImage> entry = i.next();
+            if (showsLines(entry.getKey(), firstLine, lastLine))
+            {
+                bytes -= imageBytes(entry.getValue());
+                i.remove();
+            }
+        }
+
+        // Tiles still being built for other lines are unaffected, since those rows are the same
+        Iterator<Map.Entry<TileKey, Future<?>>> j = pending.entrySet().iterator();
+        while (j.hasNext())
+        {
+            Map.Entry<TileKey, Future<?>> entry = j.next();
+            if (showsLines(entry.getKey(), firstLine, lastLine))
+            {
+                entry.getValue().cancel(false);
+                j.remove();
+            }
+        }
+    }
+
+    /**
+     * Throws away the tiles that show blocks of stitches, which were painted before the
+     * summary of the chart was ready
+     *
+     * @param	summary		Summary of the chart
+     */
+    public void setSummary(ChartSummary summary)
+    {
+        this.summary = summary;
+
+        Iterator<Map.Entry<TileKey, BufferedImage>> i = tiles.entrySet().iterator();
+        while (i.hasNext())
+        {
+            Map.Entry<TileKey, BufferedImage> entry = i.next();
+            if (entry.getKey().level > 0)
+            {
+                bytes -= imageBytes(entry.getValue());
+                i.remove();
+            }
+        }
+        Iterator<Map.Entry<TileKey, Future<?>>> j = pending.entrySet().iterator();
+        while (j.hasNext())
+        {
+            Map.Entry<TileKey, Future<?>> entry = j.next();
+            if (entry.getKey().level > 0)
+            {
+                entry.getValue().cancel(false);
+                j.remove();
+            }
+        }
+    }
+
+    /**
+     * @return	True if a tile shows any part of the given lines of cells
+     *			(including the border along the bottom of the last line)
+     */
+    private static boolean showsLines(TileKey key, int firstLine, int lastLine)
+    {
+        if (firstLine > lastLine)
+        {
+            return false;
+        }
+        long top = (long) (firstLine >> key.level) * key.cellSize;
+        long bottom = ((long) (lastLine >> key.level) + 1) * key.cellSize; // Last pixel, inclusive
+        long tileTop = (long) key.line * TILE_SIZE;
+        return top < tileTop + TILE_SIZE && bottom >= tileTop;
+    }
+
+    /**
+     * Paints part of the chart, from the tiles where they have been built and directly
+     * where they haven't (requesting that they be built)
+     *
+     * @param	g			Graphics to paint with
+     * @param	cellSize	Width and height of each cell in pixels
+     * @param	level		Level of detail: each cell shows a block of 2^level x 2^level stitches
+     * @param	area		Area to paint, in pixels from the top left corner of the chart
+     */
+    public void paint(Graphics2D g, int cellSize, int level, Rectangle area)
+    {
+        if (chart == null)
+        {
+            return;
+        }
+
+        // Tiles are painted at the resolution of the screen, so they stay sharp on high
+        // resolution screens; anything other than plain scaling is painted directly
+        AffineTransform transform = g.getTransform();
+        double scale = transform.getScaleX();
+        if (scale <= 0 || scale != transform.getScaleY() || transform.getShearX() != 0 || transform.getShearY() != 0)
+        {
+            ChartView.paintChart(g, chart, summary, chartWidth, cellSize, level, area);
+            return;
+        }
+
+        Rectangle bounds = new Rectangle(0, 0, ChartSummary.blocks(chartWidth, level)*cellSize + 1,
+                ChartSummary.blocks(chart.getNumberOfRows(), level)*cellSize + 1);
+        Rectangle visible = view.getVisibleRect().intersection(bounds);
+        cancelRequests(cellSize, level, scale, tilesIn(visible, 1));
+
+        Rectangle range = tilesIn(area.intersection(bounds), 0);
+        for (int line = range.y; line < range.y + range.height; line++)
+        {
+            for (int column = range.x; column < range.x + range.width; column++)
+            {
+                TileKey key = new TileKey(cellSize, level, scale, column, line);
+                BufferedImage tile = tiles.get(key);
+                Rectangle tileArea = new Rectangle(column*TILE_SIZE, line*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                if (tile != null)
+                {
+                    g.drawImage(tile, tileArea.x, tileArea.y, TILE_SIZE, TILE_SIZE, null);
+                }
+                else
+                {
+                    Graphics2D tileGraphics = (Graphics2D) g.create();
+                    try
+                    {
+                        Rectangle paintArea = tileArea.intersection(area);
+                        tileGraphics.clip(paintArea);
+                        ChartView.paintChart(tileGraphics, chart, summary, chartWidth, cellSize, level, paintArea);
+                    }
+                    finally
+                    {
+                        tileGraphics.dispose();
+                    }
+                    request(key);
+                }
+            }
+        }
+
+        // Build the tiles just outside the view next, ready for scrolling
+        Rectangle nearby = tilesIn(visible, 1).intersection(tilesIn(bounds, 0));
+        for (int line = nearby.y; line < nearby.y + nearby.height; line++)
+        {
+            for (int column = nearby.x; column < nearby.x + nearby.width; column++)
+            {
+                TileKey key = new TileKey(cellSize, level, scale, column, line);
+                if (!tiles.containsKey(key))
+                {
+                    request(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param	area	Area in pixels from the top left corner of the chart
+     * @param	margin	Number of extra tiles to include on each side
+     *
+     * @return	Columns (x, width) and lines (y, height) of the tiles covering the area
+     */
+    private static Rectangle tilesIn(Rectangle area, int margin)
+    {
+        if (area.isEmpty())
+        {
+            return new Rectangle();
+        }
+        int firstColumn = area.x / TILE_SIZE - margin;
+        int firstLine = area.y / TILE_SIZE - margin;
+        int lastColumn = (area.x + area.width - 1) / TILE_SIZE + margin;
+        int lastLine = (area.y + area.height - 1) / TILE_SIZE + margin;
+        return new Rectangle(firstColumn, firstLine, lastColumn - firstColumn + 1, lastLine - firstLine + 1);
+    }
+
+    /**
+     * Cancels the requests for tiles that are no longer needed soon: those for another
+     * zoom level or scale, or outside a range of tiles
+     */
+    private void cancelRequests(int cellSize, int level, double scale, Rectangle range)
+    {
+        Iterator<Map.Entry<TileKey, Future<?>>> i = pending.entrySet().iterator();
+        while (i.hasNext())
+        {
+            Map.Entry<TileKey, Future<?>> entry = i.next();
+            TileKey key = entry.getKey();
+            if (key.cellSize != cellSize || key.level != level || key.scale != scale || !range.contains(key.column, key.line))
+            {
+                entry.getValue().cancel(false);
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Asks for a tile to be built in the background, unless it has been already
+     */
+    private void request(TileKey key)
+    {
+        if (!pending.containsKey(key))
+        {
+            TileRequest request = new TileRequest(key, chart, summary, chartWidth, view.getGraphicsConfiguration());
+            pending.put(key, request);
+            builder.execute(request);
+        }
+    }
+
+    /**
+     * A tile being built in the background, which is handed back to the event dispatch
+     * thread when it is ready
+     */
+    private class TileRequest extends FutureTask<BufferedImage>
+    {
+        private final TileKey key;
+
+        TileRequest (final TileKey key, final Chart chart, final ChartSummary summary, final int chartWidth,
+                final GraphicsConfiguration config)
+        {
+            super(new Callable<BufferedImage>()
+                {
+                    public BufferedImage call() {
+                        return build(key, chart, summary, chartWidth, config);
+                    }
+                });
+            this.key = key;
+        }
+
+        protected void done()
+        {
+            if (!isCancelled())
+            {
+                SwingUtilities.invokeLater(
+                    new Runnable()
+                    {
+                        public void run() {
+                            finished(TileRequest.this);
+                        }
+                    });
+            }
+        }
+    }
+
+    /**
+     * Paints one tile
+     *
+     * @param	key			Tile to paint
+     * @param	chart		Chart to paint from
+     * @param	summary		Summary of the chart, or null if it has not been built
+     * @param	chartWidth	Number of stitches in the longest row of the chart
+     * @param	config		Screen the tile will be shown on, or null if not known
+     *
+     * @return	Image of the tile, with TILE_SIZE * scale pixels on each side
+     */
+    private static BufferedImage build(TileKey key, Chart chart, ChartSummary summary, int chartWidth, GraphicsConfiguration config)
+    {
+        int size = (int) Math.ceil(TILE_SIZE * key.scale);
+        BufferedImage tile = (config != null)
+                ? config.createCompatibleImage(size, size, Transparency.OPAQUE)
+                : new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Rectangle area = new Rectangle(key.column*TILE_SIZE, key.line*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+
+        Graphics2D g = tile.createGraphics();
+        try
+        {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, size, size);
+            g.scale(key.scale, key.scale);
+            g.translate(-area.x, -area.y);
+            ChartView.paintChart(g, chart, summary, chartWidth, key.cellSize, key.level, area);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return tile;
+    }
+
+    /**
+     * Adds a tile to the cache once it has been built, and shows it, unless it has been
+     * thrown away or cancelled in the meantime
+     */
+    private void finished(TileRequest request)
+    {
+        TileKey key = request.key;
+        if (pending.get(key) != request)
+        {
+            return; // Thrown away since, or requested again for a newer version of the chart
+        }
+        pending.remove(key);
+
+        BufferedImage tile;
+        try
+        {
+            tile = request.get();
+        }
+        catch (Exception e)
+        {
+            return; // Left to be painted directly
+        }
+
+        BufferedImage previous = tiles.put(key, tile);
+        if (previous != null)
+        {
+            bytes -= imageBytes(previous);
+        }
+        bytes += imageBytes(tile);
+
+        // Throw away the least recently used tiles until the cache fits in its memory
+        Iterator<BufferedImage> i = tiles.values().iterator();
+        while (bytes > MAX_BYTES && tiles.size() > 1)
+        {
+            bytes -= imageBytes(i.next());
+            i.remove();
+        }
+
+        view.repaint(key.column*TILE_SIZE, key.line*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+    }
+
+    private static long imageBytes(BufferedImage image)
+    {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}
@@ -0,0 +1,836 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class displays a knitting chart by painting the grid and stitch symbols directly,
+ * rather than creating a component for each stitch. Only the cells inside the area being
+ * repainted are drawn, so it is meant to be placed in a JScrollPane, and the time taken to
+ * paint depends on the size of the window rather than the size of the chart. The cells are
+ * painted into offscreen tiles in the background (see ChartTileCache), so that scrolling
+ * copies the tiles to the screen instead of painting the cells again.
+ *
+ * Knitting charts are read from the bottom up, so the last row of the instructions is
+ * shown at the top. Rows are read right to left, then left to right, alternating rows,
+ * so the stitches of even-numbered rows (counting from zero) are shown right to left.
+ *
+ * The chart can be zoomed (with the mouse wheel while holding Control, or zoomIn() and
+ * zoomOut()) and panned by dragging it. Zoomed out too far to draw symbols, each cell is
+ * filled with the color of its stitch, and further out still, each cell on screen shows
+ * a block of stitches, filled with the color of the main stitch in the block, taken from
+ * a summary of the chart built in the background (see ChartSummary).
+ *
+ * The name of the stitch under the mouse is shown as a tooltip for quick reference, and
+ * the stitch at a point can be looked up (see getRowAt()), for editing the chart by
+ * clicking on it (see ChartEditor).
+ *
+ * The rows and stitches that differ from another version of the chart can be highlighted
+ * over the chart (see setDifferences() and PatternDiff), without painting the cells again.
+ *
+ */
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.util.concurrent.*;
+
+class ChartView extends JComponent implements Scrollable
+{
+    private static final int DEFAULT_CELL_SIZE = 20; // Width and height of each cell in pixels
+    private static final int[] CELL_SIZES = { 60, 40, 30, 24, 20, 16, 12, 10, 8, 6, 4 }; // Cell sizes of the zoom levels showing single stitches, largest first
+    private static final int MIN_SYMBOL_SIZE = 8; // Cells smaller than this are filled with the color of their stitch instead of drawing its symbol
+    private static final int BLOCK_SIZE = 4; // Width and height in pixels of the cells on screen when each shows a block of stitches
+    private static final Color CHANGED_ROW_COLOR = new Color(255, 200, 0, 60); // Colors of the differences from another version of the chart (see setDifferences())
+    private static final Color CHANGED_STITCH_COLOR = new Color(255, 120, 0, 130);
+    private static final Color ADDED_ROW_COLOR = new Color(0, 190, 0, 70);
+    private static final Color REMOVED_ROWS_COLOR = new Color(220, 0, 0);
+
+    private Chart chart; // Chart being displayed, or null if none
+    private int chartWidth; // Number of stitches in the longest row
+    private int zoom; // Index of the zoom level: one of the CELL_SIZES, or beyond them, a level of the summary
+    private int cellSize = DEFAULT_CELL_SIZE; // Width and height of each cell on screen in pixels
+    private int level; // Each cell on screen shows a block of 2^level x 2^level stitches (see ChartSummary)
+    private ChartSummary summary; // Summary of the chart, or null until it has been built
+    private SwingWorker<ChartSummary, Void> summaryWorker; // Builds the summary in the background, or null if not running
+    private boolean summaryStale; // True if the chart has changed since the running summaryWorker started
+    private final ChartTileCache tiles = new ChartTileCache(this);
+    private Point dragPoint; // Position of the mouse on the screen while the chart is being dragged, otherwise null
+    private PatternDiff differences; // Differences from another version of the chart to highlight, or null if none
+
+    /**
+     * Constructor - creates an empty chart view
+     */
+    public ChartView ()
+    {
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        // Register with the tooltip manager; tooltip text is looked up from the mouse position
+        ToolTipManager.sharedInstance().registerComponent(this);
+
+        for (int i = 0; i < CELL_SIZES.length; i++)
+        {
+            if (CELL_SIZES[i] == DEFAULT_CELL_SIZE)
+            {
+                zoom = i;
+            }
+        }
+
+        // Control + mouse wheel zooms in and out around the mouse; otherwise the wheel scrolls
+        addMouseWheelListener(
+            new MouseWheelListener()
+            {
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    if (e.isControlDown() || e.isMetaDown())
+                    {
+                        if (e.getPreciseWheelRotation() != 0)
+                        {
+                            setZoom(zoom + (e.getPreciseWheelRotation() > 0 ? 1 : -1), e.getPoint());
+                        }
+                    }
+                    else
+                    {
+                        Container scrollPane = SwingUtilities.getAncestorOfClass(JScrollPane.class, ChartView.this);
+                        if (scrollPane != null)
+                        {
+                            scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(ChartView.this, e, scrollPane));
+                        }
+                    }
+                }
+            });
+
+        // Dragging the chart pans it
+        MouseAdapter panner = new MouseAdapter()
+        {
+            public void mousePressed(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e))
+                {
+                    dragPoint = e.getLocationOnScreen();
+                }
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                if (dragPoint != null && getParent() instanceof JViewport)
+                {
+                    setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+                    Point p = e.getLocationOnScreen();
+                    Point position = ((JViewport) getParent()).getViewPosition();
+                    position.translate(dragPoint.x - p.x, dragPoint.y - p.y);
+                    setViewPosition(position);
+                    dragPoint = p;
+                }
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                dragPoint = null;
+                setCursor(null);
+            }
+        };
+        addMouseListener(panner);
+        addMouseMotionListener(panner);
+    }
+
+    /**
+     * Displays a new chart
+     *
+     * @param	chart	Chart to display, or null to clear the view
+     */
+    public void setChart(Chart chart)
+    {
+        Chart previous = this.chart;
+        this.chart = chart;
+        differences = null;
+        setChartWidth(chart);
+        summary = null;
+        startSummary();
+        tiles.setChart(chart, chartWidth);
+        setZoom(zoom, null); // Within the levels there are for the new chart
+        revalidate();
+        repaint();
+        firePropertyChange("chart", previous, chart);
+    }
+
+    /**
+     * Displays a new version of the chart in which only some rows have changed.
+     * If the chart is the same size as before, only those rows are repainted.
+     *
+     * @param	chart		Chart to display (which may be the chart already displayed, changed in place)
+     * @param	firstRow	Index of the first row that changed
+     * @param	lastRow		Index of the last row that changed
+     */
+    public void updateChart(Chart chart, int firstRow, int lastRow)
+    {
+        Chart previous = this.chart;
+        int previousRows = previous == null ? -1 : previous.getNumberOfRows();
+        int previousWidth = chartWidth;
+        setChartWidth(chart);
+        this.chart = chart;
+
+        if (chart.getNumberOfRows() != previousRows || chartWidth != previousWidth)
+        {
+            if (chart.getNumberOfRows() != previousRows)
+            {
+                differences = null; // The rows they were found for have moved
+            }
+            summary = null;
+            startSummary();
+            tiles.setChart(chart, chartWidth);
+            setZoom(zoom, null);
+            revalidate();
+            repaint();
+        }
+        else if (firstRow <= lastRow)
+        {
+            // Rows are shown bottom up, so the last changed row is the highest on screen
+            int topLine = toRow(chart, Math.min(lastRow, previousRows - 1));
+            int bottomLine = toRow(chart, Math.max(firstRow, 0));
+            if (summary != null)
+            {
+                summary = new ChartSummary(summary, chart, topLine, bottomLine);
+            }
+            else
+            {
+                summaryStale = true;
+            }
+            tiles.updateChart(chart, summary, topLine, bottomLine);
+            int top = (topLine >> level) * cellSize;
+            int bottom = ((bottomLine >> level) + 1) * cellSize;
+            repaint(0, top, getPreferredSize().width, bottom - top + 1);
+        }
+        else
+        {
+            tiles.updateChart(chart, summary, 0, -1);
+        }
+        firePropertyChange("chart", (previous == chart) ? null : previous, chart); // Reported even if changed in place
+    }
+
+    /**
+     * Starts building a summary of the chart in the background, for showing it zoomed out
+     */
+    private void startSummary()
+    {
+        if (summaryWorker != null)
+        {
+            summaryWorker.cancel(false);
+            summaryWorker = null;
+        }
+        summaryStale = false;
+        if (chart == null)
+        {
+            return;
+        }
+
+        final Chart summarized = chart;
+        final int summarizedWidth = chartWidth;
+        summaryWorker = new SwingWorker<ChartSummary, Void>()
+        {
+            protected ChartSummary doInBackground()
+            {
+                return new ChartSummary(summarized, summarizedWidth);
+            }
+
+            protected void done()
+            {
+                if (isCancelled() || summaryWorker != this)
+                {
+                    return;
+                }
+                summaryWorker = null;
+                if (summaryStale)
+                {
+                    startSummary(); // The chart was edited while this was being built
+                    return;
+                }
+                try
+                {
+                    setSummary(get());
+                }
+                catch (InterruptedException e)
+                {
+                    // Not reached: get() does not block once the worker is done
+                }
+                catch (ExecutionException e)
+                {
+                    // Left without a summary; blocks are shown by sampling the chart instead
+                }
+            }
+        };
+        summaryWorker.execute();
+    }
+
+    private void setSummary(ChartSummary summary)
+    {
+        ChartSummary previous = this.summary;
+        this.summary = summary;
+        tiles.setSummary(summary);
+        if (level > 0)
+        {
+            repaint();
+        }
+        firePropertyChange("summary", previous, summary);
+    }
+
+    /**
+     * Sets chartWidth to the number of stitches in the longest row of a chart
+     */
+    private void setChartWidth(Chart chart)
+    {
+        chartWidth = 0;
+        if (chart != null)
+        {
+            for (int i = 0; i < chart.getNumberOfRows(); i++)
+            {
+                chartWidth = Math.max(chartWidth, chart.getRowWidth(i));
+            }
+        }
+    }
+
+    public Chart getChart()
+    {
+        return chart;
+    }
+
+    /**
+     * Highlights the rows and stitches of the chart that differ from another version of it:
+     * changed rows are tinted yellow with their changed stitches in orange, added rows are
+     * tinted green, and a red line is drawn where rows were removed. The highlights are
+     * removed when another chart is displayed, or rows are added to or removed from this one.
+     *
+     * @param	differences		Differences from the other version to this chart (see PatternDiff),
+     *							or null to remove the highlights
+     */
+    public void setDifferences(PatternDiff differences)
+    {
+        this.differences = differences;
+        repaint();
+    }
+
+    /**
+     * @return	Differences being highlighted, or null if none
+     */
+    public PatternDiff getDifferences()
+    {
+        return differences;
+    }
+
+    /**
+     * @return	Number of stitches in the longest row of the chart
+     */
+    public int getChartWidth()
+    {
+        return chartWidth;
+    }
+
+    /**
+     * @return	Summary of the chart, or null if it has not been built yet
+     */
+    public ChartSummary getSummary()
+    {
+        return summary;
+    }
+
+    /**
+     * @return	Width (and height) of a stitch on screen in pixels, which is less than one
+     *			when zoomed out far enough that each cell on screen shows a block of stitches
+     */
+    public double getStitchSize()
+    {
+        return (double) cellSize / (1 << level);
+    }
+
+    /**
+     * @return	Size the chart is shown at, as a percentage of its size before it is zoomed
+     */
+    public double getZoomPercent()
+    {
+        return getStitchSize() * 100 / DEFAULT_CELL_SIZE;
+    }
+
+    public int getZoom()
+    {
+        return zoom;
+    }
+
+    /**
+     * @return	Index of the furthest zoomed out level, at which the whole chart is a single block
+     */
+    public int getMaxZoom()
+    {
+        int levels = (chart == null) ? 0 : ChartSummary.levelsFor(chart.getNumberOfRows(), chartWidth);
+        return CELL_SIZES.length - 1 + levels;
+    }
+
+    public void zoomIn()
+    {
+        setZoom(zoom - 1, null);
+    }
+
+    public void zoomOut()
+    {
+        setZoom(zoom + 1, null);
+    }
+
+    /**
+     * Zooms in as far as possible while still showing the whole chart
+     */
+    public void zoomToFit()
+    {
+        if (chart == null || !(getParent() instanceof JViewport))
+        {
+            return;
+        }
+        Dimension extent = ((JViewport) getParent()).getExtentSize();
+        int fit = 0;
+        while (fit < getMaxZoom() && (getPreferredSize(fit).width > extent.width || getPreferredSize(fit).height > extent.height))
+        {
+            fit++;
+        }
+        setZoom(fit, null);
+    }
+
+    /**
+     * Changes the zoom level, keeping the stitch at a point in the same place on screen
+     *
+     * @param	newZoom		Index of the zoom level (kept between 0 and getMaxZoom())
+     * @param	anchor		Point to keep in place, or null for the middle of the visible area
+     */
+    public void setZoom(int newZoom, Point anchor)
+    {
+        newZoom = Math.max(0, Math.min(newZoom, getMaxZoom()));
+        if (newZoom == zoom)
+        {
+            return;
+        }
+
+        // Work out where the stitch at the anchor will be at the new zoom level
+        Rectangle visible = getVisibleRect();
+        if (anchor == null)
+        {
+            anchor = new Point(visible.x + visible.width/2, visible.y + visible.height/2);
+        }
+        double stitchX = anchor.x / getStitchSize();
+        double stitchY = anchor.y / getStitchSize();
+
+        int previous = zoom;
+        zoom = newZoom;
+        cellSize = (zoom < CELL_SIZES.length) ? CELL_SIZES[zoom] : BLOCK_SIZE;
+        level = Math.max(zoom - CELL_SIZES.length + 1, 0);
+
+        setSize(getPreferredSize());
+        revalidate();
+        setViewPosition(new Point((int) Math.round(stitchX * getStitchSize()) - (anchor.x - visible.x),
+                (int) Math.round(stitchY * getStitchSize()) - (anchor.y - visible.y)));
+        repaint();
+        firePropertyChange("zoom", previous, zoom);
+    }
+
+    /**
+     * Scrolls the chart so that a point of it is at the top left corner of the visible
+     * area, as near as possible without going past the edges of the chart
+     *
+     * @param	position	Point in pixels from the top left corner of the chart
+     */
+    void setViewPosition(Point position)
+    {
+        if (getParent() instanceof JViewport)
+        {
+            JViewport viewport = (JViewport) getParent();
+            Dimension extent = viewport.getExtentSize();
+            Dimension size = getSize();
+            position.x = Math.max(0, Math.min(position.x, size.width - extent.width));
+            position.y = Math.max(0, Math.min(position.y, size.height - extent.height));
+            viewport.setViewPosition(position);
+        }
+    }
+
+    public Dimension getPreferredSize()
+    {
+        return getPreferredSize(zoom);
+    }
+
+    /**
+     * @return	Size of the chart in pixels at a zoom level
+     */
+    private Dimension getPreferredSize(int zoom)
+    {
+        if (chart == null)
+        {
+            return new Dimension(0, 0);
+        }
+        int size = (zoom < CELL_SIZES.length) ? CELL_SIZES[zoom] : BLOCK_SIZE;
+        int level = Math.max(zoom - CELL_SIZES.length + 1, 0);
+        return new Dimension(ChartSummary.blocks(chartWidth, level)*size + 1,
+                ChartSummary.blocks(chart.getNumberOfRows(), level)*size + 1);
+    }
+
+    protected void paintComponent(Graphics g)
+    {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+        {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        tiles.paint((Graphics2D) g, cellSize, level, clip);
+        if (differences != null)
+        {
+            paintDifferences((Graphics2D) g, clip);
+        }
+    }
+
+    /**
+     * Highlights the differences from another version of the chart (see setDifferences())
+     * over the cells painted inside an area. When each cell on screen shows a block of
+     * stitches, every line of blocks holding a row that changed is highlighted.
+     */
+    private void paintDifferences(Graphics2D g, Rectangle clip)
+    {
+        int numberOfRows = chart.getNumberOfRows();
+        int lines = ChartSummary.blocks(numberOfRows, level);
+        int width = ChartSummary.blocks(chartWidth, level) * cellSize;
+        int firstLine = Math.max(clip.y / cellSize, 0);
+        int lastLine = Math.min((clip.y + clip.height) / cellSize, lines - 1);
+        int firstColumn = Math.max(clip.x / cellSize, 0);
+        int lastColumn = Math.min((clip.x + clip.width) / cellSize, chartWidth - 1);
+
+        for (int line = firstLine; line <= lastLine; line++)
+        {
+            // The rows shown on the line, found among the rows that changed by a binary search
+            int topRow = toRow(chart, line << level);
+            int bottomRow = Math.max(toRow(chart, ((line + 1) << level) - 1), 0);
+            int row = differences.nextDifference(bottomRow);
+            if (row < 0 || row > topRow)
+            {
+                continue;
+            }
+            int y = line * cellSize;
+            if (level > 0)
+            {
+                g.setColor(CHANGED_STITCH_COLOR);
+                g.fillRect(0, y, width, cellSize);
+                continue;
+            }
+            if (differences.getRowStatus(row) == PatternDiff.ADDED)
+            {
+                g.setColor(ADDED_ROW_COLOR);
+                g.fillRect(0, y, width, cellSize);
+                continue;
+            }
+            g.setColor(CHANGED_ROW_COLOR);
+            g.fillRect(0, y, width, cellSize);
+            g.setColor(CHANGED_STITCH_COLOR);
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                int stitchIndex = toStitchIndex(chart, chartWidth, row, column);
+                if (stitchIndex >= 0 && differences.isStitchChanged(row, stitchIndex))
+                {
+                    g.fillRect(column * cellSize + 1, y + 1, cellSize - 1, cellSize - 1);
+                }
+            }
+        }
+
+        // Removed rows are marked by a line between the rows that were on either side of them,
+        // which is below the row they were removed before, since rows are shown bottom up
+        g.setColor(REMOVED_ROWS_COLOR);
+        int thickness = Math.max(cellSize / 8, 2);
+        int row = differences.nextRemoval(Math.max(numberOfRows - ((lastLine + 1) << level), 0));
+        while (row >= 0 && ((numberOfRows - row) >> level) >= firstLine)
+        {
+            int y = ((numberOfRows - row) >> level) * cellSize;
+            g.fillRect(0, y - thickness / 2, width, thickness);
+            row = differences.nextRemoval(row + 1);
+        }
+    }
+
+    /**
+     * Paints the cells of a chart that fall inside an area, at any zoom level: with their
+     * symbols if the cells are large enough, and otherwise filled with the color of their stitch
+     * (or when each cell shows a block of stitches, the main stitch in the block)
+     *
+     * @param	g			Graphics to paint with
+     * @param	chart		Chart to paint
+     * @param	summary		Summary of the chart, or null if it has not been built yet
+     * @param	chartWidth	Number of stitches in the longest row of the chart
+     * @param	cellSize	Width and height of each cell in pixels
+     * @param	level		Level of detail: each cell shows a block of 2^level x 2^level stitches
+     * @param	area		Area to paint, in pixels from the top left corner of the chart
+     */
+    static void paintChart(Graphics2D g, Chart chart, ChartSummary summary, int chartWidth, int cellSize, int level, Rectangle area)
+    {
+        if (level == 0 && cellSize >= MIN_SYMBOL_SIZE)
+        {
+            paintChart(g, chart, chartWidth, cellSize, area);
+        }
+        else
+        {
+            paintBlocks(g, chart, summary, chartWidth, cellSize, level, area);
+        }
+    }
+
+    /**
+     * Fills the cells of a chart that fall inside an area with the color of the stitch in
+     * each, or of the main stitch in each block (which, until the summary of the chart has
+     * been built, is taken to be the stitch at the top left corner of the block). Runs of
+     * cells of the same color along a line are filled together.
+     */
+    private static void paintBlocks(Graphics2D g, Chart chart, ChartSummary summary, int chartWidth, int cellSize, int level, Rectangle area)
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.PAINT);
+        int lines = ChartSummary.blocks(chart.getNumberOfRows(), level);
+        int columns = ChartSummary.blocks(chartWidth, level);
+        int blocksPainted = 0;
+
+        int firstLine = Math.max(area.y / cellSize, 0);
+        int lastLine = Math.min((area.y + area.height) / cellSize, lines - 1);
+        int firstColumn = Math.max(area.x / cellSize, 0);
+        int lastColumn = Math.min((area.x + area.width) / cellSize, columns - 1);
+
+        for (int line = firstLine; line <= lastLine; line++)
+        {
+            int runStart = firstColumn;
+            byte runStitch = ChartSummary.EMPTY;
+            for (int column = firstColumn; column <= lastColumn + 1; column++)
+            {
+                byte stitch = ChartSummary.EMPTY;
+                if (column <= lastColumn)
+                {
+                    if (level == 0 || summary == null)
+                    {
+                        stitch = ChartSummary.getCell(chart, chartWidth, line << level, column << level);
+                    }
+                    else
+                    {
+                        stitch = summary.getBlock(level, line, column);
+                    }
+                }
+                if (column > lastColumn || stitch != runStitch)
+                {
+                    if (runStitch != ChartSummary.EMPTY)
+                    {
+                        g.setColor(toColor(runStitch));
+                        g.fillRect(runStart * cellSize, line * cellSize, (column - runStart) * cellSize, cellSize);
+                    }
+                    runStart = column;
+                    runStitch = stitch;
+                }
+                if (stitch != ChartSummary.EMPTY)
+                {
+                    blocksPainted++;
+                }
+            }
+        }
+        Metrics.stop(m, Math.max(lastLine - firstLine + 1, 0), blocksPainted);
+    }
+
+    /**
+     * @return	Color to fill a cell with, for a stitch ordinal or ChartGrid.UNKNOWN
+     */
+    private static Color toColor(byte stitch)
+    {
+        return (stitch == ChartGrid.UNKNOWN) ? Color.RED : ChartGrid.fromOrdinal(stitch).getColor();
+    }
+
+    /**
+     * Paints the cells of a chart that fall inside an area, with the border and symbol of each.
+     *
+     * @param	g			Graphics to paint with
+     * @param	chart		Chart to paint
+     * @param	chartWidth	Number of stitches in the longest row of the chart
+     * @param	cellSize	Width and height of each cell in pixels
+     * @param	area		Area to paint, in pixels from the top left corner of the chart
+     */
+    static void paintChart(Graphics2D g, Chart chart, int chartWidth, int cellSize, Rectangle area)
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.PAINT);
+        int numberOfRows = chart.getNumberOfRows();
+        int cellsPainted = 0;
+
+        // Work out which rows and columns of cells are at least partly inside the area
+        int firstLine = Math.max(area.y / cellSize, 0);
+        int lastLine = Math.min((area.y + area.height) / cellSize, numberOfRows - 1);
+        int firstColumn = Math.max(area.x / cellSize, 0);
+        int lastColumn = Math.min((area.x + area.width) / cellSize, chartWidth - 1);
+
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(g.getFont().deriveFont(Font.PLAIN, cellSize * 0.6f));
+        FontMetrics metrics = g.getFontMetrics();
+
+        for (int line = firstLine; line <= lastLine; line++)
+        {
+            int row = toRow(chart, line);
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                int stitchIndex = toStitchIndex(chart, chartWidth, row, column);
+                if (stitchIndex < 0)
+                {
+                    continue; // Rows shorter than the longest row leave empty cells
+                }
+                Stitch stitch = chart.getStitch(row, stitchIndex);
+                cellsPainted++;
+                int x = column * cellSize;
+                int y = line * cellSize;
+
+                g.setColor(Color.BLACK);
+                g.drawRect(x, y, cellSize, cellSize);
+
+                // Unrecognized abbreviations are shown as a red question mark
+                String symbol = "?";
+                if (stitch != null)
+                {
+                    symbol = stitch.getSymbol();
+                }
+                else
+                {
+                    g.setColor(Color.RED);
+                }
+                g.drawString(symbol,
+                        x + (cellSize - metrics.stringWidth(symbol)) / 2,
+                        y + (cellSize - metrics.getHeight()) / 2 + metrics.getAscent());
+            }
+        }
+        Metrics.stop(m, Math.max(lastLine - firstLine + 1, 0), cellsPainted);
+    }
+
+    /**
+     * Converts a line of cells on screen (counting down from the top) to the index
+     * of the row of the chart shown on it, since charts are read from the bottom up
+     */
+    static int toRow(Chart chart, int line)
+    {
+        return chart.getNumberOfRows() - 1 - line;
+    }
+
+    /**
+     * Converts a column of cells on screen (counting from the left) to the index of the
+     * stitch in a row shown in it, since even-numbered rows are read right to left
+     *
+     * @return	Index of the stitch within the row, or -1 if the row has no stitch in that column
+     */
+    static int toStitchIndex(Chart chart, int chartWidth, int row, int column)
+    {
+        int stitchIndex = column;
+        if (row%2 == 0) // right to left
+        {
+            stitchIndex = chartWidth - 1 - column;
+        }
+        if (stitchIndex >= chart.getRowWidth(row))
+        {
+            return -1;
+        }
+        return stitchIndex;
+    }
+
+    /**
+     * @param	p	Point in pixels from the top left corner of the chart
+     *
+     * @return	Index of the row shown at the point, or -1 if there is none (or if
+     *			each cell on screen shows a block of stitches, rather than one stitch)
+     */
+    public int getRowAt(Point p)
+    {
+        if (chart == null || level > 0 || p.x < 0 || p.y < 0
+                || p.y / cellSize >= chart.getNumberOfRows() || p.x / cellSize >= chartWidth)
+        {
+            return -1;
+        }
+        return toRow(chart, p.y / cellSize);
+    }
+
+    /**
+     * @param	p	Point in pixels from the top left corner of the chart
+     *
+     * @return	Index within its row of the stitch shown at the point (see getRowAt()),
+     *			or -1 if there is none
+     */
+    public int getStitchIndexAt(Point p)
+    {
+        int row = getRowAt(p);
+        if (row < 0)
+        {
+            return -1;
+        }
+        return toStitchIndex(chart, chartWidth, row, p.x / cellSize);
+    }
+
+    /**
+     * Looks up the name of the stitch under the mouse for the tooltip
+     */
+    public String getToolTipText(MouseEvent e)
+    {
+        if (chart == null)
+        {
+            return null;
+        }
+        int line = e.getY() / cellSize;
+        int column = e.getX() / cellSize;
+        if (level > 0)
+        {
+            if (summary == null || line >= ChartSummary.blocks(chart.getNumberOfRows(), level)
+                    || column >= ChartSummary.blocks(chartWidth, level))
+            {
+                return null;
+            }
+            byte stitch = summary.getBlock(level, line, column);
+            if (stitch == ChartSummary.EMPTY)
+            {
+                return null;
+            }
+            String name = (stitch == ChartGrid.UNKNOWN) ? "unrecognized abbreviations" : ChartGrid.fromOrdinal(stitch).getStitchName();
+            return "mostly " + name + " (block of " + (1 << level) + " x " + (1 << level) + " stitches)";
+        }
+        if (line >= chart.getNumberOfRows() || column >= chartWidth)
+        {
+            return null;
+        }
+        int row = toRow(chart, line);
+        int stitchIndex = toStitchIndex(chart, chartWidth, row, column);
+        if (stitchIndex < 0)
+        {
+            return null;
+        }
+        Stitch stitch = chart.getStitch(row, stitchIndex);
+        String name = (stitch == null) ? "unrecognized abbreviation" : stitch.getStitchName();
+        if (differences != null && differences.getRowStatus(row) == PatternDiff.ADDED)
+        {
+            return name + " (added row)";
+        }
+        if (differences != null && differences.isStitchChanged(row, stitchIndex))
+        {
+            return name + " (changed)";
+        }
+        return name;
+    }
+
+    //
+    // Scrollable methods -- scroll one cell at a time, or one screen at a time
+    //
+
+    public Dimension getPreferredScrollableViewportSize()
+    {
+        return getPreferredSize();
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        return cellSize;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        if (orientation == SwingConstants.VERTICAL)
+        {
+            return Math.max(visibleRect.height - cellSize, cellSize);
+        }
+        return Math.max(visibleRect.width - cellSize, cellSize);
+    }
+
+    public boolean getScrollableTracksViewportWidth()
+    {
+        return false;
+    }
+
+    public boolean getScrollableTracksViewportHeight()
+    {
+        return false;
+    }
+}
\ No newline at end of file
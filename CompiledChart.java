@@ -0,0 +1,477 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class saves and loads compiled charts: a binary copy of a parsed chart that is
+ * kept next to its pattern file (Eg. "lace.txt" ==> "lace.txt.kchart"), so a pattern
+ * that has not changed since it was saved can be reopened without parsing it again.
+ *
+ * File layout (all numbers big-endian):
+ *      int     magic number ("KCHT")
+ *      int     format version
+ *      long    length in bytes of the pattern file the chart was compiled from
+ *      long    CRC32 checksum of the pattern file
+ *      long    checksum of the stitch dictionary the pattern was parsed with
+ *      byte    number of stitch types, followed by the name of each Stitch constant
+ *              (one length byte, then ASCII), in the order the stitch codes refer to
+ *      int     number of rows
+ *      rows    for each row, the number of runs, then each run as a stitch code
+ *              (one byte, 255 for an unrecognized abbreviation) and a length
+ *      long    CRC32 checksum of everything before it
+ *
+ * Run counts and lengths are stored as variable-length integers (7 bits per byte,
+ * low bits first). Storing the stitch names rather than relying on the enum ordinals
+ * means a compiled chart stays readable if stitch types are added to the Stitch enum.
+ *
+ * Files are written through a FileChannel a buffer at a time, and read by mapping
+ * them into memory. A compiled chart is only used while the checksum of the pattern
+ * file and of the stitch dictionary still match; a missing, stale, or damaged one is ignored.
+ * Like the autosave, a compiled chart is written to a temporary file first and then moved
+ * into place, so an interrupted save leaves the previous compiled chart as it was.
+ *
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+class CompiledChart
+{
+    public static final String EXTENSION = ".kchart"; // Added to the name of the pattern file
+
+    private static final int MAGIC = 0x4B434854; // "KCHT"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8; // Bytes before the stitch table
+    private static final String TEMP_EXTENSION = ".saving"; // Added to the name of the compiled chart while it is being written
+    private static final int BUFFER_SIZE = 64 * 1024; // Bytes written to the file at a time
+    private static final int MAX_RUN_SIZE = 1 + 5; // Largest encoding of one run: a stitch code and a 5-byte length
+    private static final int CHECKSUM_REGION = 64 * 1024 * 1024; // Bytes of a pattern file mapped at a time to compute its checksum
+    private static final byte UNKNOWN_CODE = (byte) 0xFF; // Stitch code stored for unrecognized abbreviations
+    private static final Stitch[] STITCHES = Stitch.values();
+
+    /**
+     * @param	textFile	Pattern file
+     *
+     * @return	File the compiled chart of the pattern is kept in
+     */
+    public static File fileFor(File textFile)
+    {
+        return new File(textFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Computes the CRC32 checksum of a pattern file
+     *
+     * @param	textFile	Pattern file
+     *
+     * @return	Checksum of the contents of the file
+     *
+     * @throws	IOException		Thrown if the file can't be read
+     */
+    public static long checksum(File textFile) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        FileChannel channel = FileChannel.open(textFile.toPath(), StandardOpenOption.READ);
+        try
+        {
+            long size = channel.size();
+            for (long position = 0; position < size; position += CHECKSUM_REGION)
+            {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECKSUM_REGION, size - position)));
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Loads the compiled chart saved next to a pattern file, if it is still up to date
+     *
+     * @param	textFile	Pattern file
+     *
+     * @return	Chart compiled from the pattern, or null if there is no compiled chart
+     *			or it no longer matches the pattern file
+     *
+     * @throws	IOException		Thrown if either file can't be read
+     */
+    public static Instructions load(File textFile) throws IOException
+    {
+        return load(textFile, textFile.length(), -1);
+    }
+
+    /**
+     * Loads the compiled chart saved next to a pattern file, if it was compiled from the
+     * pattern file as it was when it was just read (so the file need not be read again to
+     * compute its checksum)
+     *
+     * @param	textFile		Pattern file
+     * @param	textLength		Length in bytes of the pattern file as read
+     * @param	textChecksum	CRC32 checksum of the pattern file as read (see PatternReader.getChecksum()),
+     *							or -1 to compute it from the file, if the rest of the header matches
+     *
+     * @return	Chart compiled from the pattern, or null if there is no compiled chart
+     *			or it does not match the pattern file
+     *
+     * @throws	IOException		Thrown if either file can't be read
+     */
+    public static Instructions load(File textFile, long textLength, long textChecksum) throws IOException
+    {
+        File chartFile = fileFor(textFile);
+        if (!chartFile.isFile())
+        {
+            return null;
+        }
+
+        FileChannel channel = FileChannel.open(chartFile.toPath(), StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // Check the header against the pattern file before reading any rows; the
+            // checksum of the pattern file is only computed if everything else matches
+            long compiledChecksum = readHeader(in, textLength);
+            if (compiledChecksum < 0 || compiledChecksum != ((textChecksum < 0) ? checksum(textFile) : textChecksum))
+            {
+                return null;
+            }
+            Metrics.Measurement m = Metrics.start(Metrics.LOAD_COMPILED);
+            Instructions inst = readRows(in);
+            if (m != null && inst != null)
+            {
+                Metrics.stop(m, inst.getNumberOfRows(), inst.getTotalStitches());
+            }
+            return inst;
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the header of the compiled chart saved next to a pattern file, to find out
+     * before the pattern file is read whether the chart may still be up to date
+     *
+     * @param	textFile	Pattern file
+     *
+     * @return	CRC32 checksum of the pattern file the chart was compiled from, or -1 if there
+     *			is no compiled chart, or it does not match the length of the pattern file
+     *
+     * @throws	IOException		Thrown if the compiled chart can't be read
+     */
+    public static long getTextChecksum(File textFile) throws IOException
+    {
+        File chartFile = fileFor(textFile);
+        if (!chartFile.isFile())
+        {
+            return -1;
+        }
+
+        FileChannel channel = FileChannel.open(chartFile.toPath(), StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer in = ByteBuffer.allocate(HEADER_SIZE);
+            while (in.hasRemaining() && channel.read(in) >= 0)
+            {
+                // Read until the header is complete or the file ends
+            }
+            in.flip();
+            return readHeader(in, textFile.length());
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the header of a compiled chart and checks it against the pattern file. The
+     * abbreviations may have been changed since the chart was compiled, in which case
+     * the pattern might no longer parse to the same stitches.
+     *
+     * @param	in			Contents of the compiled chart file, positioned at the start
+     * @param	textLength	Length in bytes of the pattern file
+     *
+     * @return	CRC32 checksum of the pattern file the chart was compiled from, or -1 if
+     *			the header is damaged or does not match the pattern file
+     */
+    private static long readHeader(ByteBuffer in, long textLength)
+    {
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION)
+        {
+            return -1;
+        }
+        long compiledLength = in.getLong();
+        long compiledChecksum = in.getLong();
+        long dictionaryChecksum = in.getLong();
+        if (compiledLength != textLength || dictionaryChecksum != StitchDictionary.getDefault().checksum())
+        {
+            return -1;
+        }
+        return compiledChecksum;
+    }
+
+    /**
+     * Reads the stitch table and rows of a compiled chart and checks the checksum at its end
+     *
+     * @param	in	Contents of the compiled chart file, positioned after the header
+     *
+     * @return	Chart, or null if the file is damaged
+     */
+    private static Instructions readRows(ByteBuffer in)
+    {
+        try
+        {
+            // Check the file has not been damaged before trusting anything in it
+            int end = in.limit() - 8;
+            CRC32 crc = new CRC32();
+            ByteBuffer contents = in.duplicate();
+            contents.position(0).limit(end);
+            crc.update(contents);
+            if (crc.getValue() != in.getLong(end))
+            {
+                return null;
+            }
+            in.limit(end);
+
+            Stitch[] stitches = new Stitch[in.get() & 0xFF];
+            for (int i = 0; i < stitches.length; i++)
+            {
+                byte[] name = new byte[in.get() & 0xFF];
+                in.get(name);
+                stitches[i] = Stitch.valueOf(new String(name, StandardCharsets.US_ASCII));
+            }
+
+            // Identical rows (common in lace and ribbing patterns) share one compiled row,
+            // as they do when a pattern is parsed through a RowCache
+            int numberOfRows = in.getInt();
+            if (numberOfRows <= 0)
+            {
+                return null;
+            }
+            RepeatGroup[] rows = new RepeatGroup[numberOfRows];
+            HashMap<ByteBuffer, RepeatGroup> seen = new HashMap<ByteBuffer, RepeatGroup>();
+            for (int i = 0; i < numberOfRows; i++)
+            {
+                // Find the end of the row, and only decode it if it has not been seen before
+                int rowStart = in.position();
+                int numberOfRuns = readInt(in);
+                for (int j = 0; j < numberOfRuns; j++)
+                {
+                    in.get();
+                    readInt(in);
+                }
+                int rowEnd = in.position();
+                ByteBuffer encoded = in.duplicate();
+                encoded.position(rowStart).limit(rowEnd);
+                RepeatGroup row = seen.get(encoded);
+                if (row == null)
+                {
+                    in.position(rowStart);
+                    RowElement[] runs = new RowElement[readInt(in)];
+                    for (int j = 0; j < runs.length; j++)
+                    {
+                        byte code = in.get();
+                        Stitch stitch = (code == UNKNOWN_CODE) ? null : stitches[code & 0xFF];
+                        runs[j] = new StitchRun(stitch, readInt(in));
+                    }
+                    row = new RepeatGroup(runs, 1);
+                    seen.put(encoded, row);
+                }
+                rows[i] = row;
+            }
+            if (in.hasRemaining())
+            {
+                return null;
+            }
+            return new Instructions(rows, null);
+        }
+        // A damaged file that happened to pass the checksum
+        catch (BufferUnderflowException e)
+        {
+            return null;
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            return null;
+        }
+        catch (IllegalArgumentException e) // Includes unknown stitch names from Stitch.valueOf()
+        {
+            return null;
+        }
+        catch (ArithmeticException e) // Row too long for RepeatGroup
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the compiled chart of a pattern file next to it, replacing any
+     * earlier one only once the new one has been completely written
+     *
+     * @param	inst			Chart compiled from the pattern file
+     * @param	textFile		Pattern file the chart was compiled from
+     * @param	textLength		Length in bytes of the pattern file
+     * @param	textChecksum	CRC32 checksum of the pattern file
+     *
+     * @throws	IOException		Thrown if the compiled chart can't be written
+     */
+    public static void save(Instructions inst, File textFile, long textLength, long textChecksum) throws IOException
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.SAVE_COMPILED);
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        Path target = fileFor(textFile).toPath();
+        Path temp = new File(target + TEMP_EXTENSION).toPath();
+        try
+        {
+            FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            try
+            {
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                out.putLong(textLength);
+                out.putLong(textChecksum);
+                out.putLong(StitchDictionary.getDefault().checksum());
+                out.put((byte) STITCHES.length);
+                for (int i = 0; i < STITCHES.length; i++)
+                {
+                    byte[] name = STITCHES[i].name().getBytes(StandardCharsets.US_ASCII);
+                    out.put((byte) name.length);
+                    out.put(name);
+                }
+
+                int numberOfRows = inst.getNumberOfRows();
+                out.putInt(numberOfRows);
+                byte[] cells = new byte[0]; // Reused for each row, grown as needed
+                for (int i = 0; i < numberOfRows; i++)
+                {
+                    int width = inst.getRowWidth(i);
+                    if (cells.length < width)
+                    {
+                        cells = new byte[width];
+                    }
+                    inst.getRow(i).copyTo(cells, 0);
+                    writeRow(channel, out, crc, cells, width);
+                }
+
+                flush(channel, out, crc, BUFFER_SIZE);
+                out.putLong(crc.getValue());
+                flush(channel, out, null, BUFFER_SIZE);
+                channel.force(true);
+            }
+            finally
+            {
+                channel.close();
+            }
+            Autosave.replace(temp, target);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+        if (m != null)
+        {
+            Metrics.stop(m, inst.getNumberOfRows(), inst.getTotalStitches());
+        }
+    }
+
+    /**
+     * Run-length encodes one row of stitch ordinals into the output buffer
+     */
+    private static void writeRow(FileChannel channel, ByteBuffer out, CRC32 crc, byte[] cells, int width) throws IOException
+    {
+        // Count the runs first, since the count comes before them in the file
+        int runs = 0;
+        for (int i = 0; i < width; i++)
+        {
+            if (i == 0 || cells[i] != cells[i-1])
+            {
+                runs++;
+            }
+        }
+        flush(channel, out, crc, 5);
+        writeInt(out, runs);
+
+        int start = 0;
+        for (int i = 1; i <= width; i++)
+        {
+            if (i == width || cells[i] != cells[start])
+            {
+                flush(channel, out, crc, MAX_RUN_SIZE);
+                out.put(cells[start] < 0 ? UNKNOWN_CODE : cells[start]);
+                writeInt(out, i - start);
+                start = i;
+            }
+        }
+    }
+
+    /**
+     * Writes the contents of the output buffer to the file, unless it still has room for
+     * the given number of bytes
+     *
+     * @param	crc		Checksum to add the written bytes to, or null if none
+     */
+    static void flush(FileChannel channel, ByteBuffer out, CRC32 crc, int bytesNeeded) throws IOException
+    {
+        if (out.remaining() >= bytesNeeded)
+        {
+            return;
+        }
+        out.flip();
+        if (crc != null)
+        {
+            crc.update(out.duplicate());
+        }
+        while (out.hasRemaining())
+        {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Writes a non-negative int as a variable-length integer (7 bits per byte, low bits first)
+     */
+    static void writeInt(ByteBuffer out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads a variable-length integer written by writeInt()
+     *
+     * @throws	IllegalArgumentException	Thrown if the value is not a valid non-negative int
+     */
+    static int readInt(ByteBuffer in)
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                if (value < 0)
+                {
+                    throw new IllegalArgumentException("Negative length in compiled chart");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Length in compiled chart is too long");
+    }
+}
\ No newline at end of file
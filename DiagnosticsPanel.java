@@ -0,0 +1,132 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class is the diagnostics panel of the KnittingEditor program. It shows the time,
+ * rows, stitches, and memory used by each phase of parsing and rendering (see Metrics),
+ * so a slow render can be traced to the phase responsible. Recording is turned on and off
+ * from the panel, and the table can be saved to a file to be sent with a bug report.
+ *
+ */
+
+import javax.swing.*;
+import java.awt.event.*;
+import java.awt.*;
+import java.io.*;
+
+class DiagnosticsPanel extends JPanel
+{
+    private static final int REFRESH_INTERVAL = 1000; // Milliseconds between updates of the table while the panel is showing
+
+    private JTextArea table = new JTextArea(12, 100); // Totals for each phase
+    private Timer refreshTimer;
+
+    /**
+     * Constructor
+     */
+    public DiagnosticsPanel ()
+    {
+        super(new BorderLayout());
+
+        table.setEditable(false);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel();
+
+        // Record Checkbox -- turns recording of measurements on or off
+        final JCheckBox recordCheckBox = new JCheckBox("Record", Metrics.isEnabled());
+        recordCheckBox.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    Metrics.setEnabled(recordCheckBox.isSelected());
+                }
+            });
+
+        // Reset Button -- clears the totals recorded so far
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    Metrics.reset();
+                    refresh();
+                }
+            });
+
+        // Save Button -- writes the table to a file chosen by the user
+        JButton saveButton = new JButton("Save");
+        saveButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    save();
+                }
+            });
+
+        buttons.add(recordCheckBox);
+        buttons.add(resetButton);
+        buttons.add(saveButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        refreshTimer = new Timer(REFRESH_INTERVAL,
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    refresh();
+                }
+            });
+
+        // Only update the table while it is showing
+        addHierarchyListener(
+            new HierarchyListener()
+            {
+                public void hierarchyChanged(HierarchyEvent e) {
+                    if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0)
+                    {
+                        if (isShowing())
+                        {
+                            refresh();
+                            refreshTimer.start();
+                        }
+                        else
+                        {
+                            refreshTimer.stop();
+                        }
+                    }
+                }
+            });
+    }
+
+    /**
+     * Shows the latest totals
+     */
+    private void refresh()
+    {
+        String report = Metrics.report();
+        if (!report.equals(table.getText()))
+        {
+            table.setText(report);
+        }
+    }
+
+    /**
+     * Saves the table to a file chosen by the user
+     */
+    private void save()
+    {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION)
+        {
+            try
+            {
+                Metrics.dump(chooser.getSelectedFile());
+            }
+            catch (IOException e)
+            {
+                JOptionPane.showMessageDialog(this, "Error: Unable to save file.");
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,255 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class keeps the history of changes to the instructions pane, and to the chart
+ * when it is edited directly (see ChartEditor), so they can be undone and redone.
+ *
+ * Every edit to the instructions is recorded as a change; characters typed (or deleted)
+ * one after another are grouped into a single change, as in a word processor. A change
+ * made in the chart is recorded along with the edits it made to the instructions, and
+ * undoing it puts back the version of the chart from before it (see PersistentChart),
+ * which shares all but the changed row with the version after it.
+ *
+ * The history is limited by the memory it takes rather than by a number of changes: the
+ * oldest changes are forgotten once the changes kept take more than MAX_BYTES. The total
+ * is kept up to date as changes are added, grown and forgotten, so that recording an edit
+ * takes the same time however long the history is.
+ *
+ */
+
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.text.*;
+import javax.swing.undo.*;
+import java.beans.*;
+
+class EditHistory extends UndoManager
+{
+    private static final long MAX_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 16, 64L << 20); // Memory the history may take
+    private static final int CHANGE_BYTES = 64; // Estimated memory taken by a change besides what it holds
+    private static final int EDIT_BYTES = 200; // Estimated memory taken by an edit to the instructions besides its text
+
+    private final LivePreview preview; // Live preview of the instructions, whose updates are held back until a whole change is undone
+    private Document document; // Document of the instructions pane being listened to
+    private long bytes; // Estimated memory taken by the changes kept
+
+    /**
+     * Constructor
+     *
+     * @param	pane		Instructions pane to keep the history of
+     * @param	preview		Live preview of the instructions pane
+     */
+    public EditHistory (final JTextArea pane, LivePreview preview)
+    {
+        this.preview = preview;
+        setLimit(Integer.MAX_VALUE); // Limited by memory instead (see addEdit())
+        document = pane.getDocument();
+        document.addUndoableEditListener(this);
+
+        // Start a new history when a file is imported
+        pane.addPropertyChangeListener("document",
+            new PropertyChangeListener()
+            {
+                public void propertyChange(PropertyChangeEvent e) {
+                    document.removeUndoableEditListener(EditHistory.this);
+                    discardAllEdits();
+                    document = pane.getDocument();
+                    document.addUndoableEditListener(EditHistory.this);
+                }
+            });
+    }
+
+    /**
+     * Records an edit to the instructions, as part of the change being made in the chart
+     * (if there is one), and otherwise as a change of its own
+     */
+    public void undoableEditHappened(UndoableEditEvent e)
+    {
+        addEdit(new TextChange(e.getEdit()));
+    }
+
+    /**
+     * Adds a change to the history, forgetting the oldest changes if the history then takes
+     * more than MAX_BYTES. A change that is still in progress (see CompoundEdit.isInProgress())
+     * takes in the edits added after it, until it is ended.
+     */
+    public synchronized boolean addEdit(UndoableEdit edit)
+    {
+        // The changes that could be redone are trimmed (see trimEdits()), then the new change
+        // is either taken into the change before it or added after it, so only that change
+        // (the last one that can be undone) or the new one is counted again
+        UndoableEdit previous = editToBeUndone();
+        long previousSize = (previous == null) ? 0 : sizeOf(previous);
+        boolean added = super.addEdit(edit);
+        if (!edits.isEmpty())
+        {
+            UndoableEdit last = edits.lastElement();
+            bytes += (last == previous) ? sizeOf(last) - previousSize : sizeOf(last);
+        }
+        while (bytes > MAX_BYTES && !edits.isEmpty() && !isInProgress(edits.get(0)))
+        {
+            trimEdits(0, 0);
+        }
+        return added;
+    }
+
+    /**
+     * Removes changes from the history, taking their sizes off the total
+     */
+    protected void trimEdits(int from, int to)
+    {
+        for (int i = from; i <= to; i++)
+        {
+            bytes -= sizeOf(edits.get(i));
+        }
+        super.trimEdits(from, to);
+    }
+
+    public synchronized void discardAllEdits()
+    {
+        super.discardAllEdits();
+        bytes = 0;
+    }
+
+    public synchronized void undo()
+    {
+        preview.holdUpdates();
+        try
+        {
+            super.undo();
+        }
+        finally
+        {
+            preview.releaseUpdates();
+        }
+    }
+
+    public synchronized void redo()
+    {
+        preview.holdUpdates();
+        try
+        {
+            super.redo();
+        }
+        finally
+        {
+            preview.releaseUpdates();
+        }
+    }
+
+    /**
+     * @return	Estimated memory in bytes taken by an edit
+     */
+    static long sizeOf(UndoableEdit edit)
+    {
+        if (edit instanceof Change)
+        {
+            return ((Change) edit).getSize();
+        }
+        if (edit instanceof DocumentEvent)
+        {
+            return EDIT_BYTES + 2 * ((DocumentEvent) edit).getLength();
+        }
+        return EDIT_BYTES;
+    }
+
+    private static boolean isInProgress(UndoableEdit edit)
+    {
+        return edit instanceof CompoundEdit && ((CompoundEdit) edit).isInProgress();
+    }
+
+    /**
+     * A change made up of several edits, undone and redone together
+     */
+    static class Change extends CompoundEdit
+    {
+        private long size = CHANGE_BYTES; // Estimated memory taken by the change, added to as edits are taken in
+
+        public boolean addEdit(UndoableEdit edit)
+        {
+            boolean added = super.addEdit(edit);
+            if (added)
+            {
+                grow(edit);
+            }
+            return added;
+        }
+
+        /**
+         * Adds the size of an edit taken into the change to its size
+         */
+        void grow(UndoableEdit edit)
+        {
+            size += sizeOf(edit);
+        }
+
+        /**
+         * @return	Estimated memory in bytes taken by the change
+         */
+        long getSize()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * A change to the instructions typed by the user. Characters typed or deleted one
+     * after another are grouped into one change, up to the end of a line.
+     */
+    private static class TextChange extends Change
+    {
+        TextChange (UndoableEdit edit)
+        {
+            super.addEdit(edit);
+            end();
+        }
+
+        /**
+         * Takes in a change made after this one, if both are single characters typed
+         * (or deleted) next to each other
+         */
+        public boolean addEdit(UndoableEdit edit)
+        {
+            if (!(edit instanceof TextChange) || !isTyping(lastEdit()) || !isTyping(((TextChange) edit).lastEdit()))
+            {
+                return false;
+            }
+            DocumentEvent last = (DocumentEvent) lastEdit();
+            DocumentEvent next = (DocumentEvent) ((TextChange) edit).lastEdit();
+            boolean follows;
+            if (next.getType() != last.getType())
+            {
+                follows = false;
+            }
+            else if (next.getType() == DocumentEvent.EventType.INSERT)
+            {
+                follows = next.getOffset() == last.getOffset() + 1;
+            }
+            else
+            {
+                follows = next.getOffset() == last.getOffset() || next.getOffset() == last.getOffset() - 1; // Delete or backspace
+            }
+            if (follows)
+            {
+                edits.add(((TextChange) edit).lastEdit());
+                grow(((TextChange) edit).lastEdit());
+            }
+            return follows;
+        }
+
+        /**
+         * @return	True if an edit inserts or removes a single character, other than a line break
+         */
+        private static boolean isTyping(UndoableEdit edit)
+        {
+            if (!(edit instanceof DocumentEvent) || ((DocumentEvent) edit).getLength() != 1)
+            {
+                return false;
+            }
+            DocumentEvent event = (DocumentEvent) edit;
+            Element root = event.getDocument().getDefaultRootElement();
+            return event.getChange(root) == null; // No lines were added or removed
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class underlines the parts of the instructions pane that contain errors
+ * (see ParseError) with a red wavy line, as a word processor marks spelling mistakes.
+ * The underlines move with the text as it is edited, until the errors are next updated.
+ *
+ */
+
+import javax.swing.*;
+import javax.swing.text.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+class ErrorHighlighter
+{
+    private static final int MAX_UNDERLINES = 1000; // Errors after this many are not underlined, so a pattern full of errors stays quick to edit
+
+    private final JTextComponent pane;
+    private final ArrayList<Object> underlines = new ArrayList<Object>(); // Highlight tags for the errors currently underlined
+    private final Highlighter.HighlightPainter painter = new UnderlinePainter(Color.RED);
+
+    /**
+     * Constructor
+     *
+     * @param	pane	Instructions pane to underline errors in
+     */
+    public ErrorHighlighter (JTextComponent pane)
+    {
+        this.pane = pane;
+    }
+
+    /**
+     * Replaces the errors underlined in the pane
+     *
+     * @param	errors	Errors to underline, found in the text currently in the pane
+     *					(each row of the pattern being one line of the text)
+     */
+    public void setErrors(List<ParseError> errors)
+    {
+        clear();
+        Highlighter highlighter = pane.getHighlighter();
+        Element root = pane.getDocument().getDefaultRootElement();
+        for (int i = 0; i < errors.size() && underlines.size() < MAX_UNDERLINES; i++)
+        {
+            ParseError error = errors.get(i);
+            if (error.getRow() >= root.getElementCount())
+            {
+                continue;
+            }
+
+            // Work out the characters to underline, keeping within the line
+            Element line = root.getElement(error.getRow());
+            int lineStart = line.getStartOffset();
+            int lineEnd = Math.min(line.getEndOffset() - 1, pane.getDocument().getLength());
+            int start = Math.min(lineStart + error.getColumn(), lineEnd);
+            int end = lineEnd;
+            if (error.getLength() >= 0)
+            {
+                end = Math.min(start + error.getLength(), lineEnd);
+            }
+            if (start == end)
+            {
+                continue; // Nothing to underline, as for a blank line
+            }
+
+            try
+            {
+                underlines.add(highlighter.addHighlight(start, end, painter));
+            }
+            catch (BadLocationException e)
+            {
+                throw new IllegalStateException(e); // Not reached: offsets are within the line
+            }
+        }
+    }
+
+    /**
+     * Removes all the underlines
+     */
+    public void clear()
+    {
+        Highlighter highlighter = pane.getHighlighter();
+        for (Object underline : underlines)
+        {
+            highlighter.removeHighlight(underline);
+        }
+        underlines.clear();
+    }
+
+    /**
+     * Paints a wavy line along the bottom of the highlighted text
+     */
+    private static class UnderlinePainter extends LayeredHighlighter.LayerPainter
+    {
+        private final Color color;
+
+        UnderlinePainter (Color color)
+        {
+            this.color = color;
+        }
+
+        public void paint(Graphics g, int start, int end, Shape bounds, JTextComponent c)
+        {
+            // Not called: painting is done a layer at a time, by paintLayer()
+        }
+
+        public Shape paintLayer(Graphics g, int start, int end, Shape bounds, JTextComponent c, View view)
+        {
+            Rectangle r;
+            try
+            {
+                Shape shape = view.modelToView(start, Position.Bias.Forward, end, Position.Bias.Backward, bounds);
+                r = (shape instanceof Rectangle) ? (Rectangle) shape : shape.getBounds();
+            }
+            catch (BadLocationException e)
+            {
+                return null;
+            }
+
+            g.setColor(color);
+            int y = r.y + r.height - 2;
+            for (int x = r.x; x < r.x + r.width; x += 4)
+            {
+                g.drawLine(x, y + 1, x + 2, y - 1);
+                g.drawLine(x + 2, y - 1, x + 4, y + 1);
+            }
+            return r;
+        }
+    }
+}
\ No newline at end of file
@@ -3,18 +3,35 @@
  * Johanna Bodnyk | May 9, 2014
  *
  * This class is used by the KnittingEditor program to parse a set of written knitting instructions 
- * into a 2D array of stitch symbols to be rendered in a knitting chart.
+ * into a chart of stitch symbols to be rendered in a knitting chart.
+ * (The parsing of each individual row is done by the RowParser class.)
+ *
+ * Rows are kept in compiled form, with repeats stored as a sequence and a count
+ * (see RepeatGroup), so any stitch in the chart can be looked up without the
+ * instructions ever being fully written out. A fully written out copy of the
+ * chart (see ChartGrid) is only built if getGrid() is called.
+ *
+ * Large patterns are parsed in parallel, in chunks of rows. Syntax errors do not
+ * stop the parse: they are collected, along with rows whose length does not match,
+ * and listed in row order by getErrors(), each with the characters it applies to.
  *
  */
 
 import java.util.*;
-import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
-class Instructions 
+class Instructions implements Chart
 {
-    private Stitch[][] stitches; // 2D array of enum type Stitch, representing the stitches in the instructions
+    private static final int PARALLEL_THRESHOLD = 2048; // Patterns with fewer rows are parsed on a single thread
+    private static final int CHUNK_SIZE = 256; // Number of rows parsed by each task when parsing in parallel
+
+    private RepeatGroup[] rows; // Compiled rows, one per line of instructions
+    private ChartGrid grid; // Fully written out chart, built from rows on demand
     private int numberOfRows;
     private int stitchesPerRow;
+    private boolean rowLengthsEqual;
+    private ArrayList<ParseError> errors; // Syntax errors and row length mismatches, in row order
 
     /**
      * Constructor
@@ -24,289 +41,340 @@ class Instructions
      * 									(one line of instructions text per array element)
      */
     public Instructions (String[] originalInstructions)
+    {
+        this(originalInstructions, null);
+    }
+
+    /**
+     * Constructor that reports its progress as it parses each row
+     * 
+     * @param	originalInstructions	Array representation of user-supplied text version
+     *									of knitting pattern instructions
+     * 									(one line of instructions text per array element)
+     * @param	listener				Listener to notify after each row is parsed, or null.
+     *									For large patterns it may be called from several threads at once.
+     *
+     * @throws	CancellationException	Thrown if the listener asks for parsing to stop
+     */
+    public Instructions (String[] originalInstructions, ParseListener listener)
     {
         // Each line of instructions equals one row in the knitting pattern
         numberOfRows = originalInstructions.length; 
-
-        // Call method to parse the text instructions into a 2D ArrayList (one stitch abbreviation per array element)
-        ArrayList<ArrayList<String>> parsedInstructions = parseTextInstructions(originalInstructions); 
-
-        // Make sure each row has the same number of stitches
-        boolean rowLengthsEqual = checkRowLengths(parsedInstructions);
-
-        // If row lengths are all the same, pass 2D ArrayList to method 
-        // that converts stitch abbrevations into Stitch enum types.
-        // NOTE: If not, stitches array will be left empty so that attempting to
-        // render it into a chart by the calling method will generate an exception.
-        if (rowLengthsEqual)
-        {
-            convertToStitches(parsedInstructions);
-        }
+        parse(originalInstructions, null, listener);
     }
 
     /**
-     * Parses lines of instructions into individual stitch abbreviations
+     * Constructor for instructions text held in a Rope (such as a snapshot of the
+     * instructions pane, see PatternDocument). Each line is read from the text as it
+     * is parsed, so the text is never split into an array of lines.
      *
-     * @param	originalInstructions 	User-supplied text version of knitting pattern instructions
+     * @param	text			Knitting pattern instructions, one row per line
+     * @param	numberOfRows	Number of lines to parse, from the first
+     * @param	listener		Listener to notify after each row is parsed, or null.
+     *							For large patterns it may be called from several threads at once.
      *
-     * @return	2D ArrayList of individual stitch abbrevations, 
-     *			with repeats and multiples parsed into individual items
+     * @throws	CancellationException	Thrown if the listener asks for parsing to stop
      */
-    private ArrayList<ArrayList<String>> parseTextInstructions(String[] originalInstructions)
+    public Instructions (Rope text, int numberOfRows, ParseListener listener)
     {
-        // Process repeat shorthand (repeated sequences of stitches in parentheses, brackets, or asterisks) 
-        originalInstructions = processRepeats(originalInstructions);
+        this.numberOfRows = numberOfRows;
+        parse(null, text, listener);
+    }
 
-        // Loop through original instructions array to split row strings on commas 
-        // into arrays of stitch abbreviations
-        ArrayList<ArrayList<String>> parsedInstructions = new ArrayList<ArrayList<String>>(); // 2D ArrayList to hold parsed instructions
-        for (int i = 0; i < numberOfRows; i++) 
+    /**
+     * Parses every row, from an array of lines or from text
+     */
+    private void parse(String[] lines, Rope text, ParseListener listener)
+    {
+        // Compile each line of text into a row in a single pass. Syntax errors are
+        // recorded against their row, so every row can be parsed independently.
+        Metrics.Measurement parse = Metrics.start(Metrics.PARSE);
+        rows = new RepeatGroup[numberOfRows];
+        ParseError[][] rowErrors = new ParseError[numberOfRows][];
+        ParseTask task = new ParseTask(lines, text, rows, rowErrors, 0, numberOfRows, listener, new AtomicInteger(),
+                new ConcurrentHashMap<RepeatGroup, RepeatGroup>());
+        if (numberOfRows < PARALLEL_THRESHOLD)
         {
-            // Split each row into array individual abbrevations
-            String[] tempArray = originalInstructions[i].split(", "); 
-            // Convert array to ArrayList
-            ArrayList<String> tempArrayList = new ArrayList<String>(Arrays.asList(tempArray)); 
-            // Add ArrayList holding one row of abbrevations to 2D ArrayList
-            parsedInstructions.add(tempArrayList); 
+            // Small patterns are parsed on this thread, since starting tasks would take longer than parsing
+            task.compute();
         }
-
-        // Process abbreviations for multiple stitches (Kn, Pn,) into separate abbrevations (K3 ==> K, K, K)
-        parsedInstructions = processMultiples(parsedInstructions);
-
-        stitchesPerRow = parsedInstructions.get(0).size();
-
-        return parsedInstructions;
+        else
+        {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        if (parse != null)
+        {
+            Metrics.stop(parse, numberOfRows, getTotalStitches());
+        }
+        checkRows(rowErrors);
     }
 
     /**
-     * Processes syntax representing repeated stitch sequences into fully "written out" equivalent.
-     * Repeated sequences are enclosed by parentheses, brackets, or asterisks, followed by a note 
-     * specifying the number of times to repeat the sequence.
-     *      Eg. "(k, yo) 3 times, " will be converted to "k, yo, k, yo, k, yo, "
-     * 
-     * @param 	rows	Unparsed user-supplied text version of knitting pattern instructions
-     *
-     * @return	Knitting pattern instruction text with syntax denoting repeats
-     *			parsed into individual abbreviations
+     * Constructor for rows that have already been compiled (for example, by a RowCache)
      *
-     * @throws	IndexOutOfBoundsException	Thrown if an instance of the endDelimiter character
-     *										is not found following a startDelimiter (so that
-     *										endDelimiter is set to -1). Indicates a user syntax error.
-     *
-     * @throws	InputMismatchException		Thrown if the Scanner containing the text that is supposed
-     *										to indicate the times to repeat the stitch sequence
-     *										does not contain a parseable integer. Indicates user sytax error.
-     */    
-    private String[] processRepeats(String[] rows)
+     * @param	compiledRows	Compiled rows, one per line of instructions
+     * @param	rowErrors		Syntax errors found in each row, or null for rows without errors
+     *							(the array itself may be null if there are no errors)
+     */
+    Instructions (RepeatGroup[] compiledRows, ParseError[][] rowErrors)
     {
-        // Loop through array of rows to check each row for repeats
-        for (int i = 0; i < numberOfRows; i++)
-        {
-            boolean hasRepeats = true;
-            // Row may contain multiple repeat sections. Repeat until all are processed.
-            while (hasRepeats) 
-            {
-                // If the row contains any of the characters indicating the beginning 
-                // of a repeat section, set the start and end delimiter variables accordingly
-                String startDelimiter = "";
-                String endDelimiter = "";             
-                if (rows[i].contains("("))
-                {
-                    startDelimiter = "(";
-                    endDelimiter = ")";
-                }
-                else if (rows[i].contains("*"))
-                {
-                    startDelimiter = "*";
-                    endDelimiter = "*";                    
-                }
-                else if (rows[i].contains("["))
-                {
-                    startDelimiter = "[";
-                    endDelimiter = "]";                    
-                }
-                else
-                {
-                    hasRepeats = false; // If no repeat start characters are found, we're done checking this row
-                }
-
-                if (hasRepeats)
-                {
-                    // Create StringBuilder out of this row so it can be manipulated
-                    StringBuilder row = new StringBuilder(rows[i]);
-
-                    // Find the indexes of the first start delimiter and next end delimiter
-                    // (these indexes enclose the sequence to be repeated)
-                    int startDelimiterIndex = row.indexOf(startDelimiter);
-                    int endDelimiterIndex = row.indexOf(endDelimiter, startDelimiterIndex+1); 
-                    // NOTE: If no end delimiter is found, subsequent attempts to use it will 
-                    // generate an IndexOutOfBoundsException to be caught by the main program,
-                    // which will display an error message to the user.
-
-                    // Get the sequence to be repeated (plus a comma and space), and its length
-                    String repeatText = row.substring(startDelimiterIndex+1, endDelimiterIndex)+", ";
-                    int repeatTextLength = repeatText.length();
+        rows = compiledRows;
+        numberOfRows = rows.length;
+        checkRows(rowErrors);
+    }
 
-                    // Find the index of the first comma following the end delimiter
-                    // (the end delimiter and next comma enclose the instructions on how many times
-                    // to repeat the text). If the repeat sequence is the last instruction in the row, 
-                    // the comma index will be -1
-                    int commaIndex = row.indexOf(",", endDelimiterIndex);
+    /**
+     * Parses a range of rows. Ranges of more than CHUNK_SIZE rows are split in two
+     * and parsed in parallel, each half with its own RowParser, writing each row
+     * into its own slot in the rows array. All the parsers share one pool of compiled
+     * sequences, so identical repeats anywhere in the pattern are stored once.
+     */
+    private static class ParseTask extends RecursiveAction
+    {
+        private final String[] lines; // Lines of instructions, or null if they are read from text
+        private final Rope text; // Instructions text to read each line from, if lines is null
+        private final RepeatGroup[] rows;
+        private final ParseError[][] rowErrors;
+        private final int start;
+        private final int end;
+        private final ParseListener listener;
+        private final AtomicInteger rowsParsed; // Rows parsed so far by all tasks, for progress reports
+        private final Map<RepeatGroup, RepeatGroup> pool; // Sequences shared by all tasks' parsers
 
-                    // Get the text that says how many times to repeat the sequence
-                    String timesText = "";
-                    if (commaIndex == -1) // If comma follows repeat sequence, get all text to end of row
-                    {
-                        timesText = row.substring(endDelimiterIndex+1);
-                    }
-                    else // Otherwise get the text between the end delimiter and the next comma
-                    {
-                        timesText = row.substring(endDelimiterIndex+1, commaIndex);
-                    }
-                    // From the resulting text, extract the first integer -- this is the times to repeat the sequence
-                    int times = new Scanner(timesText).useDelimiter("\\D+").nextInt(); // Solution from: http://stackoverflow.com/questions/9742680/given-a-string-find-the-first-embedded-occurrence-of-an-integer
-                    // NOTE: If no int is found, an exception will be generated 
-                    // to be caught by the main program, which will display an 
-                    // error message to the user.
+        ParseTask (String[] lines, Rope text, RepeatGroup[] rows, ParseError[][] rowErrors, int start, int end, ParseListener listener, AtomicInteger rowsParsed,
+                Map<RepeatGroup, RepeatGroup> pool)
+        {
+            this.lines = lines;
+            this.text = text;
+            this.rows = rows;
+            this.rowErrors = rowErrors;
+            this.start = start;
+            this.end = end;
+            this.listener = listener;
+            this.rowsParsed = rowsParsed;
+            this.pool = pool;
+        }
 
-                    // Replace the full repeat instructions -- from the start delimiter to the comma
-                    // (or if there is no comma, to the end of the row) -- with the sequence to be repeated.
-                    // This represents the first repeat.
-                    if (commaIndex == -1)
-                    {
-                        row.replace(startDelimiterIndex,row.length()+1,repeatText);
-                    }
-                    else
-                    {
-                        row.replace(startDelimiterIndex,commaIndex+2,repeatText);
-                    }
+        protected void compute()
+        {
+            if (end - start > CHUNK_SIZE && rows.length >= PARALLEL_THRESHOLD)
+            {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ParseTask(lines, text, rows, rowErrors, start, middle, listener, rowsParsed, pool),
+                        new ParseTask(lines, text, rows, rowErrors, middle, end, listener, rowsParsed, pool));
+                return;
+            }
 
-                    // For the second through nth repeats, 
-                    // insert the repeat sequence after the last one that was added
-                    for (int j = 1; j < times; j++)
-                    {
-                        // Insert the sequence at the index of the start delimiter plus
-                        // the sequence length times how many times it's already been added
-                        int insertIndex = startDelimiterIndex+(repeatTextLength*j);
-                        row.insert(insertIndex, repeatText);
-                    }
+            RowParser parser = new RowParser(StitchDictionary.getDefault(), pool);
+            for (int i = start; i < end; i++)
+            {
+                rows[i] = parser.parse((lines != null) ? lines[i] : text.getLine(i), i);
+                rowErrors[i] = parser.getErrors();
 
-                    // Convert StringBuilder to String add replace current row in array with it
-                    rows[i] = row.toString();
+                int parsed = rowsParsed.incrementAndGet();
+                if (listener != null && !listener.rowParsed(parsed, rows.length))
+                {
+                    throw new CancellationException("Parsing stopped at row " + (i+1));
                 }
             }
         }
-        return rows;
     }
 
     /**
-     * Proccess abbrevations representing multiple stitches into fully "written out" equivalent.
-     * Syntax for multiple stitches is Kn or Pn where n is the number of times to repeat K or N.
-     *      eg. "P5" will be converted to "P, P, P, P, P" (this is why an ArrayList is needed)
-     *
-     * @param 	parsedInstructions	User supplied text, repeats removed and comma seperated abbrevations
-     *								parsed into individual array items
+     * Checks the rows against each other, and lists the syntax errors and row length
+     * mismatches found, in row order
      *
-     * @return	Further parsed text with syntax denoting multiple stitches
-     *			parsed into individual abbreviations
-     */  
-    private ArrayList<ArrayList<String>> processMultiples(ArrayList<ArrayList<String>> parsedInstructions)
+     * @param	rowErrors	Syntax errors found in each row, or null for rows without errors
+     *						(the array itself may be null if there are no errors)
+     */
+    private void checkRows(ParseError[][] rowErrors)
     {
+        Metrics.Measurement check = Metrics.start(Metrics.CHECK_ROWS);
+
+        // Set the number of stitches per row from the first row
+        stitchesPerRow = 0;
+        if (numberOfRows > 0)
+        {
+            stitchesPerRow = rows[0].getWidth();
+        }
+
+        // Make sure each row has the same number of stitches.
+        // NOTE: If not, hasEqualRowLengths() will return false,
+        // so that attempting to render the chart will generate an exception.
+        // Unrecognized abbreviations are left as null stitches by the parser,
+        // and reported by hasUnknownStitches() as well as by getErrors().
+        rowLengthsEqual = checkRowLengths();
+
+        // Row lengths are compared to the first row whose length is known, skipping rows
+        // with syntax errors that leave their length in doubt (such as a missing delimiter)
+        int expectedWidth = -1;
+        errors = new ArrayList<ParseError>();
         for (int i = 0; i < numberOfRows; i++)
         {
-            // Check each abbrevation in each row to see if it matches syntax for multiples
-            for (int j = 0; j < parsedInstructions.get(i).size(); j++)
+            boolean lengthKnown = true;
+            if (rowErrors != null && rowErrors[i] != null)
             {
-                // Get current abbrevation string
-                String instruction = parsedInstructions.get(i).get(j);
-                // See if it matches multiple syntax: upper or lowercase K or P followed by 1 or more digits
-                if (instruction.matches("[kKpP][1-9]+"))
+                for (ParseError error : rowErrors[i])
                 {
-                    // Extract stitch abbrevation from front
-                    String type = instruction.substring(0,1); 
-                    // Extract integer representing times to repeat
-                    int repeat = Integer.parseInt(instruction.substring(1));
-                    // Replace abbrevation representing multiple with one instance of stitch abbrevation
-                    parsedInstructions.get(i).set(j, type);
-                    // Insert second through nth instances following first instance
-                    for (int k = 1; k < repeat; k++)
-                    {
-                        parsedInstructions.get(i).add(j+k-1, type);
-                    }
+                    errors.add(error.atRow(i)); // Lines may have moved since they were parsed
+                    lengthKnown = lengthKnown && !error.getKind().isLengthUnknown();
                 }
             }
+            if (!lengthKnown)
+            {
+                continue;
+            }
+            if (expectedWidth < 0)
+            {
+                expectedWidth = rows[i].getWidth();
+            }
+            else if (rows[i].getWidth() != expectedWidth)
+            {
+                errors.add(new ParseError(i, ParseError.Kind.ROW_LENGTH, rows[i].getWidth() + " stitches, but earlier rows have " + expectedWidth));
+            }
         }
-        return parsedInstructions;    
+        Metrics.stop(check, numberOfRows, 0);
+    }
+
+    /**
+     * @return	Total number of stitches in all rows of the chart
+     */
+    long getTotalStitches()
+    {
+        long total = 0;
+        for (int i = 0; i < numberOfRows; i++)
+        {
+            total += rows[i].getWidth();
+        }
+        return total;
     }
 
     /**
      * Makes sure all rows are the same size. Returns true if so, false if not.
      *
-     * @param 	parsedInstructions	Knitting pattern instructions separated into individual
-     *								abbrevations with repeats and multiples parsed out
-     *
      * @return	True if all rows are the same size, false if not
      */
-    private boolean checkRowLengths(ArrayList<ArrayList<String>> parsedInstructions)
+    private boolean checkRowLengths()
     {
-        int previousRowLength = parsedInstructions.get(0).size(); // Length of first row
-        int currentRowLength = 0;
-        // Check second through nth rows to make sure they are the same length as the previous row
+        // Check second through nth rows to make sure they are the same length as the first row
         for (int i = 1; i < numberOfRows; i++)
         {
-            currentRowLength = parsedInstructions.get(i).size();
-            if (currentRowLength != previousRowLength)
+            if (rows[i].getWidth() != stitchesPerRow)
             {
                 return false;
             }
-            previousRowLength = currentRowLength;
         }
         return true;
     }
 
     /**
-     * Sets up the stitches array, a 2D array of the Stitch enum type representing
-     * the stitch symbols that correspond to the abbrevations in the parsedInstructions ArrayList
+     * Getter for errors found while parsing
      *
-     * @param 	parsedInstructions	Knitting pattern instructions separated into individual
-     *								abbrevations with repeats and multiples parsed out
-     */    
-    private void convertToStitches(ArrayList<ArrayList<String>> parsedInstructions)
+     * @return	Syntax errors and rows whose length does not match the earlier rows, in row order
+     */
+    public List<ParseError> getErrors()
     {
-        // Initialize stitches array with correct number of rows and stitches per row
-        stitches = new Stitch[numberOfRows][stitchesPerRow];
+        return errors;
+    }
 
-        // Loop through rows, and stitches in each row
+    /**
+     * @return	True if all rows have the same number of stitches, false if not
+     */
+    public boolean hasEqualRowLengths()
+    {
+        return rowLengthsEqual;
+    }
+
+    /**
+     * @return	True if any stitch is null because its abbreviation was not recognized
+     */
+    public boolean hasUnknownStitches()
+    {
         for (int i = 0; i < numberOfRows; i++)
         {
-            for (int j = 0; j < stitchesPerRow; j++)
+            if (rows[i].hasUnknownStitch())
             {
-                // For each stitch, loop through all the possible values of the Stitch enum type
-                for (Stitch stitch : Stitch.values())
-                {
-                    // If the name of a value in the Stitch enum type matches the abbrevation
-                    // of the current stitch in parsedInstructions, add that Stitch enum type
-                    // to the corresponding spot in the stitch array
-                    if (stitch.name().equalsIgnoreCase(parsedInstructions.get(i).get(j)))
-                    {
-                        stitches[i][j] = stitch;
-                    }
-                }
-                // NOTE: If a match is not found, this spot on the stitch array will be left empty
-                // generating an exception when the calling method attempts to render the chart.
+                return true;
             }
-            
         }
+        return false;
+    }
+
+    public int getNumberOfRows()
+    {
+        return numberOfRows;
+    }
+
+    public int getRowWidth(int row)
+    {
+        return rows[row].getWidth();
+    }
+
+    public Stitch getStitch(int row, int column)
+    {
+        return rows[row].getStitch(column);
+    }
+
+    /**
+     * Checks that each row works exactly the stitches made by the row before it
+     *
+     * @return	Result of the check, including the first row and stitch where the counts stop matching
+     */
+    public StitchCountCheck checkStitchCounts()
+    {
+        return new StitchCountCheck(this);
+    }
+
+    /**
+     * Getter for compiled row
+     *
+     * @param	row		Index of a row in the chart
+     *
+     * @return	Row in compiled form, with its repeats not written out
+     */
+    public RepeatGroup getRow(int row)
+    {
+        return rows[row];
+    }
+
+    /**
+     * Getter for the fully written out chart. It is written out from the
+     * compiled rows the first time it is requested.
+     *
+     * @return	Every stitch of the user-supplied knitting pattern instructions,
+     *			stored as one byte per stitch
+     */
+    public ChartGrid getGrid()
+    {
+        if (grid == null)
+        {
+            grid = new ChartGrid(this);
+        }
+        return grid;
     }
 
     /**
-     * Getter for stitch array
+     * Getter for stitch array, built from the fully written out chart
      *
      * @return	2D array with elements of enum type Stitch representing the rows
-     *			and individual stitches of the user-supplied knitting pattern instructions
+     *			and individual stitches of the user-supplied knitting pattern instructions,
+     *			or null if the rows are not all the same length
      */   
     public Stitch[][] getStitches ()
     {
+        if (!rowLengthsEqual)
+        {
+            return null;
+        }
+        ChartGrid grid = getGrid();
+        Stitch[][] stitches = new Stitch[numberOfRows][stitchesPerRow];
+        for (int i = 0; i < numberOfRows; i++)
+        {
+            for (int j = 0; j < stitchesPerRow; j++)
+            {
+                stitches[i][j] = grid.getStitch(i, j);
+            }
+        }
         return stitches;
     }
 
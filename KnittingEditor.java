@@ -5,29 +5,51 @@
  * This program translates knitting instructions written with standard stitch abbreviations
  * and syntax into corresponding charts of knitting stitch symbols.
  *
- * Users may create instructions from scratch within the GUI, or import text files to render.
+ * Users may create instructions from scratch within the GUI, or import text files to render,
+ * and may change stitches by clicking on them in the rendered chart. The instructions
+ * are saved in the background as they are edited (see Autosave), and work that was not
+ * saved when the editor last stopped is offered back when it starts. A folder of pattern
+ * files can be searched for a sequence of stitches (see PatternLibrary), and the chart
+ * can be compared with another version of the pattern (see PatternDiff).
  *
  */
 
 import javax.swing.*;
 import javax.swing.event.*;
+import javax.swing.text.*;
 import java.awt.event.*;
 import java.awt.*;
+import java.beans.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
-class KnittingEditor extends JFrame
+class KnittingEditor extends JFrame implements RenderListener
 {
-    private JTextArea instructionsPane = new JTextArea(""); // Text area for written instructions
-    private JPanel chart; // Panel for display of rendered knitting chart
+    private JTextArea instructionsPane = new JTextArea(new PatternDocument()); // Text area for written instructions
+    private ChartView chart = new ChartView(); // Component for display of rendered knitting chart
     private File currentFile = null; // File object representing imported file, or last saved file, used by save method
     private JFrame help; // Secondary JFrame to display help text
-    private final String HELP_TEXT = "<html>In order for your knitting instructions to be properly rendered into a chart, please observe the following guidelines:<br><br><ul><li>All rows must contain the same number of stitches<br><br></li><li>Each abbrevation should be followed by a comma and one space<br>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;E.g. k, p, ktog<br><br></li><li>Multiple knit or purl stitches may be denoted by K or P followed by a number<br>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;E.g. k6, p2<br><br></li><li>Repeated sequences may be enclosed by parentheses, brackets, or asterisks, followed by an indication of the number of times the sequence is to be repeated. Be sure the preceding abbrevation is followed by a comma.<br>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;E.g. k2, (yo, k2tog) 3 times, k2<br><br></li><li>The following abbrevations are currently recognized (case insensitive):<br><br><table><tr><th>STITCH NAME</th><th>ABBREVIATION</th><th>CHART SYMBOL</th></tr><tr><td>knit</td><td>k</td><td>[blank]</td></tr><tr><td>purl</td><td>p</td><td>*</td></tr><tr><td>yarn over</td><td>yo</td><td>O</td></tr><tr><td>knit 2 together</td><td>k2tog</td><td>/</td></tr><tr><td>slip, knit, pass</td><td>skp</td><td>\\</td></tr></table><br>(For quick reference you can mouse over a symbol in the rendered chart to view the name of the stitch it represents.)</li></ul></html>";
+    private JFrame diagnostics; // Secondary JFrame to display the time taken by each phase of parsing and rendering
+    private RenderWorker renderWorker; // Background parse of the chart currently being rendered, or null if none
+    private JProgressBar renderProgress = new JProgressBar(); // Shows progress of the current render
+    private JButton stopButton = new JButton("Stop"); // Cancels the current render
+    private JLabel statusLabel = new JLabel(" "); // Shows syntax errors found by the live preview, and stitch count mismatches
+    private LivePreview livePreview; // Updates the chart as the instructions are edited, when turned on
+    private ErrorHighlighter errorHighlighter; // Underlines errors found in the instructions
+    private ChartEditor chartEditor; // Changes stitches clicked on in the chart, and their abbreviations in the instructions
+    private EditHistory history; // Changes to the instructions and the chart, for undo and redo
+    private Autosave autosave; // Saves the instructions to currentFile in the background as they are edited
+    private PatternLibrary library; // Folder of pattern files searched by the "Library" button, or null until one is chosen
+    private int rowToShow = -1; // Row to select once the file being imported is shown, or -1 for none
+    private JCheckBox compiledCheckBox = new JCheckBox("Save chart", true); // Saves a compiled chart next to each saved file
+    private final String RENDER_ERROR = "Error: Unable to render knitting chart.\nPlease check your pattern syntax and abbrevations and retry.\n(Click the \"Help\" button to view pattern syntax rules\n and recognized stitch abbrevations.)";
+    private final String HELP_TEXT = "<html>In order for your knitting instructions to be properly rendered into a chart, please observe the following guidelines:<br><br><ul><li>All rows must contain the same number of stitches<br><br></li><li>Each abbrevation should be followed by a comma and one space<br>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;E.g. k, p, ktog<br><br></li><li>Multiple knit or purl stitches may be denoted by K or P followed by a number<br>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;E.g. k6, p2<br><br></li><li>Repeated sequences may be enclosed by parentheses, brackets, or asterisks, followed by an indication of the number of times the sequence is to be repeated. Be sure the preceding abbrevation is followed by a comma.<br>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;E.g. k2, (yo, k2tog) 3 times, k2<br><br></li><li>Repeated sequences may be nested inside each other, using a different delimiter for each level<br>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;E.g. [k1, (yo, k2tog) 3 times, p1] 5 times<br><br></li><li>The following abbrevations are currently recognized (case insensitive):<br><br><table><tr><th>STITCH NAME</th><th>ABBREVIATION</th><th>CHART SYMBOL</th></tr><tr><td>knit</td><td>k</td><td>[blank]</td></tr><tr><td>purl</td><td>p</td><td>*</td></tr><tr><td>yarn over</td><td>yo</td><td>O</td></tr><tr><td>knit 2 together</td><td>k2tog</td><td>/</td></tr><tr><td>slip, knit, pass</td><td>skp</td><td>\\</td></tr></table><br>(For quick reference you can mouse over a symbol in the rendered chart to view the name of the stitch it represents.)<br><br></li><li>To change a stitch, click on it in the rendered chart and choose a new stitch. The instructions are changed to match.<br><br></li><li>Changes to the instructions or the chart can be undone with Control+Z, and redone with Control+Y.<br><br></li><li>Your pattern is saved automatically as you work. If the editor closes unexpectedly, it offers to recover your changes the next time it starts.<br><br></li><li>To find the patterns in a folder that use a sequence of stitches, click \"Library\" and type the stitches as they would appear in a row (E.g. yo, k2tog, yo).<br><br></li><li>To see what changed in a revised pattern, click \"Compare\" and choose the other version. Changed rows are shown in yellow with the changed stitches in orange, added rows in green, and removed rows as a red line.</li></ul></html>";
 
     public KnittingEditor()
     {
         setTitle("Knitting Pattern Editor");
-        setSize(700,750);
+        setSize(900,750); // Wide enough for a single row of buttons
         setLocation(500,150);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         
@@ -37,12 +59,25 @@ class KnittingEditor extends JFrame
         JPanel panes = new JPanel(new GridLayout(2,1,0,0));
 
         JPanel chartArea = new JPanel(new BorderLayout());
+        JPanel chartHeader = new JPanel(new BorderLayout());
         JLabel chartLabel = new JLabel("Knitting Chart");
         chartLabel.setBorder(BorderFactory.createEmptyBorder(10, 20, 0, 0));
-        chartArea.add(chartLabel, BorderLayout.NORTH);
-        chart = new JPanel();
-        chart.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder(10,20,20,20), BorderFactory.createLineBorder(Color.BLACK,1)));
-        chartArea.add(chart, BorderLayout.CENTER);
+        chartHeader.add(chartLabel, BorderLayout.WEST);
+        chartHeader.add(createZoomControls(), BorderLayout.EAST);
+        chartArea.add(chartHeader, BorderLayout.NORTH);
+        JScrollPane chartScrollPane = new JScrollPane(chart);
+        chartScrollPane.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder(10,20,20,10), BorderFactory.createLineBorder(Color.BLACK,1)));
+        chartScrollPane.getViewport().setBackground(Color.WHITE);
+        chartArea.add(chartScrollPane, BorderLayout.CENTER);
+        ChartMinimap minimap = new ChartMinimap(chart);
+        minimap.setBorder(BorderFactory.createLineBorder(Color.BLACK,1));
+        JPanel minimapArea = new JPanel(new BorderLayout());
+        minimapArea.setBorder(BorderFactory.createEmptyBorder(10,0,20,20));
+        minimapArea.add(minimap, BorderLayout.NORTH);
+        chartArea.add(minimapArea, BorderLayout.EAST);
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(0, 20, 0, 20));
+        statusLabel.setForeground(Color.RED);
+        chartArea.add(statusLabel, BorderLayout.SOUTH);
         panes.add(chartArea);
 
         JPanel instructionsArea = new JPanel(new BorderLayout());
@@ -51,10 +86,15 @@ class KnittingEditor extends JFrame
         instructionsLabel.setOpaque(true);
         instructionsLabel.setBackground(Color.WHITE);
         instructionsArea.add(instructionsLabel, BorderLayout.NORTH);
-        instructionsPane = new JTextArea("");
+        instructionsPane = new JTextArea(new PatternDocument());
         instructionsPane.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder(10,20,20,20), BorderFactory.createLineBorder(Color.BLACK,1)));
         instructionsArea.add(instructionsPane, BorderLayout.CENTER);
         panes.add(instructionsArea);
+        errorHighlighter = new ErrorHighlighter(instructionsPane);
+        livePreview = new LivePreview(instructionsPane, chart, statusLabel, errorHighlighter);
+        history = new EditHistory(instructionsPane, livePreview);
+        chartEditor = new ChartEditor(instructionsPane, chart, livePreview, statusLabel, history);
+        autosave = new Autosave(instructionsPane);
 
         add(panes, BorderLayout.CENTER);
 
@@ -70,23 +110,30 @@ class KnittingEditor extends JFrame
             new ActionListener() 
             {
                 public void actionPerformed(ActionEvent e) {
-
-                    // Unless instructions pane is empty, ask if user wants 
-                    // to save current work before importing
-                    if (instructionsPane.getText().length() > 0)
+                    if (checkSaved())
                     {
-                        int choice = JOptionPane.showConfirmDialog(null, "Have you saved your work?\nUnsaved changes to your current pattern will be lost if you import a new file.\nClick YES to continue import, or NO to stop and save your current pattern first.", "Have you saved your work?", JOptionPane.YES_NO_CANCEL_OPTION);
-                        if (choice == JOptionPane.YES_OPTION)
-                        {
-                            importFile();
-                        }
-                        if (choice == JOptionPane.NO_OPTION)
-                        {
-                            saveAs();
-                            importFile();
-                        }
+                        importFile();
                     }
-                    else importFile();
+                }
+            });
+
+        // Library Button -- searches a folder of pattern files for a sequence of stitches
+        JButton libraryButton = new JButton("Library");
+        libraryButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    searchLibrary();
+                }
+            });
+
+        // Compare Button -- highlights the differences from another version of the pattern
+        JButton compareButton = new JButton("Compare");
+        compareButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    compareVersions();
                 }
             });
         
@@ -119,25 +166,44 @@ class KnittingEditor extends JFrame
             });
 
         // Render Button -- calls method to instantiate new Instructions object from
-        // text in instructions pane and display resulting chart in chart pane
+        // text in instructions pane (on a background thread) and display resulting chart in chart pane
         JButton renderButton = new JButton("Render");
         renderButton.addActionListener(
             new ActionListener() 
             {
                 public void actionPerformed(ActionEvent e) {
-                    String[] newText = parseInstructionsPane();
-                    try
-                    {
-                        renderChart(newText);
-                    }
-                    // Intended to catch various exceptions generated by the Intructions class
-                    // in case of syntax errors in the input text. Refer to the NOTE comments
-                    // and method headers in Instructions.java to see where parsing code 
-                    // may result in exceptions.
-                    catch (Exception ex)
-                    {
-                        JOptionPane.showMessageDialog(null, "Error: Unable to render knitting chart.\nPlease check your pattern syntax and abbrevations and retry.\n(Click the \"Help\" button to view pattern syntax rules\n and recognized stitch abbrevations.)");
-                    }
+                    renderChart(((PatternDocument) instructionsPane.getDocument()).getSnapshot());
+                }
+            });
+
+        // Stop Button -- cancels a render that is in progress
+        stopButton.setEnabled(false);
+        stopButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    stopRender();
+                }
+            });
+
+        // Live Preview Checkbox -- turns on or off updating the chart as the instructions are edited
+        final JCheckBox liveCheckBox = new JCheckBox("Live preview");
+        liveCheckBox.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    stopRender();
+                    livePreview.setEnabled(liveCheckBox.isSelected());
+                }
+            });
+
+        // Diagnostics Button - opens (makes visible) a JFrame showing the time taken by each phase
+        JButton diagnosticsButton = new JButton("Diagnostics");
+        diagnosticsButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    diagnostics.setVisible(true);
                 }
             });
 
@@ -152,13 +218,57 @@ class KnittingEditor extends JFrame
             });
 
         buttons.add(importFileButton);
+        buttons.add(libraryButton);
+        buttons.add(compareButton);
         buttons.add(saveButton);
         buttons.add(saveAsButton);
         buttons.add(renderButton);
+        buttons.add(stopButton);
+        buttons.add(liveCheckBox);
+        compiledCheckBox.setToolTipText("Also save the compiled chart, so the file opens without being parsed again");
+        buttons.add(compiledCheckBox);
         buttons.add(helpButton);
+        buttons.add(diagnosticsButton);
+        renderProgress.setStringPainted(true);
+        renderProgress.setVisible(false);
+        buttons.add(renderProgress);
 
         add(buttons, BorderLayout.SOUTH);
 
+        // Undo and redo -- Control+Z and Control+Y (or Control+Shift+Z), for changes made
+        // in the instructions pane or the chart (Command rather than Control on a Mac)
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        ActionListener undo = new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e) {
+                if (history.canUndo())
+                {
+                    history.undo();
+                }
+            }
+        };
+        ActionListener redo = new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e) {
+                if (history.canRedo())
+                {
+                    history.redo();
+                }
+            }
+        };
+        getRootPane().registerKeyboardAction(undo, KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        getRootPane().registerKeyboardAction(redo, KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        getRootPane().registerKeyboardAction(redo, KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut | InputEvent.SHIFT_DOWN_MASK), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+        // Save any edits not yet saved before the editor closes
+        addWindowListener(
+            new WindowAdapter()
+            {
+                public void windowClosing(WindowEvent e) {
+                    autosave.close();
+                }
+            });
+
         setVisible(true);
 
         //
@@ -166,7 +276,7 @@ class KnittingEditor extends JFrame
         //
         help = new JFrame();
         help.setLocation(575, 185);
-        help.setSize(470, 670);
+        help.setSize(470, 740);
         help.setTitle("Help");
         JLabel helpText = new JLabel(HELP_TEXT);
         helpText.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
@@ -176,181 +286,485 @@ class KnittingEditor extends JFrame
         help.add(helpText);
         help.setDefaultCloseOperation(HIDE_ON_CLOSE);
 
+        //
+        // Diagnostics panel
+        //
+        diagnostics = new JFrame();
+        diagnostics.setLocation(525, 185);
+        diagnostics.setTitle("Diagnostics");
+        diagnostics.add(new DiagnosticsPanel());
+        diagnostics.pack();
+        diagnostics.setDefaultCloseOperation(HIDE_ON_CLOSE);
+
+        loadStitchAbbreviations();
+        recoverAutosave();
+
         JOptionPane.showMessageDialog(this, "Welcome!\n\nTo begin, type your knitting pattern into the lower pane,\nthen click the \"Render\" button.\n\nOr click \"Import\" to open a pattern from a text file.");
 
     }
 
     /**
-     * Opens a file selected by the user through a file chooser dialog,
-     * extracts text from file into an array (one line per array element),
-     * displays text in instructions pane, and calls renderChart() method
-     * to show corresponding chart in chart pane
+     * Creates the buttons that zoom the chart in and out, and the label showing how far
+     * it is zoomed (the chart can also be zoomed with the mouse wheel while holding Control)
      */
-    private void importFile()
+    private JPanel createZoomControls()
     {
-        String[] stringArray = null; // Array to hold contents of file
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        controls.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 20));
 
-        // Open dialog so user can select file
-        JFileChooser chooser = new JFileChooser();
-        int returnVal = chooser.showOpenDialog(this);
-        if(returnVal == JFileChooser.APPROVE_OPTION) 
+        final JLabel zoomLabel = new JLabel(getZoomText());
+        chart.addPropertyChangeListener("zoom",
+            new PropertyChangeListener()
+            {
+                public void propertyChange(PropertyChangeEvent e) {
+                    zoomLabel.setText(getZoomText());
+                }
+            });
+
+        JButton zoomOutButton = new JButton("-");
+        zoomOutButton.setToolTipText("Zoom out");
+        zoomOutButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    chart.zoomOut();
+                }
+            });
+
+        JButton zoomInButton = new JButton("+");
+        zoomInButton.setToolTipText("Zoom in");
+        zoomInButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    chart.zoomIn();
+                }
+            });
+
+        JButton fitButton = new JButton("Fit");
+        fitButton.setToolTipText("Zoom to show the whole chart");
+        fitButton.addActionListener(
+            new ActionListener()
+            {
+                public void actionPerformed(ActionEvent e) {
+                    chart.zoomToFit();
+                }
+            });
+
+        controls.add(zoomOutButton);
+        controls.add(zoomLabel);
+        controls.add(zoomInButton);
+        controls.add(fitButton);
+        return controls;
+    }
+
+    /**
+     * @return	Size the chart is shown at, as a percentage of its normal size
+     */
+    private String getZoomText()
+    {
+        double percent = chart.getZoomPercent();
+        return (percent >= 10) ? String.format("%.0f%%", percent) : String.format("%.2g%%", percent);
+    }
+
+    /**
+     * Adds any user-defined stitch abbreviations in the StitchDictionary.CONFIG_FILE
+     * file in the working directory to the dictionary used to parse instructions
+     */
+    private void loadStitchAbbreviations()
+    {
+        File config = new File(StitchDictionary.CONFIG_FILE);
+        if (config.exists())
         {
-            // If user selects a file, create a Scanner out of it
-            currentFile = chooser.getSelectedFile();
-            Scanner s = null;
+            StitchDictionary dictionary = new StitchDictionary();
             try
             {
-                s = new Scanner(currentFile);
+                dictionary.load(config);
+                StitchDictionary.setDefault(dictionary);
             }
-            catch (FileNotFoundException e) {
-                JOptionPane.showMessageDialog(this, "Error: Unable to find the file " + "\"" + currentFile + "\".");
+            catch (IOException e)
+            {
+                JOptionPane.showMessageDialog(this, "Error: Unable to read stitch abbreviations from \"" + config + "\".");
             }
-
-            ArrayList<String> importedText = new ArrayList<String>();
-            if (!s.hasNext()) // If file has no content, report error to user
+            catch (IllegalArgumentException e)
             {
-                JOptionPane.showMessageDialog(this, "Error: File is empty or is not a recognized file type.");
+                JOptionPane.showMessageDialog(this, "Error: Unable to load stitch abbreviations from \"" + config + "\".\n" + e.getMessage());
             }
-            else  // Otherwise, build array of lines from file using ArrayList
+        }
+    }
+
+    /**
+     * Offers to recover instructions that had not been saved to their file (or that had
+     * never been saved to a file) when the editor last stopped (see Autosave), and starts
+     * saving the instructions pane
+     */
+    private void recoverAutosave()
+    {
+        Autosave.Recovery recovery = null;
+        try
+        {
+            recovery = Autosave.recover();
+        }
+        catch (IOException e)
+        {
+            // Nothing can be recovered
+        }
+        if (recovery != null)
+        {
+            String name = (recovery.getFile() == null) ? "your new pattern" : "\"" + recovery.getFile().getName() + "\"";
+            int choice = JOptionPane.showConfirmDialog(this, "Changes to " + name + " were not saved when the editor last closed.\nWould you like to recover them?", "Recover unsaved changes?", JOptionPane.YES_NO_OPTION);
+            if (choice == JOptionPane.YES_OPTION)
             {
-                while (s.hasNext())
-                {
-                    importedText.add(s.nextLine());
-                }
-                // Convert ArrayList to array
-                stringArray = new String[importedText.size()];
-                stringArray = importedText.toArray(stringArray);
-                // Add text from file to instructions pane
-                updateInstructionPane(stringArray);
-                // Call method to render chart out of instructions
+                PatternDocument document = new PatternDocument();
                 try
                 {
-                    renderChart(stringArray);
+                    document.insertString(0, recovery.getText(), null);
                 }
-                // Intended to catch various exceptions generated by the Intructions class
-                // in case of syntax errors in the input text. Refer to the NOTE comments 
-                // in Instructions.java to see where parsing code may result in exceptions.
-                catch (Exception ex)
+                catch (BadLocationException e)
                 {
-                    JOptionPane.showMessageDialog(null, "Error: Unable to render knitting chart.\nPlease check your pattern syntax and abbrevations and retry.\n(Click the \"Help\" button to view pattern syntax rules\n and recognized stitch abbrevations.)");
+                    throw new IllegalStateException(e); // Not reached: the document is empty
                 }
-
+                instructionsPane.setDocument(document);
+                currentFile = recovery.getFile();
+                // Characters of the file that could not be read are not written over
+                // until the user saves it; until then the text is kept in Autosave.UNTITLED_FILE
+                autosave.save(recovery.isDecodedCleanly() ? currentFile : null);
+                renderChart(document.getSnapshot());
+                return;
             }
         }
+        autosave.open(null, true);
     }
 
     /**
-     * Displays text from a supplied String array in the instructions pane
-     *
-     * @param	s	User-supplied knitting pattern instruction text from an imported file,
-     *				parsed into an array (one line of text per array item)
+     * Opens a file selected by the user through a file chooser dialog, and starts
+     * a render that reads the file on a background thread (see RenderWorker).
+     * Once it is read, renderFinished() displays the text of the file in the
+     * instructions pane and shows the corresponding chart in the chart pane.
      */
-    private void updateInstructionPane(String[] s)
+    private void importFile()
     {
-        StringBuilder instructionText = new StringBuilder();
-        for (String line : s)
+        // Open dialog so user can select file
+        JFileChooser chooser = new JFileChooser();
+        int returnVal = chooser.showOpenDialog(this);
+        if(returnVal == JFileChooser.APPROVE_OPTION) 
         {
-            instructionText.append(line);
-            instructionText.append("\n");
+            importFile(chooser.getSelectedFile(), -1);
         }
-        instructionsPane.setText(instructionText.toString());
     }
 
     /**
-     * Retrieves text from instructions pane and constructs a String array
-     * from it (one line per array element)
+     * Starts a render that reads a file on a background thread (see importFile())
      *
-     * @return	User-supplied knitting pattern instructions from Instructions Pane,
-     *			parsed into an array (one line of text per array item
+     * @param	file	File to open
+     * @param	row		Row to select once the file is shown, or -1 for none
      */
-    private String[] parseInstructionsPane()
+    private void importFile(File file, int row)
     {
-        Scanner s = new Scanner(instructionsPane.getText());
-        ArrayList<String> al = new ArrayList<String>();
-        while (s.hasNext())
+        if (!file.exists())
         {
-            al.add(s.nextLine());
-        }        
-        String[] a = new String[al.size()];
-        a = al.toArray(a);
-        return a;
+            JOptionPane.showMessageDialog(this, "Error: Unable to find the file " + "\"" + file + "\".");
+            return;
+        }
+        // currentFile is only changed once the file has been read and shown (see renderFinished()),
+        // so that a cancelled or failed import leaves the current pattern saved to its own file
+        rowToShow = row;
+        startRender(new RenderWorker(file, this));
     }
 
     /**
-     * Renders knitting chart corresponding to the text of a supplied String array
-     * Creates a new Instructions object, then gets a 2D array of the Enum class Stitches
-     * from the object. Loops through array and prints the symbol field of each Stitch in the chart.
-     *
-     * @param	s						User-supplied knitting pattern instruction text,  
-     *									from imported file or instructions pane
-     *
-     * @throws	NullPointerException 	Thrown if an item in the stitches array is null,
-     *									as a result of an unrecognized stitch abbrevation or
-     *									syntax error, or unequal row lengths. Indicates a user syntax error.
+     * Unless the instructions pane is empty, asks if the user wants to save their current
+     * work before a file is imported (work in a file is saved to it automatically)
      *
-     * (This method will also bubble up exceptions thrown by the processRepeats method in the 
-     * Instructions class, which is called by its constructor.)
+     * @return	True to go on with the import
      */
-    private void renderChart(String[] s)
+    private boolean checkSaved()
     {
-        // Create an Instructions object out of the supplied String array of text instructions
-        Instructions inst = new Instructions(s);
-        
-        // Get 2D array of Stitches from Instructions object
-        Stitch[][] stitches = inst.getStitches();
+        if (currentFile == null && instructionsPane.getDocument().getLength() > 0)
+        {
+            int choice = JOptionPane.showConfirmDialog(null, "Have you saved your work?\nUnsaved changes to your current pattern will be lost if you import a new file.\nClick YES to continue import, or NO to stop and save your current pattern first.", "Have you saved your work?", JOptionPane.YES_NO_CANCEL_OPTION);
+            if (choice == JOptionPane.NO_OPTION)
+            {
+                saveAs();
+            }
+            return choice != JOptionPane.CANCEL_OPTION && choice != JOptionPane.CLOSED_OPTION;
+        }
+        return true;
+    }
+
+    /**
+     * Searches a folder of pattern files for a sequence of stitches, asking for the folder
+     * the first time. The folder's index is brought up to date and searched on a background
+     * thread (see PatternLibrary), and the rows found are listed; choosing one imports its
+     * file and selects the row.
+     */
+    private void searchLibrary()
+    {
+        if (library == null)
+        {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Choose the folder holding your patterns");
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            {
+                return;
+            }
+            library = new PatternLibrary(chooser.getSelectedFile());
+        }
+        final String stitches = JOptionPane.showInputDialog(this, "Find the patterns in \"" + library.getDirectory().getName() + "\" that use the stitches:\n(E.g. yo, k2tog, yo)", "Search library", JOptionPane.QUESTION_MESSAGE);
+        if (stitches == null || stitches.trim().length() == 0)
+        {
+            return;
+        }
+
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<java.util.List<PatternLibrary.Match>, Void>()
+        {
+            protected java.util.List<PatternLibrary.Match> doInBackground() throws IOException
+            {
+                // Only the files changed since the last search are indexed again
+                library.update();
+                return library.find(stitches, PatternLibrary.MAX_RESULTS);
+            }
 
-        // Determine number of rows and stitches per row based on array size
-        int numberOfRows = stitches.length;
-        int stitchesPerRow = stitches[0].length;
+            protected void done()
+            {
+                setCursor(Cursor.getDefaultCursor());
+                java.util.List<PatternLibrary.Match> matches;
+                try
+                {
+                    matches = get();
+                }
+                catch (InterruptedException e)
+                {
+                    return; // Not reached: get() does not block once the worker is done
+                }
+                catch (ExecutionException e)
+                {
+                    if (e.getCause() instanceof IllegalArgumentException)
+                    {
+                        JOptionPane.showMessageDialog(KnittingEditor.this, "Error: Unable to read the stitches to find.\n" + e.getCause().getMessage());
+                    }
+                    else
+                    {
+                        JOptionPane.showMessageDialog(KnittingEditor.this, "Error: Unable to index the library.\n" + e.getCause().getMessage());
+                    }
+                    return;
+                }
+                showLibraryMatches(matches);
+            }
+        }.execute();
+    }
 
-        // Clear current contents of chart pane, add new GridLayout
-        // based on number of rows and stitches per row
-        chart.removeAll();
-        chart.setLayout(new GridLayout(numberOfRows, stitchesPerRow,0,0));
+    /**
+     * Lists the rows found by a library search, and imports the file of the one chosen
+     */
+    private void showLibraryMatches(java.util.List<PatternLibrary.Match> matches)
+    {
+        if (matches.isEmpty())
+        {
+            JOptionPane.showMessageDialog(this, "No patterns in the library use those stitches.");
+            return;
+        }
+        JList<PatternLibrary.Match> list = new JList<PatternLibrary.Match>(matches.toArray(new PatternLibrary.Match[matches.size()]));
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setSelectedIndex(0);
+        list.setVisibleRowCount(15);
+        String found = (matches.size() == PatternLibrary.MAX_RESULTS) ? "The first " + matches.size() + " rows found" : matches.size() + " rows found";
+        int choice = JOptionPane.showConfirmDialog(this, new Object[] {found + ". Choose one to open:", new JScrollPane(list)},
+                "Search library", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice == JOptionPane.OK_OPTION && list.getSelectedValue() != null && checkSaved())
+        {
+            importFile(list.getSelectedValue().getFile(), list.getSelectedValue().getRow());
+        }
+    }
 
-        // Loop through 2D array of stitches to create an item for each stitch
-        // and add it to the layout
-        JLabel jl;
+    /**
+     * Compares the chart shown with another version of the pattern chosen by the user.
+     * The other version is read and compared on a background thread (see PatternDiff),
+     * then the rows and stitches that differ are highlighted in the chart, and the first
+     * row that changed is selected in the instructions.
+     */
+    private void compareVersions()
+    {
+        final Chart shown = chart.getChart();
+        if (shown == null)
+        {
+            JOptionPane.showMessageDialog(this, "Error: Render a chart before comparing it with another version.");
+            return;
+        }
+        JFileChooser chooser = new JFileChooser(currentFile);
+        chooser.setDialogTitle("Choose the version of the pattern to compare with");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+        {
+            return;
+        }
+        final File file = chooser.getSelectedFile();
 
-        // Knitting charts are read from the bottom up, so outer loop counts
-        // down from the last row to the first
-        for (int i = numberOfRows-1; i >= 0; i--)
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<PatternDiff, Void>()
         {
-            // Knitting charts are read right to left, then left to right, alternating rows
-            if (i%2 == 0) // right to left
+            protected PatternDiff doInBackground() throws IOException
             {
-                for (int j = stitchesPerRow-1; j >= 0; j--)
+                return new PatternDiff(PatternDiff.read(file), shown);
+            }
+
+            protected void done()
+            {
+                setCursor(Cursor.getDefaultCursor());
+                PatternDiff differences;
+                try
                 {
-                    // Set label text to stitch symbol
-                    jl = new JLabel(stitches[i][j].getSymbol(), SwingConstants.CENTER);
-                    jl.setBorder(BorderFactory.createLineBorder(Color.BLACK,1));
-                    // Set tooltip to stitch name for mouseover reference
-                    String stitchName = stitches[i][j].getStitchName();
-                    jl.setToolTipText(stitchName);
-                    chart.add(jl);
+                    differences = get();
                 }
+                catch (InterruptedException e)
+                {
+                    return; // Not reached: get() does not block once the worker is done
+                }
+                catch (ExecutionException e)
+                {
+                    JOptionPane.showMessageDialog(KnittingEditor.this, "Error: Unable to read the file " + "\"" + file + "\".\n" + e.getCause().getMessage());
+                    return;
+                }
+                if (chart.getChart() != shown)
+                {
+                    JOptionPane.showMessageDialog(KnittingEditor.this, "The chart changed while it was being compared. Please compare it again.");
+                    return;
+                }
+                chart.setDifferences(differences);
+
+                int row = differences.nextDifference(0);
+                if (row < 0)
+                {
+                    row = Math.min(differences.nextRemoval(0), differences.getNumberOfRows() - 1);
+                }
+                if (row >= 0 && row < instructionsPane.getLineCount())
+                {
+                    Element line = instructionsPane.getDocument().getDefaultRootElement().getElement(row);
+                    instructionsPane.requestFocusInWindow();
+                    instructionsPane.select(line.getStartOffset(), line.getEndOffset() - 1);
+                }
+                JOptionPane.showMessageDialog(KnittingEditor.this, "Compared with \"" + file.getName() + "\": " + differences + ".");
+            }
+        }.execute();
+    }
+
+    /**
+     * Renders knitting chart corresponding to instructions text.
+     * The instructions are parsed on a background thread (see RenderWorker), and
+     * the resulting chart is displayed by renderFinished() once it is ready.
+     * Any render already in progress is cancelled.
+     *
+     * @param	text	User-supplied knitting pattern instruction text from instructions pane
+     *					(a snapshot of its document, so the pane can still be edited while it is parsed)
+     */
+    private void renderChart(Rope text)
+    {
+        startRender(new RenderWorker(text, this));
+    }
+
+    /**
+     * Cancels any render in progress and starts a new one
+     */
+    private void startRender(RenderWorker worker)
+    {
+        stopRender();
+        renderWorker = worker;
+        renderProgress.setIndeterminate(false);
+        renderProgress.setValue(0);
+        renderProgress.setString("Parsing...");
+        renderProgress.setVisible(true);
+        stopButton.setEnabled(true);
+        worker.execute();
+    }
+
+    /**
+     * Cancels the render in progress, if any, leaving the current chart displayed
+     */
+    private void stopRender()
+    {
+        if (renderWorker != null)
+        {
+            renderWorker.cancel(false);
+            renderWorker = null;
+        }
+        renderProgress.setVisible(false);
+        stopButton.setEnabled(false);
+    }
+
+    /**
+     * Shows how many rows of the current render have been parsed
+     */
+    public void renderProgress(int rowsParsed, int numberOfRows)
+    {
+        // The number of rows in a file is not known until it has all been read
+        renderProgress.setIndeterminate(numberOfRows == 0);
+        if (numberOfRows == 0)
+        {
+            renderProgress.setString("Row " + rowsParsed);
+        }
+        else
+        {
+            renderProgress.setMaximum(numberOfRows);
+            renderProgress.setValue(rowsParsed);
+            renderProgress.setString("Row " + rowsParsed + " of " + numberOfRows);
+        }
+    }
+
+    /**
+     * Displays the chart produced by the current render, or tells the user
+     * why the instructions could not be rendered
+     */
+    public void renderFinished(RenderResult result)
+    {
+        renderWorker = null;
+        renderProgress.setVisible(false);
+        stopButton.setEnabled(false);
+
+        // Display the text of an imported file (restarting the live preview, if it is on,
+        // so that it follows the new document)
+        if (result.getDocument() != null)
+        {
+            boolean live = livePreview.isEnabled();
+            livePreview.setEnabled(false);
+            instructionsPane.setDocument(result.getDocument());
+            livePreview.setEnabled(live);
+            currentFile = result.getFile();
+            autosave.open(currentFile, result.isDecodedCleanly());
+            if (!result.isDecodedCleanly())
+            {
+                JOptionPane.showMessageDialog(this, "Some characters in \"" + currentFile.getName() + "\" are not UTF-8 text, and are shown as \uFFFD.\nChanges will not be saved to the file automatically. Saving it replaces those characters.");
             }
-            else // left to right
+
+            // Select the row found by a library search
+            if (rowToShow >= 0 && rowToShow < instructionsPane.getLineCount())
             {
-                for (int j = 0; j < stitchesPerRow; j++)
-                {
-                    jl = new JLabel(stitches[i][j].getSymbol(), SwingConstants.CENTER);            
-                    jl.setBorder(BorderFactory.createLineBorder(Color.BLACK,1));
-                    String stitchName = stitches[i][j].getStitchName();
-                    jl.setToolTipText(stitchName);
-                    chart.add(jl);
-               }
+                Element line = instructionsPane.getDocument().getDefaultRootElement().getElement(rowToShow);
+                instructionsPane.requestFocusInWindow();
+                instructionsPane.select(line.getStartOffset(), line.getEndOffset() - 1);
             }
-            // NOTE: One or more elements in stitches array may be null if the 
-            // convertToStitches method in the Instructions class was unable 
-            // to match an abbrevation to a Stitch enum type, or if a false result
-            // from checkRowLengths() in Instructions class prevented the convertToStitches
-            // method from being called. This will cause a NullPointerException to be thrown
-            // to the method that called renderChart(), generating an error message to the user.
+            rowToShow = -1;
+        }
+
+        // Underline the errors (if any) in the instructions, and report a stitch count mismatch
+        // in a chart that was rendered (the live preview, if it is on, reports them itself)
+        if (!livePreview.isEnabled())
+        {
+            errorHighlighter.setErrors(result.getErrors());
+            statusLabel.setText((result.isSuccessful() && !result.getErrors().isEmpty()) ? result.getErrors().get(0).toString() : " ");
         }
 
-        // Redraw JFrame with new UI
-        SwingUtilities.updateComponentTreeUI(this);
+        if (result.isSuccessful())
+        {
+            // Only the stitches in view are painted, so the time taken to
+            // display the chart does not depend on its size
+            chart.setChart(result.getGrid());
+            chartEditor.chartRendered();
+        }
+        else
+        {
+            JOptionPane.showMessageDialog(this, RENDER_ERROR + "\n\n" + result.getErrorMessage());
+        }
     }
 
     /**
@@ -369,25 +783,100 @@ class KnittingEditor extends JFrame
     }
 
     /**
-     * Saves contents of instructions pane to a file
+     * Saves contents of instructions pane to a file, which is autosaved to from then on.
+     * The file is written on the autosave thread (see Autosave), so the editor can still
+     * be used while a large pattern is saved.
      *
      * @param	f	File object that current contents of instructions pane should be saved to
      */
-    private void save(File f)
+    private void save(final File f)
     {
-        FileWriter fw = null;
-        try
+        final Future<Autosave.Snapshot> saved = autosave.save(f);
+        new SwingWorker<Autosave.Snapshot, Void>()
         {
-            fw = new FileWriter(f);
-            fw.write(instructionsPane.getText());
-            fw.close();
-        }
-        catch (IOException e) 
+            protected Autosave.Snapshot doInBackground() throws Exception
+            {
+                return saved.get();
+            }
+
+            protected void done()
+            {
+                Autosave.Snapshot snapshot;
+                try
+                {
+                    snapshot = get();
+                }
+                catch (InterruptedException e)
+                {
+                    return; // Not reached: get() does not block once the worker is done
+                }
+                catch (ExecutionException e)
+                {
+                    JOptionPane.showMessageDialog(KnittingEditor.this, "Error: Unable to save file.");
+                    return;
+                }
+                if (compiledCheckBox.isSelected())
+                {
+                    saveCompiledChart(f, snapshot.getText(), snapshot.getLength(), snapshot.getChecksum());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Parses the saved instructions on a background thread and saves the resulting
+     * chart next to the file (see CompiledChart). Nothing is saved if the instructions
+     * contain errors, and any older compiled chart is removed, since it no longer matches.
+     *
+     * @param	f				File the instructions were saved to
+     * @param	text			Instructions that were saved
+     * @param	textLength		Length in bytes of the saved file
+     * @param	textChecksum	CRC32 checksum of the saved file
+     */
+    private void saveCompiledChart(final File f, final Rope text, final long textLength, final long textChecksum)
+    {
+        new SwingWorker<Void, Void>()
         {
-            JOptionPane.showMessageDialog(this, "Error: Unable to save file.");
-        }
-        
+            protected Void doInBackground() throws IOException
+            {
+                // Lines are compiled the same way as when the file is imported
+                RowCollector collector = new RowCollector();
+                for (int i = 0; i < text.getLineCount(); i++)
+                {
+                    collector.line(text.getLine(i));
+                }
+
+                Instructions inst = collector.isEmpty() ? null : collector.getInstructions();
+                if (inst == null || !inst.getErrors().isEmpty() || inst.hasUnknownStitches())
+                {
+                    CompiledChart.fileFor(f).delete();
+                }
+                else
+                {
+                    CompiledChart.save(inst, f, textLength, textChecksum);
+                }
+                return null;
+            }
+
+            protected void done()
+            {
+                try
+                {
+                    get();
+                }
+                catch (InterruptedException e)
+                {
+                    // Not reached: get() does not block once the worker is done
+                }
+                catch (ExecutionException e)
+                {
+                    CompiledChart.fileFor(f).delete();
+                    JOptionPane.showMessageDialog(KnittingEditor.this, "Error: Unable to save compiled chart.\nThe pattern itself was saved.");
+                }
+            }
+        }.execute();
     }
+
     /**
      * Main method - creates a new object of the KnittingEditor class
      */
@@ -0,0 +1,19 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This interface receives the lines of a pattern file one at a time
+ * as they are read by a PatternReader.
+ */
+
+interface LineHandler
+{
+    /**
+     * Called for each line of the file, in order
+     *
+     * @param	line	Text of the line, without its line break
+     *
+     * @return	True to continue reading, false to stop
+     */
+    boolean line(String line);
+}
\ No newline at end of file
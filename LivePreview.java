@@ -0,0 +1,288 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class keeps the chart up to date as the user types in the instructions pane.
+ *
+ * It listens for changes to the instructions pane's document, works out which lines
+ * were changed, and parses only those lines again (looking them up in a RowCache first,
+ * so lines that were already parsed are not parsed again). Only the chart rows for the
+ * changed lines are repainted, unless the number of rows or their length changed.
+ * Errors found in the instructions are underlined in the instructions pane, and the
+ * first of them is shown below the chart.
+ *
+ */
+
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.text.*;
+import java.util.*;
+
+class LivePreview implements DocumentListener
+{
+    private final JTextArea pane; // Instructions pane being previewed
+    private final ChartView view; // Chart pane to keep up to date
+    private final JLabel status; // Label for syntax errors found in the instructions
+    private final ErrorHighlighter highlighter; // Underlines syntax errors in the instructions pane
+    private final RowCache cache = new RowCache(new RowParser(), RowCache.DEFAULT_CAPACITY);
+    private final ArrayList<RepeatGroup> rows = new ArrayList<RepeatGroup>(); // Compiled row for each line of the document
+    private final ArrayList<ParseError[]> errors = new ArrayList<ParseError[]>(); // Syntax errors for each line of the document, or null if none
+    private Document document; // Document being listened to, or null if the preview is off
+    private int holds; // Number of calls to holdUpdates() not yet matched by releaseUpdates()
+    private int heldFirstLine = -1; // First line changed while updates were held back, or -1 if none
+    private int heldLastLine; // Last line changed while updates were held back
+    private boolean heldLinesMoved; // True if lines were added or removed while updates were held back
+
+    /**
+     * Constructor
+     *
+     * @param	pane			Instructions pane to preview
+     * @param	view			Chart pane to display the preview in
+     * @param	status			Label to display syntax errors in
+     * @param	highlighter		Highlighter to underline syntax errors in the pane with
+     */
+    public LivePreview (JTextArea pane, ChartView view, JLabel status, ErrorHighlighter highlighter)
+    {
+        this.pane = pane;
+        this.view = view;
+        this.status = status;
+        this.highlighter = highlighter;
+    }
+
+    /**
+     * Turns the preview on (parsing the whole document and displaying its chart) or off
+     *
+     * @param	on	True to turn the preview on, false to turn it off
+     */
+    public void setEnabled(boolean on)
+    {
+        if (document != null)
+        {
+            document.removeDocumentListener(this);
+            document = null;
+            rows.clear();
+            errors.clear();
+            cache.clear();
+            status.setText(" ");
+            highlighter.clear();
+        }
+        if (on)
+        {
+            document = pane.getDocument();
+            document.addDocumentListener(this);
+            int lines = document.getDefaultRootElement().getElementCount();
+            replaceLines(0, 0, lines);
+            refresh(0, lines - 1, true);
+        }
+    }
+
+    /**
+     * @return	True if the preview is on
+     */
+    public boolean isEnabled()
+    {
+        return document != null;
+    }
+
+    public void insertUpdate(DocumentEvent e)
+    {
+        linesChanged(e);
+    }
+
+    public void removeUpdate(DocumentEvent e)
+    {
+        linesChanged(e);
+    }
+
+    public void changedUpdate(DocumentEvent e)
+    {
+        // Attribute changes do not affect the instructions text
+    }
+
+    /**
+     * Works out which lines were changed by an edit, and parses and repaints them
+     */
+    private void linesChanged(DocumentEvent e)
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.LIVE_PREVIEW);
+        Element root = document.getDefaultRootElement();
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (change != null)
+        {
+            // Lines were added or removed: the change lists the lines replaced and their replacements
+            int first = change.getIndex();
+            int added = change.getChildrenAdded().length;
+            int removed = change.getChildrenRemoved().length;
+            replaceLines(first, removed, added);
+            changed(first, first + added - 1, added != removed);
+            Metrics.stop(m, added, 0);
+        }
+        else
+        {
+            // Text was changed within a single line
+            int line = root.getElementIndex(e.getOffset());
+            replaceLines(line, 1, 1);
+            changed(line, line, false);
+            Metrics.stop(m, 1, 0);
+        }
+    }
+
+    /**
+     * Holds back updates to the chart until releaseUpdates() is called, while a change
+     * that is made up of several edits to the document is made (such as replacing
+     * some characters, which removes them and then inserts their replacement). The
+     * changed lines are still parsed as each edit is made, but the chart is only
+     * updated once, for the whole change. Calls may be nested.
+     */
+    public void holdUpdates()
+    {
+        holds++;
+    }
+
+    /**
+     * Updates the chart for the lines changed since holdUpdates() was called,
+     * once every call to it has been released
+     */
+    public void releaseUpdates()
+    {
+        holds--;
+        if (holds > 0)
+        {
+            return;
+        }
+        if (heldFirstLine >= 0 && document != null)
+        {
+            refresh(heldFirstLine, heldLastLine, heldLinesMoved);
+        }
+        heldFirstLine = -1;
+    }
+
+    /**
+     * Updates the chart for some changed lines, unless updates are being held back
+     *
+     * @param	firstLine		Index of the first changed line
+     * @param	lastLine		Index of the last changed line
+     * @param	linesMoved		True if lines were added or removed, moving the lines after them
+     */
+    private void changed(int firstLine, int lastLine, boolean linesMoved)
+    {
+        if (holds == 0)
+        {
+            refresh(firstLine, lastLine, linesMoved);
+            return;
+        }
+        if (heldFirstLine < 0)
+        {
+            heldFirstLine = firstLine;
+            heldLastLine = lastLine;
+            heldLinesMoved = linesMoved;
+        }
+        else
+        {
+            heldFirstLine = Math.min(heldFirstLine, firstLine);
+            heldLastLine = Math.max(heldLastLine, lastLine);
+            heldLinesMoved = heldLinesMoved || linesMoved;
+        }
+    }
+
+    /**
+     * Replaces the compiled rows for some lines with newly parsed rows
+     *
+     * @param	first		Index of the first line replaced
+     * @param	removed		Number of lines that were replaced
+     * @param	added		Number of lines that replace them
+     */
+    private void replaceLines(int first, int removed, int added)
+    {
+        rows.subList(first, first + removed).clear();
+        errors.subList(first, first + removed).clear();
+
+        ArrayList<RepeatGroup> newRows = new ArrayList<RepeatGroup>(added);
+        ArrayList<ParseError[]> newErrors = new ArrayList<ParseError[]>(added);
+        for (int i = first; i < first + added; i++)
+        {
+            newRows.add(cache.get(getLine(i), i));
+            newErrors.add(cache.getErrors());
+        }
+        rows.addAll(first, newRows);
+        errors.addAll(first, newErrors);
+    }
+
+    /**
+     * Gets the text of a line of the document, without its line break
+     */
+    private String getLine(int line)
+    {
+        Element element = document.getDefaultRootElement().getElement(line);
+        int start = element.getStartOffset();
+        int end = Math.min(element.getEndOffset(), document.getLength() + 1) - 1;
+        try
+        {
+            String text = document.getText(start, end - start);
+            // Lines saved on other systems may end with a carriage return
+            if (text.endsWith("\r"))
+            {
+                text = text.substring(0, text.length() - 1);
+            }
+            return text;
+        }
+        catch (BadLocationException e)
+        {
+            throw new IllegalStateException(e); // Not reached: offsets come from the document's own elements
+        }
+    }
+
+    /**
+     * Displays the updated chart, repainting only the rows for the changed lines
+     * unless the number of rows changed
+     *
+     * @param	firstLine		Index of the first changed line
+     * @param	lastLine		Index of the last changed line
+     * @param	linesMoved		True if lines were added or removed, moving the lines after them
+     */
+    private void refresh(int firstLine, int lastLine, boolean linesMoved)
+    {
+        // Blank lines at the end of the instructions are not rows of the pattern
+        int numberOfRows = rows.size();
+        while (numberOfRows > 0 && getLine(numberOfRows - 1).trim().length() == 0)
+        {
+            numberOfRows--;
+        }
+        Instructions inst = new Instructions(rows.subList(0, numberOfRows).toArray(new RepeatGroup[numberOfRows]),
+                errors.subList(0, numberOfRows).toArray(new ParseError[numberOfRows][]));
+
+        if (linesMoved)
+        {
+            view.setChart(inst);
+        }
+        else
+        {
+            view.updateChart(inst, firstLine, Math.min(lastLine, numberOfRows - 1));
+        }
+
+        // Underline every syntax error and row length mismatch, and report the first
+        highlighter.setErrors(inst.getErrors());
+        if (!inst.getErrors().isEmpty())
+        {
+            status.setText(inst.getErrors().get(0).toString());
+        }
+        else if (inst.hasUnknownStitches())
+        {
+            status.setText("The pattern contains an unrecognized stitch abbreviation.");
+        }
+        else
+        {
+            // Once the rows parse, check that each works the stitches made by the row before it
+            ParseError mismatch = inst.checkStitchCounts().getError();
+            if (mismatch != null)
+            {
+                highlighter.setErrors(Collections.singletonList(mismatch));
+                status.setText(mismatch.toString());
+            }
+            else
+            {
+                status.setText(" ");
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,282 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class records how long each phase of parsing and rendering a chart takes, how
+ * many rows and stitches it handles, and how many bytes are allocated while it runs.
+ * Each phase is measured like this:
+ *
+ *      Metrics.Measurement m = Metrics.start(Metrics.PARSE);
+ *      ...
+ *      Metrics.stop(m, rows, stitches);
+ *
+ * Measurements are totalled per phase in a registry (shown in the editor by the
+ * DiagnosticsPanel class, and written to a file with dump()) while recording is turned
+ * on, and are also sent to Java Flight Recorder as PhaseEvents while a flight recording
+ * is running. When neither is on, start() returns null without reading the clock, and
+ * stop() does nothing, so leaving the measurements in place costs almost nothing.
+ *
+ * A phase that is done a little at a time inside another, as lines are parsed while a
+ * file is being read (see RowCollector), is timed by the code doing it and totalled with
+ * record() instead, and that time is left out of the enclosing phase.
+ *
+ * Recording can be turned on at startup with -Dknittingeditor.metrics=true.
+ *
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import jdk.jfr.*;
+
+class Metrics
+{
+    // Phases of parsing and rendering
+    public static final String READ_FILE = "read file";
+    public static final String PARSE = "parse";
+    public static final String CHECK_ROWS = "check rows";
+    public static final String LIVE_PREVIEW = "live preview";
+    public static final String WRITE_GRID = "write out grid";
+    public static final String PAINT = "paint";
+    public static final String EXPORT = "export";
+    public static final String LOAD_COMPILED = "load compiled chart";
+    public static final String SAVE_COMPILED = "save compiled chart";
+    public static final String SUMMARIZE = "summarize chart";
+    public static final String AUTOSAVE = "autosave";
+    public static final String INDEX_PATTERN = "index library pattern";
+    public static final String SEARCH_LIBRARY = "search library";
+    public static final String COMPARE = "compare versions";
+
+    private static volatile boolean enabled = Boolean.getBoolean("knittingeditor.metrics");
+    private static final EventType PHASE_EVENT = EventType.getEventType(PhaseEvent.class); // Tells whether a flight recording wants PhaseEvents
+    private static final LinkedHashMap<String, PhaseTotals> phases = new LinkedHashMap<String, PhaseTotals>(); // Totals for each phase, in the order first measured
+
+    /**
+     * A phase that has been started but not yet stopped
+     */
+    static class Measurement
+    {
+        private final String phase;
+        private final PhaseEvent event;
+        private final long startTime;
+        private final long startBytes;
+
+        private Measurement (String phase, PhaseEvent event)
+        {
+            this.phase = phase;
+            this.event = event;
+            event.begin();
+            startBytes = getAllocatedBytes();
+            startTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Totals of all the measurements of one phase
+     */
+    private static class PhaseTotals
+    {
+        int count;
+        long nanos;
+        long maxNanos;
+        long rows;
+        long stitches;
+        long bytes;
+    }
+
+    /**
+     * Starts measuring a phase
+     *
+     * @param	phase	Name of the phase (one of the constants of this class)
+     *
+     * @return	Measurement to pass to stop(), or null if nothing is being recorded
+     */
+    public static Measurement start(String phase)
+    {
+        // Check before creating the event, so that nothing is allocated when neither is on
+        if (!enabled && !PHASE_EVENT.isEnabled())
+        {
+            return null;
+        }
+        return new Measurement(phase, new PhaseEvent());
+    }
+
+    /**
+     * Finishes measuring a phase, and records the measurement
+     *
+     * @param	m			Measurement returned by start(), or null
+     * @param	rows		Number of rows handled by the phase
+     * @param	stitches	Number of stitches handled by the phase
+     */
+    public static void stop(Measurement m, int rows, long stitches)
+    {
+        stop(m, rows, stitches, 0);
+    }
+
+    /**
+     * Finishes measuring a phase that another phase was done inside of, and records the
+     * measurement without the time taken by the other phase (see record()). The PhaseEvent
+     * sent to a flight recording still covers the whole time.
+     *
+     * @param	m				Measurement returned by start(), or null
+     * @param	rows			Number of rows handled by the phase
+     * @param	stitches		Number of stitches handled by the phase
+     * @param	excludedNanos	Nanoseconds taken by the other phase
+     */
+    public static void stop(Measurement m, int rows, long stitches, long excludedNanos)
+    {
+        if (m == null)
+        {
+            return;
+        }
+        long nanos = Math.max(System.nanoTime() - m.startTime - excludedNanos, 0);
+        long bytes = (m.startBytes < 0) ? 0 : Math.max(getAllocatedBytes() - m.startBytes, 0);
+
+        m.event.end();
+        if (m.event.shouldCommit())
+        {
+            m.event.phase = m.phase;
+            m.event.rows = rows;
+            m.event.stitches = stitches;
+            m.event.allocated = bytes;
+            m.event.commit();
+        }
+
+        if (enabled)
+        {
+            total(m.phase, nanos, rows, stitches, bytes);
+        }
+    }
+
+    /**
+     * Records a phase that was timed by the code doing it, a little at a time, rather than
+     * with start() and stop(). Only the registry is updated: the bytes allocated are not
+     * measured, and nothing is sent to a flight recording.
+     *
+     * @param	phase		Name of the phase (one of the constants of this class)
+     * @param	nanos		Nanoseconds taken by the phase
+     * @param	rows		Number of rows handled by the phase
+     * @param	stitches	Number of stitches handled by the phase
+     */
+    public static void record(String phase, long nanos, int rows, long stitches)
+    {
+        if (enabled)
+        {
+            total(phase, nanos, rows, stitches, 0);
+        }
+    }
+
+    /**
+     * Adds a measurement to the totals of its phase
+     */
+    private static void total(String phase, long nanos, int rows, long stitches, long bytes)
+    {
+        synchronized (phases)
+        {
+            PhaseTotals totals = phases.get(phase);
+            if (totals == null)
+            {
+                totals = new PhaseTotals();
+                phases.put(phase, totals);
+            }
+            totals.count++;
+            totals.nanos += nanos;
+            totals.maxNanos = Math.max(totals.maxNanos, nanos);
+            totals.rows += rows;
+            totals.stitches += stitches;
+            totals.bytes += bytes;
+        }
+    }
+
+    /**
+     * @param	enabled		True to total measurements in the registry, false to stop
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        Metrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Clears the totals of every phase
+     */
+    public static void reset()
+    {
+        synchronized (phases)
+        {
+            phases.clear();
+        }
+    }
+
+    /**
+     * @return	Table of the totals for each phase measured so far, one line per phase
+     */
+    public static String report()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-20s %7s %11s %10s %10s %10s %13s %11s%n",
+                "Phase", "Count", "Total ms", "Mean ms", "Max ms", "Rows", "Stitches", "MB alloc"));
+        synchronized (phases)
+        {
+            for (Map.Entry<String, PhaseTotals> entry : phases.entrySet())
+            {
+                PhaseTotals totals = entry.getValue();
+                report.append(String.format("%-20s %7d %11.1f %10.3f %10.3f %10d %13d %11.1f%n",
+                        entry.getKey(), totals.count, totals.nanos / 1e6, totals.nanos / 1e6 / totals.count,
+                        totals.maxNanos / 1e6, totals.rows, totals.stitches, totals.bytes / 1e6));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the report of the totals for each phase to a file
+     *
+     * @param	f	File to write to
+     *
+     * @throws	IOException		Thrown if the file can't be written
+     */
+    public static void dump(File f) throws IOException
+    {
+        Writer out = new FileWriter(f);
+        try
+        {
+            out.write(report());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return	Total bytes allocated so far by all live threads (so work done in parallel
+     *			is included), or a negative number if the JVM does not measure allocation
+     */
+    static long getAllocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+        {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled())
+        {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : hotspot.getThreadAllocatedBytes(threads.getAllThreadIds()))
+        {
+            if (bytes > 0) // -1 for threads that have ended since their IDs were listed
+            {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class describes a problem found while parsing a row of knitting pattern
+ * instructions: a syntax error, a row that is not the same length as the others,
+ * or a row that does not work the stitches made by the row before it.
+ * Along with the row, it records what kind of problem it is and which characters
+ * of the line of instructions it applies to, so they can be pointed out to the user.
+ */
+
+class ParseError
+{
+    /**
+     * Kinds of problem, and whether each one means the length of the row is not known
+     * (in which case the row is not compared to the length of the other rows)
+     */
+    enum Kind
+    {
+        UNKNOWN_STITCH(false), // Abbreviation not in the stitch dictionary
+        EMPTY_ROW(true), // Blank line between rows
+        MISSING_END_DELIMITER(true), // Repeated sequence with no closing delimiter
+        MISSING_REPEAT_COUNT(true), // Repeated sequence not followed by a number of times
+        NESTED_TOO_DEEPLY(true), // Repeated sequences nested more than RowParser.MAX_NESTING deep
+        NUMBER_TOO_LARGE(true), // Kn/Pn multiple or number of times that does not fit in an int
+        ROW_TOO_LONG(true), // Row with too many stitches to index
+        ROW_LENGTH(false), // Row not the same length as the earlier rows
+        STITCH_COUNT(false); // Row does not work the stitches made by the row before it (see StitchCountCheck)
+
+        private final boolean lengthUnknown;
+
+        private Kind (boolean lengthUnknown)
+        {
+            this.lengthUnknown = lengthUnknown;
+        }
+
+        public boolean isLengthUnknown()
+        {
+            return lengthUnknown;
+        }
+    }
+
+    private final int row;
+    private final Kind kind;
+    private final int column;
+    private final int length;
+    private final String message;
+
+    /**
+     * Constructor for a problem with a whole row
+     *
+     * @param	row			Index of the row with the problem (counting from zero)
+     * @param	kind		Kind of problem
+     * @param	message		Description of the problem, for display to the user
+     */
+    public ParseError (int row, Kind kind, String message)
+    {
+        this(row, kind, 0, -1, message);
+    }
+
+    /**
+     * Constructor for a problem with part of a row
+     *
+     * @param	row			Index of the row with the problem (counting from zero)
+     * @param	kind		Kind of problem
+     * @param	column		Index in the line of instructions of the first character with the problem
+     * @param	length		Number of characters with the problem, or -1 for the rest of the line
+     * @param	message		Description of the problem, for display to the user
+     */
+    public ParseError (int row, Kind kind, int column, int length, String message)
+    {
+        this.row = row;
+        this.kind = kind;
+        this.column = column;
+        this.length = length;
+        this.message = message;
+    }
+
+    public int getRow()
+    {
+        return row;
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    public int getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * @return	Number of characters with the problem, or -1 if it extends to the end of the line
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * Gets the same problem, reported against a different row (for a line that has moved)
+     *
+     * @param	newRow	Index of the row now holding the line with the problem
+     *
+     * @return	This error if it is already reported against that row, otherwise a copy
+     */
+    public ParseError atRow(int newRow)
+    {
+        if (newRow == row)
+        {
+            return this;
+        }
+        return new ParseError(newRow, kind, column, length, message);
+    }
+
+    /**
+     * @return	Description of the problem, including the row number (and column number,
+     *			for problems with part of a row), counting from one
+     */
+    public String toString()
+    {
+        if (length < 0 && column == 0)
+        {
+            return "Row " + (row+1) + ": " + message;
+        }
+        return "Row " + (row+1) + ", column " + (column+1) + ": " + message;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This interface is used to follow the progress of the Instructions class
+ * as it parses a pattern row by row, and to stop the parse part way through.
+ */
+
+interface ParseListener
+{
+    /**
+     * Called after each row of instructions has been parsed
+     *
+     * @param	rowsParsed		Number of rows parsed so far
+     * @param	numberOfRows	Total number of rows in the instructions
+     *
+     * @return	True to continue parsing, false to stop
+     */
+    boolean rowParsed(int rowsParsed, int numberOfRows);
+}
\ No newline at end of file
@@ -0,0 +1,743 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class compares two versions of a knitting chart, such as a pattern and the revised
+ * version a designer sends back, and finds the rows and stitches that changed between them.
+ *
+ * Each row is first reduced to a number: rows with the same stitches, however they are
+ * written (Eg. "k2" or "k1, k1"), are given the same number by looking up a 64-bit hash of
+ * their stitches in a hash table (and checking the stitches against the first row with that
+ * hash, so rows are never taken to be the same when they are not). Rows found in only one
+ * version can't be part of what the versions have in common, so are marked as removed or
+ * added straight away. The rest are compared as two lists of numbers with Myers' difference
+ * algorithm, which takes time in proportion to the number of rows times the number of
+ * differences, so two versions of a 10,000 row chart that differ in a few places are
+ * compared in a few milliseconds. The linear space version of the algorithm is used (it
+ * finds the middle of the shortest edit, then compares the rows on either side of it),
+ * so only two arrays the size of the chart are needed however many rows changed.
+ *
+ * Within each run of changed rows, the rows removed from the old version are paired in
+ * order with the rows added in the new one, and the stitches of each pair are compared
+ * in the same way to find the stitches that changed. Everything is reported in terms of
+ * the rows of the new version, which is the one shown in the chart (see ChartView.setDifferences()).
+ *
+ */
+
+import java.io.*;
+import java.util.*;
+
+class PatternDiff
+{
+    public static final byte SAME = 0; // Row is in both versions
+    public static final byte CHANGED = 1; // Row takes the place of a row of the old version, with some stitches changed
+    public static final byte ADDED = 2; // Row is only in the new version
+
+    private final int numberOfRows; // Number of rows in the new version
+    private final byte[] rowStatus; // SAME, CHANGED or ADDED for each row of the new version
+    private final BitSet[] changedStitches; // For each CHANGED row, the stitches not in the row it replaces; null for other rows
+    private final int[] differences; // Rows of the new version that are CHANGED or ADDED, in order
+    private final int[] removals; // Rows of the new version that rows of the old version were removed just before, in order (numberOfRows if after the last row)
+    private final int[] removedBefore; // Number of rows removed before each of the removals
+    private int changedRows; // Number of CHANGED rows
+    private int addedRows; // Number of ADDED rows
+    private int removedRows; // Number of rows of the old version that are not in the new one
+    private long changedStitchCount; // Number of stitches added, removed or replaced in the CHANGED rows
+
+    /**
+     * Constructor - compares two versions of a chart
+     *
+     * @param	before	Old version of the chart
+     * @param	after	New version of the chart
+     */
+    public PatternDiff (Chart before, Chart after)
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.COMPARE);
+        numberOfRows = after.getNumberOfRows();
+        rowStatus = new byte[numberOfRows];
+        changedStitches = new BitSet[numberOfRows];
+
+        // Number the rows so that rows with the same stitches have the same number
+        RowNumbers numbers = new RowNumbers();
+        int[] a = numbers.number(before);
+        int[] b = numbers.number(after);
+        boolean[] removed = new boolean[a.length];
+        boolean[] added = new boolean[b.length];
+        compareRows(a, b, numbers.size(), removed, added);
+
+        // Walk through both versions together, handling each run of changed rows as it is reached
+        ArrayList<Integer> differenceList = new ArrayList<Integer>();
+        ArrayList<Integer> removalList = new ArrayList<Integer>();
+        ArrayList<Integer> removedList = new ArrayList<Integer>();
+        byte[] oldCells = new byte[0]; // Reused for each pair of rows, grown as needed
+        byte[] newCells = new byte[0];
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length)
+        {
+            if (i < a.length && j < b.length && !removed[i] && !added[j])
+            {
+                i++;
+                j++;
+                continue;
+            }
+            int removedStart = i;
+            int addedStart = j;
+            while ((i < a.length && removed[i]) || (j < b.length && added[j]))
+            {
+                if (i < a.length && removed[i])
+                {
+                    i++;
+                }
+                else
+                {
+                    j++;
+                }
+            }
+
+            int pairs = Math.min(i - removedStart, j - addedStart);
+            for (int k = 0; k < pairs; k++)
+            {
+                int oldRow = removedStart + k;
+                int newRow = addedStart + k;
+                oldCells = copyRow(before, oldRow, oldCells);
+                newCells = copyRow(after, newRow, newCells);
+                rowStatus[newRow] = CHANGED;
+                changedStitches[newRow] = compareStitches(oldCells, before.getRowWidth(oldRow), newCells, after.getRowWidth(newRow));
+                differenceList.add(newRow);
+                changedRows++;
+            }
+            for (int newRow = addedStart + pairs; newRow < j; newRow++)
+            {
+                rowStatus[newRow] = ADDED;
+                differenceList.add(newRow);
+                addedRows++;
+            }
+            if (i - removedStart > pairs)
+            {
+                // Shown just after the rows that replaced some of them
+                removalList.add(addedStart + pairs);
+                removedList.add(i - removedStart - pairs);
+                removedRows += i - removedStart - pairs;
+            }
+        }
+        differences = toArray(differenceList);
+        removals = toArray(removalList);
+        removedBefore = toArray(removedList);
+        Metrics.stop(m, a.length + b.length, changedStitchCount);
+    }
+
+    /**
+     * Gives each row of one or more charts a number, so that rows with the same stitches
+     * have the same number
+     */
+    private static class RowNumbers
+    {
+        private final HashMap<Long, Integer> ids = new HashMap<Long, Integer>(); // Number given to the first row with each hash
+        private final ArrayList<Chart> charts = new ArrayList<Chart>(); // Chart and index of the first row given each number
+        private final ArrayList<Integer> rows = new ArrayList<Integer>();
+        private byte[] cells = new byte[0]; // Reused for each row, grown as needed
+        private byte[] firstCells = new byte[0];
+
+        /**
+         * @return	Number of each row of the chart
+         */
+        int[] number(Chart chart)
+        {
+            int[] rowIds = new int[chart.getNumberOfRows()];
+            // Identical rows usually share one compiled row (see RowCache), which is only hashed once
+            HashMap<RepeatGroup, Integer> compiled = new HashMap<RepeatGroup, Integer>();
+            Instructions inst = (chart instanceof Instructions) ? (Instructions) chart : null;
+            for (int i = 0; i < rowIds.length; i++)
+            {
+                Integer id = (inst == null) ? null : compiled.get(inst.getRow(i));
+                if (id == null)
+                {
+                    id = number(chart, i);
+                    if (inst != null)
+                    {
+                        compiled.put(inst.getRow(i), id);
+                    }
+                }
+                rowIds[i] = id.intValue();
+            }
+            return rowIds;
+        }
+
+        private Integer number(Chart chart, int row)
+        {
+            int width = chart.getRowWidth(row);
+            cells = copyRow(chart, row, cells);
+            long hash = width; // 64-bit FNV-1a, started from the width of the row
+            for (int i = 0; i < width; i++)
+            {
+                hash = (hash ^ cells[i]) * 0x100000001B3L;
+            }
+
+            Long key = Long.valueOf(hash);
+            Integer id = ids.get(key);
+            if (id != null)
+            {
+                Chart firstChart = charts.get(id.intValue());
+                int firstRow = rows.get(id.intValue()).intValue();
+                if (firstChart.getRowWidth(firstRow) == width)
+                {
+                    firstCells = copyRow(firstChart, firstRow, firstCells);
+                    if (equals(cells, firstCells, width))
+                    {
+                        return id;
+                    }
+                }
+            }
+            // A new row, or (very rarely) a different row with the same hash, which is
+            // given a number of its own that no other row will match
+            Integer newId = Integer.valueOf(charts.size());
+            charts.add(chart);
+            rows.add(Integer.valueOf(row));
+            if (id == null)
+            {
+                ids.put(key, newId);
+            }
+            return newId;
+        }
+
+        private static boolean equals(byte[] a, byte[] b, int length)
+        {
+            for (int i = 0; i < length; i++)
+            {
+                if (a[i] != b[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return	Number of different numbers given so far
+         */
+        int size()
+        {
+            return charts.size();
+        }
+    }
+
+    /**
+     * Copies the stitch ordinals of a row into an array, first replacing it if it is too short
+     *
+     * @return	Array holding the row
+     */
+    private static byte[] copyRow(Chart chart, int row, byte[] cells)
+    {
+        if (cells.length < chart.getRowWidth(row))
+        {
+            cells = new byte[chart.getRowWidth(row)];
+        }
+        ChartGrid.copyRow(chart, row, cells);
+        return cells;
+    }
+
+    /**
+     * Compares the stitches of a row with the row that it replaces
+     *
+     * @return	Stitches of the new row that are not in the old row
+     */
+    private BitSet compareStitches(byte[] oldCells, int oldWidth, byte[] newCells, int newWidth)
+    {
+        int[] a = new int[oldWidth];
+        for (int i = 0; i < oldWidth; i++)
+        {
+            a[i] = oldCells[i];
+        }
+        int[] b = new int[newWidth];
+        for (int i = 0; i < newWidth; i++)
+        {
+            b[i] = newCells[i];
+        }
+        boolean[] removed = new boolean[oldWidth];
+        boolean[] added = new boolean[newWidth];
+        compare(a, b, removed, added);
+
+        // A replaced stitch is both removed and added, so is only counted once
+        int removedCount = 0;
+        for (int i = 0; i < oldWidth; i++)
+        {
+            if (removed[i])
+            {
+                removedCount++;
+            }
+        }
+        BitSet changed = new BitSet(newWidth);
+        for (int i = 0; i < newWidth; i++)
+        {
+            if (added[i])
+            {
+                changed.set(i);
+            }
+        }
+        changedStitchCount += Math.max(removedCount, changed.cardinality());
+        return changed;
+    }
+
+    /**
+     * Finds a shortest edit that turns one list of row numbers into another, first setting
+     * aside the rows found in only one of them, which can't be part of what they have in common
+     *
+     * @param	numbers		Row numbers run from 0 to one less than this
+     */
+    private static void compareRows(int[] a, int[] b, int numbers, boolean[] removed, boolean[] added)
+    {
+        boolean[] inA = new boolean[numbers];
+        for (int i = 0; i < a.length; i++)
+        {
+            inA[a[i]] = true;
+        }
+        boolean[] inB = new boolean[numbers];
+        for (int i = 0; i < b.length; i++)
+        {
+            inB[b[i]] = true;
+        }
+        int[] aIndexes = shared(a, inB, removed);
+        int[] bIndexes = shared(b, inA, added);
+
+        int[] aShared = new int[aIndexes.length];
+        for (int i = 0; i < aShared.length; i++)
+        {
+            aShared[i] = a[aIndexes[i]];
+        }
+        int[] bShared = new int[bIndexes.length];
+        for (int i = 0; i < bShared.length; i++)
+        {
+            bShared[i] = b[bIndexes[i]];
+        }
+        boolean[] sharedRemoved = new boolean[aShared.length];
+        boolean[] sharedAdded = new boolean[bShared.length];
+        compare(aShared, bShared, sharedRemoved, sharedAdded);
+        for (int i = 0; i < aShared.length; i++)
+        {
+            removed[aIndexes[i]] = sharedRemoved[i];
+        }
+        for (int i = 0; i < bShared.length; i++)
+        {
+            added[bIndexes[i]] = sharedAdded[i];
+        }
+    }
+
+    /**
+     * Marks the rows of one list that are not in the other
+     *
+     * @param	rows		Row numbers
+     * @param	inOther		True for each row number found in the other list
+     * @param	unshared	Set to true for each row that is not in the other list
+     *
+     * @return	Indexes of the rows that are in the other list
+     */
+    private static int[] shared(int[] rows, boolean[] inOther, boolean[] unshared)
+    {
+        int count = 0;
+        for (int i = 0; i < rows.length; i++)
+        {
+            unshared[i] = !inOther[rows[i]];
+            if (!unshared[i])
+            {
+                count++;
+            }
+        }
+        int[] indexes = new int[count];
+        count = 0;
+        for (int i = 0; i < rows.length; i++)
+        {
+            if (!unshared[i])
+            {
+                indexes[count++] = i;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Finds a shortest edit that turns one sequence into another
+     *
+     * @param	a			Old sequence
+     * @param	b			New sequence
+     * @param	removed		Set to true for each element of a that is not in b
+     * @param	added		Set to true for each element of b that is not in a
+     */
+    static void compare(int[] a, int[] b, boolean[] removed, boolean[] added)
+    {
+        // Diagonals run from -(a.length + b.length) to a.length + b.length, plus one on either side
+        int size = 2 * (a.length + b.length) + 3;
+        compare(a, 0, a.length, b, 0, b.length, removed, added, new int[size], new int[size]);
+    }
+
+    /**
+     * Compares part of one sequence with part of another (see compare(int[], int[], boolean[], boolean[]))
+     *
+     * @param	forward		Furthest point reached along each diagonal from the start (reused by each call)
+     * @param	backward	Furthest point reached along each diagonal from the end (reused by each call)
+     */
+    private static void compare(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd,
+            boolean[] removed, boolean[] added, int[] forward, int[] backward)
+    {
+        // Matching elements at either end are left as they are
+        while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart])
+        {
+            aStart++;
+            bStart++;
+        }
+        while (aStart < aEnd && bStart < bEnd && a[aEnd-1] == b[bEnd-1])
+        {
+            aEnd--;
+            bEnd--;
+        }
+        if (aStart == aEnd)
+        {
+            Arrays.fill(added, bStart, bEnd, true);
+            return;
+        }
+        if (bStart == bEnd)
+        {
+            Arrays.fill(removed, aStart, aEnd, true);
+            return;
+        }
+
+        // Divide at the middle of a shortest edit, and compare either side of it
+        long middle = middle(a, aStart, aEnd, b, bStart, bEnd, forward, backward);
+        int x = aStart + (int) (middle >> 32);
+        int y = bStart + (int) middle;
+        compare(a, aStart, x, b, bStart, y, removed, added, forward, backward);
+        compare(a, x, aEnd, b, y, bEnd, removed, added, forward, backward);
+    }
+
+    /**
+     * Finds a point in the middle of a shortest edit, by following the edit forward from the
+     * start and backward from the end at the same time, one step further each time, until
+     * the two meet (as described in Myers, "An O(ND) Difference Algorithm and Its Variations").
+     * Points are numbered by how many elements of a and b come before them, and the points
+     * reached are kept for each diagonal, the difference between those two numbers.
+     *
+     * @return	Position in a of the point (relative to aStart) in the high 32 bits,
+     *			and its position in b (relative to bStart) in the low 32 bits
+     */
+    private static long middle(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd, int[] forward, int[] backward)
+    {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int delta = n - m; // Diagonal of the end point
+        boolean odd = (delta & 1) != 0; // The two searches meet on a forward step if odd, otherwise on a backward step
+        int offset = n + m + 1; // Index of diagonal 0 in forward and backward
+
+        // Backward steps are counted from the end, as the number of elements of a and b after the point
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d++)
+        {
+            for (int k = -d; k <= d; k += 2)
+            {
+                // Step down from the diagonal above, or right from the one below, whichever got further
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+                {
+                    x = forward[offset + k + 1];
+                }
+                else
+                {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[aStart + x] == b[bStart + y])
+                {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int backwardK = delta - k;
+                if (odd && backwardK >= -(d - 1) && backwardK <= d - 1 && x + backward[offset + backwardK] >= n)
+                {
+                    return ((long) x << 32) | y;
+                }
+            }
+            for (int k = -d; k <= d; k += 2)
+            {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]))
+                {
+                    x = backward[offset + k + 1];
+                }
+                else
+                {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[aEnd - 1 - x] == b[bEnd - 1 - y])
+                {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n)
+                {
+                    return ((long) (n - x) << 32) | (m - y);
+                }
+            }
+        }
+        throw new IllegalStateException("Shortest edit not found"); // Not reached: the searches meet by the time they have covered every edit
+    }
+
+    private static int[] toArray(ArrayList<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = list.get(i).intValue();
+        }
+        return array;
+    }
+
+    /**
+     * @return	Number of rows in the new version
+     */
+    public int getNumberOfRows()
+    {
+        return numberOfRows;
+    }
+
+    /**
+     * @param	row		Index of a row of the new version
+     *
+     * @return	SAME, CHANGED or ADDED
+     */
+    public byte getRowStatus(int row)
+    {
+        return rowStatus[row];
+    }
+
+    /**
+     * @param	row		Index of a row of the new version
+     * @param	column	Index of a stitch within the row
+     *
+     * @return	True if the row is CHANGED, and the stitch is not in the row it replaced
+     */
+    public boolean isStitchChanged(int row, int column)
+    {
+        return changedStitches[row] != null && changedStitches[row].get(column);
+    }
+
+    /**
+     * @param	row		Index of a row of the new version, or the number of rows for the end of the chart
+     *
+     * @return	Number of rows of the old version removed just before the row
+     */
+    public int getRemovedBefore(int row)
+    {
+        int i = Arrays.binarySearch(removals, row);
+        return (i < 0) ? 0 : removedBefore[i];
+    }
+
+    /**
+     * @param	row		Index of a row of the new version
+     *
+     * @return	Index of the first row from the given one that is CHANGED or ADDED, or -1 if there is none
+     */
+    public int nextDifference(int row)
+    {
+        return next(differences, row);
+    }
+
+    /**
+     * @param	row		Index of a row of the new version (or the number of rows)
+     *
+     * @return	Index of the first row from the given one that rows were removed just before
+     *			(which may be the number of rows), or -1 if there is none
+     */
+    public int nextRemoval(int row)
+    {
+        return next(removals, row);
+    }
+
+    /**
+     * @return	First value in a sorted array that is at least the given value, or -1 if there is none
+     */
+    private static int next(int[] sorted, int value)
+    {
+        int i = Arrays.binarySearch(sorted, value);
+        if (i < 0)
+        {
+            i = -i - 1;
+        }
+        return (i < sorted.length) ? sorted[i] : -1;
+    }
+
+    /**
+     * @return	True if the versions are the same, row for row
+     */
+    public boolean isEmpty()
+    {
+        return differences.length == 0 && removals.length == 0;
+    }
+
+    public int getChangedRows()
+    {
+        return changedRows;
+    }
+
+    public int getAddedRows()
+    {
+        return addedRows;
+    }
+
+    public int getRemovedRows()
+    {
+        return removedRows;
+    }
+
+    /**
+     * @return	Number of stitches added, removed or replaced in the changed rows
+     */
+    public long getChangedStitches()
+    {
+        return changedStitchCount;
+    }
+
+    /**
+     * @return	Summary of the differences (Eg. "2 rows changed (5 stitches), 1 row added")
+     */
+    public String toString()
+    {
+        if (isEmpty())
+        {
+            return "No differences";
+        }
+        ArrayList<String> parts = new ArrayList<String>();
+        if (changedRows > 0)
+        {
+            parts.add(plural(changedRows, "row") + " changed (" + plural(changedStitchCount, "stitch") + ")");
+        }
+        if (addedRows > 0)
+        {
+            parts.add(plural(addedRows, "row") + " added");
+        }
+        if (removedRows > 0)
+        {
+            parts.add(plural(removedRows, "row") + " removed");
+        }
+        StringBuilder summary = new StringBuilder();
+        for (String part : parts)
+        {
+            summary.append(summary.length() == 0 ? "" : ", ").append(part);
+        }
+        return summary.toString();
+    }
+
+    private static String plural(long count, String noun)
+    {
+        return count + " " + noun + ((count == 1) ? "" : (noun.endsWith("h") ? "es" : "s"));
+    }
+
+    /**
+     * Reads a pattern file, from its compiled chart if that is up to date (see CompiledChart)
+     *
+     * @param	file	Pattern file
+     *
+     * @return	Chart of the pattern
+     *
+     * @throws	IOException		Thrown if the file can't be read, or is empty
+     */
+    public static Instructions read(File file) throws IOException
+    {
+        Instructions inst = CompiledChart.load(file);
+        if (inst != null)
+        {
+            return inst;
+        }
+        RowCollector collector = new RowCollector();
+        new PatternReader(file).read(collector);
+        if (collector.isEmpty())
+        {
+            throw new IOException("File is empty");
+        }
+        return collector.getInstructions();
+    }
+
+    /**
+     * Main method - compares two versions of a pattern file, and lists the rows that changed
+     */
+    public static void main (String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length != 2)
+        {
+            System.err.println("Usage: java PatternDiff oldPattern newPattern");
+            System.exit(2);
+        }
+        BatchRenderer.loadStitchAbbreviations();
+
+        Instructions before = null;
+        Instructions after = null;
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                Instructions inst = read(new File(args[i]));
+                if (i == 0)
+                {
+                    before = inst;
+                }
+                else
+                {
+                    after = inst;
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error: Unable to read \"" + args[i] + "\": " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
+        long startTime = System.nanoTime();
+        PatternDiff diff = new PatternDiff(before, after);
+        double millis = (System.nanoTime() - startTime) / 1e6;
+
+        // Rows are numbered from one, as in the instructions, and listed in order
+        int row = 0;
+        while (true)
+        {
+            int difference = diff.nextDifference(row);
+            int removal = diff.nextRemoval(row);
+            if (difference < 0 && removal < 0)
+            {
+                break;
+            }
+            boolean showRemoval = removal >= 0 && (difference < 0 || removal <= difference);
+            boolean showDifference = difference >= 0 && (removal < 0 || difference <= removal);
+            if (showRemoval)
+            {
+                System.out.println(plural(diff.getRemovedBefore(removal), "row") + " removed before "
+                        + ((removal == diff.getNumberOfRows()) ? "the end" : "row " + (removal+1)));
+            }
+            if (showDifference)
+            {
+                if (diff.getRowStatus(difference) == ADDED)
+                {
+                    System.out.println("Row " + (difference+1) + ": added");
+                }
+                else
+                {
+                    StringBuilder stitches = new StringBuilder();
+                    BitSet changed = diff.changedStitches[difference];
+                    for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1))
+                    {
+                        stitches.append(stitches.length() == 0 ? "" : ", ").append(i + 1);
+                    }
+                    System.out.println("Row " + (difference+1) + ": changed"
+                            + ((stitches.length() == 0) ? " (stitches removed)" : " at stitches " + stitches));
+                }
+            }
+            row = (showDifference ? difference : removal) + 1;
+        }
+        System.out.printf("%s (compared %d and %d rows in %.1f ms)%n", diff, before.getNumberOfRows(), after.getNumberOfRows(), millis);
+        System.exit(0);
+    }
+}
\ No newline at end of file
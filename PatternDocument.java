@@ -0,0 +1,593 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class is the document holding the instructions in the editor. Swing's PlainDocument
+ * keeps its text in a gap buffer, and keeps an element for every line in one array, so
+ * edits far apart and edits that add or remove lines take time in proportion to the size
+ * of the document. This document keeps its text in a Rope, which also counts the line
+ * breaks in each part of the text, so an edit, finding a line by number, and finding the
+ * line holding an offset all take time in proportion to the log of the length of the text.
+ *
+ * The elements for the lines (the children of getDefaultRootElement()) are not stored:
+ * each one is made when it is asked for, and keeps the offsets its line had then. That
+ * suits views that look up the lines they paint each time, as the view of a JTextArea
+ * without line wrapping does. As in PlainDocument, an edit that adds or removes line
+ * breaks reports the lines it replaced and the lines that replaced them.
+ *
+ * getSnapshot() returns the text as it is at that moment without copying it, since a Rope
+ * is never changed, and it can then be read on any thread (to parse or save it) while the
+ * document goes on being edited.
+ *
+ */
+
+import javax.swing.event.*;
+import javax.swing.text.*;
+import javax.swing.undo.*;
+import java.lang.ref.*;
+import java.util.*;
+
+class PatternDocument extends AbstractDocument
+{
+    private final RopeContent content; // Text of the document
+    private final Element root = new Lines(); // Element with one child for each line
+
+    public PatternDocument ()
+    {
+        this(new RopeContent());
+    }
+
+    private PatternDocument (RopeContent content)
+    {
+        super(content);
+        this.content = content;
+        putProperty(PlainDocument.tabSizeAttribute, Integer.valueOf(8));
+    }
+
+    /**
+     * @return	Text of the document as it is now
+     */
+    public Rope getSnapshot()
+    {
+        Rope text = content.text;
+        return text.remove(text.length() - 1, 1); // Without the line break the content always ends with
+    }
+
+    public Element getDefaultRootElement()
+    {
+        return root;
+    }
+
+    public Element getParagraphElement(int pos)
+    {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    /**
+     * Records the lines replaced by an insert, if it added any line breaks (called after
+     * the text has been inserted)
+     */
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr)
+    {
+        Rope text = content.text;
+        int first = text.getLineIndex(chng.getOffset());
+        int last = text.getLineIndex(chng.getOffset() + chng.getLength());
+        if (last > first)
+        {
+            // The line the text was inserted into is replaced by the lines it became
+            Element[] after = new Element[last - first + 1];
+            for (int i = 0; i < after.length; i++)
+            {
+                after[i] = root.getElement(first + i);
+            }
+            Element[] before = {new Line(after[0].getStartOffset(), after[after.length - 1].getEndOffset() - chng.getLength())};
+            chng.addEdit(new LineChange(first, before, after, true, chng.getOffset(), chng.getLength()));
+        }
+        super.insertUpdate(chng, attr);
+    }
+
+    /**
+     * Records the lines replaced by a removal, if it removes any line breaks (called
+     * before the text is removed)
+     */
+    protected void removeUpdate(DefaultDocumentEvent chng)
+    {
+        Rope text = content.text;
+        int first = text.getLineIndex(chng.getOffset());
+        int last = text.getLineIndex(chng.getOffset() + chng.getLength());
+        if (last > first)
+        {
+            // The lines the removed text spans are replaced by the one line they become
+            Element[] before = new Element[last - first + 1];
+            for (int i = 0; i < before.length; i++)
+            {
+                before[i] = root.getElement(first + i);
+            }
+            Element[] after = {new Line(before[0].getStartOffset(), before[before.length - 1].getEndOffset() - chng.getLength())};
+            chng.addEdit(new LineChange(first, before, after, false, chng.getOffset(), chng.getLength()));
+        }
+        super.removeUpdate(chng);
+    }
+
+    /**
+     * @return	Where an offset is moved to by inserting text, following the same rule as
+     *			the positions in the text (see RopeContent)
+     */
+    private static int afterInsert(int offset, int where, int length)
+    {
+        return (offset > where || (offset == where && where > 0)) ? offset + length : offset;
+    }
+
+    /**
+     * @return	Where an offset is moved to by removing text
+     */
+    private static int afterRemoval(int offset, int where, int length)
+    {
+        return (offset > where) ? Math.max(offset - length, where) : offset;
+    }
+
+    /**
+     * The root element, whose children are the lines of the document
+     */
+    private class Lines implements Element
+    {
+        public Document getDocument()
+        {
+            return PatternDocument.this;
+        }
+
+        public Element getParentElement()
+        {
+            return null;
+        }
+
+        public String getName()
+        {
+            return ParagraphElementName;
+        }
+
+        public AttributeSet getAttributes()
+        {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        public int getStartOffset()
+        {
+            return 0;
+        }
+
+        public int getEndOffset()
+        {
+            return content.length();
+        }
+
+        public int getElementIndex(int offset)
+        {
+            Rope text = content.text;
+            int line = text.getLineIndex(Math.max(0, Math.min(offset, text.length())));
+            return Math.min(line, getElementCount() - 1);
+        }
+
+        public int getElementCount()
+        {
+            return content.text.getLineCount() - 1; // The last line break ends the last line
+        }
+
+        public Element getElement(int index)
+        {
+            if (index < 0 || index >= getElementCount())
+            {
+                return null;
+            }
+            Rope text = content.text;
+            return new Line(text.getLineStart(index), text.getLineStart(index + 1));
+        }
+
+        public boolean isLeaf()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * One line of the document, including its line break
+     */
+    private class Line implements Element
+    {
+        private final int start;
+        private final int end;
+
+        Line (int start, int end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        public Document getDocument()
+        {
+            return PatternDocument.this;
+        }
+
+        public Element getParentElement()
+        {
+            return root;
+        }
+
+        public String getName()
+        {
+            return ContentElementName;
+        }
+
+        public AttributeSet getAttributes()
+        {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        public int getStartOffset()
+        {
+            return start;
+        }
+
+        public int getEndOffset()
+        {
+            return end;
+        }
+
+        public int getElementIndex(int offset)
+        {
+            return -1;
+        }
+
+        public int getElementCount()
+        {
+            return 0;
+        }
+
+        public Element getElement(int index)
+        {
+            return null;
+        }
+
+        public boolean isLeaf()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * The lines replaced by an edit. As in PlainDocument, whose lines keep their offsets
+     * in positions, the offsets of the lines replaced are given as they are once the edit
+     * (or its undo) has been made, so the part of a line that was removed has no length.
+     */
+    private class LineChange extends AbstractUndoableEdit implements DocumentEvent.ElementChange
+    {
+        private final int index;
+        private final Element[] before; // Lines replaced, with their offsets before the edit
+        private final Element[] after; // Lines replacing them, with their offsets after the edit
+        private final boolean insert; // True if the edit inserted text, false if it removed it
+        private final int where;
+        private final int length;
+        private boolean undone;
+
+        LineChange (int index, Element[] before, Element[] after, boolean insert, int where, int length)
+        {
+            this.index = index;
+            this.before = before;
+            this.after = after;
+            this.insert = insert;
+            this.where = where;
+            this.length = length;
+        }
+
+        public Element getElement()
+        {
+            return root;
+        }
+
+        public int getIndex()
+        {
+            return index;
+        }
+
+        public Element[] getChildrenRemoved()
+        {
+            Element[] removed = undone ? after : before;
+            Element[] moved = new Element[removed.length];
+            for (int i = 0; i < removed.length; i++)
+            {
+                moved[i] = new Line(move(removed[i].getStartOffset()), move(removed[i].getEndOffset()));
+            }
+            return moved;
+        }
+
+        public Element[] getChildrenAdded()
+        {
+            return undone ? before : after;
+        }
+
+        public void undo()
+        {
+            super.undo();
+            undone = true;
+        }
+
+        public void redo()
+        {
+            super.redo();
+            undone = false;
+        }
+
+        /**
+         * @return	Where an offset is moved to by the edit, or by undoing it
+         */
+        private int move(int offset)
+        {
+            if (!undone)
+            {
+                return insert ? afterInsert(offset, where, length) : afterRemoval(offset, where, length);
+            }
+            // Undoing an insert removes the text, and undoing a removal puts it back,
+            // along with the positions that were in it (see RopeContent.RemoveEdit)
+            return insert ? afterRemoval(offset, where, length) : ((offset > where) ? offset + length : offset);
+        }
+    }
+
+    /**
+     * The text of the document, held in a Rope. As AbstractDocument requires, it always
+     * ends with a line break that is not part of the document.
+     */
+    private static class RopeContent implements AbstractDocument.Content
+    {
+        private volatile Rope text = new Rope("\n"); // Replaced (but never changed) by each edit
+        private final ArrayList<WeakReference<Mark>> marks = new ArrayList<WeakReference<Mark>>(); // Positions to move as the text is edited (guarded by itself)
+        private int marksKept; // Marks still in use after the last time unused ones were removed
+
+        /**
+         * A position in the text, which moves as text is inserted or removed before it
+         */
+        private static class Mark implements Position
+        {
+            private int offset;
+
+            Mark (int offset)
+            {
+                this.offset = offset;
+            }
+
+            public int getOffset()
+            {
+                return offset;
+            }
+        }
+
+        public Position createPosition(int offset) throws BadLocationException
+        {
+            if (offset < 0 || offset > length())
+            {
+                throw new BadLocationException("Invalid position", offset);
+            }
+            Mark mark = new Mark(offset);
+            synchronized (marks)
+            {
+                marks.add(new WeakReference<Mark>(mark));
+                // Forget positions no longer used, once there are twice as many as before
+                if (marks.size() > 2 * marksKept + 16)
+                {
+                    Iterator<WeakReference<Mark>> i = marks.iterator();
+                    while (i.hasNext())
+                    {
+                        if (i.next().get() == null)
+                        {
+                            i.remove();
+                        }
+                    }
+                    marksKept = marks.size();
+                }
+            }
+            return mark;
+        }
+
+        public int length()
+        {
+            return text.length();
+        }
+
+        public UndoableEdit insertString(int where, String str) throws BadLocationException
+        {
+            if (where < 0 || where >= length())
+            {
+                throw new BadLocationException("Invalid insert", where);
+            }
+            insertText(where, str);
+            return new InsertEdit(where, str.length());
+        }
+
+        public UndoableEdit remove(int where, int nitems) throws BadLocationException
+        {
+            if (where < 0 || nitems < 0 || where + nitems >= length())
+            {
+                throw new BadLocationException("Invalid remove", where + nitems);
+            }
+            String removed = text.substring(where, where + nitems);
+            SavedMarks saved = saveMarks(where, where + nitems);
+            removeText(where, nitems);
+            return new RemoveEdit(where, removed, saved);
+        }
+
+        public String getString(int where, int len) throws BadLocationException
+        {
+            checkRange(where, len);
+            return text.substring(where, where + len);
+        }
+
+        public void getChars(int where, int len, Segment txt) throws BadLocationException
+        {
+            checkRange(where, len);
+            Rope current = text;
+            current.getSegment(where, len, txt);
+            if (txt.count < len && !txt.isPartialReturn())
+            {
+                // The characters are in more than one chunk, so they are copied
+                char[] chars = new char[len];
+                current.getChars(where, where + len, chars, 0);
+                txt.array = chars;
+                txt.offset = 0;
+                txt.count = len;
+            }
+        }
+
+        private void checkRange(int where, int len) throws BadLocationException
+        {
+            if (where < 0 || len < 0 || where + len > length())
+            {
+                throw new BadLocationException("Invalid range", where + len);
+            }
+        }
+
+        /**
+         * Inserts text, moving the positions at or after it (other than at the start of the text)
+         */
+        private void insertText(int where, String str)
+        {
+            text = text.insert(where, str);
+            synchronized (marks)
+            {
+                for (WeakReference<Mark> ref : marks)
+                {
+                    Mark mark = ref.get();
+                    if (mark != null)
+                    {
+                        mark.offset = afterInsert(mark.offset, where, str.length());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes text, moving the positions after it, and those within it to where it was
+         */
+        private void removeText(int where, int nitems)
+        {
+            text = text.remove(where, nitems);
+            synchronized (marks)
+            {
+                for (WeakReference<Mark> ref : marks)
+                {
+                    Mark mark = ref.get();
+                    if (mark != null)
+                    {
+                        mark.offset = afterRemoval(mark.offset, where, nitems);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return	Positions from start to end, with their offsets now
+         */
+        private SavedMarks saveMarks(int start, int end)
+        {
+            SavedMarks saved = new SavedMarks();
+            synchronized (marks)
+            {
+                for (WeakReference<Mark> ref : marks)
+                {
+                    Mark mark = ref.get();
+                    if (mark != null && mark.offset >= start && mark.offset <= end)
+                    {
+                        saved.marks.add(mark);
+                        saved.offsets.add(Integer.valueOf(mark.offset));
+                    }
+                }
+            }
+            return saved;
+        }
+
+        /**
+         * Positions within text that is removed, which are put back where they were when
+         * the text is put back by undo or redo (as they are by GapContent)
+         */
+        private class SavedMarks
+        {
+            final ArrayList<Mark> marks = new ArrayList<Mark>();
+            final ArrayList<Integer> offsets = new ArrayList<Integer>();
+
+            void restore()
+            {
+                synchronized (RopeContent.this.marks)
+                {
+                    for (int i = 0; i < marks.size(); i++)
+                    {
+                        marks.get(i).offset = offsets.get(i).intValue();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Undoes and redoes an insert
+         */
+        private class InsertEdit extends AbstractUndoableEdit
+        {
+            private final int where;
+            private final int length;
+            private String inserted; // Text removed by undo, to put back on redo
+            private SavedMarks saved; // Positions within the text removed by undo
+
+            InsertEdit (int where, int length)
+            {
+                this.where = where;
+                this.length = length;
+            }
+
+            public void undo()
+            {
+                super.undo();
+                inserted = text.substring(where, where + length);
+                saved = saveMarks(where, where + length);
+                removeText(where, length);
+            }
+
+            public void redo()
+            {
+                super.redo();
+                insertText(where, inserted);
+                saved.restore();
+                inserted = null;
+                saved = null;
+            }
+        }
+
+        /**
+         * Undoes and redoes a removal
+         */
+        private class RemoveEdit extends AbstractUndoableEdit
+        {
+            private final int where;
+            private final String removed;
+            private SavedMarks saved; // Positions within the text removed
+
+            RemoveEdit (int where, String removed, SavedMarks saved)
+            {
+                this.where = where;
+                this.removed = removed;
+                this.saved = saved;
+            }
+
+            public void undo()
+            {
+                super.undo();
+                insertText(where, removed);
+                saved.restore();
+                saved = null;
+            }
+
+            public void redo()
+            {
+                super.redo();
+                saved = saveMarks(where, where + removed.length());
+                removeText(where, removed.length());
+            }
+        }
+    }
+}
\ No newline at end of file
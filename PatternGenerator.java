@@ -0,0 +1,179 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class generates synthetic knitting patterns for the benchmarks (see Benchmark.java).
+ * The same seed and settings always produce the same pattern, so results can be compared
+ * from one run (or one version of the parser) to the next.
+ *
+ * Every row of a generated pattern is the same number of stitches wide, so the pattern
+ * renders without errors. Each row is built from a repeated sequence worked a given number
+ * of times, optionally enclosed in further repeated sequences (nesting), with plain stitches
+ * filling out the rest of the row:
+ *      Eg. width 20, 2 repeats, nesting 1 ==> "([yo, k2tog, k, p] 2 times) 2 times, k, p3"
+ *
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+class PatternGenerator
+{
+    private static final String[] ABBREVIATIONS = { "k", "p", "yo", "k2tog", "skp" }; // One stitch wide each
+    private static final char[][] DELIMITERS = { { '(', ')' }, { '[', ']' }, { '*', '*' } }; // Used at each level of nesting, outermost first
+
+    private final Random random;
+
+    /**
+     * Constructor
+     *
+     * @param	seed	Seed for the random choice of stitches
+     */
+    public PatternGenerator (long seed)
+    {
+        random = new Random(seed);
+    }
+
+    /**
+     * Generates a pattern
+     *
+     * @param	rows		Number of rows
+     * @param	width		Number of stitches in each row
+     * @param	repeats		Number of times the repeated sequence in each row is worked (0 for no repeat)
+     * @param	nesting		Number of repeated sequences enclosed within the outer one (each worked twice)
+     *
+     * @return	Pattern instructions, one row per array element
+     */
+    public String[] pattern(int rows, int width, int repeats, int nesting)
+    {
+        String[] pattern = new String[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            pattern[i] = row(width, repeats, nesting);
+        }
+        return pattern;
+    }
+
+    /**
+     * Generates one row of a pattern
+     *
+     * @param	width		Number of stitches in the row
+     * @param	repeats		Number of times the repeated sequence is worked (0 for no repeat)
+     * @param	nesting		Number of repeated sequences enclosed within the outer one (each worked twice)
+     *
+     * @return	Row instructions
+     *
+     * @throws	IllegalArgumentException	Thrown if the repeats do not fit in the row
+     */
+    public String row(int width, int repeats, int nesting)
+    {
+        StringBuilder row = new StringBuilder();
+        int remaining = width;
+        if (repeats > 0)
+        {
+            // Each level of nesting doubles the stitches worked by the innermost sequence
+            long worked = (long) repeats << nesting;
+            if (nesting >= DELIMITERS.length || worked > width)
+            {
+                throw new IllegalArgumentException("Cannot fit " + repeats + " repeats nested " + nesting + " deep in " + width + " stitches");
+            }
+            int innermost = (int) Math.min(4, width / worked); // Stitches in the innermost sequence
+            appendRepeat(row, repeats, nesting, 0, innermost);
+            remaining -= innermost * worked;
+        }
+        appendStitches(row, remaining);
+        return row.toString();
+    }
+
+    /**
+     * Writes a pattern to a file, one row per line
+     *
+     * @param	f			File to write to
+     * @param	rows		Number of rows
+     * @param	width		Number of stitches in each row
+     * @param	repeats		Number of times the repeated sequence in each row is worked
+     * @param	nesting		Number of repeated sequences enclosed within the outer one
+     *
+     * @throws	IOException		Thrown if the file can't be written
+     */
+    public void write(File f, int rows, int width, int repeats, int nesting) throws IOException
+    {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8));
+        try
+        {
+            for (int i = 0; i < rows; i++)
+            {
+                out.write(row(width, repeats, nesting));
+                out.write('\n');
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Appends a repeated sequence (and the sequences nested in it) to a row
+     *
+     * @param	times		Number of times the sequence is worked
+     * @param	nesting		Number of levels of nesting still to add inside this sequence
+     * @param	level		Level of this sequence, counting from 0 for the outermost
+     * @param	innermost	Number of stitches in the innermost sequence
+     */
+    private void appendRepeat(StringBuilder row, int times, int nesting, int level, int innermost)
+    {
+        separate(row);
+        row.append(DELIMITERS[level][0]);
+        if (nesting > 0)
+        {
+            appendRepeat(row, 2, nesting - 1, level + 1, innermost);
+        }
+        else
+        {
+            for (int i = 0; i < innermost; i++)
+            {
+                separate(row);
+                row.append(ABBREVIATIONS[random.nextInt(ABBREVIATIONS.length)]);
+            }
+        }
+        row.append(DELIMITERS[level][1]).append(' ').append(times).append(" times");
+    }
+
+    /**
+     * Appends stitches to a row, as a mix of single abbreviations and Kn/Pn multiples
+     *
+     * @param	count	Number of stitches to append
+     */
+    private void appendStitches(StringBuilder row, int count)
+    {
+        while (count > 0)
+        {
+            separate(row);
+            if (count > 1 && random.nextInt(4) == 0)
+            {
+                int multiple = 1 + random.nextInt(Math.min(count, 8));
+                row.append(random.nextBoolean() ? 'k' : 'p').append(multiple);
+                count -= multiple;
+            }
+            else
+            {
+                row.append(ABBREVIATIONS[random.nextInt(ABBREVIATIONS.length)]);
+                count--;
+            }
+        }
+    }
+
+    /**
+     * Adds the comma and space separating items, unless the row or sequence has just started
+     */
+    private static void separate(StringBuilder row)
+    {
+        int last = row.length() - 1;
+        if (last >= 0 && row.charAt(last) != '(' && row.charAt(last) != '[' && row.charAt(last) != '*')
+        {
+            row.append(", ");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,1025 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class keeps an index of a library of pattern files (every file ending in ".txt"
+ * in a folder and the folders inside it), so that the patterns using a sequence of
+ * stitches can be found without opening each one. It can also be run from the command
+ * line, to bring the index up to date and search it:
+ *
+ *      java PatternLibrary libraryDirectory ["yo, k2tog, yo"]
+ *
+ * Each pattern is parsed with the same code as the editor uses, and every sequence of
+ * one to GRAM_LENGTH stitches in its rows is added to an inverted index, which lists for
+ * each sequence the patterns and rows it appears in. A search for a longer sequence looks
+ * up each run of GRAM_LENGTH stitches in it, and only checks the rows that contain all of
+ * them for the whole sequence. Identical rows within a pattern are indexed once. The size
+ * of each chart (its number of rows and its widest row) is kept in the index too.
+ *
+ * The index is kept in INDEX_FILE in the library folder. update() brings it up to date,
+ * parsing again only the files whose modification time or length has changed since they
+ * were indexed, and dropping the files that are gone.
+ *
+ * Index file layout (all numbers big-endian):
+ *      int     magic number ("KIDX")
+ *      int     format version
+ *      byte    number of stitch types, followed by the name of each Stitch constant
+ *              (one length byte, then ASCII), in the order the stitch codes refer to
+ *      int     number of patterns
+ *      patterns for each pattern:
+ *              short   length in bytes of its path within the library folder, followed
+ *                      by the path in UTF-8 (with "/" between folder names)
+ *              long    modification time of the file, in milliseconds
+ *              long    length in bytes of the file
+ *              number of rows, and the number of stitches in the widest row
+ *              number of distinct rows, then each as its length in bytes and its runs,
+ *                      as in a compiled chart (see CompiledChart)
+ *              the distinct row each row is
+ *              number of sequences, then each as an int key (see key()), the number
+ *                      of distinct rows it appears in, and those rows (each as the
+ *                      difference from the one before)
+ *      long    CRC32 checksum of everything before it
+ *
+ * The numbers not marked above are variable-length integers (see CompiledChart). An index
+ * that is missing, damaged, or written for a different set of stitch types is ignored, and
+ * every file is indexed again.
+ *
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+class PatternLibrary
+{
+    public static final String INDEX_FILE = "library.kindex"; // Index, kept in the library folder
+    public static final int GRAM_LENGTH = 3; // Longest sequence of stitches listed in the index
+    public static final int MAX_RESULTS = 1000; // Most rows listed by a search in the editor
+
+    private static final String CHART_EXTENSION = ".chart.txt"; // Text charts written by BatchRenderer, which are not patterns
+    private static final String TEMP_EXTENSION = ".saving"; // Added to the name of the index while its new version is written
+    private static final int MAGIC = 0x4B494458; // "KIDX"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024; // Bytes written to the index at a time
+    private static final int MAX_RUN_SIZE = 1 + 5; // Largest encoding of one run: a stitch code and a 5-byte length
+    private static final Stitch[] STITCHES = Stitch.values();
+
+    private final File directory;
+    private final HashMap<String, Pattern> patterns = new HashMap<String, Pattern>(); // Patterns indexed, by path within the library folder
+    private final HashMap<Integer, ArrayList<Pattern>> index = new HashMap<Integer, ArrayList<Pattern>>(); // Patterns each sequence of stitches appears in, in order of path
+    private final ArrayList<String> failures = new ArrayList<String>(); // Files that could not be indexed by the last update
+    private boolean loaded; // True once the index file has been read
+
+    /**
+     * Constructor. The index is read by the first call to update().
+     *
+     * @param	directory	Library folder
+     */
+    public PatternLibrary (File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * One pattern file in the index
+     */
+    static class Pattern
+    {
+        private final String path;
+        private final long modified;
+        private final long length;
+        private final int numberOfRows;
+        private final int width;
+        private final byte[][] distinctRows; // Runs of each distinct row
+        private final int[] rowIds; // Distinct row of each row
+        private final HashMap<Integer, int[]> grams; // Distinct rows each sequence of stitches appears in, in order
+
+        Pattern (String path, long modified, long length, int numberOfRows, int width,
+                byte[][] distinctRows, int[] rowIds, HashMap<Integer, int[]> grams)
+        {
+            this.path = path;
+            this.modified = modified;
+            this.length = length;
+            this.numberOfRows = numberOfRows;
+            this.width = width;
+            this.distinctRows = distinctRows;
+            this.rowIds = rowIds;
+            this.grams = grams;
+        }
+
+        /**
+         * @return	Path of the file within the library folder, with "/" between folder names
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        public int getNumberOfRows()
+        {
+            return numberOfRows;
+        }
+
+        /**
+         * @return	Number of stitches in the widest row
+         */
+        public int getWidth()
+        {
+            return width;
+        }
+    }
+
+    /**
+     * A row found by a search
+     */
+    static class Match
+    {
+        private final File file;
+        private final Pattern pattern;
+        private final int row;
+        private final int column;
+
+        Match (File file, Pattern pattern, int row, int column)
+        {
+            this.file = file;
+            this.pattern = pattern;
+            this.row = row;
+            this.column = column;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public Pattern getPattern()
+        {
+            return pattern;
+        }
+
+        public int getRow()
+        {
+            return row;
+        }
+
+        /**
+         * @return	Index of the first stitch of the sequence, where it first appears in the row
+         */
+        public int getColumn()
+        {
+            return column;
+        }
+
+        /**
+         * @return	Description of the match, with row and stitch numbers counting from one
+         */
+        public String toString()
+        {
+            return pattern.path + ": row " + (row+1) + ", stitch " + (column+1)
+                    + " (" + pattern.numberOfRows + " rows, " + pattern.width + " stitches wide)";
+        }
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return	Number of patterns in the index
+     */
+    public synchronized int size()
+    {
+        return patterns.size();
+    }
+
+    /**
+     * @return	Description of each file that could not be indexed by the last update
+     */
+    public synchronized List<String> getFailures()
+    {
+        return new ArrayList<String>(failures);
+    }
+
+    /**
+     * Brings the index up to date with the files in the library folder, reading the index
+     * file first if it has not been read yet. Only the files added or changed since they
+     * were indexed are parsed, several at once, and the index file is written again if
+     * anything has changed.
+     *
+     * @return	Number of files indexed or removed from the index
+     *
+     * @throws	IOException		Thrown if the library folder can't be read, or the index can't be written
+     */
+    public synchronized int update() throws IOException
+    {
+        if (!loaded)
+        {
+            load();
+            loaded = true;
+        }
+        failures.clear();
+
+        // Keep the patterns whose files have not changed, and list those that have
+        Path root = directory.toPath();
+        HashMap<String, Pattern> current = new HashMap<String, Pattern>();
+        ArrayList<Path> changed = new ArrayList<Path>();
+        ArrayDeque<Path> directories = new ArrayDeque<Path>();
+        directories.push(root);
+        while (!directories.isEmpty())
+        {
+            DirectoryStream<Path> entries = Files.newDirectoryStream(directories.pop());
+            try
+            {
+                for (Path entry : entries)
+                {
+                    // Links to pattern files are indexed like the files themselves, but links
+                    // to folders are not followed, since one that points back up the library
+                    // would index the same patterns over and over
+                    BasicFileAttributes attributes;
+                    boolean link;
+                    try
+                    {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        link = attributes.isSymbolicLink();
+                        if (link)
+                        {
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        failures.add(pathOf(root, entry) + ": " + e.getMessage());
+                        continue;
+                    }
+                    String name = entry.getFileName().toString().toLowerCase();
+                    if (attributes.isDirectory())
+                    {
+                        if (!link)
+                        {
+                            directories.push(entry);
+                        }
+                    }
+                    else if (name.endsWith(".txt") && !name.endsWith(CHART_EXTENSION))
+                    {
+                        Pattern pattern = patterns.get(pathOf(root, entry));
+                        if (pattern != null && pattern.modified == attributes.lastModifiedTime().toMillis()
+                                && pattern.length == attributes.size())
+                        {
+                            current.put(pattern.path, pattern);
+                        }
+                        else
+                        {
+                            changed.add(entry);
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                entries.close();
+            }
+        }
+
+        int changes = 0;
+        if (!changed.isEmpty())
+        {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(changed.size(), Runtime.getRuntime().availableProcessors()));
+            try
+            {
+                ArrayList<Future<Pattern>> results = new ArrayList<Future<Pattern>>();
+                for (final Path file : changed)
+                {
+                    final String path = pathOf(root, file);
+                    results.add(pool.submit(
+                        new Callable<Pattern>()
+                        {
+                            public Pattern call() throws IOException {
+                                return index(path, file);
+                            }
+                        }));
+                }
+                for (int i = 0; i < results.size(); i++)
+                {
+                    try
+                    {
+                        Pattern pattern = results.get(i).get();
+                        current.put(pattern.path, pattern);
+                        changes++;
+                    }
+                    catch (ExecutionException e)
+                    {
+                        // As in BatchRenderer, a file that can't be indexed does not stop the rest
+                        Throwable cause = e.getCause();
+                        String problem = (cause instanceof IOException) ? cause.getMessage()
+                                : (cause instanceof OutOfMemoryError) ? "Not enough memory to index pattern"
+                                : cause.toString();
+                        failures.add(pathOf(root, changed.get(i)) + ": " + problem);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Indexing was interrupted");
+            }
+            finally
+            {
+                pool.shutdownNow();
+            }
+        }
+        for (String path : patterns.keySet())
+        {
+            if (!current.containsKey(path))
+            {
+                changes++; // Removed, or no longer readable
+            }
+        }
+
+        if (changes > 0)
+        {
+            patterns.clear();
+            patterns.putAll(current);
+            buildIndex();
+            save();
+        }
+        return changes;
+    }
+
+    /**
+     * @return	Path of a file within the library folder, with "/" between folder names
+     */
+    private static String pathOf(Path root, Path file)
+    {
+        StringBuilder path = new StringBuilder();
+        for (Path name : root.relativize(file))
+        {
+            if (path.length() > 0)
+            {
+                path.append('/');
+            }
+            path.append(name.toString());
+        }
+        return path.toString();
+    }
+
+    /**
+     * Parses a pattern file and lists the sequences of stitches in its rows (runs on a pool thread)
+     *
+     * @param	path	Path of the file within the library folder
+     * @param	file	Pattern file
+     */
+    private static Pattern index(String path, Path file) throws IOException
+    {
+        Metrics.Measurement m = Metrics.start(Metrics.INDEX_PATTERN);
+        // Read before the file itself, so a change made while it is read is found next time
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        RowCollector collector = new RowCollector();
+        new PatternReader(file.toFile()).read(collector);
+        Instructions inst = collector.isEmpty() ? null : collector.getInstructions();
+        int numberOfRows = (inst == null) ? 0 : inst.getNumberOfRows();
+
+        // Identical rows (which share one compiled row when parsed, see RowCache) are indexed once
+        HashMap<RepeatGroup, Integer> distinct = new HashMap<RepeatGroup, Integer>();
+        ArrayList<byte[]> distinctRows = new ArrayList<byte[]>();
+        HashMap<Integer, ArrayList<Integer>> rowsByGram = new HashMap<Integer, ArrayList<Integer>>();
+        int[] rowIds = new int[numberOfRows];
+        int width = 0;
+        long stitches = 0;
+        byte[] cells = new byte[0]; // Reused for each row, grown as needed
+        for (int i = 0; i < numberOfRows; i++)
+        {
+            RepeatGroup row = inst.getRow(i);
+            int rowWidth = inst.getRowWidth(i);
+            width = Math.max(width, rowWidth);
+            Integer id = distinct.get(row);
+            if (id == null)
+            {
+                id = Integer.valueOf(distinctRows.size());
+                distinct.put(row, id);
+                if (cells.length < rowWidth)
+                {
+                    cells = new byte[rowWidth];
+                }
+                row.copyTo(cells, 0);
+                distinctRows.add(encodeRow(cells, rowWidth));
+                addGrams(rowsByGram, cells, rowWidth, id);
+                stitches += rowWidth;
+            }
+            rowIds[i] = id.intValue();
+        }
+
+        HashMap<Integer, int[]> grams = new HashMap<Integer, int[]>(rowsByGram.size() * 2);
+        for (Map.Entry<Integer, ArrayList<Integer>> entry : rowsByGram.entrySet())
+        {
+            ArrayList<Integer> rows = entry.getValue();
+            int[] ids = new int[rows.size()];
+            for (int i = 0; i < ids.length; i++)
+            {
+                ids[i] = rows.get(i).intValue();
+            }
+            grams.put(entry.getKey(), ids);
+        }
+        Metrics.stop(m, numberOfRows, stitches);
+        return new Pattern(path, attributes.lastModifiedTime().toMillis(), attributes.size(), numberOfRows, width,
+                distinctRows.toArray(new byte[distinctRows.size()][]), rowIds, grams);
+    }
+
+    /**
+     * Adds every sequence of one to GRAM_LENGTH stitches in a row to the list of sequences
+     * in a pattern
+     *
+     * @param	rowsByGram	Distinct rows each sequence appears in, in order
+     * @param	cells		Stitches of the row
+     * @param	width		Number of stitches in the row
+     * @param	row			Distinct row being added, which comes after any already listed
+     */
+    private static void addGrams(HashMap<Integer, ArrayList<Integer>> rowsByGram, byte[] cells, int width, Integer row)
+    {
+        int runStart = 0; // Cells from runStart up to runEnd are all the same stitch
+        int runEnd = 0;
+        for (int i = 0; i < width; i++)
+        {
+            if (i == runEnd)
+            {
+                runStart = i;
+                runEnd = i + 1;
+                while (runEnd < width && cells[runEnd] == cells[i])
+                {
+                    runEnd++;
+                }
+            }
+            // Within a run of one stitch, the sequences starting at each cell are the same
+            // as those starting at the one before it
+            if (i > runStart && Math.min(i + GRAM_LENGTH, width) <= runEnd)
+            {
+                continue;
+            }
+            for (int length = 1; length <= GRAM_LENGTH && i + length <= width; length++)
+            {
+                Integer key = Integer.valueOf(key(cells, i, length));
+                ArrayList<Integer> rows = rowsByGram.get(key);
+                if (rows == null)
+                {
+                    rows = new ArrayList<Integer>(1);
+                    rowsByGram.put(key, rows);
+                }
+                if (rows.isEmpty() || !rows.get(rows.size() - 1).equals(row))
+                {
+                    rows.add(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs a sequence of stitches into an int: its length in the top byte, then the stitch
+     * code of each stitch (255 for an unrecognized abbreviation) in the following bytes
+     *
+     * @param	cells	Stitches
+     * @param	start	Index of the first stitch of the sequence
+     * @param	length	Number of stitches in the sequence, at most GRAM_LENGTH
+     */
+    private static int key(byte[] cells, int start, int length)
+    {
+        int key = length;
+        for (int i = 0; i < GRAM_LENGTH; i++)
+        {
+            key = (key << 8) | ((i < length) ? (cells[start + i] & 0xFF) : 0);
+        }
+        return key;
+    }
+
+    /**
+     * Run-length encodes a row of stitches, as in a compiled chart
+     */
+    private static byte[] encodeRow(byte[] cells, int width)
+    {
+        int runs = 0;
+        for (int i = 0; i < width; i++)
+        {
+            if (i == 0 || cells[i] != cells[i-1])
+            {
+                runs++;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(5 + runs * MAX_RUN_SIZE);
+        CompiledChart.writeInt(out, runs);
+        int start = 0;
+        for (int i = 1; i <= width; i++)
+        {
+            if (i == width || cells[i] != cells[start])
+            {
+                out.put(cells[start]); // An unrecognized stitch (-1) is stored as 255
+                CompiledChart.writeInt(out, i - start);
+                start = i;
+            }
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Writes out a row encoded by encodeRow()
+     *
+     * @return	Stitch code of each stitch in the row
+     */
+    private static byte[] decodeRow(byte[] encoded)
+    {
+        ByteBuffer in = ByteBuffer.wrap(encoded);
+        int runs = CompiledChart.readInt(in);
+        int width = 0;
+        for (int i = 0; i < runs; i++)
+        {
+            in.get();
+            width = Math.addExact(width, CompiledChart.readInt(in));
+        }
+        byte[] cells = new byte[width];
+        in.rewind();
+        CompiledChart.readInt(in);
+        int position = 0;
+        for (int i = 0; i < runs; i++)
+        {
+            byte code = in.get();
+            int length = CompiledChart.readInt(in);
+            Arrays.fill(cells, position, position + length, code);
+            position += length;
+        }
+        return cells;
+    }
+
+    /**
+     * Rebuilds the inverted index from the sequences listed for each pattern
+     */
+    private void buildIndex()
+    {
+        index.clear();
+        ArrayList<String> paths = new ArrayList<String>(patterns.keySet());
+        Collections.sort(paths);
+        for (String path : paths)
+        {
+            Pattern pattern = patterns.get(path);
+            for (Integer key : pattern.grams.keySet())
+            {
+                ArrayList<Pattern> found = index.get(key);
+                if (found == null)
+                {
+                    found = new ArrayList<Pattern>();
+                    index.put(key, found);
+                }
+                found.add(pattern);
+            }
+        }
+    }
+
+    /**
+     * Finds the rows in the library that contain a sequence of stitches, as of the last update
+     *
+     * @param	stitches	Sequence to find, written as in a row of instructions (Eg. "yo, k2tog, yo")
+     * @param	maxResults	Most rows to list
+     *
+     * @return	Rows containing the sequence, in order of path and then row
+     *
+     * @throws	IllegalArgumentException	Thrown if the sequence can't be read
+     */
+    public synchronized List<Match> find(String stitches, int maxResults)
+    {
+        RowParser parser = new RowParser(StitchDictionary.getDefault());
+        RepeatGroup sequence = parser.parse(stitches.trim());
+        if (parser.getErrors() != null)
+        {
+            throw new IllegalArgumentException(parser.getErrors()[0].getMessage());
+        }
+        if (sequence.getWidth() == 0)
+        {
+            throw new IllegalArgumentException("There are no stitches to find");
+        }
+        Metrics.Measurement m = Metrics.start(Metrics.SEARCH_LIBRARY);
+        byte[] query = new byte[sequence.getWidth()];
+        sequence.copyTo(query, 0);
+
+        // Every sequence of GRAM_LENGTH stitches in the query (or the query itself, if it is shorter)
+        int length = Math.min(query.length, GRAM_LENGTH);
+        LinkedHashSet<Integer> keys = new LinkedHashSet<Integer>();
+        for (int i = 0; i + length <= query.length; i++)
+        {
+            keys.add(Integer.valueOf(key(query, i, length)));
+        }
+
+        // Only the patterns containing the least common of them can match
+        ArrayList<Match> matches = new ArrayList<Match>();
+        ArrayList<Pattern> candidates = null;
+        for (Integer key : keys)
+        {
+            ArrayList<Pattern> found = index.get(key);
+            if (found == null)
+            {
+                Metrics.stop(m, 0, 0);
+                return matches;
+            }
+            if (candidates == null || found.size() < candidates.size())
+            {
+                candidates = found;
+            }
+        }
+
+        int rowsChecked = 0;
+        for (Pattern pattern : candidates)
+        {
+            // Distinct rows containing all of them, which are checked for the whole query
+            int[] rows = null;
+            for (Integer key : keys)
+            {
+                int[] found = pattern.grams.get(key);
+                rows = (found == null) ? new int[0] : (rows == null) ? found : intersect(rows, found);
+                if (rows.length == 0)
+                {
+                    break;
+                }
+            }
+            if (rows.length == 0)
+            {
+                continue;
+            }
+            int[] columns = null; // Where the query first appears in each distinct row, or -1
+            for (int id : rows)
+            {
+                int column = indexOf(decodeRow(pattern.distinctRows[id]), query);
+                rowsChecked++;
+                if (column >= 0)
+                {
+                    if (columns == null)
+                    {
+                        columns = new int[pattern.distinctRows.length];
+                        Arrays.fill(columns, -1);
+                    }
+                    columns[id] = column;
+                }
+            }
+            if (columns == null)
+            {
+                continue;
+            }
+            File file = new File(directory, pattern.path);
+            for (int i = 0; i < pattern.numberOfRows; i++)
+            {
+                int column = columns[pattern.rowIds[i]];
+                if (column >= 0)
+                {
+                    if (matches.size() == maxResults)
+                    {
+                        Metrics.stop(m, rowsChecked, 0);
+                        return matches;
+                    }
+                    matches.add(new Match(file, pattern, i, column));
+                }
+            }
+        }
+        Metrics.stop(m, rowsChecked, 0);
+        return matches;
+    }
+
+    /**
+     * @return	Values in both of two ascending arrays, in ascending order
+     */
+    private static int[] intersect(int[] a, int[] b)
+    {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length)
+        {
+            if (a[i] < b[j])
+            {
+                i++;
+            }
+            else if (a[i] > b[j])
+            {
+                j++;
+            }
+            else
+            {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    /**
+     * @return	Index of the first place a sequence of stitches appears in a row, or -1 if it doesn't
+     */
+    private static int indexOf(byte[] cells, byte[] sequence)
+    {
+        for (int i = 0; i + sequence.length <= cells.length; i++)
+        {
+            int j = 0;
+            while (j < sequence.length && cells[i + j] == sequence[j])
+            {
+                j++;
+            }
+            if (j == sequence.length)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the index file, if there is one that can be used
+     */
+    private void load() throws IOException
+    {
+        File file = new File(directory, INDEX_FILE);
+        if (!file.isFile())
+        {
+            return;
+        }
+        // Read into memory rather than mapped, so that the file can be replaced by save()
+        HashMap<String, Pattern> read = readPatterns(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+        if (read != null)
+        {
+            patterns.putAll(read);
+            buildIndex();
+        }
+    }
+
+    /**
+     * Reads the patterns in an index file
+     *
+     * @param	in	Contents of the index file
+     *
+     * @return	Patterns by path, or null if the file is damaged or was written for other stitch types
+     */
+    private static HashMap<String, Pattern> readPatterns(ByteBuffer in)
+    {
+        try
+        {
+            // Check the file has not been damaged before trusting anything in it
+            int end = in.limit() - 8;
+            CRC32 crc = new CRC32();
+            crc.update(in.array(), 0, end);
+            if (crc.getValue() != in.getLong(end))
+            {
+                return null;
+            }
+            in.limit(end);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION)
+            {
+                return null;
+            }
+
+            // The sequences are stored by stitch code, so the stitch types must be the same
+            if ((in.get() & 0xFF) != STITCHES.length)
+            {
+                return null;
+            }
+            for (int i = 0; i < STITCHES.length; i++)
+            {
+                byte[] name = new byte[in.get() & 0xFF];
+                in.get(name);
+                if (!STITCHES[i].name().equals(new String(name, StandardCharsets.US_ASCII)))
+                {
+                    return null;
+                }
+            }
+
+            int numberOfPatterns = in.getInt();
+            HashMap<String, Pattern> read = new HashMap<String, Pattern>();
+            for (int p = 0; p < numberOfPatterns; p++)
+            {
+                byte[] pathBytes = new byte[in.getShort() & 0xFFFF];
+                in.get(pathBytes);
+                String path = new String(pathBytes, StandardCharsets.UTF_8);
+                long modified = in.getLong();
+                long length = in.getLong();
+                int numberOfRows = CompiledChart.readInt(in);
+                int width = CompiledChart.readInt(in);
+
+                byte[][] distinctRows = new byte[CompiledChart.readInt(in)][];
+                for (int i = 0; i < distinctRows.length; i++)
+                {
+                    distinctRows[i] = new byte[CompiledChart.readInt(in)];
+                    in.get(distinctRows[i]);
+                }
+                int[] rowIds = new int[numberOfRows];
+                for (int i = 0; i < numberOfRows; i++)
+                {
+                    rowIds[i] = CompiledChart.readInt(in);
+                    if (rowIds[i] >= distinctRows.length)
+                    {
+                        return null;
+                    }
+                }
+                int numberOfGrams = CompiledChart.readInt(in);
+                HashMap<Integer, int[]> grams = new HashMap<Integer, int[]>(numberOfGrams * 2);
+                for (int i = 0; i < numberOfGrams; i++)
+                {
+                    int key = in.getInt();
+                    int[] rows = new int[CompiledChart.readInt(in)];
+                    int row = 0;
+                    for (int j = 0; j < rows.length; j++)
+                    {
+                        row += CompiledChart.readInt(in);
+                        if (row >= distinctRows.length)
+                        {
+                            return null;
+                        }
+                        rows[j] = row;
+                    }
+                    grams.put(Integer.valueOf(key), rows);
+                }
+                read.put(path, new Pattern(path, modified, length, numberOfRows, width, distinctRows, rowIds, grams));
+            }
+            if (in.hasRemaining())
+            {
+                return null;
+            }
+            return read;
+        }
+        // A damaged file that happened to pass the checksum
+        catch (BufferUnderflowException e)
+        {
+            return null;
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            return null;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+        catch (NegativeArraySizeException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index file through a temporary file, which then replaces it
+     */
+    private void save() throws IOException
+    {
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        Path temp = new File(directory, INDEX_FILE + TEMP_EXTENSION).toPath();
+        try
+        {
+            FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            try
+            {
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                out.put((byte) STITCHES.length);
+                for (int i = 0; i < STITCHES.length; i++)
+                {
+                    byte[] name = STITCHES[i].name().getBytes(StandardCharsets.US_ASCII);
+                    out.put((byte) name.length);
+                    out.put(name);
+                }
+                out.putInt(patterns.size());
+
+                for (Pattern pattern : patterns.values())
+                {
+                    byte[] path = pattern.path.getBytes(StandardCharsets.UTF_8);
+                    CompiledChart.flush(channel, out, crc, 2);
+                    out.putShort((short) path.length);
+                    put(channel, out, crc, path);
+                    CompiledChart.flush(channel, out, crc, 8 + 8 + 5 + 5 + 5);
+                    out.putLong(pattern.modified);
+                    out.putLong(pattern.length);
+                    CompiledChart.writeInt(out, pattern.numberOfRows);
+                    CompiledChart.writeInt(out, pattern.width);
+
+                    CompiledChart.writeInt(out, pattern.distinctRows.length);
+                    for (byte[] row : pattern.distinctRows)
+                    {
+                        CompiledChart.flush(channel, out, crc, 5);
+                        CompiledChart.writeInt(out, row.length);
+                        put(channel, out, crc, row);
+                    }
+                    for (int id : pattern.rowIds)
+                    {
+                        CompiledChart.flush(channel, out, crc, 5);
+                        CompiledChart.writeInt(out, id);
+                    }
+
+                    CompiledChart.flush(channel, out, crc, 5);
+                    CompiledChart.writeInt(out, pattern.grams.size());
+                    for (Map.Entry<Integer, int[]> entry : pattern.grams.entrySet())
+                    {
+                        int[] rows = entry.getValue();
+                        CompiledChart.flush(channel, out, crc, 4 + 5);
+                        out.putInt(entry.getKey().intValue());
+                        CompiledChart.writeInt(out, rows.length);
+                        int previous = 0;
+                        for (int row : rows)
+                        {
+                            CompiledChart.flush(channel, out, crc, 5);
+                            CompiledChart.writeInt(out, row - previous);
+                            previous = row;
+                        }
+                    }
+                }
+
+                CompiledChart.flush(channel, out, crc, BUFFER_SIZE);
+                out.putLong(crc.getValue());
+                CompiledChart.flush(channel, out, null, BUFFER_SIZE);
+                channel.force(true); // On the disk before it replaces the old version
+            }
+            finally
+            {
+                channel.close();
+            }
+            Autosave.replace(temp, new File(directory, INDEX_FILE).toPath());
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Adds bytes to the output buffer, writing it to the file as it fills
+     */
+    private static void put(FileChannel channel, ByteBuffer out, CRC32 crc, byte[] bytes) throws IOException
+    {
+        int written = 0;
+        while (written < bytes.length)
+        {
+            CompiledChart.flush(channel, out, crc, 1);
+            int count = Math.min(out.remaining(), bytes.length - written);
+            out.put(bytes, written, count);
+            written += count;
+        }
+    }
+
+    /**
+     * Main method - brings the index of a library folder up to date, and lists the rows
+     * containing a sequence of stitches, if one is given
+     */
+    public static void main (String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("Usage: java PatternLibrary libraryDirectory [\"stitches to find\"]");
+            System.exit(2);
+        }
+        BatchRenderer.loadStitchAbbreviations();
+
+        PatternLibrary library = new PatternLibrary(new File(args[0]));
+        try
+        {
+            long startTime = System.nanoTime();
+            int changes = library.update();
+            System.out.printf("Indexed %d changed files in %.1f seconds (%d patterns in the library)%n",
+                    changes, (System.nanoTime() - startTime) / 1e9, library.size());
+            List<String> failures = library.getFailures();
+            if (!failures.isEmpty())
+            {
+                System.out.println(failures.size() + " files could not be indexed:");
+                for (String failure : failures)
+                {
+                    System.out.println("    " + failure);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Unable to index the library \"" + args[0] + "\": " + e.getMessage());
+            System.exit(2);
+        }
+
+        if (args.length == 2)
+        {
+            try
+            {
+                long startTime = System.nanoTime();
+                List<Match> matches = library.find(args[1], Integer.MAX_VALUE);
+                double millis = (System.nanoTime() - startTime) / 1e6;
+                for (Match match : matches)
+                {
+                    System.out.println(match);
+                }
+                System.out.printf("Found %d rows in %.1f ms%n", matches.size(), millis);
+            }
+            catch (IllegalArgumentException e)
+            {
+                System.err.println("Error: Unable to read the stitches to find: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+        System.exit(0);
+    }
+}
\ No newline at end of file
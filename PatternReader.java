@@ -0,0 +1,167 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class reads a pattern file line by line through a FileChannel, decoding it
+ * from UTF-8 a chunk at a time and passing each line to a LineHandler as soon as
+ * it has been read. Only the current chunk and the current line are held in memory,
+ * so the whole file is never copied into a String, list, or array.
+ *
+ * Lines may end with "\n", "\r\n", or "\r" (as in files saved on older Macs).
+ * Bytes that are not UTF-8 (as in a file saved as Latin-1) are passed on as the
+ * replacement character U+FFFD, and isDecodedCleanly() tells whether there were any,
+ * so that the file is not written over with the replacements without the user knowing.
+ * A CRC32 checksum of the bytes is computed as they are read (see getChecksum()), so a
+ * caller can check the file against a compiled chart without reading it a second time.
+ *
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+class PatternReader
+{
+    private static final int CHUNK_SIZE = 64 * 1024; // Bytes read from the file at a time
+
+    private final File file;
+    private long bytesRead; // Bytes read from the file so far
+    private boolean decodedCleanly; // False once a byte that is not UTF-8 has been read
+    private final CRC32 crc = new CRC32(); // Checksum of the bytes read from the file so far
+
+    /**
+     * Constructor
+     *
+     * @param	file	Pattern file to read
+     */
+    public PatternReader (File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Reads the file, passing each line to a handler
+     *
+     * @param	handler		Handler to receive each line
+     *
+     * @return	True if the whole file was read, false if the handler asked to stop
+     *
+     * @throws	IOException		Thrown if the file can't be read
+     */
+    public boolean read(LineHandler handler) throws IOException
+    {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+        StringBuilder line = new StringBuilder(); // Text of the line being read, which may span chunks
+        boolean afterCarriageReturn = false; // True if the last character was "\r", so a following "\n" is part of the same line break
+        bytesRead = 0;
+        decodedCleanly = true;
+        crc.reset();
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try
+        {
+            boolean endOfFile = false;
+            while (!endOfFile)
+            {
+                int count = channel.read(bytes);
+                endOfFile = (count < 0);
+                if (count > 0)
+                {
+                    bytesRead += count;
+                    ByteBuffer added = bytes.duplicate();
+                    added.flip();
+                    added.position(added.limit() - count);
+                    crc.update(added);
+                }
+
+                // Decode as much of the chunk as possible; an incomplete character at
+                // the end of the chunk is kept in the byte buffer for the next read
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, endOfFile);
+                while (result.isError())
+                {
+                    // Skip the bytes that are not UTF-8, leaving a replacement character in
+                    // their place (there is always room: no byte decodes to more than one character)
+                    decodedCleanly = false;
+                    bytes.position(bytes.position() + result.length());
+                    chars.put('\uFFFD');
+                    result = decoder.decode(bytes, chars, endOfFile);
+                }
+                if (endOfFile)
+                {
+                    decoder.flush(chars);
+                }
+                bytes.compact();
+
+                // Split the decoded characters into lines
+                chars.flip();
+                while (chars.hasRemaining())
+                {
+                    char c = chars.get();
+                    if (c == '\n' && afterCarriageReturn)
+                    {
+                        afterCarriageReturn = false;
+                    }
+                    else if (c == '\n' || c == '\r')
+                    {
+                        afterCarriageReturn = (c == '\r');
+                        if (!handler.line(line.toString()))
+                        {
+                            return false;
+                        }
+                        line.setLength(0);
+                    }
+                    else
+                    {
+                        afterCarriageReturn = false;
+                        line.append(c);
+                    }
+                }
+                chars.clear();
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+
+        // The last line may not end with a line break
+        if (line.length() > 0)
+        {
+            return handler.line(line.toString());
+        }
+        return true;
+    }
+
+    /**
+     * @return	True if every byte read from the file so far was valid UTF-8
+     */
+    public boolean isDecodedCleanly()
+    {
+        return decodedCleanly;
+    }
+
+    /**
+     * @return	CRC32 checksum of the bytes read from the file so far (once the whole file
+     *			has been read, the same as CompiledChart.checksum() of the file)
+     */
+    public long getChecksum()
+    {
+        return crc.getValue();
+    }
+
+    /**
+     * @return	Number of bytes read from the file so far
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,435 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class writes a knitting chart back out as written instructions, in the syntax
+ * read by RowParser, finding the repeated sequences in each row so the instructions
+ * are as short as possible:
+ *      K, P, K, P, K, P, YO, K2TOG, YO, K2TOG, K, K, K ==> (k1, p1) 3 times, (yo, k2tog) 2 times, k3
+ *
+ * Each row is compressed by a period search. Working right to left, the length of the
+ * match between the stitches at each position and those a period further on is kept
+ * for every period up to MAX_PERIOD, so the longest repeat of each period starting at
+ * each position is known without comparing any stitches twice. Then, working left to
+ * right, the repeat that saves the most characters is taken wherever there is one
+ * (and its sequence compressed in the same way, for repeats nested inside it), and
+ * otherwise the stitch is written out, with runs of knit and purl stitches written as
+ * Kn and Pn multiples. This takes time in proportion to the width of the row times
+ * MAX_PERIOD, and identical rows are only compressed once.
+ *
+ * Parsing the instructions gives back exactly the same chart: unrecognized stitches
+ * are written as an abbreviation that is not in the dictionary, and abbreviations are
+ * chosen so that none of them can be read as anything else.
+ *
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+class PatternWriter
+{
+    private static final int MAX_PERIOD = 128; // Longest sequence of stitches looked for as a repeat
+    private static final int REPEAT_OVERHEAD = 2 + " times".length() + 1; // Characters added by a repeat besides its count: delimiters, " times", and the space before the count
+    private static final int SEPARATOR = ", ".length();
+    private static final Stitch[] STITCHES = Stitch.values(); // Cached once, since values() clones the array on every call
+
+    private final String[] abbreviations = new String[STITCHES.length + 1]; // Abbreviation written for each stitch ordinal, and last, for unrecognized stitches
+    private final boolean[] multiples = new boolean[STITCHES.length + 1]; // True for the stitches that can be written as Kn or Pn multiples
+
+    /**
+     * Constructor - writes the abbreviations in the default dictionary
+     */
+    public PatternWriter ()
+    {
+        this(StitchDictionary.getDefault());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param	dictionary	Dictionary the instructions will be parsed with
+     *
+     * @throws	IllegalArgumentException	Thrown if a stitch has no abbreviation that can be written
+     */
+    public PatternWriter (StitchDictionary dictionary)
+    {
+        for (Stitch stitch : STITCHES)
+        {
+            // The shortest abbreviation that can't be mistaken for a multiple or for repeat syntax
+            for (String abbreviation : dictionary.getAbbreviations(stitch))
+            {
+                if (isWritable(abbreviation))
+                {
+                    abbreviations[stitch.ordinal()] = abbreviation;
+                    break;
+                }
+            }
+            if (abbreviations[stitch.ordinal()] == null)
+            {
+                throw new IllegalArgumentException("No abbreviation for " + stitch.getStitchName() + " can be written");
+            }
+        }
+        multiples[Stitch.K.ordinal()] = dictionary.lookup("k") == Stitch.K;
+        multiples[Stitch.P.ordinal()] = dictionary.lookup("p") == Stitch.P;
+
+        // Unrecognized stitches are written as "?" (or "??", and so on, if that is an abbreviation)
+        String unknown = "?";
+        while (dictionary.lookup(unknown) != null)
+        {
+            unknown += "?";
+        }
+        abbreviations[STITCHES.length] = unknown;
+    }
+
+    /**
+     * @return	True if an abbreviation is read back as itself: it contains no repeat
+     *			delimiters or commas, and is not K or P followed by a number
+     */
+    private static boolean isWritable(String abbreviation)
+    {
+        for (int i = 0; i < abbreviation.length(); i++)
+        {
+            if ("()[]*,".indexOf(abbreviation.charAt(i)) >= 0)
+            {
+                return false;
+            }
+        }
+        char type = Character.toLowerCase(abbreviation.charAt(0));
+        if ((type == 'k' || type == 'p') && abbreviation.length() > 1 && abbreviation.charAt(1) != '0')
+        {
+            for (int i = 1; i < abbreviation.length(); i++)
+            {
+                if (!Character.isDigit(abbreviation.charAt(i)))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param	stitch	Stitch, or null for an unrecognized one
+     *
+     * @return	Abbreviation written for the stitch, which is read back as that stitch
+     *			wherever it appears in a row
+     */
+    public String getAbbreviation(Stitch stitch)
+    {
+        return abbreviations[toCode(stitch)];
+    }
+
+    /**
+     * Writes a whole chart as instructions, one row per line
+     *
+     * @param	chart	Chart to write
+     *
+     * @return	Instructions, with each line (including the last) ending in "\n"
+     *
+     * @throws	IllegalArgumentException	Thrown if a row has no stitches, since an empty line is not a row
+     */
+    public String toText(Chart chart)
+    {
+        StringWriter text = new StringWriter();
+        try
+        {
+            write(chart, text);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e); // Not reached: a StringWriter does not throw
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes a chart as instructions to a file, one row per line, in UTF-8
+     *
+     * @param	chart	Chart to write
+     * @param	f		File to write to
+     *
+     * @throws	IOException		Thrown if the file can't be written
+     *
+     * @throws	IllegalArgumentException	Thrown if a row has no stitches
+     */
+    public void write(Chart chart, File f) throws IOException
+    {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8));
+        try
+        {
+            write(chart, out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void write(Chart chart, Writer out) throws IOException
+    {
+        // Patterns often repeat the same rows, so each different row is only compressed once
+        HashMap<ByteBuffer, String> written = new HashMap<ByteBuffer, String>();
+        for (int i = 0; i < chart.getNumberOfRows(); i++)
+        {
+            byte[] stitches = new byte[chart.getRowWidth(i)];
+            ChartGrid.copyRow(chart, i, stitches);
+            ByteBuffer key = ByteBuffer.wrap(stitches);
+            String line = written.get(key);
+            if (line == null)
+            {
+                line = row(stitches, i);
+                written.put(key, line);
+            }
+            out.write(line);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Writes one row of a chart as instructions
+     *
+     * @param	chart	Chart containing the row
+     * @param	row		Index of the row
+     *
+     * @return	Instructions for the row, without a line ending
+     *
+     * @throws	IllegalArgumentException	Thrown if the row has no stitches
+     */
+    public String row(Chart chart, int row)
+    {
+        byte[] stitches = new byte[chart.getRowWidth(row)];
+        ChartGrid.copyRow(chart, row, stitches);
+        return row(stitches, row);
+    }
+
+    /**
+     * @param	stitches	Stitch ordinals of the row (see ChartGrid)
+     * @param	row			Index of the row, for the error message
+     */
+    private String row(byte[] stitches, int row)
+    {
+        if (stitches.length == 0)
+        {
+            throw new IllegalArgumentException("Row " + (row+1) + " has no stitches, so it can't be written as instructions");
+        }
+
+        // Index the stitches: ordinals, with unrecognized stitches last
+        int[] codes = new int[stitches.length];
+        for (int i = 0; i < stitches.length; i++)
+        {
+            codes[i] = (stitches[i] == ChartGrid.UNKNOWN) ? STITCHES.length : stitches[i];
+        }
+
+        // costs[i] is the number of characters needed to write out the stitches up to and
+        // including i, without repeats (estimating two digits for each multiple)
+        long[] costs = new long[codes.length];
+        for (int i = 0; i < codes.length; i++)
+        {
+            boolean startsRun = i == 0 || codes[i] != codes[i-1] || !multiples[codes[i]];
+            costs[i] = (i == 0 ? 0 : costs[i-1]) + (startsRun ? runCost(codes[i]) : 0);
+        }
+
+        StringBuilder text = new StringBuilder();
+        format(compress(codes, costs, 0, codes.length), text);
+        return text.toString();
+    }
+
+    /**
+     * @return	Characters needed to write one run of a stitch, including the separator after it
+     */
+    private int runCost(int code)
+    {
+        return abbreviations[code].length() + (multiples[code] ? 2 : 0) + SEPARATOR;
+    }
+
+    /**
+     * @return	Characters needed to write out the stitches from start to end without repeats
+     */
+    private long cost(int[] codes, long[] costs, int start, int end)
+    {
+        return runCost(codes[start]) + costs[end-1] - costs[start];
+    }
+
+    /**
+     * Finds the repeats in part of a row
+     *
+     * @param	codes	Stitch codes of the whole row
+     * @param	costs	Cumulative cost of writing out the stitches of the whole row
+     * @param	start	Index of the first stitch of the part to compress
+     * @param	end		Index following the last stitch of the part to compress
+     *
+     * @return	Sequence of runs and repeats that the part of the row is made of
+     */
+    private ArrayList<RowElement> compress(int[] codes, long[] costs, int start, int end)
+    {
+        int length = end - start;
+        int maxPeriod = Math.min(MAX_PERIOD, length / 2);
+
+        // Working right to left, keep the number of stitches from each position that match the
+        // stitches a period further on, for every period; from these, find the repeat starting
+        // at each position that saves the most characters
+        int[] matches = new int[maxPeriod + 1];
+        int[] bestPeriod = new int[length];
+        int[] bestTimes = new int[length];
+        for (int i = end - 1; i >= start; i--)
+        {
+            long bestSaving = 0;
+            for (int period = 1; period <= maxPeriod; period++)
+            {
+                matches[period] = (i + period < end && codes[i] == codes[i + period]) ? matches[period] + 1 : 0;
+                int times = 1 + matches[period] / period;
+                if (times < 2 || period == 1)
+                {
+                    continue; // A single stitch is already written as a run
+                }
+                long saving = cost(codes, costs, i, i + period*times) - cost(codes, costs, i, i + period)
+                        - REPEAT_OVERHEAD - digits(times);
+                if (saving > bestSaving)
+                {
+                    bestSaving = saving;
+                    bestPeriod[i - start] = period;
+                    bestTimes[i - start] = times;
+                }
+            }
+        }
+
+        // Working left to right, take the best repeat wherever there is one
+        ArrayList<RowElement> elements = new ArrayList<RowElement>();
+        int i = start;
+        while (i < end)
+        {
+            int period = bestPeriod[i - start];
+            if (period == 0)
+            {
+                append(elements, new StitchRun(toStitch(codes[i]), 1));
+                i++;
+                continue;
+            }
+            int times = bestTimes[i - start];
+            ArrayList<RowElement> body = compress(codes, costs, i, i + period);
+            if (body.size() == 1 && body.get(0) instanceof RepeatGroup)
+            {
+                // A repeat of a repeat, such as "((yo, k2tog) 2 times) 3 times", is just a longer repeat
+                RepeatGroup inner = (RepeatGroup) body.get(0);
+                elements.add(new RepeatGroup(inner.getElements(), inner.getTimes() * times));
+            }
+            else
+            {
+                elements.add(new RepeatGroup(body.toArray(new RowElement[body.size()]), times));
+            }
+            i += period * times;
+        }
+        return elements;
+    }
+
+    /**
+     * Adds a stitch to the end of a sequence, merging it into the last element if that is a run of the same stitch
+     */
+    private static void append(ArrayList<RowElement> elements, StitchRun run)
+    {
+        int last = elements.size() - 1;
+        if (last >= 0 && elements.get(last) instanceof StitchRun && ((StitchRun) elements.get(last)).getStitch() == run.getStitch())
+        {
+            elements.set(last, new StitchRun(run.getStitch(), ((StitchRun) elements.get(last)).getCount() + run.getCount()));
+        }
+        else
+        {
+            elements.add(run);
+        }
+    }
+
+    /**
+     * Writes a sequence of runs and repeats as instructions, separated by commas
+     */
+    private void format(List<RowElement> elements, StringBuilder text)
+    {
+        for (int i = 0; i < elements.size(); i++)
+        {
+            if (i > 0)
+            {
+                text.append(", ");
+            }
+            RowElement element = elements.get(i);
+            if (element instanceof RepeatGroup)
+            {
+                RepeatGroup group = (RepeatGroup) element;
+                boolean parentheses = height(group)%2 == 1; // The innermost repeats in parentheses, the next in brackets, and so on
+                text.append(parentheses ? '(' : '[');
+                format(Arrays.asList(group.getElements()), text);
+                text.append(parentheses ? ')' : ']').append(' ').append(group.getTimes()).append(" times");
+            }
+            else
+            {
+                formatRun((StitchRun) element, text);
+            }
+        }
+    }
+
+    /**
+     * Writes a run of a stitch: as a Kn or Pn multiple if it can be, otherwise as
+     * the abbreviation written out once for each stitch, or in a repeat if that is shorter
+     */
+    private void formatRun(StitchRun run, StringBuilder text)
+    {
+        int code = toCode(run.getStitch());
+        String abbreviation = abbreviations[code];
+        int count = run.getCount();
+        if (multiples[code])
+        {
+            text.append(abbreviation).append(count);
+        }
+        else if (count == 1)
+        {
+            text.append(abbreviation);
+        }
+        else if ((long) count * (abbreviation.length() + SEPARATOR) - SEPARATOR
+                > abbreviation.length() + REPEAT_OVERHEAD + digits(count))
+        {
+            text.append('(').append(abbreviation).append(") ").append(count).append(" times");
+        }
+        else
+        {
+            for (int i = 0; i < count; i++)
+            {
+                text.append(i > 0 ? ", " : "").append(abbreviation);
+            }
+        }
+    }
+
+    /**
+     * @return	1 for a repeat with no repeats nested in it (counting runs written as
+     *			repeats), 2 for one with only those nested in it, and so on
+     */
+    private int height(RowElement element)
+    {
+        if (element instanceof StitchRun)
+        {
+            StitchRun run = (StitchRun) element;
+            return (run.getCount() > 1 && !multiples[toCode(run.getStitch())]) ? 1 : 0; // Possibly written as a repeat
+        }
+        int height = 0;
+        for (RowElement child : ((RepeatGroup) element).getElements())
+        {
+            height = Math.max(height, height(child));
+        }
+        return height + 1;
+    }
+
+    private static Stitch toStitch(int code)
+    {
+        return (code == STITCHES.length) ? null : STITCHES[code];
+    }
+
+    private static int toCode(Stitch stitch)
+    {
+        return (stitch == null) ? STITCHES.length : stitch.ordinal();
+    }
+
+    private static int digits(int n)
+    {
+        return Integer.toString(n).length();
+    }
+}
\ No newline at end of file
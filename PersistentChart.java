@@ -0,0 +1,155 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class is one version of a knitting chart that is being edited. Versions are never
+ * changed: changing a stitch makes a new version (see withStitch()), and the old version
+ * stays as it was, so that keeping every version for undo and redo is cheap.
+ *
+ * Each version shares almost everything with the one it was made from. The chart as it
+ * was rendered (a ChartGrid or Instructions, which are not changed) is shared by every
+ * version, and only the rows that have been edited are stored, in a trie indexed by row
+ * number with 32 branches per node. Changing a stitch copies its row and the nodes on
+ * the path from the root of the trie to the row (four nodes for a million rows), so a
+ * new version takes memory in proportion to the width of the row, not the size of the chart.
+ *
+ */
+
+class PersistentChart implements Chart
+{
+    private static final int BITS = 5; // Bits of the row number used at each level of the trie
+    private static final int BRANCHES = 1 << BITS; // Children of each node of the trie
+    private static final int NODE_BYTES = 16 + 4 * BRANCHES; // Estimated memory taken by one node of the trie
+
+    private final Chart base; // Chart as it was rendered, shared by every version
+    private final Object[] root; // Root of the trie of edited rows: nodes are Object[], and rows byte[] (null where nothing was edited)
+    private final int shift; // Bits to shift the row number right by to find the child of the root
+    private final long editBytes; // Memory taken by this version that is not shared with the version it was made from
+
+    /**
+     * Constructor - creates the first version of a chart, before it has been edited
+     *
+     * @param	base	Chart as it was rendered, which must not be changed afterwards
+     */
+    public PersistentChart (Chart base)
+    {
+        this.base = base;
+        root = new Object[BRANCHES];
+        int levelShift = 0;
+        while (levelShift + BITS < 31 && Math.max(base.getNumberOfRows() - 1, 0) >>> (levelShift + BITS) > 0)
+        {
+            levelShift += BITS;
+        }
+        shift = levelShift;
+        editBytes = NODE_BYTES;
+    }
+
+    private PersistentChart (Chart base, Object[] root, int shift, long editBytes)
+    {
+        this.base = base;
+        this.root = root;
+        this.shift = shift;
+        this.editBytes = editBytes;
+    }
+
+    /**
+     * Makes a new version of the chart with one stitch changed, leaving this version as it is
+     *
+     * @param	row		Index of a row in the chart
+     * @param	column	Index of a stitch within the row
+     * @param	stitch	New stitch, or null for an unrecognized abbreviation
+     *
+     * @return	New version of the chart
+     */
+    public PersistentChart withStitch(int row, int column, Stitch stitch)
+    {
+        if (column < 0 || column >= getRowWidth(row))
+        {
+            throw new IndexOutOfBoundsException("Stitch " + column + " is outside row " + row);
+        }
+        byte[] stitches = new byte[getRowWidth(row)];
+        getRow(row, stitches);
+        stitches[column] = ChartGrid.toOrdinal(stitch);
+
+        // Copy the nodes on the path to the row, sharing every other node
+        Object[] newRoot = root.clone();
+        Object[] node = newRoot;
+        int nodesCopied = 1;
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            int branch = (row >>> level) & (BRANCHES - 1);
+            Object[] child = (Object[]) node[branch];
+            child = (child == null) ? new Object[BRANCHES] : child.clone();
+            node[branch] = child;
+            node = child;
+            nodesCopied++;
+        }
+        node[row & (BRANCHES - 1)] = stitches;
+        return new PersistentChart(base, newRoot, shift, (long) nodesCopied * NODE_BYTES + 16 + stitches.length);
+    }
+
+    /**
+     * @return	Stitch ordinals of a row that has been edited, or null if it has not
+     */
+    private byte[] getEditedRow(int row)
+    {
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            node = (Object[]) node[(row >>> level) & (BRANCHES - 1)];
+            if (node == null)
+            {
+                return null;
+            }
+        }
+        return (byte[]) node[row & (BRANCHES - 1)];
+    }
+
+    /**
+     * @return	Memory in bytes taken by this version that is not shared with the version
+     *			it was made from (for the first version, just the root of the trie)
+     */
+    public long getEditBytes()
+    {
+        return editBytes;
+    }
+
+    public int getNumberOfRows()
+    {
+        return base.getNumberOfRows();
+    }
+
+    public int getRowWidth(int row)
+    {
+        return base.getRowWidth(row);
+    }
+
+    public Stitch getStitch(int row, int column)
+    {
+        byte[] stitches = getEditedRow(row);
+        if (stitches == null)
+        {
+            return base.getStitch(row, column);
+        }
+        return ChartGrid.fromOrdinal(stitches[column]);
+    }
+
+    /**
+     * Copies the ordinals of every stitch in a row into an array
+     *
+     * @param	row		Index of a row in the chart
+     * @param	dest	Array to copy to, at least as long as the row
+     */
+    public void getRow(int row, byte[] dest)
+    {
+        byte[] stitches = getEditedRow(row);
+        if (stitches == null)
+        {
+            ChartGrid.copyRow(base, row, dest);
+        }
+        else
+        {
+            System.arraycopy(stitches, 0, dest, 0, stitches.length);
+        }
+    }
+}
\ No newline at end of file
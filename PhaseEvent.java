@@ -0,0 +1,34 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class is a Java Flight Recorder event recording one phase of parsing or rendering
+ * a chart (see Metrics). Events are only recorded while a flight recording that enables
+ * them is running, for example one started with:
+ *
+ *      java -XX:StartFlightRecording=filename=editor.jfr KnittingEditor
+ *
+ */
+
+import jdk.jfr.*;
+
+@Name("knittingeditor.Phase")
+@Label("Chart Phase")
+@Category("Knitting Editor")
+@Description("One phase of parsing or rendering a knitting chart")
+class PhaseEvent extends Event
+{
+    @Label("Phase")
+    String phase;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Stitches")
+    long stitches;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by all threads during the phase")
+    @DataAmount
+    long allocated;
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This interface receives the progress and result of a RenderWorker.
+ * Both methods are called on the Swing event thread.
+ */
+
+interface RenderListener
+{
+    /**
+     * Called as rows of the pattern are parsed
+     *
+     * @param	rowsParsed		Number of rows parsed so far
+     * @param	numberOfRows	Total number of rows in the pattern, or 0 if not yet known
+     *							(when the pattern is being read from a file)
+     */
+    void renderProgress(int rowsParsed, int numberOfRows);
+
+    /**
+     * Called when the pattern has been parsed (unless the render was cancelled)
+     *
+     * @param	result	Parsed chart, or a description of why it could not be rendered
+     */
+    void renderFinished(RenderResult result);
+}
\ No newline at end of file
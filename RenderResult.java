@@ -0,0 +1,184 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class holds the outcome of parsing a knitting pattern in the background
+ * (see RenderWorker): either the parsed instructions and the chart to display,
+ * or a message describing why the pattern could not be rendered (along with the
+ * errors found in it, so they can be pointed out in the instructions). A pattern that
+ * was rendered may still come with a warning that its stitch counts do not match
+ * from one row to the next (see StitchCountCheck).
+ * Patterns read from a file also carry the text of the file, to display in the editor.
+ */
+
+import javax.swing.text.*;
+import java.io.*;
+import java.util.*;
+
+class RenderResult
+{
+    private static final int MAX_ERRORS_LISTED = 5; // Number of errors included in the message to the user
+
+    private final Instructions instructions;
+    private final ChartGrid grid;
+    private final String errorMessage;
+    private final List<ParseError> errors; // Syntax errors and row length mismatches found, if any, or for a rendered pattern, stitch count mismatches
+    private Document document; // Text of the instructions, if they were read from a file
+    private File file; // File the instructions were read from, or null if they were not read from a file
+    private boolean decodedCleanly = true; // False if the file held bytes that are not UTF-8 (see PatternReader)
+
+    /**
+     * Constructor for a pattern that was rendered successfully
+     *
+     * @param	instructions	Parsed knitting pattern instructions
+     * @param	grid			Fully written out chart to display
+     */
+    public RenderResult (Instructions instructions, ChartGrid grid)
+    {
+        this(instructions, grid, Collections.<ParseError>emptyList());
+    }
+
+    /**
+     * Constructor for a pattern that was rendered, but has problems the user should be told about
+     *
+     * @param	instructions	Parsed knitting pattern instructions
+     * @param	grid			Fully written out chart to display
+     * @param	warnings		Stitch count mismatches found in the pattern
+     */
+    public RenderResult (Instructions instructions, ChartGrid grid, List<ParseError> warnings)
+    {
+        this.instructions = instructions;
+        this.grid = grid;
+        this.errorMessage = null;
+        this.errors = warnings;
+    }
+
+    /**
+     * Constructor for a pattern that could not be rendered
+     *
+     * @param	errorMessage	Description of the problem, for display to the user
+     */
+    public RenderResult (String errorMessage)
+    {
+        this(errorMessage, Collections.<ParseError>emptyList());
+    }
+
+    /**
+     * Constructor for a pattern that could not be rendered because of errors in it
+     *
+     * @param	errorMessage	Description of the problem, for display to the user
+     * @param	errors			Syntax errors and row length mismatches found in the pattern
+     */
+    public RenderResult (String errorMessage, List<ParseError> errors)
+    {
+        this.instructions = null;
+        this.grid = null;
+        this.errorMessage = errorMessage;
+        this.errors = errors;
+    }
+
+    /**
+     * @return	True if the pattern was parsed and its chart is ready to display
+     */
+    public boolean isSuccessful()
+    {
+        return errorMessage == null;
+    }
+
+    public Instructions getInstructions()
+    {
+        return instructions;
+    }
+
+    public ChartGrid getGrid()
+    {
+        return grid;
+    }
+
+    public String getErrorMessage()
+    {
+        return errorMessage;
+    }
+
+    /**
+     * @return	Syntax errors and row length mismatches found in the pattern, in row order,
+     *			or if it was rendered, any stitch count mismatch found in it
+     */
+    public List<ParseError> getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * @return	Text of the instructions read from a file, or null if they were not read from a file
+     */
+    public Document getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * @return	File the instructions were read from, or null if they were not read from a file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return	False if the file the instructions were read from held bytes that are not
+     *			UTF-8, which are shown as replacement characters in the text
+     */
+    public boolean isDecodedCleanly()
+    {
+        return decodedCleanly;
+    }
+
+    /**
+     * @param	document		Text of the instructions read from a file
+     * @param	file			File they were read from
+     * @param	decodedCleanly	False if the file held bytes that are not UTF-8
+     */
+    public void setDocument(Document document, File file, boolean decodedCleanly)
+    {
+        this.document = document;
+        this.file = file;
+        this.decodedCleanly = decodedCleanly;
+    }
+
+    /**
+     * Checks parsed instructions for errors, and writes out the chart if there are none
+     *
+     * @return	Parsed chart, or a description of why it could not be rendered
+     */
+    public static RenderResult check(Instructions inst)
+    {
+        // Report syntax errors and row length mismatches, listing the first few
+        List<ParseError> errors = inst.getErrors();
+        if (!errors.isEmpty())
+        {
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < Math.min(errors.size(), MAX_ERRORS_LISTED); i++)
+            {
+                message.append(errors.get(i)).append("\n");
+            }
+            if (errors.size() > MAX_ERRORS_LISTED)
+            {
+                message.append("(and " + (errors.size() - MAX_ERRORS_LISTED) + " more)");
+            }
+            return new RenderResult(message.toString().trim(), errors);
+        }
+        if (inst.hasUnknownStitches())
+        {
+            return new RenderResult("The pattern contains an unrecognized stitch abbreviation.");
+        }
+
+        // Rows whose stitch counts do not match are still charted, but pointed out
+        ParseError mismatch = inst.checkStitchCounts().getError();
+        if (mismatch != null)
+        {
+            return new RenderResult(inst, inst.getGrid(), Collections.singletonList(mismatch));
+        }
+        return new RenderResult(inst, inst.getGrid());
+    }
+}
\ No newline at end of file
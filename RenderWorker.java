@@ -0,0 +1,332 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class parses knitting pattern instructions into a chart on a background thread,
+ * so the user interface stays responsive while large patterns are rendered.
+ *
+ * Progress is reported to a RenderListener row by row, and the parse stops part way
+ * through if the worker is cancelled (for example because a newer render has started).
+ * Only the finished result is handed back to the Swing event thread; syntax errors are
+ * returned as part of the result rather than being thrown.
+ *
+ * Instructions can also be read straight from a file, in which case each line is parsed
+ * as soon as it is read (see PatternReader) and the text is added to a new document for
+ * the editor in large chunks, so no intermediate copies of the whole file are made.
+ * If an up-to-date compiled chart was saved with the file (see CompiledChart), it is
+ * loaded instead and the lines are not parsed at all. The file is read only once either
+ * way: whether the compiled chart is up to date is checked against the checksum of the
+ * bytes as they were read (see PatternReader.getChecksum()).
+ *
+ * The whole text of the file is held in the document (see PatternDocument), as Java
+ * characters of two bytes each, so a file of ASCII text takes about twice its size on the
+ * heap on top of the chart. Reading the text lazily from the file as it is shown would
+ * avoid that, but the document has to be editable, and its line breaks are counted when
+ * it is built (see Rope), so the file is read in full as before.
+ *
+ */
+
+import javax.swing.*;
+import javax.swing.text.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class RenderWorker extends SwingWorker<RenderResult, Integer>
+{
+    private static final int PROGRESS_INTERVAL = 256; // Number of rows parsed between progress reports
+    private static final int DOCUMENT_CHUNK_SIZE = 64 * 1024; // Characters of file text added to the document at a time
+
+    private final Rope text; // Instructions text to read each line from, or null if lines were supplied
+    private final String[] lines;
+    private final File file; // File to read the instructions from, or null if text or lines were supplied
+    private final RenderListener listener;
+    private int numberOfRows;
+
+    /**
+     * Constructor for rendering instructions text (such as a snapshot of the instructions
+     * pane, see PatternDocument). Each line is read from the text as it is parsed.
+     *
+     * @param	text		Knitting pattern instructions, one row per line
+     * @param	listener	Listener to receive progress and the result
+     */
+    public RenderWorker (Rope text, RenderListener listener)
+    {
+        this.text = text;
+        this.lines = null;
+        this.file = null;
+        this.listener = listener;
+    }
+
+    /**
+     * Constructor for rendering instructions that have already been split into lines
+     *
+     * @param	lines		Knitting pattern instructions, one row per array element
+     * @param	listener	Listener to receive progress and the result
+     */
+    public RenderWorker (String[] lines, RenderListener listener)
+    {
+        this.text = null;
+        this.lines = lines;
+        this.file = null;
+        this.listener = listener;
+    }
+
+    /**
+     * Constructor for rendering instructions read from a file
+     *
+     * @param	file		Pattern file, one row per line
+     * @param	listener	Listener to receive progress and the result
+     */
+    public RenderWorker (File file, RenderListener listener)
+    {
+        this.text = null;
+        this.lines = null;
+        this.file = file;
+        this.listener = listener;
+    }
+
+    /**
+     * Parses the instructions and writes out the chart (runs on a background thread)
+     *
+     * @return	Parsed chart, a description of why it could not be rendered,
+     *			or null if the worker was cancelled
+     */
+    protected RenderResult doInBackground()
+    {
+        if (file != null)
+        {
+            return readFile();
+        }
+
+        numberOfRows = (lines != null) ? lines.length : countRows(text);
+        if (numberOfRows == 0)
+        {
+            return new RenderResult("There are no instructions to render.");
+        }
+
+        Instructions inst;
+        try
+        {
+            inst = (lines != null) ? new Instructions(lines, progress()) : new Instructions(text, numberOfRows, progress());
+        }
+        catch (CancellationException e)
+        {
+            return null;
+        }
+
+        return RenderResult.check(inst);
+    }
+
+    /**
+     * Reads and parses the file, one line at a time
+     *
+     * @return	Parsed chart (or a description of why it could not be rendered) along
+     *			with the text of the file, or null if the worker was cancelled
+     */
+    private RenderResult readFile()
+    {
+        // If the chart was compiled when the file was saved, and the file may not have
+        // changed since, the text only needs to be read into the document, not parsed.
+        // Whether it has changed is known once the file has been read and its checksum computed.
+        long compiledChecksum = -1;
+        try
+        {
+            compiledChecksum = CompiledChart.getTextChecksum(file);
+        }
+        catch (IOException e)
+        {
+            // Parse the file instead; if it can't be read either, that is reported below
+        }
+        final boolean parse = (compiledChecksum < 0);
+
+        final PatternDocument document = new PatternDocument();
+        final StringBuilder pending = new StringBuilder(); // File text not yet added to the document
+        final RowCollector collector = new RowCollector();
+        final int[] linesRead = new int[1];
+
+        Metrics.Measurement m = Metrics.start(Metrics.READ_FILE);
+        PatternReader reader = new PatternReader(file);
+        boolean finished;
+        try
+        {
+            finished = reader.read(new LineHandler()
+            {
+                public boolean line(String line)
+                {
+                    // Add the text to the document in large chunks rather than line by line
+                    pending.append(line).append('\n');
+                    if (pending.length() >= DOCUMENT_CHUNK_SIZE)
+                    {
+                        appendText(document, pending);
+                    }
+
+                    if (parse)
+                    {
+                        collector.line(line);
+                    }
+                    linesRead[0]++;
+                    if (linesRead[0] % PROGRESS_INTERVAL == 0)
+                    {
+                        publish(linesRead[0]);
+                    }
+                    return !isCancelled();
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            return new RenderResult("Unable to read the file \"" + file + "\".");
+        }
+        if (!finished)
+        {
+            return null;
+        }
+        appendText(document, pending);
+        Metrics.stop(m, linesRead[0], 0, collector.getParseNanos()); // Without the time spent parsing the lines, recorded below
+
+        Instructions compiled = null;
+        if (!parse && reader.getChecksum() == compiledChecksum)
+        {
+            try
+            {
+                compiled = CompiledChart.load(file, reader.getBytesRead(), reader.getChecksum());
+            }
+            catch (IOException e)
+            {
+                // Parse the text read into the document instead
+            }
+        }
+
+        RenderResult result;
+        if (compiled != null)
+        {
+            result = RenderResult.check(compiled);
+        }
+        else if (!parse)
+        {
+            // The file was changed after all (or the compiled chart is damaged), and the lines
+            // were not parsed as they were read, so parse the text read into the document
+            Rope text = document.getSnapshot();
+            numberOfRows = countRows(text);
+            if (numberOfRows == 0)
+            {
+                result = new RenderResult("File is empty or is not a recognized file type.");
+            }
+            else
+            {
+                try
+                {
+                    result = RenderResult.check(new Instructions(text, numberOfRows, progress()));
+                }
+                catch (CancellationException e)
+                {
+                    return null;
+                }
+            }
+        }
+        else if (collector.isEmpty())
+        {
+            result = new RenderResult("File is empty or is not a recognized file type.");
+        }
+        else
+        {
+            Instructions inst = collector.getInstructions();
+            Metrics.record(Metrics.PARSE, collector.getParseNanos(), inst.getNumberOfRows(), inst.getTotalStitches());
+            result = RenderResult.check(inst);
+        }
+        result.setDocument(document, file, reader.isDecodedCleanly());
+        return result;
+    }
+
+    /**
+     * @return	Listener that reports progress every PROGRESS_INTERVAL rows, and stops
+     *			the parse if the worker is cancelled
+     */
+    private ParseListener progress()
+    {
+        return new ParseListener()
+        {
+            public boolean rowParsed(int rows, int total)
+            {
+                if (rows % PROGRESS_INTERVAL == 0 || rows == total)
+                {
+                    publish(rows);
+                }
+                return !isCancelled();
+            }
+        };
+    }
+
+    /**
+     * Adds text to the end of a document (one not yet displayed, so this is safe off the
+     * Swing event thread), then empties the buffer holding the text
+     */
+    private static void appendText(Document document, StringBuilder text)
+    {
+        try
+        {
+            document.insertString(document.getLength(), text.toString(), null);
+        }
+        catch (BadLocationException e)
+        {
+            throw new IllegalStateException(e); // Not reached: text is always added at the end of the document
+        }
+        text.setLength(0);
+    }
+
+    /**
+     * Passes progress reports on to the listener (runs on the Swing event thread)
+     */
+    protected void process(List<Integer> rows)
+    {
+        if (!isCancelled())
+        {
+            listener.renderProgress(rows.get(rows.size()-1), numberOfRows);
+        }
+    }
+
+    /**
+     * Passes the result on to the listener (runs on the Swing event thread)
+     */
+    protected void done()
+    {
+        if (isCancelled())
+        {
+            return;
+        }
+        try
+        {
+            RenderResult result = get();
+            if (result != null)
+            {
+                listener.renderFinished(result);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // Not reached: get() does not block once the worker is done
+        }
+        catch (ExecutionException e)
+        {
+            listener.renderFinished(new RenderResult("Unexpected error: " + e.getCause()));
+        }
+    }
+
+    /**
+     * Counts the rows in instructions text: its lines, leaving out any blank lines at the end
+     *
+     * @param	text	Knitting pattern instructions, one row per line
+     *
+     * @return	Number of rows of instructions
+     */
+    private static int countRows(Rope text)
+    {
+        int rows = text.getLineCount();
+        while (rows > 0 && text.getLine(rows - 1).trim().length() == 0)
+        {
+            rows--;
+        }
+        return rows;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,229 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * A sequence of row elements worked a number of times, such as "(k2tog, yo) 3 times".
+ * A whole row is represented as a RepeatGroup that is worked once.
+ *
+ * The starting position of each element within one repeat is stored, so any stitch
+ * can be found by taking its position modulo the width of one repeat and then
+ * binary searching for the element that holds it, without writing the repeat out.
+ * The stitches consumed before each element are stored the same way, so stitch
+ * counts are worked out as (count x per-repeat count) rather than stitch by stitch.
+ *
+ * RepeatGroups are compared by content (see equals()), so the parser can share one
+ * RepeatGroup between every place an identical sequence appears. A short sequence that
+ * is worked more than once also keeps a written out copy of one repeat, made the first
+ * time it is needed, so a shared sequence is only written out once however many times
+ * it appears in a pattern.
+ */
+
+import java.util.*;
+
+class RepeatGroup extends RowElement
+{
+    private static final int MAX_EXPANDED_WIDTH = 256; // Widest repeat that is kept written out
+
+    private final RowElement[] elements;
+    private final int times;
+    private final int[] offsets; // offsets[i] is the position of elements[i] within one repeat; the last entry is the repeat width
+    private final int width;
+    private final long[] consumedOffsets; // Stitches consumed within one repeat before each element; the last entry is the repeat total
+    private final long produced;
+    private final boolean hasUnknownStitch;
+    private final int hash;
+    private volatile byte[] expanded; // Stitch ordinals of one repeat, or null if not written out yet
+
+    /**
+     * Constructor
+     *
+     * @param	elements	Sequence of elements making up one repeat
+     * @param	times		Number of times the sequence is worked
+     *
+     * @throws	ArithmeticException		Thrown if the fully written out sequence would be too long to index
+     */
+    public RepeatGroup (RowElement[] elements, int times)
+    {
+        this.elements = elements;
+        this.times = times;
+
+        offsets = new int[elements.length + 1];
+        for (int i = 0; i < elements.length; i++)
+        {
+            offsets[i+1] = Math.addExact(offsets[i], elements[i].getWidth());
+        }
+        width = Math.multiplyExact(offsets[elements.length], times);
+
+        consumedOffsets = new long[elements.length + 1];
+        long producedPerRepeat = 0;
+        boolean unknown = false;
+        for (int i = 0; i < elements.length; i++)
+        {
+            consumedOffsets[i+1] = consumedOffsets[i] + elements[i].getStitchesConsumed();
+            producedPerRepeat += elements[i].getStitchesProduced();
+            unknown = unknown || elements[i].hasUnknownStitch();
+        }
+        produced = producedPerRepeat * times;
+        hasUnknownStitch = unknown;
+        hash = 31 * Arrays.hashCode(elements) + times;
+    }
+
+    public RowElement[] getElements()
+    {
+        return elements;
+    }
+
+    public int getTimes()
+    {
+        return times;
+    }
+
+    int getWidth()
+    {
+        return width;
+    }
+
+    Stitch getStitch(int index)
+    {
+        if (index < 0 || index >= width)
+        {
+            throw new IndexOutOfBoundsException("Stitch " + index + " is outside a sequence of " + width + " stitches");
+        }
+
+        // Find the position within one repeat, then the element containing that position
+        int position = index % offsets[elements.length];
+        byte[] repeat = getExpandedRepeat();
+        if (repeat != null)
+        {
+            return ChartGrid.fromOrdinal(repeat[position]);
+        }
+        int element = Arrays.binarySearch(offsets, 0, elements.length, position);
+        if (element < 0)
+        {
+            element = -element - 2; // Not an element's first stitch, so it belongs to the preceding element
+        }
+        else
+        {
+            // Skip past any elements that are zero stitches wide
+            while (offsets[element+1] == position)
+            {
+                element++;
+            }
+        }
+        return elements[element].getStitch(position - offsets[element]);
+    }
+
+    boolean hasUnknownStitch()
+    {
+        return hasUnknownStitch;
+    }
+
+    void copyTo(byte[] cells, int offset)
+    {
+        // Write the first repeat out element by element (or copy it, if it is kept written out),
+        // then copy it for the second through nth repeats
+        int repeatWidth = offsets[elements.length];
+        byte[] repeat = getExpandedRepeat();
+        if (repeat != null)
+        {
+            System.arraycopy(repeat, 0, cells, offset, repeatWidth);
+        }
+        else
+        {
+            for (int i = 0; i < elements.length; i++)
+            {
+                elements[i].copyTo(cells, offset + offsets[i]);
+            }
+        }
+        for (int j = 1; j < times; j++)
+        {
+            System.arraycopy(cells, offset, cells, offset + repeatWidth*j, repeatWidth);
+        }
+    }
+
+    /**
+     * Gets the stitch ordinals of one repeat, writing them out the first time they are needed
+     *
+     * @return	Written out repeat, or null if the sequence is worked only once or its repeat
+     *			is too wide to be kept written out
+     */
+    private byte[] getExpandedRepeat()
+    {
+        byte[] repeat = expanded;
+        if (repeat == null && times > 1 && offsets[elements.length] <= MAX_EXPANDED_WIDTH)
+        {
+            // If two threads get here at once, both write it out; either copy is correct
+            repeat = new byte[offsets[elements.length]];
+            for (int i = 0; i < elements.length; i++)
+            {
+                elements[i].copyTo(repeat, offsets[i]);
+            }
+            expanded = repeat;
+        }
+        return repeat;
+    }
+
+    long getStitchesConsumed()
+    {
+        return consumedOffsets[elements.length] * times;
+    }
+
+    long getStitchesProduced()
+    {
+        return produced;
+    }
+
+    int findStitchConsuming(long count)
+    {
+        long perRepeat = consumedOffsets[elements.length];
+        if (count >= perRepeat * times)
+        {
+            return -1;
+        }
+
+        // Skip whole repeats, then binary search for the element within the repeat that
+        // consumes the next stitch: the last element whose starting count is at or before it
+        long repeat = count / perRepeat;
+        long remaining = count - repeat * perRepeat;
+        int low = 0;
+        int high = elements.length - 1;
+        while (low < high)
+        {
+            int middle = (low + high + 1) / 2;
+            if (consumedOffsets[middle] <= remaining)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        // (Taking the last one skips elements that consume nothing, such as yarn overs)
+        int element = low;
+        return (int) (repeat * offsets[elements.length]) + offsets[element]
+                + elements[element].findStitchConsuming(remaining - consumedOffsets[element]);
+    }
+
+    /**
+     * Two RepeatGroups are equal if they work the same sequence of elements the same number of times
+     */
+    public boolean equals(Object o)
+    {
+        if (o == this)
+        {
+            return true;
+        }
+        if (!(o instanceof RepeatGroup))
+        {
+            return false;
+        }
+        RepeatGroup other = (RepeatGroup) o;
+        return hash == other.hash && times == other.times && Arrays.equals(elements, other.elements);
+    }
+
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -0,0 +1,539 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class is a piece of text that is never changed, stored as a rope: a binary tree
+ * whose nodes each hold a chunk of at most CHUNK_SIZE characters, the text being the
+ * chunks read in order from left to right. Each node also records how many characters
+ * and line breaks are under it, so a character, the start of a line, or the line holding
+ * an offset is found by walking down from the root, in time proportional to the depth of
+ * the tree (logarithmic in the length of the text) plus the length of one chunk.
+ *
+ * Inserting or removing text makes a new rope, which shares every node of the old one
+ * except those on the paths to the change (as PersistentChart shares the rows of a
+ * chart), so a rope can be read on one thread, for example to parse or save it, while
+ * the text goes on being edited on another. The tree is kept balanced as a treap: each
+ * node is given a random priority, and no node has a higher priority than its parent.
+ *
+ * Lines are separated by "\n"; a line saved on another system may also end with "\r",
+ * which getLine() leaves out. The text has one more line than it has line breaks (the
+ * last line may be empty).
+ *
+ */
+
+import javax.swing.text.*;
+import java.util.*;
+
+class Rope
+{
+    public static final Rope EMPTY = new Rope((Node) null);
+
+    private static final int CHUNK_SIZE = 1024; // Most characters held by one node
+    private static final Random random = new Random(); // Priorities of new nodes
+
+    private final Node root; // Root of the tree, or null for empty text
+
+    /**
+     * One node of the tree, with the chunk of text it holds
+     */
+    private static class Node
+    {
+        final char[] chars; // Chunk of text, every element used
+        final int chunkBreaks; // Line breaks in the chunk
+        final int priority;
+        final Node left;
+        final Node right;
+        final int length; // Characters in this node and all the nodes under it
+        final int breaks; // Line breaks in this node and all the nodes under it
+
+        Node (char[] chars, int chunkBreaks, int priority, Node left, Node right)
+        {
+            this.chars = chars;
+            this.chunkBreaks = chunkBreaks;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            length = length(left) + chars.length + length(right);
+            breaks = breaks(left) + chunkBreaks + breaks(right);
+        }
+
+        Node (char[] chars, int priority, Node left, Node right)
+        {
+            this(chars, countBreaks(chars, 0, chars.length), priority, left, right);
+        }
+
+        /**
+         * @return	A copy of this node with different children
+         */
+        Node with(Node left, Node right)
+        {
+            return new Node(chars, chunkBreaks, priority, left, right);
+        }
+    }
+
+    private Rope (Node root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param	text	Text to store (copied)
+     */
+    public Rope (String text)
+    {
+        this(build(text, 0, text.length()));
+    }
+
+    private static int length(Node n)
+    {
+        return (n == null) ? 0 : n.length;
+    }
+
+    private static int breaks(Node n)
+    {
+        return (n == null) ? 0 : n.breaks;
+    }
+
+    private static int countBreaks(char[] chars, int start, int end)
+    {
+        int count = 0;
+        for (int i = start; i < end; i++)
+        {
+            if (chars[i] == '\n')
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Builds a balanced tree holding text, CHUNK_SIZE characters per node
+     */
+    private static Node build(String text, int start, int end)
+    {
+        if (start >= end)
+        {
+            return null;
+        }
+        int chunks = (end - start + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int chunkStart = start + (chunks / 2) * CHUNK_SIZE;
+        int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, end);
+        Node left = build(text, start, chunkStart);
+        Node right = build(text, chunkEnd, end);
+
+        char[] chars = new char[chunkEnd - chunkStart];
+        text.getChars(chunkStart, chunkEnd, chars, 0);
+        // Heap order is kept by giving the node at least the priority of its children
+        int priority = Math.max(random.nextInt(Integer.MAX_VALUE), Math.max(priority(left), priority(right)));
+        return new Node(chars, priority, left, right);
+    }
+
+    private static int priority(Node n)
+    {
+        return (n == null) ? -1 : n.priority;
+    }
+
+    /**
+     * Joins two trees, all the text of the first coming before the text of the second
+     */
+    private static Node merge(Node a, Node b)
+    {
+        if (a == null)
+        {
+            return b;
+        }
+        if (b == null)
+        {
+            return a;
+        }
+        if (a.priority > b.priority)
+        {
+            return a.with(a.left, merge(a.right, b));
+        }
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    /**
+     * Splits a tree in two at an offset, splitting the chunk holding the offset if needed
+     *
+     * @return	Tree holding the text before the offset, and tree holding the rest
+     */
+    private static Node[] split(Node n, int offset)
+    {
+        if (n == null)
+        {
+            return new Node[2];
+        }
+        int chunkStart = length(n.left);
+        int chunkEnd = chunkStart + n.chars.length;
+        if (offset <= chunkStart)
+        {
+            Node[] parts = split(n.left, offset);
+            return new Node[] {parts[0], n.with(parts[1], n.right)};
+        }
+        if (offset >= chunkEnd)
+        {
+            Node[] parts = split(n.right, offset - chunkEnd);
+            return new Node[] {n.with(n.left, parts[0]), parts[1]};
+        }
+        int cut = offset - chunkStart;
+        Node before = new Node(Arrays.copyOfRange(n.chars, 0, cut), n.priority, n.left, null);
+        Node after = new Node(Arrays.copyOfRange(n.chars, cut, n.chars.length), random.nextInt(Integer.MAX_VALUE), null, null);
+        return new Node[] {before, merge(after, n.right)};
+    }
+
+    /**
+     * @return	Number of characters in the text
+     */
+    public int length()
+    {
+        return length(root);
+    }
+
+    /**
+     * @return	Number of lines in the text (one more than the number of line breaks)
+     */
+    public int getLineCount()
+    {
+        return breaks(root) + 1;
+    }
+
+    /**
+     * Makes a rope with text inserted
+     *
+     * @param	offset	Offset to insert the text at
+     * @param	text	Text to insert
+     *
+     * @return	New rope
+     */
+    public Rope insert(int offset, String text)
+    {
+        checkRange(offset, 0);
+        if (text.length() == 0)
+        {
+            return this;
+        }
+        // Text typed into the editor is added to the chunk it is typed into, while it fits
+        Node changed = insertInChunk(root, offset, text);
+        if (changed == null)
+        {
+            Node[] parts = split(root, offset);
+            changed = merge(merge(parts[0], build(text, 0, text.length())), parts[1]);
+        }
+        return new Rope(changed);
+    }
+
+    /**
+     * Inserts text into the chunk holding an offset (at the end of the chunk before it,
+     * if the offset falls between two chunks)
+     *
+     * @return	New tree, or null if the text does not fit in the chunk
+     */
+    private static Node insertInChunk(Node n, int offset, String text)
+    {
+        if (n == null)
+        {
+            return null;
+        }
+        int chunkStart = length(n.left);
+        int chunkEnd = chunkStart + n.chars.length;
+        if (offset <= chunkStart && n.left != null)
+        {
+            Node left = insertInChunk(n.left, offset, text);
+            return (left == null) ? null : n.with(left, n.right);
+        }
+        if (offset > chunkEnd)
+        {
+            Node right = insertInChunk(n.right, offset - chunkEnd, text);
+            return (right == null) ? null : n.with(n.left, right);
+        }
+        if (n.chars.length + text.length() > CHUNK_SIZE)
+        {
+            return null;
+        }
+        int at = offset - chunkStart;
+        char[] chars = new char[n.chars.length + text.length()];
+        System.arraycopy(n.chars, 0, chars, 0, at);
+        text.getChars(0, text.length(), chars, at);
+        System.arraycopy(n.chars, at, chars, at + text.length(), n.chars.length - at);
+        return new Node(chars, n.chunkBreaks + countBreaks(chars, at, at + text.length()), n.priority, n.left, n.right);
+    }
+
+    /**
+     * Makes a rope with text removed
+     *
+     * @param	offset	Offset of the first character to remove
+     * @param	count	Number of characters to remove
+     *
+     * @return	New rope
+     */
+    public Rope remove(int offset, int count)
+    {
+        checkRange(offset, count);
+        if (count == 0)
+        {
+            return this;
+        }
+        Node changed = removeInChunk(root, offset, count);
+        if (changed == null)
+        {
+            Node[] before = split(root, offset);
+            Node[] after = split(before[1], count);
+            changed = merge(before[0], after[1]);
+        }
+        return new Rope(changed);
+    }
+
+    /**
+     * Removes text from within a single chunk, leaving at least one character in it
+     *
+     * @return	New tree, or null if the text is not all in one chunk, or is the whole chunk
+     */
+    private static Node removeInChunk(Node n, int offset, int count)
+    {
+        int chunkStart = length(n.left);
+        int chunkEnd = chunkStart + n.chars.length;
+        if (offset < chunkStart)
+        {
+            Node left = removeInChunk(n.left, offset, count);
+            return (left == null) ? null : n.with(left, n.right);
+        }
+        if (offset >= chunkEnd)
+        {
+            Node right = removeInChunk(n.right, offset - chunkEnd, count);
+            return (right == null) ? null : n.with(n.left, right);
+        }
+        if (offset + count > chunkEnd || count == n.chars.length)
+        {
+            return null;
+        }
+        int at = offset - chunkStart;
+        char[] chars = new char[n.chars.length - count];
+        System.arraycopy(n.chars, 0, chars, 0, at);
+        System.arraycopy(n.chars, at + count, chars, at, chars.length - at);
+        return new Node(chars, n.chunkBreaks - countBreaks(n.chars, at, at + count), n.priority, n.left, n.right);
+    }
+
+    /**
+     * @return	Character at an offset
+     */
+    public char charAt(int offset)
+    {
+        checkRange(offset, 1);
+        Node n = root;
+        while (true)
+        {
+            int chunkStart = length(n.left);
+            if (offset < chunkStart)
+            {
+                n = n.left;
+            }
+            else if (offset < chunkStart + n.chars.length)
+            {
+                return n.chars[offset - chunkStart];
+            }
+            else
+            {
+                offset -= chunkStart + n.chars.length;
+                n = n.right;
+            }
+        }
+    }
+
+    /**
+     * Points a segment at the characters from an offset to the end of the chunk holding
+     * it, or fewer if not as many are wanted, without copying them. The characters must
+     * not be changed.
+     *
+     * @param	offset	Offset of the first character
+     * @param	count	Most characters wanted
+     * @param	segment	Segment to point at the characters
+     */
+    public void getSegment(int offset, int count, Segment segment)
+    {
+        checkRange(offset, count);
+        Node n = root;
+        while (n != null)
+        {
+            int chunkStart = length(n.left);
+            if (offset < chunkStart)
+            {
+                n = n.left;
+            }
+            else if (offset < chunkStart + n.chars.length)
+            {
+                segment.array = n.chars;
+                segment.offset = offset - chunkStart;
+                segment.count = Math.min(count, n.chars.length - segment.offset);
+                return;
+            }
+            else
+            {
+                offset -= chunkStart + n.chars.length;
+                n = n.right;
+            }
+        }
+        // The offset is the end of the text
+        segment.array = new char[0];
+        segment.offset = 0;
+        segment.count = 0;
+    }
+
+    /**
+     * Copies characters into an array
+     *
+     * @param	start	Offset of the first character to copy
+     * @param	end		Offset following the last character to copy
+     * @param	dest	Array to copy to
+     * @param	destPos	Index in the array to copy the first character to
+     */
+    public void getChars(int start, int end, char[] dest, int destPos)
+    {
+        checkRange(start, end - start);
+        getChars(root, start, end, dest, destPos);
+    }
+
+    private static void getChars(Node n, int start, int end, char[] dest, int destPos)
+    {
+        while (n != null && start < end)
+        {
+            int chunkStart = length(n.left);
+            int chunkEnd = chunkStart + n.chars.length;
+            if (start < chunkStart)
+            {
+                getChars(n.left, start, Math.min(end, chunkStart), dest, destPos);
+            }
+            int from = Math.max(start, chunkStart);
+            int to = Math.min(end, chunkEnd);
+            if (from < to)
+            {
+                System.arraycopy(n.chars, from - chunkStart, dest, destPos + (from - start), to - from);
+            }
+            if (end <= chunkEnd)
+            {
+                return;
+            }
+            // Continue with the part in the right subtree
+            destPos += Math.max(chunkEnd - start, 0);
+            start = Math.max(start - chunkEnd, 0);
+            end -= chunkEnd;
+            n = n.right;
+        }
+    }
+
+    /**
+     * @return	Characters from a start offset up to an end offset
+     */
+    public String substring(int start, int end)
+    {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    public String toString()
+    {
+        return substring(0, length());
+    }
+
+    /**
+     * @param	line	Index of a line
+     *
+     * @return	Offset of the first character of the line
+     */
+    public int getLineStart(int line)
+    {
+        if (line < 0 || line >= getLineCount())
+        {
+            throw new IndexOutOfBoundsException("Line " + line + " is outside text of " + getLineCount() + " lines");
+        }
+        if (line == 0)
+        {
+            return 0;
+        }
+        // Find the line break ending the line before
+        Node n = root;
+        int start = 0; // Offset of the first character under n
+        int remaining = line; // Line breaks still to pass, counting from the start of n
+        while (true)
+        {
+            if (remaining <= breaks(n.left))
+            {
+                n = n.left;
+                continue;
+            }
+            remaining -= breaks(n.left);
+            int chunkStart = start + length(n.left);
+            if (remaining <= n.chunkBreaks)
+            {
+                for (int i = 0; ; i++)
+                {
+                    if (n.chars[i] == '\n' && --remaining == 0)
+                    {
+                        return chunkStart + i + 1;
+                    }
+                }
+            }
+            remaining -= n.chunkBreaks;
+            start = chunkStart + n.chars.length;
+            n = n.right;
+        }
+    }
+
+    /**
+     * @param	offset	Offset in the text, which may be its length
+     *
+     * @return	Index of the line holding the offset (the number of line breaks before it)
+     */
+    public int getLineIndex(int offset)
+    {
+        checkRange(offset, 0);
+        Node n = root;
+        int line = 0;
+        while (n != null)
+        {
+            int chunkStart = length(n.left);
+            if (offset < chunkStart)
+            {
+                n = n.left;
+                continue;
+            }
+            line += breaks(n.left);
+            if (offset < chunkStart + n.chars.length)
+            {
+                return line + countBreaks(n.chars, 0, offset - chunkStart);
+            }
+            line += n.chunkBreaks;
+            offset -= chunkStart + n.chars.length;
+            n = n.right;
+        }
+        return line;
+    }
+
+    /**
+     * @param	line	Index of a line
+     *
+     * @return	Text of the line, without its line break
+     */
+    public String getLine(int line)
+    {
+        int start = getLineStart(line);
+        int end = (line + 1 < getLineCount()) ? getLineStart(line + 1) - 1 : length();
+        if (end > start && charAt(end - 1) == '\r')
+        {
+            end--;
+        }
+        return substring(start, end);
+    }
+
+    private void checkRange(int offset, int count)
+    {
+        if (offset < 0 || count < 0 || offset + count > length())
+        {
+            throw new IndexOutOfBoundsException("Range " + offset + " to " + (offset + count) + " is outside text of length " + length());
+        }
+    }
+}
\ No newline at end of file
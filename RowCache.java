@@ -0,0 +1,112 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class caches compiled rows by the text of the line they were compiled from,
+ * so a line that has not changed (or that appears many times in a pattern) is only
+ * parsed once. The least recently used rows are evicted once the cache holds more
+ * than a set number of characters of line text, so pasting a large block of text
+ * does not make the cache grow without limit.
+ *
+ */
+
+import java.util.*;
+
+class RowCache
+{
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024; // Default limit on the characters of line text held
+
+    private final RowParser parser;
+    private final int capacity;
+    private int size; // Characters of line text currently held
+    private ParseError[] lastErrors; // Syntax errors in the line last looked up, or null if none
+    private final LinkedHashMap<String, RepeatGroup> rows = new LinkedHashMap<String, RepeatGroup>(256, 0.75f, true); // In access order, least recently used first
+
+    /**
+     * Constructor
+     *
+     * @param	parser		Parser used to compile lines that are not in the cache
+     * @param	capacity	Maximum number of characters of line text to hold
+     */
+    public RowCache (RowParser parser, int capacity)
+    {
+        this.parser = parser;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the compiled row for a line of instructions, parsing it if it is not in the cache
+     *
+     * @param	line	One line of knitting pattern instructions
+     * @param	index	Index of the row in the pattern, for error reports
+     *
+     * @return	Compiled row. Any syntax errors in the line are listed by getErrors().
+     */
+    public RepeatGroup get(String line, int index)
+    {
+        lastErrors = null;
+        RepeatGroup row = rows.get(line);
+        if (row == null)
+        {
+            row = parser.parse(line, index);
+            lastErrors = parser.getErrors();
+
+            // Lines with errors are not cached: they are usually being edited, and
+            // the errors would have to be stored with the row
+            if (lastErrors == null)
+            {
+                rows.put(line, row);
+                size += weigh(line);
+                evict();
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @return	Syntax errors found in the line passed to the last call to get(), or null if there were none
+     */
+    public ParseError[] getErrors()
+    {
+        return lastErrors;
+    }
+
+    /**
+     * Removes least recently used rows until the cache is within its capacity
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, RepeatGroup>> i = rows.entrySet().iterator();
+        while (size > capacity && i.hasNext())
+        {
+            size -= weigh(i.next().getKey());
+            i.remove();
+        }
+    }
+
+    /**
+     * Approximate cost of holding a line: its characters, plus a small allowance for the
+     * map entry and compiled row, so that many short lines are also bounded
+     */
+    private static int weigh(String line)
+    {
+        return line.length() + 64;
+    }
+
+    /**
+     * @return	Number of rows held in the cache
+     */
+    public int size()
+    {
+        return rows.size();
+    }
+
+    /**
+     * Removes every row from the cache
+     */
+    public void clear()
+    {
+        rows.clear();
+        size = 0;
+    }
+}
\ No newline at end of file
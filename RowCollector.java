@@ -0,0 +1,89 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class compiles lines of instructions into rows as they are read from a file
+ * (see PatternReader), and builds an Instructions object from them once the whole
+ * file has been read. Lines are compiled through a RowCache, so lines repeated in
+ * the file share one compiled row.
+ *
+ * As with instructions typed into the editor, syntax errors are recorded against
+ * their row rather than stopping the parse, and blank lines at the end of the file
+ * are not counted as rows of the pattern.
+ *
+ * While metrics are being recorded (see Metrics), the time spent compiling lines is added
+ * up, so it can be reported apart from the time spent reading the file (see getParseNanos()).
+ *
+ */
+
+import java.util.*;
+
+class RowCollector implements LineHandler
+{
+    private final RowCache cache = new RowCache(new RowParser(), RowCache.DEFAULT_CAPACITY);
+    private final ArrayList<RepeatGroup> rows = new ArrayList<RepeatGroup>();
+    private final ArrayList<ParseError[]> rowErrors = new ArrayList<ParseError[]>(); // Syntax errors for each row, or null if none
+    private int rowsToKeep; // Number of rows up to the last one that is not blank
+    private final boolean timed = Metrics.isEnabled(); // True to add up the time spent compiling lines
+    private long parseNanos; // Time spent compiling lines so far, if timed
+
+    /**
+     * Compiles one line of instructions into a row
+     *
+     * @param	line	Text of the line, without its line break
+     *
+     * @return	True, to continue reading
+     */
+    public boolean line(String line)
+    {
+        long start = timed ? System.nanoTime() : 0;
+        rows.add(cache.get(line, rows.size()));
+        rowErrors.add(cache.getErrors());
+        if (timed)
+        {
+            parseNanos += System.nanoTime() - start;
+        }
+
+        if (line.trim().length() > 0)
+        {
+            rowsToKeep = rows.size();
+        }
+        return true;
+    }
+
+    /**
+     * @return	Number of lines compiled so far
+     */
+    public int getLinesRead()
+    {
+        return rows.size();
+    }
+
+    /**
+     * @return	Nanoseconds spent compiling the lines read so far, or 0 if metrics were not
+     *			being recorded when this collector was created
+     */
+    public long getParseNanos()
+    {
+        return parseNanos;
+    }
+
+    /**
+     * @return	True if no line read so far contains anything other than whitespace
+     */
+    public boolean isEmpty()
+    {
+        return rowsToKeep == 0;
+    }
+
+    /**
+     * Builds an Instructions object from the rows compiled so far
+     *
+     * @return	Parsed instructions, with syntax errors listed by getErrors()
+     */
+    public Instructions getInstructions()
+    {
+        return new Instructions(rows.subList(0, rowsToKeep).toArray(new RepeatGroup[rowsToKeep]),
+                rowErrors.subList(0, rowsToKeep).toArray(new ParseError[rowsToKeep][]));
+    }
+}
\ No newline at end of file
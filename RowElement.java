@@ -0,0 +1,58 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class is the base for the pieces a compiled row of knitting instructions is
+ * made of: runs of a single stitch (StitchRun) and repeated sequences (RepeatGroup).
+ * Repeats are kept as nodes rather than being written out, so a row such as
+ * "(k2tog, yo) 1000000 times" takes the same memory as "(k2tog, yo) 2 times".
+ */
+
+abstract class RowElement
+{
+    /**
+     * @return	Number of stitches this element represents once fully written out
+     */
+    abstract int getWidth();
+
+    /**
+     * @param	index	Position of a stitch within this element, from 0 to getWidth()-1
+     *
+     * @return	Stitch at that position, or null if its abbreviation was not recognized
+     */
+    abstract Stitch getStitch(int index);
+
+    /**
+     * @return	True if any stitch in this element is null because its abbreviation was not recognized
+     */
+    abstract boolean hasUnknownStitch();
+
+    /**
+     * Writes this element out in full into part of an array of stitch ordinals (see ChartGrid)
+     *
+     * @param	cells	Array to write the stitch ordinals to
+     * @param	offset	Index in the array of the first stitch of this element
+     */
+    abstract void copyTo(byte[] cells, int offset);
+
+    /**
+     * @return	Number of stitches this element works off the left needle
+     */
+    abstract long getStitchesConsumed();
+
+    /**
+     * @return	Number of stitches this element leaves on the right needle
+     */
+    abstract long getStitchesProduced();
+
+    /**
+     * Finds the stitch within this element that works off the left needle the stitch
+     * following the first count stitches consumed by the element, without writing the element out
+     *
+     * @param	count	Number of stitches consumed before the stitch to find
+     *
+     * @return	Position of that stitch within this element, or -1 if
+     *			the element consumes count stitches or fewer in total
+     */
+    abstract int findStitchConsuming(long count);
+}
@@ -0,0 +1,574 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class is used by the Instructions class to compile one line of written knitting
+ * instructions into a row of Stitch enum types.
+ *
+ * Each row is read exactly once, character by character, and compiled into a RepeatGroup
+ * holding StitchRuns and nested RepeatGroups. Repeated sequences and Kn/Pn multiples are
+ * kept as a count rather than being written out, so no intermediate Strings are created
+ * and the memory used by a row does not depend on how many times its repeats are worked.
+ *
+ * Repeated sequences may be nested inside each other, to any depth up to MAX_NESTING:
+ *      Eg. "[k1, (yo, k2tog) 3 times, p1] 5 times"
+ * Each sequence is read recursively, so the compiled row mirrors the structure of the text.
+ * Compiled sequences are shared: a parser keeps a pool of the sequences it has compiled,
+ * and a sequence identical to one already in the pool is replaced by it, so a repeat that
+ * appears thousands of times in a pattern is stored (and written out, see RepeatGroup) once.
+ *
+ * Syntax errors do not stop the parse, and nothing is thrown: each one is recorded as a
+ * ParseError (see getErrors()) with the characters it applies to, and the parser carries
+ * on with the rest of the row, so every error in the row is found in a single pass.
+ *
+ * The parser can also record the characters each abbreviation and repeated sequence takes
+ * up in the row (see parseSpans()), so that a stitch changed in the chart can be changed
+ * in the text of the row as well.
+ *
+ */
+
+import java.util.*;
+
+class RowParser
+{
+    public static final int MAX_NESTING = 64; // Deepest nesting of repeated sequences read
+    private static final int MAX_POOL_SIZE = 64 * 1024; // The pool of shared sequences is emptied when it grows past this many
+
+    private final StitchDictionary dictionary; // Abbreviations recognized by this parser
+    private final Map<RepeatGroup, RepeatGroup> pool; // Sequences compiled so far, to share identical ones
+
+    private String row; // Text of the row currently being compiled
+    private int position; // Index of the next character to read in the row
+    private int rowIndex; // Index of the row currently being compiled, for error reports
+    private ArrayList<ParseError> errors; // Errors found in the row currently being compiled, or null if none
+    private boolean tooLong; // True if the row currently being compiled has too many stitches to index
+    private int depth; // Number of repeated sequences enclosing the current position
+    private ArrayList<TextSpan> spans; // Spans of the items read so far in the current sequence, or null if spans are not being recorded
+    private int countStart; // Index of the first digit of the number read by the last call to parseTimes(), or -1 if there was none
+    private int countEnd; // Index following the last digit of that number, or -1
+
+    /**
+     * Constructor - creates a parser that recognizes the abbreviations in the default dictionary
+     */
+    public RowParser ()
+    {
+        this(StitchDictionary.getDefault());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param	dictionary	Abbreviations to recognize
+     */
+    public RowParser (StitchDictionary dictionary)
+    {
+        this(dictionary, new HashMap<RepeatGroup, RepeatGroup>());
+    }
+
+    /**
+     * Constructor for a parser that shares sequences with other parsers (for example, the
+     * parsers compiling different parts of a pattern in parallel)
+     *
+     * @param	dictionary	Abbreviations to recognize
+     * @param	pool		Pool of shared sequences; must be thread safe if the other parsers
+     *						using it run on other threads
+     */
+    public RowParser (StitchDictionary dictionary, Map<RepeatGroup, RepeatGroup> pool)
+    {
+        this.dictionary = dictionary;
+        this.pool = pool;
+    }
+
+    /**
+     * Compiles one line of knitting instructions into a row of stitches.
+     * Accepts the same syntax as the original processRepeats/processMultiples passes:
+     * abbreviations separated by a comma and one space, Kn/Pn multiples, and
+     * sequences enclosed by parentheses, brackets, or asterisks, followed by
+     * text containing the number of times to repeat them.
+     *      Eg. "k2, (k2tog, yo) 2 times, p3" ==> K, K, K2TOG, YO, K2TOG, YO, P, P, P
+     *
+     * @param	text	One line of user-supplied knitting pattern instructions
+     *
+     * @return	Compiled row, worked once. Stitches are left null where an abbreviation
+     *			is not recognized. Errors found in the row are listed by getErrors().
+     */
+    public RepeatGroup parse(String text)
+    {
+        return parse(text, 0);
+    }
+
+    /**
+     * Compiles one line of knitting instructions into a row of stitches (see parse(String))
+     *
+     * @param	text	One line of user-supplied knitting pattern instructions
+     * @param	index	Index of the row in the pattern, for error reports
+     *
+     * @return	Compiled row, worked once. As much of the row as can be read is compiled,
+     *			even if it contains errors: a repeated sequence with a missing delimiter
+     *			or number of times is worked once, and a row too long to index is
+     *			replaced by a single unrecognized stitch.
+     */
+    public RepeatGroup parse(String text, int index)
+    {
+        row = text;
+        position = 0;
+        rowIndex = index;
+        errors = null;
+        tooLong = false;
+        depth = 0;
+        ArrayList<RowElement> elements = new ArrayList<RowElement>();
+
+        // An empty line is read as a single unrecognized abbreviation, as split() would have
+        if (row.length() == 0)
+        {
+            error(ParseError.Kind.EMPTY_ROW, 0, -1, "Row is empty");
+            append(elements, new StitchRun(null, 1));
+            if (spans != null)
+            {
+                spans.add(new TextSpan(0, 0, 1));
+            }
+        }
+
+        parseSequence(elements, -1);
+
+        RepeatGroup compiled = group(elements, 1);
+        if (tooLong)
+        {
+            error(ParseError.Kind.ROW_TOO_LONG, 0, -1, "Row is too long");
+            return unparseableRow();
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles one line of knitting instructions (see parse(String, int)), also recording
+     * the characters each abbreviation and repeated sequence in it takes up, so that the
+     * text of any stitch in the row can be found (see TextSpan)
+     *
+     * @param	text	One line of user-supplied knitting pattern instructions
+     * @param	index	Index of the row in the pattern, for error reports
+     *
+     * @return	Spans of the items in the row, as a sequence worked once,
+     *			or null if the row is too long to index
+     */
+    public TextSpan parseSpans(String text, int index)
+    {
+        spans = new ArrayList<TextSpan>();
+        try
+        {
+            parse(text, index);
+            return tooLong ? null : new TextSpan(0, text.length(), -1, -1, 1, spans);
+        }
+        finally
+        {
+            spans = null;
+        }
+    }
+
+    /**
+     * @return	Errors found in the row compiled by the last call to parse(), in the order
+     *			they appear in the row, or null if there were none
+     */
+    public ParseError[] getErrors()
+    {
+        if (errors == null)
+        {
+            return null;
+        }
+        return errors.toArray(new ParseError[errors.size()]);
+    }
+
+    /**
+     * Creates the row used in place of a line that could not be parsed because
+     * of a syntax error: a single unrecognized stitch
+     */
+    private static RepeatGroup unparseableRow()
+    {
+        return new RepeatGroup(new RowElement[] { new StitchRun(null, 1) }, 1);
+    }
+
+    /**
+     * Reads items (abbreviations or repeated sequences) from the current position up to
+     * the end delimiter of the enclosing repeated sequence, or the end of the row
+     *
+     * @param	elements		List to add the compiled items to
+     * @param	endDelimiter	End delimiter of the enclosing repeated sequence, or -1 if none
+     */
+    private void parseSequence(ArrayList<RowElement> elements, int endDelimiter)
+    {
+        while (position < row.length() && row.charAt(position) != endDelimiter)
+        {
+            // Empty items at the end of the row, as in "k3, p2, , ", are left out
+            // (String.split() left them out when rows were split on commas)
+            if (endDelimiter < 0 && onlyEmptyItemsRemain())
+            {
+                position = row.length();
+                return;
+            }
+            char c = row.charAt(position);
+            if ((c == '(' || c == '*' || c == '[') && depth < MAX_NESTING)
+            {
+                append(elements, parseRepeat(c, endDelimiter));
+            }
+            else
+            {
+                if (c == '(' || c == '*' || c == '[')
+                {
+                    error(ParseError.Kind.NESTED_TOO_DEEPLY, position, 1,
+                            "Repeated sequences are nested more than " + MAX_NESTING + " deep");
+                }
+                append(elements, parseAbbreviation(endDelimiter));
+            }
+        }
+    }
+
+    /**
+     * @return	True if the rest of the row, from the current position, is only commas each
+     *			followed by a space, so the items left between them are all empty
+     */
+    private boolean onlyEmptyItemsRemain()
+    {
+        for (int i = position; i < row.length(); i += 2)
+        {
+            if (row.charAt(i) != ',' || i+1 >= row.length() || row.charAt(i+1) != ' ')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles a repeated sequence starting at the current position, including any
+     * repeated sequences nested inside it
+     *
+     * @param	startDelimiter		Character that opened the repeated sequence
+     * @param	enclosingDelimiter	End delimiter of the sequence this one is nested in, or -1 if none
+     *
+     * @return	Repeated sequence, as a RepeatGroup (or a single StitchRun if it repeats only one stitch)
+     */
+    private RowElement parseRepeat(char startDelimiter, int enclosingDelimiter)
+    {
+        char endDelimiter = startDelimiter;
+        if (startDelimiter == '(')
+        {
+            endDelimiter = ')';
+        }
+        else if (startDelimiter == '[')
+        {
+            endDelimiter = ']';
+        }
+
+        // Skip the start delimiter and read items up to the end delimiter
+        int start = position;
+        position++;
+        ArrayList<RowElement> elements = new ArrayList<RowElement>();
+        ArrayList<TextSpan> enclosingSpans = spans;
+        if (spans != null)
+        {
+            spans = new ArrayList<TextSpan>();
+        }
+        depth++;
+        parseSequence(elements, endDelimiter);
+        depth--;
+
+        int times = 1;
+        if (position >= row.length())
+        {
+            // The sequence runs to the end of the row; it is worked once
+            error(ParseError.Kind.MISSING_END_DELIMITER, start, 1, "No closing \"" + endDelimiter + "\" found for repeated sequence");
+            countStart = -1;
+            countEnd = -1;
+        }
+        else
+        {
+            times = parseTimes(enclosingDelimiter);
+        }
+        if (enclosingSpans != null)
+        {
+            enclosingSpans.add(new TextSpan(start, position, countStart, countEnd, times, spans));
+            spans = enclosingSpans;
+        }
+
+        // Skip the comma and space that separate this item from the next
+        skipSeparator();
+
+        // A repeat of a single stitch, such as "(k) 4 times", is just a longer run of that stitch
+        if (elements.size() == 1 && elements.get(0) instanceof StitchRun)
+        {
+            StitchRun run = (StitchRun) elements.get(0);
+            return new StitchRun(run.getStitch(), multiply(run.getCount(), times));
+        }
+        return group(elements, times);
+    }
+
+    /**
+     * Reads the text between the end delimiter of a repeated sequence and the next comma
+     * (or the end of the enclosing sequence or row), and extracts the first integer from
+     * it -- this is the times to repeat the sequence
+     *
+     * @param	enclosingDelimiter	End delimiter of the enclosing sequence, or -1 if none
+     *
+     * @return	Number of times to repeat the sequence, or 1 if no valid number was found
+     */
+    private int parseTimes(int enclosingDelimiter)
+    {
+        int start = position;
+        position++; // Skip the end delimiter
+        int numberStart = -1;
+        int numberEnd = -1;
+        while (position < row.length() && row.charAt(position) != ',' && row.charAt(position) != enclosingDelimiter)
+        {
+            if (isDigit(row.charAt(position)))
+            {
+                if (numberStart < 0)
+                {
+                    numberStart = position;
+                    numberEnd = position + 1;
+                }
+                else if (numberEnd == position)
+                {
+                    numberEnd++; // Digits after the first integer are ignored
+                }
+            }
+            position++;
+        }
+        countStart = numberStart;
+        countEnd = numberEnd;
+        if (numberStart < 0)
+        {
+            error(ParseError.Kind.MISSING_REPEAT_COUNT, start, position - start, "No number of times to repeat found after repeated sequence");
+            return 1;
+        }
+
+        // As before, a count of zero still leaves the sequence written out once
+        return Math.max(parseNumber(numberStart, numberEnd), 1);
+    }
+
+    /**
+     * Reads one abbreviation starting at the current position.
+     * The abbreviation ends at the next comma followed by a space, the end
+     * delimiter of an enclosing repeated sequence, or the end of the row.
+     *
+     * @param	endDelimiter	End delimiter of the enclosing repeated sequence, or -1 if none
+     *
+     * @return	Stitch (or stitches, for Kn/Pn multiples) the abbreviation represents
+     */
+    private StitchRun parseAbbreviation(int endDelimiter)
+    {
+        int start = position;
+        while (position < row.length()
+                && row.charAt(position) != endDelimiter
+                && !(row.charAt(position) == ',' && position+1 < row.length() && row.charAt(position+1) == ' '))
+        {
+            position++;
+        }
+        int end = position;
+        skipSeparator();
+
+        // See if the abbreviation matches multiple syntax: upper or lowercase K or P followed by a number
+        StitchRun run;
+        if (end - start > 1 && isMultiple(start, end))
+        {
+            run = new StitchRun(lookup(start, start+1), parseNumber(start+1, end));
+        }
+        else
+        {
+            run = new StitchRun(lookup(start, end), 1);
+        }
+        if (spans != null)
+        {
+            spans.add(new TextSpan(start, end, run.getCount()));
+        }
+        return run;
+    }
+
+    /**
+     * Adds an element to the end of a sequence, merging it into the last element
+     * if both are runs of the same stitch (so "k, k, k2" is stored as one run of 4)
+     */
+    private void append(ArrayList<RowElement> elements, RowElement element)
+    {
+        int last = elements.size() - 1;
+        if (last >= 0 && element instanceof StitchRun && elements.get(last) instanceof StitchRun)
+        {
+            StitchRun previous = (StitchRun) elements.get(last);
+            StitchRun next = (StitchRun) element;
+            if (previous.getStitch() == next.getStitch())
+            {
+                elements.set(last, new StitchRun(next.getStitch(), add(previous.getCount(), next.getCount())));
+                return;
+            }
+        }
+        elements.add(element);
+    }
+
+    /**
+     * Creates a RepeatGroup, or finds an identical one in the pool of shared sequences.
+     * A sequence too long to index is noted, so that the row can be reported as too long,
+     * and replaced by an empty group.
+     */
+    private RepeatGroup group(ArrayList<RowElement> elements, int times)
+    {
+        long width = 0;
+        for (int i = 0; i < elements.size(); i++)
+        {
+            width += elements.get(i).getWidth();
+        }
+        if (tooLong || width * times > Integer.MAX_VALUE)
+        {
+            tooLong = true;
+            return new RepeatGroup(new RowElement[0], 1);
+        }
+        RepeatGroup group = new RepeatGroup(elements.toArray(new RowElement[elements.size()]), times);
+        RepeatGroup shared = pool.get(group);
+        if (shared != null)
+        {
+            return shared;
+        }
+        if (pool.size() >= MAX_POOL_SIZE)
+        {
+            pool.clear(); // Keeps a long-lived parser (such as the live preview's) from growing without limit
+        }
+        pool.put(group, group);
+        return group;
+    }
+
+    /**
+     * Adds two run lengths, noting if the result is too large to index
+     */
+    private int add(int a, int b)
+    {
+        long sum = (long) a + b;
+        if (sum > Integer.MAX_VALUE)
+        {
+            tooLong = true;
+            return 1;
+        }
+        return (int) sum;
+    }
+
+    /**
+     * Multiplies two run lengths, noting if the result is too large to index
+     */
+    private int multiply(int a, int b)
+    {
+        long product = (long) a * b;
+        if (product > Integer.MAX_VALUE)
+        {
+            tooLong = true;
+            return 1;
+        }
+        return (int) product;
+    }
+
+    /**
+     * Skips a comma and the space following it, if they are at the current position
+     *
+     * @return	True if a separator was skipped, false if not
+     */
+    private boolean skipSeparator()
+    {
+        if (position < row.length() && row.charAt(position) == ',')
+        {
+            position++;
+            if (position < row.length() && row.charAt(position) == ' ')
+            {
+                position++;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the row text between two indexes is a K or P followed by a
+     * number with no leading zero (Eg. "k3", "P12")
+     */
+    private boolean isMultiple(int start, int end)
+    {
+        char type = row.charAt(start);
+        if (type != 'k' && type != 'K' && type != 'p' && type != 'P')
+        {
+            return false;
+        }
+        if (row.charAt(start+1) == '0')
+        {
+            return false;
+        }
+        for (int i = start+1; i < end; i++)
+        {
+            if (!isDigit(row.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Reads a number from the row text between two indexes, which must all be digits
+     *
+     * @return	The number, or 1 (after recording an error) if it is too large to be an int,
+     *			as Scanner.nextInt() would not accept it
+     */
+    private int parseNumber(int start, int end)
+    {
+        int number = 0;
+        for (int i = start; i < end; i++)
+        {
+            if (number > (Integer.MAX_VALUE - 9) / 10)
+            {
+                error(ParseError.Kind.NUMBER_TOO_LARGE, start, end - start, "Number is too large");
+                return 1;
+            }
+            number = number*10 + (row.charAt(i) - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Finds the Stitch enum type for the abbreviation in the row text between two indexes
+     *
+     * @return	Matching Stitch, or null (after recording an error) if the abbreviation is not recognized
+     */
+    private Stitch lookup(int start, int end)
+    {
+        Stitch stitch = dictionary.lookup(row, start, end);
+        if (stitch == null)
+        {
+            error(ParseError.Kind.UNKNOWN_STITCH, start, end - start,
+                    "Unrecognized abbreviation \"" + row.substring(start, end) + "\"");
+        }
+        return stitch;
+    }
+
+    /**
+     * Records an error found in the row currently being compiled
+     *
+     * @param	kind		Kind of error
+     * @param	column		Index in the row text of the first character with the error
+     * @param	length		Number of characters with the error, or -1 for the rest of the row
+     * @param	message		Description of the error, for display to the user
+     */
+    private void error(ParseError.Kind kind, int column, int length, String message)
+    {
+        if (errors == null)
+        {
+            errors = new ArrayList<ParseError>(2);
+        }
+        // Kept in column order, since an error in a repeated sequence's delimiters
+        // is only found after the errors inside the sequence
+        int i = errors.size();
+        while (i > 0 && errors.get(i-1).getColumn() > column)
+        {
+            i--;
+        }
+        errors.add(i, new ParseError(rowIndex, kind, column, length, message));
+    }
+}
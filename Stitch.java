@@ -6,24 +6,39 @@
  * to the corresponding stitch symbols used in knitting charts,
  * and prose stitch names (used for mouseover text in chart).
  *
+ * Each stitch also records how many stitches it works off the left needle (consumed)
+ * and how many it leaves on the right needle (produced), used to check that each row
+ * works exactly the stitches made by the row before it.
+ *
+ * Each stitch also has a color, used to show it when the chart is zoomed out too far
+ * to draw its symbol.
+ *
  * (This is a limited menu of stitch options for the purposes of simplification.)
  */
 
+import java.awt.Color;
+
 public enum Stitch
 {
-    K (" ", "knit"),
-    K2TOG ("/", "knit two together"),
-    P ("*", "purl"),
-    SKP ("\\", "slip, knit, pass"),
-    YO ("O", "yarn over");
+    K (" ", "knit", 1, 1, new Color(225, 225, 225)),
+    K2TOG ("/", "knit two together", 2, 1, new Color(70, 130, 180)),
+    P ("*", "purl", 1, 1, new Color(110, 110, 110)),
+    SKP ("\\", "slip, knit, pass", 2, 1, new Color(60, 160, 110)),
+    YO ("O", "yarn over", 0, 1, new Color(235, 180, 50));
 
     private final String symbol;
     private final String stitchName;
+    private final int stitchesConsumed;
+    private final int stitchesProduced;
+    private final Color color;
 
-    Stitch(String symbol, String stitchName)
+    Stitch(String symbol, String stitchName, int stitchesConsumed, int stitchesProduced, Color color)
     {
         this.symbol = symbol;
         this.stitchName = stitchName;
+        this.stitchesConsumed = stitchesConsumed;
+        this.stitchesProduced = stitchesProduced;
+        this.color = color;
     }
 
     public String getSymbol()
@@ -35,4 +50,19 @@ public enum Stitch
     {
         return stitchName;
     }
+
+    public int getStitchesConsumed()
+    {
+        return stitchesConsumed;
+    }
+
+    public int getStitchesProduced()
+    {
+        return stitchesProduced;
+    }
+
+    public Color getColor()
+    {
+        return color;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class checks that each row of a knitting pattern works exactly the stitches
+ * made by the row before it, taking into account that yarn overs add a stitch and
+ * decreases (k2tog, skp) remove one.
+ *
+ * Counts are worked out from the compiled rows in the Instructions class, multiplying
+ * the counts for one repeat by the number of repeats, so the instructions are never
+ * written out and the check takes time proportional to the size of the text,
+ * not the size of the chart.
+ *
+ */
+
+class StitchCountCheck
+{
+    private int mismatchRow = -1; // Index of the first row that does not match the row before it, or -1 if all rows match
+    private int mismatchColumn = -1; // Index of the first stitch in that row that does not match
+    private long stitchesAvailable; // Stitches made by the row before the mismatched row
+    private long stitchesConsumed; // Stitches used by the mismatched row
+
+    /**
+     * Constructor
+     *
+     * @param	inst	Parsed knitting pattern instructions to check
+     */
+    public StitchCountCheck (Instructions inst)
+    {
+        // Check second through nth rows to make sure each uses the stitches made by the previous row
+        for (int i = 1; i < inst.getNumberOfRows(); i++)
+        {
+            long available = inst.getRow(i-1).getStitchesProduced();
+            long consumed = inst.getRow(i).getStitchesConsumed();
+            if (consumed != available)
+            {
+                mismatchRow = i;
+                stitchesAvailable = available;
+                stitchesConsumed = consumed;
+
+                // If the row uses too many stitches, the mismatch is at the first stitch that works
+                // a stitch the previous row did not make. If it uses too few, the mismatch is
+                // just past the end of the row, where the unworked stitches are left.
+                if (consumed > available)
+                {
+                    mismatchColumn = inst.getRow(i).findStitchConsuming(available);
+                }
+                else
+                {
+                    mismatchColumn = inst.getRowWidth(i);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return	True if every row works exactly the stitches made by the row before it
+     */
+    public boolean isBalanced()
+    {
+        return mismatchRow < 0;
+    }
+
+    /**
+     * @return	Index of the first row that does not work the stitches made by the row before it, or -1 if none
+     */
+    public int getMismatchRow()
+    {
+        return mismatchRow;
+    }
+
+    /**
+     * @return	Index of the first stitch in the mismatched row where the counts stop matching, or -1 if none
+     */
+    public int getMismatchColumn()
+    {
+        return mismatchColumn;
+    }
+
+    /**
+     * @return	Number of stitches made by the row before the mismatched row
+     */
+    public long getStitchesAvailable()
+    {
+        return stitchesAvailable;
+    }
+
+    /**
+     * @return	Number of stitches used by the mismatched row
+     */
+    public long getStitchesConsumed()
+    {
+        return stitchesConsumed;
+    }
+
+    /**
+     * @return	Description of the first mismatch for display to the user
+     *			(rows and stitches numbered from 1), or null if the rows are balanced
+     */
+    public String getMessage()
+    {
+        if (isBalanced())
+        {
+            return null;
+        }
+        return "Row " + (mismatchRow+1) + " uses " + stitchesConsumed + " stitches, but row " + mismatchRow
+                + " makes " + stitchesAvailable + " (counts stop matching at stitch " + (mismatchColumn+1) + ")";
+    }
+
+    /**
+     * @return	The first mismatch as a problem with the whole of the mismatched row, so it can
+     *			be listed and pointed out along with syntax errors, or null if the rows are balanced
+     */
+    public ParseError getError()
+    {
+        if (isBalanced())
+        {
+            return null;
+        }
+        return new ParseError(mismatchRow, ParseError.Kind.STITCH_COUNT, "uses " + stitchesConsumed + " stitches, but row "
+                + mismatchRow + " makes " + stitchesAvailable + " (counts stop matching at stitch " + (mismatchColumn+1) + ")");
+    }
+}
\ No newline at end of file
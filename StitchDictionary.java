@@ -0,0 +1,297 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * This class maps stitch abbreviations (case insensitive) to Stitch enum types.
+ * It is used by the RowParser class to recognize the abbreviations in each row.
+ *
+ * Besides the names of the Stitch enum types themselves, abbreviations can be added
+ * from a properties file, one per line, mapping the abbreviation to the name of a
+ * Stitch enum type:
+ *      ssk = SKP
+ *      sl1-k1-psso = SKP
+ *
+ * Abbreviations are stored in a trie with one node per character, so looking one
+ * up takes time proportional to its length, however many abbreviations are defined,
+ * and can be done directly on the row text without creating a substring.
+ *
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.zip.*;
+
+class StitchDictionary
+{
+    public static final String CONFIG_FILE = "stitches.properties"; // Abbreviations file read at startup, if present
+
+    private static final int ALPHABET_SIZE = 128; // Abbreviations are limited to ASCII characters
+
+    private static StitchDictionary defaultDictionary;
+
+    private Node root = new Node();
+    private int size;
+
+    /**
+     * A node in the trie: the stitch for the abbreviation ending at this node (if any),
+     * and the nodes for each character that can follow it
+     */
+    private static class Node
+    {
+        Stitch stitch;
+        Node[] next;
+    }
+
+    /**
+     * Constructor - creates a dictionary holding the name of each Stitch enum type
+     */
+    public StitchDictionary ()
+    {
+        for (Stitch stitch : Stitch.values())
+        {
+            add(stitch.name(), stitch);
+        }
+    }
+
+    /**
+     * Adds an abbreviation to the dictionary, replacing any stitch it was already mapped to
+     *
+     * @param	abbreviation	Stitch abbreviation (case insensitive)
+     * @param	stitch			Stitch the abbreviation represents
+     *
+     * @throws	IllegalArgumentException	Thrown if the abbreviation is empty or contains
+     *										characters other than ASCII letters, digits and punctuation
+     */
+    public void add(String abbreviation, Stitch stitch)
+    {
+        if (abbreviation.length() == 0)
+        {
+            throw new IllegalArgumentException("Stitch abbreviation is empty");
+        }
+
+        Node node = root;
+        for (int i = 0; i < abbreviation.length(); i++)
+        {
+            char c = abbreviation.charAt(i);
+            if (c <= ' ' || c >= ALPHABET_SIZE)
+            {
+                throw new IllegalArgumentException("Stitch abbreviation \"" + abbreviation + "\" contains an unsupported character");
+            }
+            c = toLowerCase(c);
+            if (node.next == null)
+            {
+                node.next = new Node[ALPHABET_SIZE];
+            }
+            if (node.next[c] == null)
+            {
+                node.next[c] = new Node();
+            }
+            node = node.next[c];
+        }
+        if (node.stitch == null)
+        {
+            size++;
+        }
+        node.stitch = stitch;
+    }
+
+    /**
+     * Adds the abbreviations in a properties file to the dictionary
+     *
+     * @param	f	Properties file mapping abbreviations to the names of Stitch enum types
+     *
+     * @throws	IOException					Thrown if the file can't be read
+     *
+     * @throws	IllegalArgumentException	Thrown if an abbreviation is mapped to something other than
+     *										the name of a Stitch enum type, or contains unsupported characters
+     */
+    public void load(File f) throws IOException
+    {
+        Properties properties = new Properties();
+        Reader reader = new InputStreamReader(new FileInputStream(f), "UTF-8");
+        try
+        {
+            properties.load(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        for (String abbreviation : properties.stringPropertyNames())
+        {
+            String name = properties.getProperty(abbreviation).trim();
+            Stitch stitch = lookup(name);
+            if (stitch == null || !stitch.name().equalsIgnoreCase(name))
+            {
+                throw new IllegalArgumentException("\"" + name + "\" (for abbreviation \"" + abbreviation + "\") is not a recognized stitch");
+            }
+            add(abbreviation.trim(), stitch);
+        }
+    }
+
+    /**
+     * Finds the stitch for an abbreviation
+     *
+     * @param	abbreviation	Stitch abbreviation (case insensitive)
+     *
+     * @return	Matching Stitch, or null if the abbreviation is not recognized
+     */
+    public Stitch lookup(CharSequence abbreviation)
+    {
+        return lookup(abbreviation, 0, abbreviation.length());
+    }
+
+    /**
+     * Finds the stitch for an abbreviation within a larger piece of text
+     *
+     * @param	text	Text containing the abbreviation
+     * @param	start	Index of the first character of the abbreviation
+     * @param	end		Index following the last character of the abbreviation
+     *
+     * @return	Matching Stitch, or null if the abbreviation is not recognized
+     */
+    public Stitch lookup(CharSequence text, int start, int end)
+    {
+        Node node = root;
+        for (int i = start; i < end; i++)
+        {
+            char c = text.charAt(i);
+            if (c >= ALPHABET_SIZE || node.next == null)
+            {
+                return null;
+            }
+            node = node.next[toLowerCase(c)];
+            if (node == null)
+            {
+                return null;
+            }
+        }
+        return node.stitch;
+    }
+
+    /**
+     * Lists the abbreviations for a stitch, shortest first
+     *
+     * @param	stitch	Stitch to find the abbreviations of
+     *
+     * @return	Abbreviations (in lower case) that map to the stitch
+     */
+    public List<String> getAbbreviations(Stitch stitch)
+    {
+        ArrayList<String> abbreviations = new ArrayList<String>();
+        collectAbbreviations(root, new StringBuilder(), stitch, abbreviations);
+        Collections.sort(abbreviations,
+            new Comparator<String>()
+            {
+                public int compare(String a, String b) {
+                    return (a.length() != b.length()) ? a.length() - b.length() : a.compareTo(b);
+                }
+            });
+        return abbreviations;
+    }
+
+    /**
+     * Adds the abbreviations for a stitch found at and below a node of the trie to a list
+     *
+     * @param	node			Node to search from
+     * @param	prefix			Characters leading to the node
+     * @param	stitch			Stitch to find the abbreviations of
+     * @param	abbreviations	List to add them to
+     */
+    private static void collectAbbreviations(Node node, StringBuilder prefix, Stitch stitch, List<String> abbreviations)
+    {
+        if (node.stitch == stitch)
+        {
+            abbreviations.add(prefix.toString());
+        }
+        if (node.next != null)
+        {
+            for (int c = 0; c < ALPHABET_SIZE; c++)
+            {
+                if (node.next[c] != null)
+                {
+                    prefix.append((char) c);
+                    collectAbbreviations(node.next[c], prefix, stitch, abbreviations);
+                    prefix.setLength(prefix.length() - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes a checksum of every abbreviation in the dictionary and the stitch it maps to,
+     * so that something parsed with the dictionary can be checked against it later
+     *
+     * @return	CRC32 checksum of the abbreviations, in the order of their characters
+     */
+    public long checksum()
+    {
+        CRC32 crc = new CRC32();
+        addToChecksum(root, new StringBuilder(), crc);
+        return crc.getValue();
+    }
+
+    /**
+     * Adds the abbreviations found at and below a node of the trie to a checksum
+     */
+    private static void addToChecksum(Node node, StringBuilder prefix, CRC32 crc)
+    {
+        if (node.stitch != null)
+        {
+            crc.update((prefix + "=" + node.stitch.name() + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        if (node.next != null)
+        {
+            for (int c = 0; c < ALPHABET_SIZE; c++)
+            {
+                if (node.next[c] != null)
+                {
+                    prefix.append((char) c);
+                    addToChecksum(node.next[c], prefix, crc);
+                    prefix.setLength(prefix.length() - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return	Number of abbreviations in the dictionary
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private static char toLowerCase(char c)
+    {
+        if (c >= 'A' && c <= 'Z')
+        {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c;
+    }
+
+    /**
+     * Getter for the dictionary used when no other is specified.
+     * Unless one has been set, this holds only the names of the Stitch enum types.
+     */
+    public static synchronized StitchDictionary getDefault()
+    {
+        if (defaultDictionary == null)
+        {
+            defaultDictionary = new StitchDictionary();
+        }
+        return defaultDictionary;
+    }
+
+    /**
+     * Setter for the dictionary used when no other is specified
+     * (for example, one with abbreviations loaded from CONFIG_FILE at startup)
+     */
+    public static synchronized void setDefault(StitchDictionary dictionary)
+    {
+        defaultDictionary = dictionary;
+    }
+}
\ No newline at end of file
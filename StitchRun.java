@@ -0,0 +1,96 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * A run of one stitch repeated a number of times, such as "k5" or a single "yo".
+ */
+
+import java.util.*;
+
+class StitchRun extends RowElement
+{
+    private final Stitch stitch; // Null if the abbreviation was not recognized
+    private final int count;
+
+    /**
+     * Constructor
+     *
+     * @param	stitch	Stitch in the run, or null for an unrecognized abbreviation
+     * @param	count	Number of times the stitch is worked
+     */
+    public StitchRun (Stitch stitch, int count)
+    {
+        this.stitch = stitch;
+        this.count = count;
+    }
+
+    public Stitch getStitch()
+    {
+        return stitch;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    int getWidth()
+    {
+        return count;
+    }
+
+    Stitch getStitch(int index)
+    {
+        return stitch;
+    }
+
+    boolean hasUnknownStitch()
+    {
+        return stitch == null;
+    }
+
+    void copyTo(byte[] cells, int offset)
+    {
+        Arrays.fill(cells, offset, offset + count, ChartGrid.toOrdinal(stitch));
+    }
+
+    // An unrecognized abbreviation is counted as working one stitch into one stitch
+
+    long getStitchesConsumed()
+    {
+        return (long) count * (stitch == null ? 1 : stitch.getStitchesConsumed());
+    }
+
+    long getStitchesProduced()
+    {
+        return (long) count * (stitch == null ? 1 : stitch.getStitchesProduced());
+    }
+
+    int findStitchConsuming(long consumed)
+    {
+        int perStitch = (stitch == null ? 1 : stitch.getStitchesConsumed());
+        if (consumed >= (long) count * perStitch)
+        {
+            return -1;
+        }
+        return (int) (consumed / perStitch);
+    }
+
+    /**
+     * Two StitchRuns are equal if they work the same stitch the same number of times
+     */
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof StitchRun))
+        {
+            return false;
+        }
+        StitchRun other = (StitchRun) o;
+        return stitch == other.stitch && count == other.count;
+    }
+
+    public int hashCode()
+    {
+        return 31 * (stitch == null ? -1 : stitch.ordinal()) + count;
+    }
+}
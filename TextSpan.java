@@ -0,0 +1,306 @@
+/**
+ * CSCI E-10b - Final Project
+ * Johanna Bodnyk | May 9, 2014
+ *
+ * The characters one item of a row of instructions takes up in its line of text: either
+ * an abbreviation, with the number of stitches it stands for (more than one for a Kn or Pn
+ * multiple), or a repeated sequence, with the items inside it and the number of times it
+ * is worked. A whole row is a sequence worked once. Spans are recorded by RowParser.parseSpans().
+ *
+ * The spans of a row follow its text rather than its compiled form (see RepeatGroup), in
+ * which runs of a stitch are merged and identical sequences shared, so the characters
+ * written for any stitch of the row can be found, even inside a repeat: as in RepeatGroup,
+ * by taking its position modulo the width of one repeat and binary searching the items
+ * for the one that holds it.
+ *
+ */
+
+import java.util.*;
+
+class TextSpan
+{
+    private int start; // Index in the line of the first character of the item
+    private int end; // Index in the line following its last character (for a sequence, the end of the text giving its number of times)
+    private int countStart; // Index in the line of the first digit of the number of times a sequence is worked, or -1 if there is none
+    private int countEnd; // Index in the line following the last digit of that number, or -1
+    private final int count; // Number of stitches an abbreviation stands for, or times a sequence is worked
+    private final TextSpan[] items; // Items making up one repeat of a sequence, or null for an abbreviation
+    private final int[] offsets; // offsets[i] is the position of items[i] within one repeat; the last entry is the repeat width
+
+    /**
+     * Constructor for an abbreviation
+     *
+     * @param	start	Index in the line of its first character
+     * @param	end		Index in the line following its last character
+     * @param	count	Number of stitches it stands for (more than one only for a Kn or Pn multiple)
+     */
+    public TextSpan (int start, int end, int count)
+    {
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        countStart = -1;
+        countEnd = -1;
+        items = null;
+        offsets = null;
+    }
+
+    /**
+     * Constructor for a sequence
+     *
+     * @param	start		Index in the line of its start delimiter (or for a whole row, 0)
+     * @param	end			Index in the line following the text giving the number of times it is worked
+     * @param	countStart	Index in the line of the first digit of that number, or -1 if there is none
+     * @param	countEnd	Index in the line following its last digit, or -1
+     * @param	times		Number of times the sequence is worked
+     * @param	items		Items making up one repeat of the sequence, in order
+     */
+    public TextSpan (int start, int end, int countStart, int countEnd, int times, List<TextSpan> items)
+    {
+        this.start = start;
+        this.end = end;
+        this.countStart = countStart;
+        this.countEnd = countEnd;
+        this.count = times;
+        this.items = items.toArray(new TextSpan[items.size()]);
+        offsets = new int[this.items.length + 1];
+        for (int i = 0; i < this.items.length; i++)
+        {
+            offsets[i+1] = offsets[i] + this.items[i].getWidth();
+        }
+    }
+
+    /**
+     * @return	Number of stitches the item stands for once fully written out
+     */
+    public int getWidth()
+    {
+        return (items == null) ? count : offsets[items.length] * count;
+    }
+
+    public int getStart()
+    {
+        return start;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+
+    /**
+     * A change to the text of a line: the characters from start to end are replaced by text
+     */
+    static class Change
+    {
+        private final int start;
+        private final int end;
+        private final String text;
+        private final boolean inPlace; // True if only one abbreviation is replaced, so the spans stay the same apart from their positions
+
+        Change (int start, int end, String text, boolean inPlace)
+        {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.inPlace = inPlace;
+        }
+
+        public int getStart()
+        {
+            return start;
+        }
+
+        public int getEnd()
+        {
+            return end;
+        }
+
+        public String getText()
+        {
+            return text;
+        }
+
+        public boolean isInPlace()
+        {
+            return inPlace;
+        }
+    }
+
+    /**
+     * Works out the change to the text of a row that changes one of its stitches.
+     *
+     * Where the stitch has an abbreviation of its own, just that abbreviation is replaced.
+     * Changing the abbreviation of a stitch inside a sequence worked more than once (or a
+     * Kn or Pn multiple) would change it in every repeat, so the sequence is split around
+     * the repeat holding the stitch instead, and the new stitch written within that repeat:
+     *      (k2tog, yo) 5 times ==> (k2tog, yo) 2 times, k2tog, k, (k2tog, yo) 2 times
+     *
+     * @param	line			Text of the line the spans were recorded from
+     * @param	index			Position of the stitch within the row
+     * @param	abbreviation	Abbreviation of the new stitch (see PatternWriter.getAbbreviation())
+     *
+     * @return	Change to make to the line
+     */
+    public Change change(String line, int index, String abbreviation)
+    {
+        if (index < 0 || index >= getWidth())
+        {
+            throw new IndexOutOfBoundsException("Stitch " + index + " is outside a sequence of " + getWidth() + " stitches");
+        }
+
+        // Find the position within one repeat, then the item containing that position
+        int position = index % offsets[items.length];
+        int i = Arrays.binarySearch(offsets, 0, items.length, position);
+        if (i < 0)
+        {
+            i = -i - 2; // Not an item's first stitch, so it belongs to the preceding item
+        }
+        else
+        {
+            // Skip past any items that are zero stitches wide
+            while (offsets[i+1] == position)
+            {
+                i++;
+            }
+        }
+        TextSpan item = items[i];
+        int itemIndex = position - offsets[i];
+
+        if (item.items == null && item.count == 1)
+        {
+            return new Change(item.start, item.end, abbreviation, true);
+        }
+        if (item.items == null)
+        {
+            // A multiple is split into the stitches before and after the changed one, keeping its K or P
+            String type = line.substring(item.start, item.start + 1);
+            StringBuilder text = new StringBuilder();
+            append(text, (itemIndex > 0) ? type + itemIndex : "");
+            append(text, abbreviation);
+            append(text, (item.count - itemIndex - 1 > 0) ? type + (item.count - itemIndex - 1) : "");
+            return new Change(item.start, item.end, text.toString(), false);
+        }
+        if (item.count == 1)
+        {
+            return item.change(line, itemIndex, abbreviation);
+        }
+
+        // A sequence worked more than once is split into the repeats before the one holding
+        // the stitch, that repeat written out with the stitch changed, and the repeats after it
+        Change inner = item.change(line, itemIndex, abbreviation);
+        int repeat = itemIndex / item.offsets[item.items.length];
+        int bodyEnd = (item.items.length == 0) ? item.start + 1 : item.items[item.items.length - 1].end;
+        StringBuilder text = new StringBuilder();
+        append(text, item.repeats(line, repeat, bodyEnd));
+        append(text, item.once(line, line.substring(item.start + 1, inner.start) + inner.text + line.substring(inner.end, bodyEnd), bodyEnd));
+        append(text, item.repeats(line, item.count - repeat - 1, bodyEnd));
+        return new Change(item.start, item.end, text.toString(), false);
+    }
+
+    /**
+     * @return	True if this is a sequence with another sequence among its items
+     */
+    private boolean hasSequence()
+    {
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i].items != null)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the items of this sequence worked once. They are written without the delimiters
+     * of the sequence unless another sequence is among them: its delimiters could then be
+     * the same as those of a sequence enclosing this one, and would end that sequence early
+     *      *k1, [p1, *yo, k2tog* 2 times] 3 times* 4 times ==> ... [p1, *yo, k2tog* 2 times] 1 times ...
+     *
+     * @param	line	Text of the line
+     * @param	body	Text of the items
+     * @param	bodyEnd	Index in the line following the last item of the sequence
+     *
+     * @return	Text of the sequence worked once
+     */
+    private String once(String line, String body, int bodyEnd)
+    {
+        if (!hasSequence())
+        {
+            return body;
+        }
+        return line.substring(start, start + 1) + body + line.substring(bodyEnd, countStart) + 1 + line.substring(countEnd, end);
+    }
+
+    /**
+     * Writes this sequence worked a number of times: with its delimiters and the text giving
+     * the new number of times, or if it is worked once, as once() writes it
+     *
+     * @param	line	Text of the line
+     * @param	times	Number of times to work the sequence
+     * @param	bodyEnd	Index in the line following the last item of the sequence
+     *
+     * @return	Text of the sequence, or an empty string if it is worked no times
+     */
+    private String repeats(String line, int times, int bodyEnd)
+    {
+        if (times == 0)
+        {
+            return "";
+        }
+        if (times == 1)
+        {
+            return once(line, line.substring(start + 1, bodyEnd), bodyEnd);
+        }
+        return line.substring(start, countStart) + times + line.substring(countEnd, end);
+    }
+
+    /**
+     * Adds an item to a list of items separated by commas, unless it is empty
+     */
+    private static void append(StringBuilder text, String item)
+    {
+        if (item.length() == 0)
+        {
+            return;
+        }
+        if (text.length() > 0)
+        {
+            text.append(", ");
+        }
+        text.append(item);
+    }
+
+    /**
+     * Moves the spans that come after a change made in place (see Change.isInPlace()),
+     * as well as the ends of the spans enclosing it
+     *
+     * @param	from	Index in the line following the characters that were replaced
+     * @param	delta	Number of characters added (or if negative, removed)
+     */
+    public void moveText(int from, int delta)
+    {
+        if (start > from)
+        {
+            start += delta;
+        }
+        if (end >= from)
+        {
+            end += delta;
+        }
+        if (countStart > from)
+        {
+            countStart += delta;
+            countEnd += delta;
+        }
+        if (items != null)
+        {
+            for (int i = 0; i < items.length; i++)
+            {
+                items[i].moveText(from, delta);
+            }
+        }
+    }
+}
\ No newline at end of file